@@ -19,6 +19,7 @@
 
 package it.cnr.isti.hlt.processfast.core;
 
+import it.cnr.isti.hlt.processfast.connector.ConnectorReader;
 import it.cnr.isti.hlt.processfast.connector.TaskConnectorManager;
 import it.cnr.isti.hlt.processfast.connector.ValuePromise;
 import it.cnr.isti.hlt.processfast.data.*;
@@ -115,6 +116,40 @@ public interface TaskContext extends SystemContext, TaskIdentifier {
 	<V extends Serializable> PairPartitionableDataset<Integer, DataIterable<V>> createPairPartitionableDataset(Iterator<ImmutableDataSourceIteratorProvider<V>> dataSources);
 	
 	
+	/**
+	 * Create a partitionable dataset of double values from the specified data source. The
+	 * values are processed without boxing them.
+	 * 
+	 * @param dataSource The input data source.
+	 * @return A partitionable dataset.
+	 */
+	DoublePartitionableDataset createDoublePartitionableDataset(DoubleDataSourceIteratorProvider dataSource);
+	
+	
+	/**
+	 * Create a partitionable dataset of long values from the specified data source. The
+	 * values are processed without boxing them.
+	 * 
+	 * @param dataSource The input data source.
+	 * @return A partitionable dataset.
+	 */
+	LongPartitionableDataset createLongPartitionableDataset(LongDataSourceIteratorProvider dataSource);
+	
+	
+	/**
+	 * Create an unbounded partitionable dataset whose items are the payloads of the messages read
+	 * from the specified connector. The dataset is processed in micro-batches containing at most
+	 * "batchSize" items, until all the writers of the connector have signaled the end of the stream.
+	 * A micro-batch is closed only when it is full or at the end of the stream, unless a time
+	 * bound is also set with {@link StreamingPartitionableDataset#withBatchInterval(long)}.
+	 * 
+	 * @param reader The connector to read from.
+	 * @param batchSize The maximum number of items of a micro-batch.
+	 * @return A streaming partitionable dataset.
+	 */
+	<T extends Serializable> StreamingPartitionableDataset<T> createStreamingPartitionableDataset(ConnectorReader reader, int batchSize);
+	
+	
 	/**
 	 * Get the data dictionary provided by the owning {@link TaskSet}. This dictionary is
 	 * shared among all defined tasks.
@@ -19,32 +19,53 @@
 
 package it.cnr.isti.hlt.processfast.data;
 
+import it.cnr.isti.hlt.processfast.utils.Pair;
+
 import java.io.Serializable;
 import java.util.Collection;
 import java.util.Iterator;
 
 /**
- * An iterator provider for an Array.
+ * An iterator provider for an Array. The provider can be split in constant time in providers
+ * covering contiguous ranges of the array.
  *
  * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
  */
-public class ArrayDataSourceIteratorProvider<T extends Serializable> implements ImmutableDataSourceIteratorProvider<T> {
+public class ArrayDataSourceIteratorProvider<T extends Serializable> implements SplittableDataSourceIteratorProvider<T> {
 
     private final Array<T> array;
 
     private final long numBufferedItems;
 
+    /**
+     * The range of items covered by this provider. A negative end index means the end of the array.
+     */
+    private final long fromIndex;
+    private final long toIndex;
+
     public ArrayDataSourceIteratorProvider(Array<T> array, long numBufferedItems) {
+        this(array, numBufferedItems, 0, -1);
+    }
+
+    private ArrayDataSourceIteratorProvider(Array<T> array, long numBufferedItems, long fromIndex, long toIndex) {
         if (array == null)
             throw new NullPointerException("The specified array is 'null'");
         if (numBufferedItems < 1)
             throw new IllegalArgumentException("The number of buffered items is less than 1");
         this.array = array;
         this.numBufferedItems = numBufferedItems;
+        this.fromIndex = fromIndex;
+        this.toIndex = toIndex;
+    }
+
+    private long endIndex() {
+        return toIndex < 0 ? array.size() : Math.min(toIndex, array.size());
     }
 
     public Iterator<T> iterator() {
-        return array.asIterator(numBufferedItems);
+        if (fromIndex == 0 && toIndex < 0)
+            return array.asIterator(numBufferedItems);
+        return new ArrayIterator<>(array, numBufferedItems, fromIndex, toIndex);
     }
 
     @Override
@@ -54,13 +75,13 @@ public class ArrayDataSourceIteratorProvider<T extends Serializable> implements
 
     @Override
     public long size() {
-        return this.array.size();
+        return Math.max(0, endIndex() - fromIndex);
     }
 
     @Override
     public boolean contains(T item) {
-        long s = array.size();
-        for (long i = 0; i < s; i++) {
+        long s = endIndex();
+        for (long i = fromIndex; i < s; i++) {
             T currentItem = array.getValue(i);
             if (currentItem.equals(item))
                 return true;
@@ -79,11 +100,33 @@ public class ArrayDataSourceIteratorProvider<T extends Serializable> implements
             throw new IllegalArgumentException("The startFrom parameter is < 0");
         if (numItems < 1)
             throw new IllegalArgumentException("The numItems parameter is < 1");
-        return array.getValues(startFrom, startFrom + numItems);
+        long end = endIndex();
+        long from = Math.min(fromIndex + startFrom, end);
+        return array.getValues(from, Math.min(from + numItems, end));
     }
 
     @Override
     public boolean takeEnabled() {
         return true;
     }
+
+    @Override
+    public long estimateSize() {
+        return size();
+    }
+
+    @Override
+    public boolean isEstimateExact() {
+        return true;
+    }
+
+    @Override
+    public Pair<SplittableDataSourceIteratorProvider<T>, SplittableDataSourceIteratorProvider<T>> trySplit() {
+        long end = endIndex();
+        if (end - fromIndex < 2)
+            return null;
+        long mid = fromIndex + (end - fromIndex) / 2;
+        return new Pair<>(new ArrayDataSourceIteratorProvider<>(array, numBufferedItems, fromIndex, mid),
+                new ArrayDataSourceIteratorProvider<>(array, numBufferedItems, mid, end));
+    }
 }
@@ -20,6 +20,7 @@
 package it.cnr.isti.hlt.processfast.data;
 
 import java.io.Serializable;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
@@ -37,22 +38,42 @@ public class ArrayIterator<T extends Serializable> implements Iterator<T> {
     private long numTotalItemsRead;
     private int numCurrentItemsRead;
     private long sizeArray;
+    private final long fromIndex;
+    private final long toIndex;
 
     public ArrayIterator(Array<T> array, long numBufferedItems) {
+        this(array, numBufferedItems, 0, -1);
+    }
+
+    /**
+     * Build an iterator over the items of the array in the range [fromIndex, toIndex).
+     *
+     * @param array            The array to iterate.
+     * @param numBufferedItems The number of items read from the array at each access.
+     * @param fromIndex        The index of the first item, inclusive.
+     * @param toIndex          The index of the last item, exclusive, or -1 to iterate until the end of the array.
+     */
+    public ArrayIterator(Array<T> array, long numBufferedItems, long fromIndex, long toIndex) {
         if (array == null)
             throw new NullPointerException("The array is 'null'");
         if (numBufferedItems < 1)
             throw new IllegalArgumentException("The number of buffered items is less than 1");
+        if (fromIndex < 0)
+            throw new IllegalArgumentException("The fromIndex is < 0");
         this.array = array;
         this.numBufferedItems = numBufferedItems;
+        this.fromIndex = fromIndex;
+        this.toIndex = toIndex;
         begin();
     }
 
     void begin() {
         numTotalItemsRead = 0;
         numCurrentItemsRead = 0;
-        currentRead = readBuffered(array, 0, numBufferedItems);
-        sizeArray = array.size();
+        long end = toIndex < 0 ? array.size() : Math.min(toIndex, array.size());
+        sizeArray = Math.max(0, end - fromIndex);
+        currentRead = sizeArray == 0 ? Collections.<T>emptyList() :
+                readBuffered(array, fromIndex, fromIndex + Math.min(numBufferedItems, sizeArray));
     }
 
     protected List<T> readBuffered(Array<T> array, long fromIndex, long toIndex) {
@@ -72,7 +93,8 @@ public class ArrayIterator<T extends Serializable> implements Iterator<T> {
         if (numCurrentItemsRead >= currentRead.size()) {
             numTotalItemsRead += currentRead.size();
             numCurrentItemsRead = 0;
-            currentRead = readBuffered(array, numTotalItemsRead, numTotalItemsRead+numBufferedItems);
+            long from = fromIndex + numTotalItemsRead;
+            currentRead = readBuffered(array, from, from + Math.min(numBufferedItems, sizeArray - numTotalItemsRead));
         }
 
         T item = currentRead.get(numCurrentItemsRead);
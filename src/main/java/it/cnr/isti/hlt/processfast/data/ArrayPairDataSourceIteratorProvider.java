@@ -31,23 +31,41 @@ import java.util.*;
  * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
  * @since 1.0.0
  */
-public class ArrayPairDataSourceIteratorProvider<T extends Serializable> implements ImmutableDataSourceIteratorProvider<Pair<Long, T>> {
+public class ArrayPairDataSourceIteratorProvider<T extends Serializable> implements SplittableDataSourceIteratorProvider<Pair<Long, T>> {
 
     private final Array<T> array;
 
     private final long numBufferedItems;
 
+    /**
+     * The range of items covered by this provider. A negative end index means the end of the array.
+     */
+    private final long fromIndex;
+    private final long toIndex;
+
     public ArrayPairDataSourceIteratorProvider(Array<T> array, long numBufferedItems) {
+        this(array, numBufferedItems, 0, -1);
+    }
+
+    private ArrayPairDataSourceIteratorProvider(Array<T> array, long numBufferedItems, long fromIndex, long toIndex) {
         if (array == null)
             throw new NullPointerException("The specified array is 'null'");
         if (numBufferedItems < 1)
             throw new IllegalArgumentException("The number of buffered items is less than 1");
         this.array = array;
         this.numBufferedItems = numBufferedItems;
+        this.fromIndex = fromIndex;
+        this.toIndex = toIndex;
+    }
+
+    private long endIndex() {
+        return toIndex < 0 ? array.size() : Math.min(toIndex, array.size());
     }
 
     public Iterator<Pair<Long, T>> iterator() {
-        return new ArrayPairIterator<T>(array.asIterator(numBufferedItems));
+        if (fromIndex == 0 && toIndex < 0)
+            return new ArrayPairIterator<T>(array.asIterator(numBufferedItems));
+        return new ArrayPairIterator<T>(new ArrayIterator<>(array, numBufferedItems, fromIndex, toIndex), fromIndex);
     }
 
     @Override
@@ -57,13 +75,13 @@ public class ArrayPairDataSourceIteratorProvider<T extends Serializable> impleme
 
     @Override
     public long size() {
-        return array.size();
+        return Math.max(0, endIndex() - fromIndex);
     }
 
     @Override
     public boolean contains(Pair<Long, T> item) {
-        long s = array.size();
-        for (long i = 0; i < s; i++) {
+        long s = endIndex();
+        for (long i = fromIndex; i < s; i++) {
             T currentItem = array.getValue(i);
             if (currentItem.equals(item.getV2()) && item.getV1() == i)
                 return true;
@@ -82,10 +100,12 @@ public class ArrayPairDataSourceIteratorProvider<T extends Serializable> impleme
             throw new IllegalArgumentException("The startFrom parameter is < 0");
         if (numItems < 1)
             throw new IllegalArgumentException("The numItems parameter is < 1");
-        List<T> values = array.getValues(startFrom, startFrom + numItems);
+        long end = endIndex();
+        long from = Math.min(fromIndex + startFrom, end);
+        List<T> values = array.getValues(from, Math.min(from + numItems, end));
         ArrayList<Pair<Long, T>> ret = new ArrayList<>();
         for (long i = 0; i < values.size(); i++) {
-            ret.add(new Pair<Long, T>(i + startFrom, values.get((int) i)));
+            ret.add(new Pair<Long, T>(i + from, values.get((int) i)));
         }
         return ret;
     }
@@ -95,6 +115,26 @@ public class ArrayPairDataSourceIteratorProvider<T extends Serializable> impleme
         return true;
     }
 
+    @Override
+    public long estimateSize() {
+        return size();
+    }
+
+    @Override
+    public boolean isEstimateExact() {
+        return true;
+    }
+
+    @Override
+    public Pair<SplittableDataSourceIteratorProvider<Pair<Long, T>>, SplittableDataSourceIteratorProvider<Pair<Long, T>>> trySplit() {
+        long end = endIndex();
+        if (end - fromIndex < 2)
+            return null;
+        long mid = fromIndex + (end - fromIndex) / 2;
+        return new Pair<>(new ArrayPairDataSourceIteratorProvider<>(array, numBufferedItems, fromIndex, mid),
+                new ArrayPairDataSourceIteratorProvider<>(array, numBufferedItems, mid, end));
+    }
+
 
     static class ArrayPairIterator<T extends Serializable> implements Iterator<Pair<Long, T>> {
 
@@ -102,8 +142,12 @@ public class ArrayPairDataSourceIteratorProvider<T extends Serializable> impleme
         private long index;
 
         ArrayPairIterator(Iterator<T> iter) {
+            this(iter, 0);
+        }
+
+        ArrayPairIterator(Iterator<T> iter, long firstIndex) {
             this.iter = iter;
-            this.index = 0;
+            this.index = firstIndex;
         }
 
         public boolean hasNext() {
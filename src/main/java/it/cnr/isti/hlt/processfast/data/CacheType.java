@@ -28,12 +28,28 @@ package it.cnr.isti.hlt.processfast.data;
 public enum CacheType {
 	
 	/**
-	 * Cached in RAM.
+	 * Cached in RAM as compact serialized blocks, one per partition, under a memory budget shared
+	 * by all cached datasets. The blocks dropped to respect the budget are recomputed from the
+	 * lineage of the dataset when needed.
 	 */
 	RAM,
 	
 	/**
-	 * Cached serialized on secondary storage.
+	 * Cached serialized on secondary storage, in append-only segment files read back through
+	 * memory-mapped buffers. The files are deleted when the dataset is closed.
 	 */
-	ON_DISK
+	ON_DISK,
+
+	/**
+	 * Cached in direct memory, outside the heap and the view of the garbage collector, as compact
+	 * serialized blocks under a memory budget shared by all datasets cached off-heap. The blocks
+	 * dropped to respect the budget are recomputed from the lineage of the dataset when needed.
+	 */
+	OFF_HEAP,
+
+	/**
+	 * Cached in RAM as {@link #RAM}, but the blocks dropped to respect the memory budget are
+	 * demoted to disk as {@link #ON_DISK} and promoted back to RAM when read again.
+	 */
+	RAM_AND_DISK
 }
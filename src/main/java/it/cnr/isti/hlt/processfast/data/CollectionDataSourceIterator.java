@@ -42,8 +42,18 @@ public class CollectionDataSourceIterator<T extends Serializable> implements
 	private int nextIdx;
 	
 	public CollectionDataSourceIterator(Iterator<T> iter) {
+		this(iter, 0);
+	}
+
+	/**
+	 * Build a new iterator whose first item is marked with the specified index.
+	 *
+	 * @param iter The existing iterator.
+	 * @param firstIdx The index of the first item.
+	 */
+	public CollectionDataSourceIterator(Iterator<T> iter, int firstIdx) {
 		this.iter = iter;
-		nextIdx = 0;
+		nextIdx = firstIdx;
 	}
 	
 
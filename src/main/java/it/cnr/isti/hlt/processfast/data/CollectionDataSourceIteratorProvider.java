@@ -30,19 +30,46 @@ import java.util.List;
 import java.util.stream.Collectors;
 
 /**
+ * An iterator provider for a collection, returning each item along with its position in the
+ * collection. The provider can be split in providers covering contiguous ranges of the
+ * collection: if the collection is not a {@link List}, the first split copies it in a list.
+ *
  * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
  */
-public class CollectionDataSourceIteratorProvider<T extends Serializable> implements ImmutableDataSourceIteratorProvider<Pair<Integer, T>> {
+public class CollectionDataSourceIteratorProvider<T extends Serializable> implements SplittableDataSourceIteratorProvider<Pair<Integer, T>> {
 
     private final Collection<T> collection;
 
+    /**
+     * The range [fromIndex, toIndex) of a split provider, toIndex is -1 for the whole collection.
+     */
+    private final int fromIndex;
+    private final int toIndex;
+
+    /**
+     * The collection as a list, copied by the first split if the collection is not a list.
+     */
+    private volatile List<T> indexed;
+
     public CollectionDataSourceIteratorProvider(Collection<T> c) {
+        this(c, 0, -1);
+    }
+
+    private CollectionDataSourceIteratorProvider(Collection<T> c, int fromIndex, int toIndex) {
         if (c == null)
             throw new NullPointerException("The collection is 'null'");
         this.collection = c;
+        this.fromIndex = fromIndex;
+        this.toIndex = toIndex;
+    }
+
+    private boolean isRange() {
+        return toIndex >= 0;
     }
 
     public Iterator<Pair<Integer, T>> iterator() {
+        if (isRange())
+            return new CollectionDataSourceIterator<T>(((List<T>) collection).subList(fromIndex, toIndex).iterator(), fromIndex);
         return new CollectionDataSourceIterator<T>(collection.iterator());
     }
 
@@ -53,11 +80,17 @@ public class CollectionDataSourceIteratorProvider<T extends Serializable> implem
 
     @Override
     public long size() {
+        if (isRange())
+            return toIndex - fromIndex;
         return collection.size();
     }
 
     @Override
     public boolean contains(Pair<Integer, T> item) {
+        if (isRange()) {
+            int idx = item.getV1();
+            return idx >= fromIndex && idx < toIndex && ((List<T>) collection).get(idx).equals(item.getV2());
+        }
         return collection.contains(item);
     }
 
@@ -72,6 +105,17 @@ public class CollectionDataSourceIteratorProvider<T extends Serializable> implem
             throw new IllegalArgumentException("The startFrom parameter is < 0");
         if (numItems < 1)
             throw new IllegalArgumentException("The numItems parameter is < 1");
+        if (isRange()) {
+            if (startFrom >= size())
+                throw new IllegalArgumentException("The startFrom parameter >= size()");
+            int from = (int) (fromIndex + startFrom);
+            int to = (int) Math.min(from + numItems, toIndex);
+            List<T> values = ((List<T>) collection).subList(from, to);
+            ArrayList<Pair<Integer, T>> ret = new ArrayList<>(values.size());
+            for (int i = 0; i < values.size(); i++)
+                ret.add(new Pair<Integer, T>(from + i, values.get(i)));
+            return ret;
+        }
         if (startFrom >= collection.size())
             throw new IllegalArgumentException("The startFrom parameter >= size()");
         ArrayList<Pair<Integer, T>> coll = new ArrayList();
@@ -91,4 +135,42 @@ public class CollectionDataSourceIteratorProvider<T extends Serializable> implem
     public boolean takeEnabled() {
         return true;
     }
+
+    @Override
+    public long estimateSize() {
+        return size();
+    }
+
+    @Override
+    public boolean isEstimateExact() {
+        return true;
+    }
+
+    @Override
+    public Pair<SplittableDataSourceIteratorProvider<Pair<Integer, T>>, SplittableDataSourceIteratorProvider<Pair<Integer, T>>> trySplit() {
+        List<T> list;
+        int from = fromIndex;
+        int to;
+        if (isRange()) {
+            list = (List<T>) collection;
+            to = toIndex;
+        } else {
+            list = asList();
+            to = list.size();
+        }
+        if (to - from < 2)
+            return null;
+        int mid = from + (to - from) / 2;
+        return new Pair<>(new CollectionDataSourceIteratorProvider<>(list, from, mid),
+                new CollectionDataSourceIteratorProvider<>(list, mid, to));
+    }
+
+    private List<T> asList() {
+        List<T> l = indexed;
+        if (l == null) {
+            l = collection instanceof List ? (List<T>) collection : new ArrayList<>(collection);
+            indexed = l;
+        }
+        return l;
+    }
 }
@@ -0,0 +1,142 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.data;
+
+import java.io.Serializable;
+
+/**
+ * Count, sum, mean, minimum, maximum and variance of a set of double values, computed in one
+ * pass. The statistics of different parts of a dataset are computed independently and then
+ * merged with {@link #merge(DoubleStatistics)}, using the pairwise update of Chan et al. for
+ * the variance so the result is numerically stable. The statistics of an empty set have a NaN
+ * mean, minimum, maximum and variance.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+public class DoubleStatistics implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private long count;
+    private double sum;
+    private double mean;
+    private double m2;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    /**
+     * Add a value to these statistics.
+     *
+     * @param value The value to add.
+     */
+    public void add(double value) {
+        count++;
+        sum += value;
+        double delta = value - mean;
+        mean += delta / count;
+        m2 += delta * (value - mean);
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Merge the statistics of another set of values into these statistics.
+     *
+     * @param other The statistics to merge.
+     * @return These statistics.
+     */
+    public DoubleStatistics merge(DoubleStatistics other) {
+        if (other == null)
+            throw new NullPointerException("The other statistics are 'null'");
+        if (other.count == 0)
+            return this;
+        if (count == 0) {
+            count = other.count;
+            sum = other.sum;
+            mean = other.mean;
+            m2 = other.m2;
+            min = other.min;
+            max = other.max;
+            return this;
+        }
+        long total = count + other.count;
+        double delta = other.mean - mean;
+        mean += delta * other.count / total;
+        m2 += other.m2 + delta * delta * ((double) count * other.count / total);
+        count = total;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        return this;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    public double getMean() {
+        return count == 0 ? Double.NaN : mean;
+    }
+
+    public double getMin() {
+        return count == 0 ? Double.NaN : min;
+    }
+
+    public double getMax() {
+        return count == 0 ? Double.NaN : max;
+    }
+
+    /**
+     * Get the population variance of the values.
+     *
+     * @return The variance, or NaN if there are no values.
+     */
+    public double getVariance() {
+        return count == 0 ? Double.NaN : m2 / count;
+    }
+
+    /**
+     * Get the sample variance of the values, i.e. corrected by dividing by n - 1.
+     *
+     * @return The sample variance, or NaN if there are less than 2 values.
+     */
+    public double getSampleVariance() {
+        return count < 2 ? Double.NaN : m2 / (count - 1);
+    }
+
+    /**
+     * Get the population standard deviation of the values.
+     *
+     * @return The standard deviation, or NaN if there are no values.
+     */
+    public double getStdev() {
+        return Math.sqrt(getVariance());
+    }
+
+    @Override
+    public String toString() {
+        return "(count: " + count + ", mean: " + getMean() + ", stdev: " + getStdev() + ", min: " + getMin() + ", max: " + getMax() + ")";
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.data;
+
+import it.cnr.isti.hlt.processfast.utils.Pair;
+
+import java.util.PrimitiveIterator;
+
+/**
+ * A provider for iterators over a finite and immutable set of long values, read without
+ * boxing them. As a {@link SplittableDataSourceIteratorProvider}, the provider can be cut into
+ * independent parts read in parallel.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+public interface LongDataSourceIteratorProvider {
+
+    /**
+     * Get a new iterator over the values of this provider.
+     *
+     * @return A new iterator over the values.
+     */
+    PrimitiveIterator.OfLong iterator();
+
+    /**
+     * Get the number of values of this provider. The operation must be cheap.
+     *
+     * @return The number of values.
+     */
+    long size();
+
+    /**
+     * Split this provider in two parts. The first part contains the values coming first in the
+     * iteration order of this provider, the second part the remaining values.
+     *
+     * @return The two parts, or 'null' if this provider can not be split.
+     */
+    Pair<LongDataSourceIteratorProvider, LongDataSourceIteratorProvider> trySplit();
+}
@@ -0,0 +1,145 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.data;
+
+
+/**
+ * A partitionable dataset of long values. The values are read from a
+ * {@link LongDataSourceIteratorProvider} and transformed and aggregated as primitive
+ * values, without boxing them.
+ * 
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+public interface LongPartitionableDataset {
+
+	/**
+	 * Suggest to the runtime how to size each partition of the dataset.
+	 *
+	 * @param partitionSize The total number of values assigned to a partition.
+	 * @return A new partitionable dataset.
+	 */
+	LongPartitionableDataset withPartitionSize(int partitionSize);
+
+
+	/**
+	 * Transform each value of this dataset with the specified function.
+	 *
+	 * @param func The function to apply.
+	 * @return A new partitionable dataset with the transformed values.
+	 */
+	LongPartitionableDataset map(PDLongFunction func);
+
+
+	/**
+	 * Keep only the values of this dataset satisfying the specified condition.
+	 *
+	 * @param func The condition to check.
+	 * @return A new partitionable dataset with the selected values.
+	 */
+	LongPartitionableDataset filter(PDLongPredicate func);
+
+
+	/**
+	 * Get the values of this dataset.
+	 *
+	 * @return The values, in the order of the data source.
+	 */
+	long[] collect();
+
+
+	/**
+	 * Get the number of values of this dataset.
+	 *
+	 * @return The number of values.
+	 */
+	long count();
+
+
+	/**
+	 * Compute in one pass all the statistics of the values of this dataset.
+	 *
+	 * @return The statistics of the values.
+	 */
+	LongStatistics stats();
+
+
+	/**
+	 * Get the sum of the values of this dataset. The sum overflows silently like the
+	 * sum of Java longs.
+	 *
+	 * @return The sum of the values, 0 if the dataset is empty.
+	 */
+	long sum();
+
+
+	/**
+	 * Get the mean of the values of this dataset.
+	 *
+	 * @return The mean of the values, NaN if the dataset is empty.
+	 */
+	double mean();
+
+
+	/**
+	 * Get the minimum value of this dataset.
+	 *
+	 * @return The minimum value.
+	 * @throws java.util.NoSuchElementException If the dataset is empty.
+	 */
+	long min();
+
+
+	/**
+	 * Get the maximum value of this dataset.
+	 *
+	 * @return The maximum value.
+	 * @throws java.util.NoSuchElementException If the dataset is empty.
+	 */
+	long max();
+
+
+	/**
+	 * Get the population variance of the values of this dataset.
+	 *
+	 * @return The variance of the values, NaN if the dataset is empty.
+	 */
+	double variance();
+
+
+	/**
+	 * Get the population standard deviation of the values of this dataset.
+	 *
+	 * @return The standard deviation of the values, NaN if the dataset is empty.
+	 */
+	double stdev();
+
+
+	/**
+	 * Count the values of this dataset falling in each of the specified buckets. The buckets
+	 * are delimited by the specified sorted edges: bucket i contains the values v such that
+	 * buckets[i] <= v < buckets[i+1], and the last bucket contains also the values equal to its
+	 * right edge. Values outside all buckets are not counted.
+	 *
+	 * @param buckets The edges of the buckets, sorted in increasing order. At least 2 edges are required.
+	 * @return The number of values in each bucket.
+	 */
+	long[] histogram(long[] buckets);
+}
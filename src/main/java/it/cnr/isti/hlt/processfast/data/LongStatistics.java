@@ -0,0 +1,101 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.data;
+
+import java.util.NoSuchElementException;
+
+/**
+ * The statistics of a set of long values. Like {@link DoubleStatistics}, but the sum, the
+ * minimum and the maximum are kept exact as long values. The minimum and the maximum of an
+ * empty set are not defined.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+public class LongStatistics extends DoubleStatistics {
+
+    private static final long serialVersionUID = 1L;
+
+    private long longSum;
+    private long longMin = Long.MAX_VALUE;
+    private long longMax = Long.MIN_VALUE;
+
+    /**
+     * Add a value to these statistics.
+     *
+     * @param value The value to add.
+     */
+    public void add(long value) {
+        super.add(value);
+        longSum += value;
+        longMin = Math.min(longMin, value);
+        longMax = Math.max(longMax, value);
+    }
+
+    @Override
+    public void add(double value) {
+        throw new UnsupportedOperationException("Only long values can be added to these statistics");
+    }
+
+    @Override
+    public DoubleStatistics merge(DoubleStatistics other) {
+        if (other != null && !(other instanceof LongStatistics))
+            throw new IllegalArgumentException("Only long statistics can be merged into these statistics");
+        super.merge(other);
+        LongStatistics o = (LongStatistics) other;
+        longSum += o.longSum;
+        longMin = Math.min(longMin, o.longMin);
+        longMax = Math.max(longMax, o.longMax);
+        return this;
+    }
+
+    /**
+     * Get the exact sum of the values.
+     *
+     * @return The sum of the values.
+     */
+    public long getLongSum() {
+        return longSum;
+    }
+
+    /**
+     * Get the minimum value.
+     *
+     * @return The minimum value.
+     * @throws NoSuchElementException If there are no values.
+     */
+    public long getLongMin() {
+        if (getCount() == 0)
+            throw new NoSuchElementException("There are no values");
+        return longMin;
+    }
+
+    /**
+     * Get the maximum value.
+     *
+     * @return The maximum value.
+     * @throws NoSuchElementException If there are no values.
+     */
+    public long getLongMax() {
+        if (getCount() == 0)
+            throw new NoSuchElementException("There are no values");
+        return longMax;
+    }
+}
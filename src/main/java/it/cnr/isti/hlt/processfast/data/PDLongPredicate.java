@@ -0,0 +1,41 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.data;
+
+import it.cnr.isti.hlt.processfast.core.TaskDataContext;
+
+/**
+ * A condition on long values to be checked on a {@link LongPartitionableDataset}, without
+ * boxing the values.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+public interface PDLongPredicate {
+
+    /**
+     * Check the condition.
+     *
+     * @param ctx   The task context where the condition is checked.
+     * @param value The value to check.
+     * @return True if the value satisfies the condition, false otherwise.
+     */
+    boolean call(TaskDataContext ctx, long value);
+}
@@ -21,6 +21,8 @@ package it.cnr.isti.hlt.processfast.data;
 
 import java.io.Serializable;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 
 import it.cnr.isti.hlt.processfast.core.TaskDataContext;
 import it.cnr.isti.hlt.processfast.utils.Pair;
@@ -46,6 +48,22 @@ public interface PairPartitionableDataset<K extends Serializable, V extends Seri
 	 * where the values for each key are aggregated using the given reduce function.
 	 */
 	PairPartitionableDataset<K, V> reduceByKey(PDFunction2<V, V, V> func);
+
+
+	/**
+	 * Returns a dataset of (K, V) pairs
+	 * where the values for each key are aggregated using the given reduce function. The values
+	 * are pre-aggregated inside each partition (map-side combining) before being merged with the
+	 * values of the other partitions. The combiner keeps at most "combinerCapacity" keys per
+	 * partition: when the limit is reached the partial aggregates computed so far are spilled out
+	 * of the combiner and the combination restarts from an empty table.
+	 *
+	 * @param func The reduce function, which must be associative and commutative.
+	 * @param combinerCapacity The maximum number of distinct keys held by the combiner of a partition.
+	 * @return This partitionable dataset containing (K, V) pairs
+	 * where the values for each key are aggregated using the given reduce function.
+	 */
+	PairPartitionableDataset<K, V> reduceByKey(PDFunction2<V, V, V> func, int combinerCapacity);
 	
 	
 	/**
@@ -98,6 +116,17 @@ public interface PairPartitionableDataset<K extends Serializable, V extends Seri
 	PartitionableDataset<V> values();
 
 
+	/**
+	 * Estimate the k keys having the most pairs in this dataset, like {@link #topKApprox(int, double)}
+	 * applied to the keys.
+	 *
+	 * @param k             The number of keys to return, greater than 0.
+	 * @param relativeError The maximum overestimate of a count, relative to the number of pairs, in (0, 1).
+	 * @return At most k keys with their estimated number of pairs, sorted by decreasing count.
+	 */
+	List<Pair<K, Long>> topKeysApprox(int k, double relativeError);
+
+
 	/**
 	 * Pass each value in the key-value pair PD through a map function without changing the keys.
 	 *
@@ -109,6 +138,19 @@ public interface PairPartitionableDataset<K extends Serializable, V extends Seri
 
 	PairPartitionableDataset<K, V> distinct();
 
+
+	/**
+	 * Return a stratified sample of the pairs of this dataset, sampling the pairs of each key with
+	 * its own fraction like {@link #sample(boolean, double, long)}.
+	 *
+	 * @param withReplacement True if a pair can be sampled more times, false otherwise.
+	 * @param fractions       The expected fraction of sampled pairs for each key. Every key of the
+	 *                        dataset must have a fraction.
+	 * @param seed            The seed of the random generators.
+	 * @return A new partitionable dataset containing the sampled pairs.
+	 */
+	PairPartitionableDataset<K, V> sampleByKey(boolean withReplacement, Map<K, Double> fractions, long seed);
+
 	/**
 	 * Suggest to the runtime how to size each partition of the dataset. Each partition
 	 * will be processed in RAM by a set of processors.
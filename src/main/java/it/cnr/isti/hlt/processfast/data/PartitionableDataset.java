@@ -24,6 +24,7 @@ import it.cnr.isti.hlt.processfast.utils.Pair;
 import it.cnr.isti.hlt.processfast.utils.Procedure3;
 
 import java.io.Serializable;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 
@@ -124,6 +125,18 @@ public interface PartitionableDataset<T extends Serializable> {
 	<Out extends Serializable> PartitionableDataset<Out> mapFlat(PDFunction<T, Iterator<Out>> func);
 
 
+	/**
+	 * Apply the specified function to the items of every partition of the data collection, so that
+	 * expensive setup (e.g. a tokenizer or a model) is done once per partition instead of once per item.
+	 * The function receives an iterator over the items of a partition and returns an iterator over
+	 * the resulting items. The items are streamed, so the function can consume its input lazily.
+	 *
+	 * @param func The function to apply.
+	 * @return A new partitionable dataset including data available after the call of "func".
+	 */
+	<Out extends Serializable> PartitionableDataset<Out> mapPartitions(PDFunction<Iterator<T>, Iterator<Out>> func);
+
+
 	/**
 	 * Apply the specified function to every item in the data collection and returns a
 	 * new dataset with where each item is mapped to 0 or more items.
@@ -181,6 +194,23 @@ public interface PartitionableDataset<T extends Serializable> {
 	PartitionableDataset<T> distinct();
 
 
+
+	/**
+	 * Return a sample of the items of this dataset, computed independently on each partition
+	 * while the items are read. Without replacement each item is kept with probability
+	 * "fraction", with replacement each item is repeated a number of times drawn from a Poisson
+	 * distribution of mean "fraction". The same seed on the same data and partition size always
+	 * gives the same sample.
+	 *
+	 * @param withReplacement True if an item can be sampled more times, false otherwise.
+	 * @param fraction        The expected fraction of sampled items, in [0, 1] without replacement and
+	 *                        greater or equal to 0 with replacement.
+	 * @param seed            The seed of the random generators.
+	 * @return A new partitionable dataset containing the sampled items.
+	 */
+	PartitionableDataset<T> sample(boolean withReplacement, double fraction, long seed);
+
+
     /**
      * Compute a partitionable dataset containing sorted data. The type of the data where
      * this transformation is called must implement {@link java.lang.Comparable} interface.
@@ -213,6 +243,19 @@ public interface PartitionableDataset<T extends Serializable> {
 	<U extends Serializable> PairPartitionableDataset<T, U> cartesian(PartitionableDataset<U> dataset);
 	
 	
+	/**
+	 * Return a collection containing the couples of the cartesian product between this collection and
+	 * the specified dataset which satisfy the given condition. The condition is evaluated inside the product
+	 * loop, so the discarded couples are never created. This is much cheaper than filtering the result of
+	 * {@link #cartesian(PartitionableDataset)} when most of the couples are discarded.
+	 * 
+	 * @param dataset The datasource to merge with.
+	 * @param filter The condition a couple (item of this collection, item of the specified dataset) must satisfy.
+	 * @return A new partitionable dataset containing the couples of the cartesian product satisfying the condition.
+	 */
+	<U extends Serializable> PairPartitionableDataset<T, U> cartesian(PartitionableDataset<U> dataset, PDFunction2<T, U, Boolean> filter);
+	
+	
 	
 	
 	
@@ -230,6 +273,70 @@ public interface PartitionableDataset<T extends Serializable> {
 	 * @return The result coming from cumulative computation of "func".
 	 */
 	T reduce(PDFunction2<T, T, T> func);
+
+
+	/**
+	 * Aggregate all items to a single result. The items of each partition are accumulated, starting
+	 * from a copy of the zero value, by "seqOp", which can update the accumulator in place and return it.
+	 * The accumulators of the partitions are then combined by "combOp", an associative and commutative
+	 * function which can also update its first parameter in place.
+	 *
+	 * @param zero   The initial value of the accumulator of each partition. It is copied through serialization
+	 *               for each partition.
+	 * @param seqOp  The function adding an item to an accumulator.
+	 * @param combOp The function combining two accumulators.
+	 * @param <U>    The type of the result.
+	 * @return The aggregated result, or a copy of the zero value if the dataset is empty.
+	 */
+	<U extends Serializable> U aggregate(U zero, PDFunction2<U, T, U> seqOp, PDFunction2<U, U, U> combOp);
+
+
+	/**
+	 * Fold all items to a single result, starting from the zero value in each partition. The function
+	 * must be associative and commutative and can update its first parameter in place.
+	 *
+	 * @param zero The neutral value of the function. It is copied through serialization for each partition.
+	 * @param op   The function to apply.
+	 * @return The folded result, or a copy of the zero value if the dataset is empty.
+	 */
+	T fold(T zero, PDFunction2<T, T, T> op);
+
+
+	/**
+	 * Estimate the number of distinct items of this dataset with a HyperLogLog sketch, without
+	 * shuffling the items. Each partition builds its own sketch and the sketches are merged. The
+	 * items are distinguished by their hashCode() method.
+	 *
+	 * @param relativeSD The relative standard error of the estimate. It must be at least 0.0021.
+	 * @return The estimated number of distinct items.
+	 */
+	long countApproxDistinct(double relativeSD);
+
+
+	/**
+	 * Estimate the items at the specified quantiles of this dataset, according to the natural
+	 * ordering of the items, with a mergeable quantile sketch. Each partition builds its own
+	 * sketch and the sketches are merged, so the items are never sorted as a whole. The items
+	 * must implement {@link Comparable}.
+	 *
+	 * @param probabilities The quantiles to estimate, each in [0, 1] (e.g. 0.5 for the median).
+	 * @param relativeError The target error on the rank of the returned items, relative to the
+	 *                      number of items, in (0, 1).
+	 * @return The estimated item at each quantile, or an empty list if the dataset is empty.
+	 */
+	List<T> approxQuantiles(double[] probabilities, double relativeError);
+
+
+	/**
+	 * Estimate the k most frequent items of this dataset with a Count-Min sketch and a heap of
+	 * candidates, without shuffling the items. The returned frequencies are never lower than the
+	 * true ones and, with high probability, exceed them by at most relativeError * count().
+	 *
+	 * @param k             The number of items to return, greater than 0.
+	 * @param relativeError The maximum overestimate of a frequency, relative to the number of items, in (0, 1).
+	 * @return At most k items with their estimated frequencies, sorted by decreasing frequency.
+	 */
+	List<Pair<T, Long>> topKApprox(int k, double relativeError);
 	
 	
 	
@@ -270,6 +377,42 @@ public interface PartitionableDataset<T extends Serializable> {
 	 * @return A specific subcollection of this data collection.
 	 */
 	List<T> take(long startFrom, long numItems);
+
+
+
+	/**
+	 * Return a uniform random sample, without replacement, of exactly "numItems" items of this
+	 * dataset, or all items if the dataset is smaller. Each partition keeps only its own sample
+	 * of at most "numItems" items, so the dataset is neither collected nor sorted.
+	 *
+	 * @param numItems The number of items to sample, greater than 0.
+	 * @param seed     The seed of the random generators.
+	 * @return The sampled items, in random order.
+	 */
+	List<T> takeSample(int numItems, long seed);
+
+
+
+	/**
+	 * Return the k largest items of this dataset according to the specified comparator. Each
+	 * partition keeps its best items in a bounded heap and the heaps are merged, so the cost is
+	 * O(n log k) without sorting or shuffling the dataset.
+	 *
+	 * @param k          The number of items to return, greater than 0.
+	 * @param comparator The comparator ordering the items.
+	 * @return At most k items, sorted from the largest.
+	 */
+	List<T> top(int k, Comparator<T> comparator);
+
+
+	/**
+	 * Return the k smallest items of this dataset according to their natural ordering, like
+	 * {@link #top(int, Comparator)}. The items must implement {@link Comparable}.
+	 *
+	 * @param k The number of items to return, greater than 0.
+	 * @return At most k items, sorted from the smallest.
+	 */
+	List<T> takeOrdered(int k);
 	
 	/**
 	 * Save the current collection's items on the specified storage manager. This method
@@ -295,6 +438,16 @@ public interface PartitionableDataset<T extends Serializable> {
 	void processEach(PDProcedure<T> func);
 
 
+    /**
+     * Apply the specified procedure to the items of every partition of the data collection, so that
+     * expensive setup (e.g. a storage handle) is done once per partition instead of once per item.
+     * The procedure is invoked concurrently on different partitions.
+     *
+     * @param func The procedure to apply, receiving an iterator over the items of a partition.
+     */
+	void processEachPartition(PDProcedure<Iterator<T>> func);
+
+
     /**
      * Release all allocated resources.
 	 */
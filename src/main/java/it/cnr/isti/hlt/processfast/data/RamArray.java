@@ -0,0 +1,239 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.data;
+
+import it.cnr.isti.hlt.processfast.utils.Pair;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * An {@link Array} implementation which keeps all its data in RAM. The items
+ * not explicitly assigned by the programmer return the value specified by
+ * {@link #getDefaultValue()}. The implementation is thread-safe.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+public class RamArray<T extends Serializable> implements Array<T> {
+
+    /**
+     * The marker used for items without an explicit value.
+     */
+    private static final Object UNASSIGNED = new Object();
+
+    private final String name;
+    private final ArrayList<Object> items;
+    private T defaultValue;
+
+    public RamArray(String name) {
+        if (name == null || name.isEmpty())
+            throw new IllegalArgumentException("The array name is 'null' or empty");
+        this.name = name;
+        this.items = new ArrayList<>();
+        this.defaultValue = null;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public synchronized long size() {
+        return items.size();
+    }
+
+    @Override
+    public synchronized T getValue(long index) {
+        checkIndex(index);
+        return toValue(items.get((int) index));
+    }
+
+    @Override
+    public synchronized List<T> getValues(long fromIndex, long toIndex) {
+        if (fromIndex < 0)
+            throw new IllegalArgumentException("The fromIndex is < 0");
+        if (toIndex < fromIndex)
+            throw new IllegalArgumentException("The toIndex is < fromIndex");
+        long to = Math.min(toIndex, items.size());
+        ArrayList<T> ret = new ArrayList<>();
+        for (long i = fromIndex; i < to; i++)
+            ret.add(toValue(items.get((int) i)));
+        return ret;
+    }
+
+    @Override
+    public synchronized void setValue(long index, T value) {
+        checkIndex(index);
+        items.set((int) index, value == null ? UNASSIGNED : value);
+    }
+
+    @Override
+    public synchronized void appendValue(T value) {
+        items.add(value == null ? UNASSIGNED : value);
+    }
+
+    @Override
+    public synchronized void appendValues(long numItems, T value) {
+        if (numItems < 0)
+            throw new IllegalArgumentException("The number of items is < 0");
+        for (long i = 0; i < numItems; i++)
+            appendValue(value);
+    }
+
+    @Override
+    public synchronized void appendValues(Collection<T> values) {
+        if (values == null)
+            throw new NullPointerException("The collection of values is 'null'");
+        for (T v : values)
+            appendValue(v);
+    }
+
+    @Override
+    public synchronized void appendValues(Iterator<T> values, long numBufferedItems) {
+        if (values == null)
+            throw new NullPointerException("The iterator of values is 'null'");
+        if (numBufferedItems < 1)
+            throw new IllegalArgumentException("The number of buffered items is less than 1");
+        while (values.hasNext())
+            appendValue(values.next());
+    }
+
+    @Override
+    public synchronized T getDefaultValue() {
+        return defaultValue;
+    }
+
+    @Override
+    public synchronized void setDefaultValue(T defaultValue) {
+        this.defaultValue = defaultValue;
+    }
+
+    @Override
+    public synchronized void clear() {
+        items.clear();
+    }
+
+    @Override
+    public synchronized void resize(long newSize) {
+        if (newSize < 0)
+            throw new IllegalArgumentException("The new size is < 0");
+        if (newSize > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("The new size is greater than " + Integer.MAX_VALUE);
+        int size = (int) newSize;
+        if (size < items.size()) {
+            items.subList(size, items.size()).clear();
+            items.trimToSize();
+        } else {
+            items.ensureCapacity(size);
+            while (items.size() < size)
+                items.add(UNASSIGNED);
+        }
+    }
+
+    @Override
+    public Iterator<T> asIterator(long numBufferedItems) {
+        return new ArrayIterator<>(this, numBufferedItems);
+    }
+
+    @Override
+    public Array<T> copyFrom(Array<T> source, boolean clearArrayContent, long numBufferedItems) {
+        if (source == null)
+            throw new NullPointerException("The source array is 'null'");
+        Iterator<T> values = source.asIterator(numBufferedItems);
+        synchronized (this) {
+            if (clearArrayContent)
+                clear();
+            appendValues(values, numBufferedItems);
+        }
+        return this;
+    }
+
+    @Override
+    public synchronized Array<T> copyFrom(Collection<T> source, boolean clearArrayContent, long numBufferedItems) {
+        if (source == null)
+            throw new NullPointerException("The source collection is 'null'");
+        if (numBufferedItems < 1)
+            throw new IllegalArgumentException("The number of buffered items is less than 1");
+        if (clearArrayContent)
+            clear();
+        appendValues(source);
+        return this;
+    }
+
+    @Override
+    public void copyTo(Collection<T> dest, boolean clearList, long numBufferedItems) {
+        if (dest == null)
+            throw new NullPointerException("The destination collection is 'null'");
+        if (clearList)
+            dest.clear();
+        Iterator<T> values = asIterator(numBufferedItems);
+        while (values.hasNext())
+            dest.add(values.next());
+    }
+
+    @Override
+    public void copyTo(Array<T> dest, boolean clearArray, long numBufferedItems) {
+        if (dest == null)
+            throw new NullPointerException("The destination array is 'null'");
+        dest.copyFrom(this, clearArray, numBufferedItems);
+    }
+
+    @Override
+    public ImmutableDataSourceIteratorProvider<T> asIteratorProvider(long numBufferedItems) {
+        return new ArrayDataSourceIteratorProvider<>(this, numBufferedItems);
+    }
+
+    @Override
+    public ImmutableDataSourceIteratorProvider<Pair<Long, T>> asIteratorProviderWithIndex(long numBufferedItems) {
+        return new ArrayPairDataSourceIteratorProvider<>(this, numBufferedItems);
+    }
+
+    @Override
+    public void enableLocalCache(boolean enabled, long fromIndex, long toIndex) {
+        // All data is already stored in local RAM.
+    }
+
+    @Override
+    public boolean isLocalCacheEnabled(long index) {
+        return true;
+    }
+
+    @Override
+    public void flush() {
+        // All data is already stored in local RAM.
+    }
+
+    private void checkIndex(long index) {
+        if (index < 0 || index >= items.size())
+            throw new IndexOutOfBoundsException("The index " + index + " is out of range [0, " + items.size() + ")");
+    }
+
+    @SuppressWarnings("unchecked")
+    private T toValue(Object v) {
+        if (v == UNASSIGNED)
+            return defaultValue;
+        return (T) v;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+
+/**
+ * A {@link DataStream} implementation which keeps all its resources in RAM. The content
+ * written on an output stream becomes visible to readers only after the output stream
+ * has been closed. The implementation is thread-safe.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+public class RamDataStream implements DataStream {
+
+    private final String name;
+    private final HashMap<String, byte[]> resources;
+
+    public RamDataStream(String name) {
+        if (name == null || name.isEmpty())
+            throw new IllegalArgumentException("The data stream name is 'null' or empty");
+        this.name = name;
+        this.resources = new HashMap<>();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public synchronized InputStream getInputStreamForResource(String resourceName) {
+        if (resourceName == null || resourceName.isEmpty())
+            throw new IllegalArgumentException("The resource name is 'null' or empty");
+        byte[] content = resources.get(resourceName);
+        if (content == null)
+            throw new IllegalArgumentException("The resource " + resourceName + " does not exist");
+        return new ByteArrayInputStream(content);
+    }
+
+    @Override
+    public synchronized OutputStream getOutputStreamForResource(String resourceName) {
+        if (resourceName == null || resourceName.isEmpty())
+            throw new IllegalArgumentException("The resource name is 'null' or empty");
+        resources.put(resourceName, new byte[0]);
+        return new ByteArrayOutputStream() {
+            @Override
+            public void close() throws IOException {
+                super.close();
+                synchronized (RamDataStream.this) {
+                    resources.put(resourceName, toByteArray());
+                }
+            }
+        };
+    }
+
+    @Override
+    public synchronized void deleteResource(String resourceName) {
+        if (resourceName == null || resourceName.isEmpty())
+            throw new IllegalArgumentException("The resource name is 'null' or empty");
+        resources.remove(resourceName);
+    }
+
+    @Override
+    public synchronized void deleteAllResources() {
+        resources.clear();
+    }
+}
@@ -25,24 +25,45 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
 
 /**
+ * An iterator provider over the rows or the columns of a matrix. The provider can be split in
+ * constant time in providers covering contiguous ranges of rows or columns.
+ *
  * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
  */
-public class RamDoubleMatrixIteratorProvider implements ImmutableDataSourceIteratorProvider<Pair<Integer, double[]>> {
+public class RamDoubleMatrixIteratorProvider implements SplittableDataSourceIteratorProvider<Pair<Integer, double[]>> {
 
     final private double[][] matrix;
     final private boolean rowIterator;
+    final private int fromIndex;
+    final private int toIndex;
 
     public RamDoubleMatrixIteratorProvider(double[][] matrix, boolean rowIterator) {
+        this(matrix, rowIterator, 0, numItems(matrix, rowIterator));
+    }
+
+    private static int numItems(double[][] matrix, boolean rowIterator) {
+        if (matrix == null)
+            throw new NullPointerException("The matrix is 'null'");
+        if (rowIterator)
+            return matrix.length;
+        return matrix.length == 0 ? 0 : matrix[0].length;
+    }
+
+    private RamDoubleMatrixIteratorProvider(double[][] matrix, boolean rowIterator, int fromIndex, int toIndex) {
         if (matrix == null)
             throw new NullPointerException("The matrix is 'null'");
         this.matrix = matrix;
         this.rowIterator = rowIterator;
+        this.fromIndex = fromIndex;
+        this.toIndex = toIndex;
     }
 
         public Iterator<Pair<Integer, double[]>> iterator() {
-        return new RamMatrixIterator(matrix, rowIterator);
+        return new RamMatrixIterator(matrix, rowIterator, fromIndex, toIndex);
         }
 
     @Override
@@ -52,11 +73,7 @@ public class RamDoubleMatrixIteratorProvider implements ImmutableDataSourceItera
 
     @Override
     public long size() {
-        if (rowIterator) {
-            return matrix.length;
-        } else {
-            return matrix[0].length;
-        }
+        return toIndex - fromIndex;
     }
 
     @Override
@@ -77,17 +94,17 @@ public class RamDoubleMatrixIteratorProvider implements ImmutableDataSourceItera
             throw new IllegalArgumentException("The numItems parameter is < 1");
         if (startFrom >= size())
             throw new IllegalArgumentException("The startFrom parameter is >= size()");
-        long to = startFrom + numItems - 1;
-        if (to >= size())
-            to = size() - 1;
+        long to = fromIndex + startFrom + numItems - 1;
+        if (to >= toIndex)
+            to = toIndex - 1;
 
         List<Pair<Integer, double[]>> coll = new ArrayList<>();
         if (rowIterator) {
-            for (int i = (int) startFrom; i <= to; i++) {
+            for (int i = (int) (fromIndex + startFrom); i <= to; i++) {
                 coll.add(new Pair<Integer, double[]>(i, matrix[i]));
             }
         } else {
-            for (int i = (int) startFrom; i <= to; i++) {
+            for (int i = (int) (fromIndex + startFrom); i <= to; i++) {
                 double[] col = new double[matrix.length];
                 for (int colIdx = 0; colIdx < col.length; colIdx++)
                     col[colIdx] = matrix[colIdx][i];
@@ -102,27 +119,111 @@ public class RamDoubleMatrixIteratorProvider implements ImmutableDataSourceItera
         return true;
     }
 
+    @Override
+    public long estimateSize() {
+        return size();
+    }
+
+    @Override
+    public boolean isEstimateExact() {
+        return true;
+    }
+
+    @Override
+    public Pair<SplittableDataSourceIteratorProvider<Pair<Integer, double[]>>, SplittableDataSourceIteratorProvider<Pair<Integer, double[]>>> trySplit() {
+        if (toIndex - fromIndex < 2)
+            return null;
+        int mid = fromIndex + (toIndex - fromIndex) / 2;
+        return new Pair<>(new RamDoubleMatrixIteratorProvider(matrix, rowIterator, fromIndex, mid),
+                new RamDoubleMatrixIteratorProvider(matrix, rowIterator, mid, toIndex));
+    }
+
+
+    /**
+     * Get a provider over the single cells of the rows or columns covered by this provider,
+     * read without boxing them. The cells are read row by row if this provider iterates over
+     * the rows, column by column otherwise. The returned provider can be split in constant time.
+     *
+     * @return A provider over the cells.
+     */
+    public DoubleDataSourceIteratorProvider values() {
+        int inner = rowIterator ? (matrix.length == 0 ? 0 : matrix[0].length) : matrix.length;
+        return new CellsProvider(matrix, rowIterator, (long) fromIndex * inner, (long) toIndex * inner);
+    }
+
+
+    private static class CellsProvider implements DoubleDataSourceIteratorProvider {
+        private final double[][] matrix;
+        private final boolean rowMajor;
+        private final long fromCell;
+        private final long toCell;
+
+        CellsProvider(double[][] matrix, boolean rowMajor, long fromCell, long toCell) {
+            this.matrix = matrix;
+            this.rowMajor = rowMajor;
+            this.fromCell = fromCell;
+            this.toCell = toCell;
+        }
+
+        @Override
+        public PrimitiveIterator.OfDouble iterator() {
+            int inner = rowMajor ? (matrix.length == 0 ? 0 : matrix[0].length) : matrix.length;
+            return new PrimitiveIterator.OfDouble() {
+                private long cell = fromCell;
+
+                @Override
+                public boolean hasNext() {
+                    return cell < toCell;
+                }
+
+                @Override
+                public double nextDouble() {
+                    if (!hasNext())
+                        throw new NoSuchElementException();
+                    int outer = (int) (cell / inner);
+                    int idx = (int) (cell % inner);
+                    cell++;
+                    return rowMajor ? matrix[outer][idx] : matrix[idx][outer];
+                }
+            };
+        }
+
+        @Override
+        public long size() {
+            return toCell - fromCell;
+        }
+
+        @Override
+        public Pair<DoubleDataSourceIteratorProvider, DoubleDataSourceIteratorProvider> trySplit() {
+            if (toCell - fromCell < 2)
+                return null;
+            long mid = fromCell + (toCell - fromCell) / 2;
+            return new Pair<>(new CellsProvider(matrix, rowMajor, fromCell, mid), new CellsProvider(matrix, rowMajor, mid, toCell));
+        }
+    }
 
     public class RamMatrixIterator implements Iterator<Pair<Integer, double[]>>{
 
         final private double[][] matrix;
         final private boolean rowIterator;
+        final private int endIdx;
         private int curIdx;
 
         public RamMatrixIterator(double[][] matrix, boolean rowIterator) {
+            this(matrix, rowIterator, 0, rowIterator ? matrix.length : matrix[0].length);
+        }
+
+        RamMatrixIterator(double[][] matrix, boolean rowIterator, int fromIdx, int endIdx) {
             if (matrix == null)
                 throw new NullPointerException("The matrix is 'null'");
             this.matrix = matrix;
             this.rowIterator = rowIterator;
-            this.curIdx = 0;
+            this.curIdx = fromIdx;
+            this.endIdx = endIdx;
         }
 
         public boolean hasNext() {
-            if (rowIterator) {
-                return curIdx < matrix.length;
-            } else {
-                return curIdx < matrix[0].length;
-            }
+            return curIdx < endIdx;
         }
 
 
@@ -0,0 +1,94 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.data;
+
+import it.cnr.isti.hlt.processfast.utils.Pair;
+
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * A provider over the values of a long array. The provider can be split in constant time in
+ * providers covering contiguous ranges of the array. The array must not be modified after the
+ * creation of the provider.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+public class RamLongArrayIteratorProvider implements LongDataSourceIteratorProvider {
+
+    private final long[] values;
+    private final int fromIndex;
+    private final int toIndex;
+
+    public RamLongArrayIteratorProvider(long[] values) {
+        this(values, 0, values == null ? 0 : values.length);
+    }
+
+    /**
+     * Create a provider over a range of an array.
+     *
+     * @param values    The array.
+     * @param fromIndex The index of the first value, inclusive.
+     * @param toIndex   The index of the last value, exclusive.
+     */
+    public RamLongArrayIteratorProvider(long[] values, int fromIndex, int toIndex) {
+        if (values == null)
+            throw new NullPointerException("The array of values is 'null'");
+        if (fromIndex < 0 || toIndex > values.length || fromIndex > toIndex)
+            throw new IllegalArgumentException("The range [" + fromIndex + ", " + toIndex + ") is not valid");
+        this.values = values;
+        this.fromIndex = fromIndex;
+        this.toIndex = toIndex;
+    }
+
+    @Override
+    public PrimitiveIterator.OfLong iterator() {
+        return new PrimitiveIterator.OfLong() {
+            private int idx = fromIndex;
+
+            @Override
+            public boolean hasNext() {
+                return idx < toIndex;
+            }
+
+            @Override
+            public long nextLong() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return values[idx++];
+            }
+        };
+    }
+
+    @Override
+    public long size() {
+        return toIndex - fromIndex;
+    }
+
+    @Override
+    public Pair<LongDataSourceIteratorProvider, LongDataSourceIteratorProvider> trySplit() {
+        if (toIndex - fromIndex < 2)
+            return null;
+        int mid = fromIndex + (toIndex - fromIndex) / 2;
+        return new Pair<>(new RamLongArrayIteratorProvider(values, fromIndex, mid),
+                new RamLongArrayIteratorProvider(values, mid, toIndex));
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.data;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A sparse {@link Matrix} implementation which keeps all its data in RAM. The
+ * implementation is thread-safe.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+public class RamMatrix<T extends Serializable> implements Matrix<T> {
+
+    private final String name;
+    private final HashMap<Long, T> items;
+    private long numRows;
+    private long numCols;
+    private T defaultValue;
+
+    public RamMatrix(String name, long numRows, long numCols) {
+        if (name == null || name.isEmpty())
+            throw new IllegalArgumentException("The matrix name is 'null' or empty");
+        if (numRows < 0)
+            throw new IllegalArgumentException("The number of rows is < 0");
+        if (numCols < 0)
+            throw new IllegalArgumentException("The number of columns is < 0");
+        this.name = name;
+        this.items = new HashMap<>();
+        this.numRows = numRows;
+        this.numCols = numCols;
+        this.defaultValue = null;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public synchronized long getNumCols() {
+        return numCols;
+    }
+
+    @Override
+    public synchronized long getNumRows() {
+        return numRows;
+    }
+
+    @Override
+    public synchronized void resize(long numRows, long numColumns) {
+        if (numRows < 0)
+            throw new IllegalArgumentException("The number of rows is < 0");
+        if (numColumns < 0)
+            throw new IllegalArgumentException("The number of columns is < 0");
+        this.numRows = numRows;
+        this.numCols = numColumns;
+        items.clear();
+    }
+
+    @Override
+    public synchronized T getValue(long row, long column) {
+        checkIndexes(row, column);
+        T v = items.get(row * numCols + column);
+        return v == null ? defaultValue : v;
+    }
+
+    @Override
+    public synchronized void setValue(long row, long column, T value) {
+        checkIndexes(row, column);
+        if (value == null)
+            items.remove(row * numCols + column);
+        else
+            items.put(row * numCols + column, value);
+    }
+
+    @Override
+    public synchronized void setDefaultValue(T value) {
+        this.defaultValue = value;
+    }
+
+    @Override
+    public synchronized T getDefaultValue() {
+        return defaultValue;
+    }
+
+    @Override
+    public synchronized List<T> getRowValues(long row, long startCol, long endCol) {
+        if (startCol > endCol)
+            throw new IllegalArgumentException("The start column is greater than end column");
+        ArrayList<T> ret = new ArrayList<>();
+        for (long col = startCol; col < endCol; col++)
+            ret.add(getValue(row, col));
+        return ret;
+    }
+
+    @Override
+    public synchronized List<T> getColValues(long col, long startRow, long endRow) {
+        if (startRow > endRow)
+            throw new IllegalArgumentException("The start row is greater than end row");
+        ArrayList<T> ret = new ArrayList<>();
+        for (long row = startRow; row < endRow; row++)
+            ret.add(getValue(row, col));
+        return ret;
+    }
+
+    @Override
+    public void enableLocalCache(boolean enabled, long fromRowIndex, long toRowIndex, long fromColumnIndex, long toColumnIndex) {
+        // All data is already stored in local RAM.
+    }
+
+    @Override
+    public boolean isLocalCacheEnabled(long row, long col) {
+        return true;
+    }
+
+    @Override
+    public void flush() {
+        // All data is already stored in local RAM.
+    }
+
+    private void checkIndexes(long row, long column) {
+        if (row < 0 || row >= numRows)
+            throw new IndexOutOfBoundsException("The row index " + row + " is out of range [0, " + numRows + ")");
+        if (column < 0 || column >= numCols)
+            throw new IndexOutOfBoundsException("The column index " + column + " is out of range [0, " + numCols + ")");
+    }
+}
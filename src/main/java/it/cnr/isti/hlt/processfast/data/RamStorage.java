@@ -0,0 +1,201 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.data;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * A {@link Storage} implementation which keeps all its data structures in RAM. The
+ * implementation is thread-safe.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+public class RamStorage implements Storage {
+
+    private final String name;
+    private final LinkedHashMap<String, RamArray<?>> arrays;
+    private final LinkedHashMap<String, RamMatrix<?>> matrixes;
+    private final LinkedHashMap<String, RamDictionary> dictionaries;
+    private final LinkedHashMap<String, RamDataStream> dataStreams;
+
+    public RamStorage(String name) {
+        checkName(name);
+        this.name = name;
+        this.arrays = new LinkedHashMap<>();
+        this.matrixes = new LinkedHashMap<>();
+        this.dictionaries = new LinkedHashMap<>();
+        this.dataStreams = new LinkedHashMap<>();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public synchronized List<String> getArrayNames() {
+        return new ArrayList<>(arrays.keySet());
+    }
+
+    @Override
+    public synchronized boolean containsArrayName(String name) {
+        checkName(name);
+        return arrays.containsKey(name);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public synchronized <T extends Serializable> Array<T> createArray(String name, Class<T> cl) {
+        checkName(name);
+        if (cl == null)
+            throw new NullPointerException("The class type is 'null'");
+        if (!arrays.containsKey(name))
+            arrays.put(name, new RamArray<T>(name));
+        return (Array<T>) arrays.get(name);
+    }
+
+    @Override
+    public synchronized void removeArray(String name) {
+        checkName(name);
+        arrays.remove(name);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public synchronized <T extends Serializable> Array<T> getArray(String name, Class<T> cl) {
+        checkName(name);
+        if (cl == null)
+            throw new NullPointerException("The class type is 'null'");
+        return (Array<T>) arrays.get(name);
+    }
+
+    @Override
+    public synchronized List<String> getMatrixNames() {
+        return new ArrayList<>(matrixes.keySet());
+    }
+
+    @Override
+    public synchronized boolean containsMatrixName(String name) {
+        checkName(name);
+        return matrixes.containsKey(name);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public synchronized <T extends Serializable> Matrix<T> createMatrix(String name, Class<T> cl, long numRows, long numCols) {
+        checkName(name);
+        if (cl == null)
+            throw new NullPointerException("The class type is 'null'");
+        if (!matrixes.containsKey(name))
+            matrixes.put(name, new RamMatrix<T>(name, numRows, numCols));
+        return (Matrix<T>) matrixes.get(name);
+    }
+
+    @Override
+    public synchronized void removeMatrix(String name) {
+        checkName(name);
+        matrixes.remove(name);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public synchronized <T extends Serializable> Matrix<T> getMatrix(String name, Class<T> cl) {
+        checkName(name);
+        if (cl == null)
+            throw new NullPointerException("The class type is 'null'");
+        return (Matrix<T>) matrixes.get(name);
+    }
+
+    @Override
+    public synchronized List<String> getDictionaryNames() {
+        return new ArrayList<>(dictionaries.keySet());
+    }
+
+    @Override
+    public synchronized boolean containsDictionaryName(String name) {
+        checkName(name);
+        return dictionaries.containsKey(name);
+    }
+
+    @Override
+    public synchronized Dictionary createDictionary(String name) {
+        checkName(name);
+        if (!dictionaries.containsKey(name))
+            dictionaries.put(name, new RamDictionary());
+        return dictionaries.get(name);
+    }
+
+    @Override
+    public synchronized void removeDictionary(String name) {
+        checkName(name);
+        dictionaries.remove(name);
+    }
+
+    @Override
+    public synchronized Dictionary getDictionary(String name) {
+        checkName(name);
+        return dictionaries.get(name);
+    }
+
+    @Override
+    public synchronized List<String> getDataStreamNames() {
+        return new ArrayList<>(dataStreams.keySet());
+    }
+
+    @Override
+    public synchronized boolean containsDataStreamName(String name) {
+        checkName(name);
+        return dataStreams.containsKey(name);
+    }
+
+    @Override
+    public synchronized DataStream createDataStream(String name) {
+        checkName(name);
+        if (!dataStreams.containsKey(name))
+            dataStreams.put(name, new RamDataStream(name));
+        return dataStreams.get(name);
+    }
+
+    @Override
+    public synchronized void removeDataStream(String name) {
+        checkName(name);
+        dataStreams.remove(name);
+    }
+
+    @Override
+    public synchronized DataStream getDataStream(String name) {
+        checkName(name);
+        return dataStreams.get(name);
+    }
+
+    @Override
+    public void flushData() {
+        // All data is already stored in local RAM.
+    }
+
+    private static void checkName(String name) {
+        if (name == null || name.isEmpty())
+            throw new IllegalArgumentException("The specified name is 'null' or empty");
+    }
+}
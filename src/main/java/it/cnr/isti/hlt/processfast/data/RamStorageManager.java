@@ -0,0 +1,82 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.data;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * A {@link StorageManager} implementation which keeps all its storages in RAM. The
+ * implementation is thread-safe.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+public class RamStorageManager implements StorageManager {
+
+    private final LinkedHashMap<String, RamStorage> storages = new LinkedHashMap<>();
+
+    @Override
+    public synchronized List<String> getStorageNames() {
+        return new ArrayList<>(storages.keySet());
+    }
+
+    @Override
+    public synchronized boolean containsStorageName(String name) {
+        checkName(name);
+        return storages.containsKey(name);
+    }
+
+    @Override
+    public synchronized Storage createStorage(String name) {
+        checkName(name);
+        if (!storages.containsKey(name))
+            storages.put(name, new RamStorage(name));
+        return storages.get(name);
+    }
+
+    @Override
+    public synchronized void removeStorage(String name) {
+        checkName(name);
+        storages.remove(name);
+    }
+
+    @Override
+    public synchronized Storage getStorage(String name) {
+        checkName(name);
+        return storages.get(name);
+    }
+
+    @Override
+    public void flushData() {
+        // All data is already stored in local RAM.
+    }
+
+    @Override
+    public synchronized void clear() {
+        storages.clear();
+    }
+
+    private static void checkName(String name) {
+        if (name == null || name.isEmpty())
+            throw new IllegalArgumentException("The storage name is 'null' or empty");
+    }
+}
@@ -35,10 +35,19 @@ import java.util.*;
 /**
  * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
  */
-public class RecursiveFileLineIteratorProvider implements ImmutableDataSourceIteratorProvider<String> {
+public class RecursiveFileLineIteratorProvider implements SplittableDataSourceIteratorProvider<String> {
+
+    /**
+     * The average length in bytes of a line, used to estimate the number of lines in the files.
+     */
+    private static final int ESTIMATED_LINE_LENGTH = 80;
 
     private Collection<File> files;
 
+    private RecursiveFileLineIteratorProvider(Collection<File> files) {
+        this.files = files;
+    }
+
     public RecursiveFileLineIteratorProvider(String baseDir, String regexInclusion) {
         if (baseDir == null)
             throw new NullPointerException("The collection is 'null'");
@@ -103,6 +112,24 @@ public class RecursiveFileLineIteratorProvider implements ImmutableDataSourceIte
         return false;
     }
 
+    @Override
+    public long estimateSize() {
+        long numBytes = 0;
+        for (File f : files)
+            numBytes += f.length();
+        return numBytes == 0 ? 0 : Math.max(1, numBytes / ESTIMATED_LINE_LENGTH);
+    }
+
+    @Override
+    public Pair<SplittableDataSourceIteratorProvider<String>, SplittableDataSourceIteratorProvider<String>> trySplit() {
+        if (files.size() < 2)
+            return null;
+        List<File> l = new ArrayList<>(files);
+        int mid = l.size() / 2;
+        return new Pair<>(new RecursiveFileLineIteratorProvider(new ArrayList<>(l.subList(0, mid))),
+                new RecursiveFileLineIteratorProvider(new ArrayList<>(l.subList(mid, l.size()))));
+    }
+
 
     private static class FileLineIterator implements Iterator<String> {
 
@@ -19,6 +19,7 @@
 
 package it.cnr.isti.hlt.processfast.data;
 
+import it.cnr.isti.hlt.processfast.utils.Pair;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.filefilter.DirectoryFileFilter;
 import org.apache.commons.io.filefilter.RegexFileFilter;
@@ -33,7 +34,7 @@ import java.util.*;
 /**
  * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
  */
-public class RecursiveIndexFileLineIteratorProvider implements ImmutableDataSourceIteratorProvider<RecursiveIndexFileLineIteratorProvider.LineInfo> {
+public class RecursiveIndexFileLineIteratorProvider implements SplittableDataSourceIteratorProvider<RecursiveIndexFileLineIteratorProvider.LineInfo> {
 
     public static class LineInfo implements Serializable {
         public String filename;
@@ -41,8 +42,17 @@ public class RecursiveIndexFileLineIteratorProvider implements ImmutableDataSour
         public String line;
     }
 
+    /**
+     * The average length in bytes of a line, used to estimate the number of lines in the files.
+     */
+    private static final int ESTIMATED_LINE_LENGTH = 80;
+
     private Collection<File> files;
 
+    private RecursiveIndexFileLineIteratorProvider(Collection<File> files) {
+        this.files = files;
+    }
+
     public RecursiveIndexFileLineIteratorProvider(String baseDir, String regexInclusion) {
         if (baseDir == null)
             throw new NullPointerException("The collection is 'null'");
@@ -107,6 +117,24 @@ public class RecursiveIndexFileLineIteratorProvider implements ImmutableDataSour
         return false;
     }
 
+    @Override
+    public long estimateSize() {
+        long numBytes = 0;
+        for (File f : files)
+            numBytes += f.length();
+        return numBytes == 0 ? 0 : Math.max(1, numBytes / ESTIMATED_LINE_LENGTH);
+    }
+
+    @Override
+    public Pair<SplittableDataSourceIteratorProvider<LineInfo>, SplittableDataSourceIteratorProvider<LineInfo>> trySplit() {
+        if (files.size() < 2)
+            return null;
+        List<File> l = new ArrayList<>(files);
+        int mid = l.size() / 2;
+        return new Pair<>(new RecursiveIndexFileLineIteratorProvider(new ArrayList<>(l.subList(0, mid))),
+                new RecursiveIndexFileLineIteratorProvider(new ArrayList<>(l.subList(mid, l.size()))));
+    }
+
 
     private static class FileLineIterator implements Iterator<LineInfo> {
 
@@ -0,0 +1,69 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.data;
+
+import it.cnr.isti.hlt.processfast.utils.Pair;
+
+import java.io.Serializable;
+
+/**
+ * An {@link ImmutableDataSourceIteratorProvider} which can be cut into independent parts, in the
+ * style of {@link java.util.Spliterator}. The engine splits the provider recursively until the
+ * parts are small enough to be used as partitions and reads the parts in parallel, without
+ * having to scan the data source from the beginning as {@link #take(long, long)} does.
+ * <p>
+ * <br/><br/>
+ * Unlike a {@link java.util.Spliterator}, a provider is immutable: {@link #trySplit()} does not
+ * change the provider but returns two new providers covering, in order, the same items.
+ *
+ * @param <T> The type of data provided by data source.
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+public interface SplittableDataSourceIteratorProvider<T extends Serializable> extends ImmutableDataSourceIteratorProvider<T> {
+
+    /**
+     * Get an estimate of the number of items available in this provider. The estimate must be
+     * cheap to compute and, if {@link #size()} is cheap, exact.
+     *
+     * @return The estimated number of items or {@link Long#MAX_VALUE} if unknown.
+     */
+    long estimateSize();
+
+    /**
+     * Indicate if {@link #estimateSize()} gives the exact number of items, e.g. for the providers
+     * over in-memory data. An inexact estimate, like the one computed from the length of files,
+     * is only used to balance the parts and never to plan the execution.
+     *
+     * @return True if the estimate is exact, false otherwise.
+     */
+    default boolean isEstimateExact() {
+        return false;
+    }
+
+    /**
+     * Split this provider in two parts. The first part contains the items coming first in the
+     * iteration order of this provider, the second part the remaining items. The operation
+     * should take constant (or at most logarithmic) time and should produce balanced parts.
+     *
+     * @return The two parts, or 'null' if this provider can not be split.
+     */
+    Pair<SplittableDataSourceIteratorProvider<T>, SplittableDataSourceIteratorProvider<T>> trySplit();
+}
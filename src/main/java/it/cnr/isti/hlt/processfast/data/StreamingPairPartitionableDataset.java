@@ -0,0 +1,88 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+
+package it.cnr.isti.hlt.processfast.data;
+
+import it.cnr.isti.hlt.processfast.utils.Pair;
+
+import java.io.Serializable;
+import java.util.Map;
+
+
+/**
+ * An unbounded dataset of (K, V) pairs processed in micro-batches.
+ * 
+ * @param <K> The type of keys.
+ * @param <V> The type of values.
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+public interface StreamingPairPartitionableDataset<K extends Serializable, V extends Serializable> extends StreamingPartitionableDataset<Pair<K, V>> {
+
+	@Override
+	StreamingPairPartitionableDataset<K, V> withPartitionSize(int partitionSize);
+	
+	
+	@Override
+	StreamingPairPartitionableDataset<K, V> withBatchInterval(long batchInterval);
+	
+	
+	@Override
+	StreamingPairPartitionableDataset<K, V> filter(PDFunction<Pair<K, V>, Boolean> func);
+	
+	
+	/**
+	 * Return a new streaming dataset obtained by applying the specified function to the value
+	 * of each pair.
+	 * 
+	 * @param func The function to apply.
+	 * @return A new streaming dataset of pairs.
+	 */
+	<Out extends Serializable> StreamingPairPartitionableDataset<K, Out> mapValues(PDFunction<V, Out> func);
+	
+	
+	/**
+	 * Aggregate the values of each key over tumbling windows, i.e. over consecutive and not
+	 * overlapping groups of micro-batches. The specified procedure is called with the aggregated
+	 * values of every window. If the stream ends before a window is complete, the procedure is
+	 * called with the values of the partial window.
+	 * 
+	 * @param func The reduce function, which must be associative and commutative.
+	 * @param windowLength The number of micro-batches of a window.
+	 * @param output The procedure receiving the read-only map from keys to aggregated values of each window.
+	 */
+	void reduceByKey(PDFunction2<V, V, V> func, int windowLength, PDProcedure<Map<K, V>> output);
+	
+	
+	/**
+	 * Aggregate the values of each key over sliding windows. Every "slideLength" micro-batches the
+	 * specified procedure is called with the values aggregated over the last "windowLength"
+	 * micro-batches. The values of a micro-batch are reduced once and the partial results are kept
+	 * between the micro-batches, so each window costs a constant number of combinations of partial
+	 * results whatever its length. If the stream ends before the next window is complete, the procedure
+	 * is called a last time with the values of the micro-batches of that window received so far.
+	 * 
+	 * @param func The reduce function, which must be associative and commutative.
+	 * @param windowLength The number of micro-batches of a window.
+	 * @param slideLength The number of micro-batches between two consecutive windows.
+	 * @param output The procedure receiving the read-only map from keys to aggregated values of each window.
+	 */
+	void reduceByKey(PDFunction2<V, V, V> func, int windowLength, int slideLength, PDProcedure<Map<K, V>> output);
+}
@@ -0,0 +1,129 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+
+package it.cnr.isti.hlt.processfast.data;
+
+import java.io.Serializable;
+import java.util.Iterator;
+
+
+/**
+ * An unbounded dataset whose items are read from a connector and processed in micro-batches.
+ * Each micro-batch contains at most a fixed number of items, as they arrive from the
+ * connector, optionally bounded also by a time interval (see {@link #withBatchInterval(long)}),
+ * and it is split in partitions processed in parallel. The transformations of the
+ * dataset are planned once and applied to every micro-batch.
+ * <br/><br/>
+ * The windowed actions aggregate the results of the last micro-batches, so the length and the
+ * slide of a window are expressed as a number of micro-batches. Every action keeps its state
+ * between the micro-batches and consumes the connector until the end of the stream, so only one
+ * action can be called on a streaming dataset.
+ * 
+ * @param <T> The type of items.
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+public interface StreamingPartitionableDataset<T extends Serializable> {
+
+	/**
+	 * Suggest to the runtime how to size each partition of a micro-batch.
+	 *
+	 * @param partitionSize The total number of items assigned to a partition.
+	 * @return A new streaming dataset.
+	 */
+	StreamingPartitionableDataset<T> withPartitionSize(int partitionSize);
+	
+	
+	/**
+	 * Bound also the time spent filling a micro-batch: a micro-batch is closed when it contains
+	 * the maximum number of items or when the specified interval has elapsed since the arrival of
+	 * its first item, whichever comes first. Reading the connector blocks until a message arrives,
+	 * so the interval is checked at the arrival of each message: the message arriving after the
+	 * interval has elapsed is the last one of the micro-batch. By default a micro-batch is bounded
+	 * only by its number of items.
+	 *
+	 * @param batchInterval The maximum interval, in milliseconds, or 0 to bound a micro-batch only
+	 *                      by its number of items.
+	 * @return A new streaming dataset.
+	 */
+	StreamingPartitionableDataset<T> withBatchInterval(long batchInterval);
+	
+	
+	/**
+	 * Return a new streaming dataset obtained by applying the specified function to each item.
+	 * 
+	 * @param func The function to apply.
+	 * @return A new streaming dataset.
+	 */
+	<Out extends Serializable> StreamingPartitionableDataset<Out> map(PDFunction<T, Out> func);
+	
+	
+	/**
+	 * Return a new streaming dataset containing only the items satisfying the specified condition.
+	 * 
+	 * @param func The condition to satisfy.
+	 * @return A new streaming dataset.
+	 */
+	StreamingPartitionableDataset<T> filter(PDFunction<T, Boolean> func);
+	
+	
+	/**
+	 * Return a new streaming dataset obtained by mapping each item to a sequence of items.
+	 * 
+	 * @param func The function to apply.
+	 * @return A new streaming dataset.
+	 */
+	<Out extends Serializable> StreamingPartitionableDataset<Out> mapFlat(PDFunction<T, Iterator<Out>> func);
+	
+	
+	/**
+	 * Return a new streaming dataset of pairs obtained by applying the specified function to each item.
+	 * 
+	 * @param func The function to apply.
+	 * @return A new streaming dataset of pairs.
+	 */
+	<K extends Serializable, V extends Serializable> StreamingPairPartitionableDataset<K, V> mapPair(PDPairFunction<T, K, V> func);
+	
+	
+	/**
+	 * Count the items of tumbling windows, i.e. of consecutive and not overlapping groups
+	 * of micro-batches. The specified procedure is called with the count of every window. If
+	 * the stream ends before a window is complete, the procedure is called with the count of the
+	 * partial window.
+	 * 
+	 * @param windowLength The number of micro-batches of a window.
+	 * @param func The procedure receiving the count of each window.
+	 */
+	void count(int windowLength, PDProcedure<Long> func);
+	
+	
+	/**
+	 * Count the items of sliding windows. Every "slideLength" micro-batches the specified
+	 * procedure is called with the number of items of the last "windowLength" micro-batches. The
+	 * count of a micro-batch is computed once and then reused by all the windows containing it.
+	 * If the stream ends before the next window is complete, the procedure is called a last time
+	 * with the count of the micro-batches of that window received so far.
+	 * 
+	 * @param windowLength The number of micro-batches of a window.
+	 * @param slideLength The number of micro-batches between two consecutive windows.
+	 * @param func The procedure receiving the count of each window.
+	 */
+	void count(int windowLength, int slideLength, PDProcedure<Long> func);
+}
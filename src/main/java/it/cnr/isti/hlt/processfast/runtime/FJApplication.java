@@ -0,0 +1,145 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The state shared by all the tasks sets and task instances of a single run of
+ * {@link FJRuntime#run(it.cnr.isti.hlt.processfast.core.TaskSet)}.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+class FJApplication {
+
+    private final FJRuntime runtime;
+
+    /**
+     * The critical sections used by atomic operations, indexed by name.
+     */
+    private final ConcurrentHashMap<String, FJCriticalSection> criticalSections = new ConcurrentHashMap<>();
+
+    /**
+     * The task instances currently executing their code.
+     */
+    private final Set<FJTaskInstance> runningInstances = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The failure which caused the termination of the application, if any.
+     */
+    private final AtomicReference<FJTaskException> failure = new AtomicReference<>();
+
+    /**
+     * The task groups whose number of instances can change at runtime.
+     */
+    private final List<FJTaskGroup> elasticGroups = new CopyOnWriteArrayList<>();
+
+    private ScheduledExecutorService scalingMonitor;
+
+    FJApplication(FJRuntime runtime) {
+        if (runtime == null)
+            throw new NullPointerException("The runtime is 'null'");
+        this.runtime = runtime;
+    }
+
+    FJRuntime getRuntime() {
+        return runtime;
+    }
+
+    FJCriticalSection getCriticalSection(String name) {
+        if (name == null || name.isEmpty())
+            throw new IllegalArgumentException("The critical section name is 'null' or empty");
+        return criticalSections.computeIfAbsent(name, k -> new FJCriticalSection(runtime.getPool()));
+    }
+
+    void instanceStarted(FJTaskInstance instance) {
+        runningInstances.add(instance);
+    }
+
+    void instanceEnded(FJTaskInstance instance) {
+        runningInstances.remove(instance);
+    }
+
+    void addElasticGroup(FJTaskGroup group) {
+        elasticGroups.add(group);
+    }
+
+    /**
+     * Start the periodic check of the backlog of the elastic task groups, if there are any.
+     *
+     * @param intervalMillis The interval in milliseconds between two checks.
+     */
+    synchronized void startScaling(long intervalMillis) {
+        if (elasticGroups.isEmpty() || scalingMonitor != null)
+            return;
+        scalingMonitor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "processfast-scaling-monitor");
+            t.setDaemon(true);
+            return t;
+        });
+        scalingMonitor.scheduleWithFixedDelay(() -> {
+            if (isAborted())
+                return;
+            for (FJTaskGroup group : elasticGroups) {
+                try {
+                    group.rebalance();
+                } catch (RuntimeException e) {
+                    abort(new FJTaskException(group.getTaskName(), FJRuntime.LOCAL_VIRTUAL_MACHINE, "Unable to resize the instances of the task", e));
+                }
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    synchronized void stopScaling() {
+        if (scalingMonitor == null)
+            return;
+        scalingMonitor.shutdownNow();
+        scalingMonitor = null;
+    }
+
+    /**
+     * Terminate the application because of the specified failure. Only the first failure is
+     * recorded, all the running task instances are interrupted.
+     *
+     * @param e The failure.
+     */
+    void abort(FJTaskException e) {
+        if (!failure.compareAndSet(null, e))
+            return;
+        for (FJTaskInstance instance : runningInstances)
+            instance.interrupt();
+    }
+
+    boolean isAborted() {
+        return failure.get() != null;
+    }
+
+    FJTaskException getFailure() {
+        return failure.get();
+    }
+}
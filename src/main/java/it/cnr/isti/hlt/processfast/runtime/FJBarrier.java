@@ -0,0 +1,102 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A cyclic barrier used by {@link FJRuntime}. The number of parties is given by the
+ * number of task instances which declared to use the barrier.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+class FJBarrier {
+
+    private final String name;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition tripped = lock.newCondition();
+    private int numParties;
+    private int numArrived;
+    private long generation;
+
+    FJBarrier(String name) {
+        if (name == null || name.isEmpty())
+            throw new IllegalArgumentException("The barrier name is 'null' or empty");
+        this.name = name;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Register a new party on this barrier.
+     */
+    void registerParty() {
+        lock.lock();
+        try {
+            numParties++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove a party from this barrier. If the remaining parties have all arrived, the
+     * barrier is tripped.
+     */
+    void deregisterParty() {
+        lock.lock();
+        try {
+            numParties--;
+            if (numParties > 0 && numArrived >= numParties)
+                trip();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait until all registered parties have arrived on this barrier.
+     */
+    void await() {
+        lock.lock();
+        try {
+            long currentGeneration = generation;
+            numArrived++;
+            if (numArrived >= numParties) {
+                trip();
+                return;
+            }
+            while (currentGeneration == generation)
+                FJBlocking.await(tripped);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void trip() {
+        numArrived = 0;
+        generation++;
+        tripped.signalAll();
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Blocking primitives cooperating with the fork/join pool used by {@link FJRuntime}. Every
+ * wait is performed through {@link ForkJoinPool#managedBlock(ForkJoinPool.ManagedBlocker)}, so a pool
+ * worker suspended by a task waiting on a connector, a barrier or a value promise is
+ * compensated by the pool and the remaining work keeps going.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+public final class FJBlocking {
+
+    /**
+     * The listener notified when the current thread blocks, if any.
+     */
+    private static final ThreadLocal<BlockingListener> listener = new ThreadLocal<>();
+
+    private FJBlocking() {
+    }
+
+    /**
+     * A listener notified before and after every wait performed by the thread which installed it.
+     */
+    public interface BlockingListener {
+
+        /**
+         * Called just before the current thread starts waiting.
+         */
+        void beforeBlocking();
+
+        /**
+         * Called when the current thread has finished waiting.
+         */
+        void afterBlocking();
+    }
+
+    /**
+     * Install a listener notified of the waits performed by the current thread.
+     *
+     * @param l The listener or 'null' to remove the current listener.
+     * @return The listener previously installed, if any.
+     */
+    public static BlockingListener setBlockingListener(BlockingListener l) {
+        BlockingListener previous = listener.get();
+        if (l == null)
+            listener.remove();
+        else
+            listener.set(l);
+        return previous;
+    }
+
+    /**
+     * Wait on the specified condition. The lock owning the condition must be held by the caller.
+     *
+     * @param condition The condition to wait on.
+     */
+    public static void await(Condition condition) {
+        awaitNanos(condition, -1);
+    }
+
+    /**
+     * Wait on the specified condition for at most the given amount of time. The lock owning the
+     * condition must be held by the caller.
+     *
+     * @param condition The condition to wait on.
+     * @param nanos     The maximum time to wait in nanoseconds or a negative value to wait indefinitely.
+     * @return An estimate of the remaining waiting time (meaningful only for timed waits).
+     */
+    public static long awaitNanos(Condition condition, long nanos) {
+        ConditionBlocker blocker = new ConditionBlocker(condition, nanos);
+        managedBlock(blocker);
+        return blocker.nanos;
+    }
+
+    /**
+     * Park the current thread for at most the given amount of time or until it is unparked by
+     * some other thread.
+     *
+     * @param nanos The maximum time to park in nanoseconds or a negative value to park indefinitely.
+     */
+    public static void park(long nanos) {
+        managedBlock(new ParkBlocker(nanos));
+        if (Thread.interrupted())
+            throw new IllegalStateException("The thread has been interrupted while waiting");
+    }
+
+    /**
+     * Get the value of the specified future, waiting for its completion if necessary.
+     *
+     * @param future The future to wait for.
+     * @return The value computed by the future.
+     */
+    public static <T> T get(CompletableFuture<T> future) {
+        if (!future.isDone())
+            managedBlock(new FutureBlocker(future));
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("The thread has been interrupted while waiting", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error)
+                throw (Error) e.getCause();
+            throw new IllegalStateException("Error retrieving value from future", e.getCause());
+        }
+    }
+
+    private static void managedBlock(ForkJoinPool.ManagedBlocker blocker) {
+        BlockingListener l = listener.get();
+        if (l != null)
+            l.beforeBlocking();
+        try {
+            ForkJoinPool.managedBlock(blocker);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("The thread has been interrupted while waiting", e);
+        } finally {
+            if (l != null)
+                l.afterBlocking();
+        }
+    }
+
+
+    private static final class ConditionBlocker implements ForkJoinPool.ManagedBlocker {
+        private final Condition condition;
+        private final boolean timed;
+        private long nanos;
+        private boolean done;
+
+        ConditionBlocker(Condition condition, long nanos) {
+            this.condition = condition;
+            this.timed = nanos >= 0;
+            this.nanos = nanos;
+        }
+
+        @Override
+        public boolean block() throws InterruptedException {
+            if (!done) {
+                if (timed)
+                    nanos = condition.awaitNanos(nanos);
+                else
+                    condition.await();
+                done = true;
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return done;
+        }
+    }
+
+
+    private static final class ParkBlocker implements ForkJoinPool.ManagedBlocker {
+        private final long nanos;
+        private boolean done;
+
+        ParkBlocker(long nanos) {
+            this.nanos = nanos;
+        }
+
+        @Override
+        public boolean block() {
+            if (!done) {
+                if (nanos < 0)
+                    LockSupport.park(this);
+                else
+                    LockSupport.parkNanos(this, nanos);
+                done = true;
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return done;
+        }
+    }
+
+
+    private static final class FutureBlocker implements ForkJoinPool.ManagedBlocker {
+        private final CompletableFuture<?> future;
+
+        FutureBlocker(CompletableFuture<?> future) {
+            this.future = future;
+        }
+
+        @Override
+        public boolean block() throws InterruptedException {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                // Reported by the caller.
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return future.isDone();
+        }
+    }
+}
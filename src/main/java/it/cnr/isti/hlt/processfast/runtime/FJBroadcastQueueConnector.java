@@ -0,0 +1,98 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime;
+
+import it.cnr.isti.hlt.processfast.connector.ConnectorMessage;
+import it.cnr.isti.hlt.processfast.connector.ConnectorType;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+
+/**
+ * A {@link ConnectorType#BROADCAST_QUEUE} connector. Each registered reader receives
+ * all the messages in the same order as they have been written.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+class FJBroadcastQueueConnector extends FJConnector {
+
+    private final HashMap<FJTaskInstance, ArrayDeque<FJConnectorMessage>> queues = new HashMap<>();
+
+    FJBroadcastQueueConnector(String name, int maxSize) {
+        super(name, maxSize);
+    }
+
+    @Override
+    ConnectorType getConnectorType() {
+        return ConnectorType.BROADCAST_QUEUE;
+    }
+
+    @Override
+    void registerReader(FJTaskInstance reader) {
+        lock.lock();
+        try {
+            if (!queues.containsKey(reader))
+                queues.put(reader, new ArrayDeque<>());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    protected void doPut(FJTaskInstance writer, FJConnectorMessage msg) {
+        while (isAnyQueueFull())
+            FJBlocking.await(notFull);
+        for (ArrayDeque<FJConnectorMessage> queue : queues.values())
+            queue.addLast(msg);
+        notEmpty.signalAll();
+    }
+
+    @Override
+    protected ConnectorMessage doGet(FJTaskInstance reader) {
+        ArrayDeque<FJConnectorMessage> queue = getQueue(reader);
+        while (queue.isEmpty() && !isEndOfStream())
+            FJBlocking.await(notEmpty);
+        FJConnectorMessage msg = queue.pollFirst();
+        if (msg != null)
+            notFull.signalAll();
+        return msg;
+    }
+
+    @Override
+    protected boolean hasMessageFor(FJTaskInstance reader) {
+        return !getQueue(reader).isEmpty();
+    }
+
+    private ArrayDeque<FJConnectorMessage> getQueue(FJTaskInstance reader) {
+        ArrayDeque<FJConnectorMessage> queue = queues.get(reader);
+        if (queue == null)
+            throw new IllegalStateException("The task " + reader.getTaskName() + " is not a reader of connector " + name);
+        return queue;
+    }
+
+    private boolean isAnyQueueFull() {
+        for (ArrayDeque<FJConnectorMessage> queue : queues.values()) {
+            if (queue.size() >= maxSize)
+                return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime;
+
+import it.cnr.isti.hlt.processfast.connector.ConnectorMessage;
+import it.cnr.isti.hlt.processfast.connector.ConnectorType;
+import it.cnr.isti.hlt.processfast.connector.ValuePromise;
+import it.cnr.isti.hlt.processfast.exception.ConnectorIllegalOperationException;
+
+import java.io.Serializable;
+import java.util.HashSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Base class for the physical connectors used by {@link FJRuntime}. A connector knows the set of
+ * task instances writing on it, so the readers receive 'null' only when all the
+ * registered writers have signaled the end of stream.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+abstract class FJConnector {
+
+    protected final String name;
+    protected final int maxSize;
+    protected final ReentrantLock lock = new ReentrantLock();
+    protected final Condition notEmpty = lock.newCondition();
+    protected final Condition notFull = lock.newCondition();
+
+    /**
+     * The registered writers which have not yet signaled the end of stream.
+     */
+    private final HashSet<FJTaskInstance> openWriters = new HashSet<>();
+
+    /**
+     * The listeners notified every time the connector could become ready for a reader.
+     */
+    private final CopyOnWriteArrayList<Runnable> readyListeners = new CopyOnWriteArrayList<>();
+
+    FJConnector(String name, int maxSize) {
+        if (name == null || name.isEmpty())
+            throw new IllegalArgumentException("The connector name is 'null' or empty");
+        if (maxSize < 1)
+            throw new IllegalArgumentException("The maximum size of the connector is less than 1");
+        this.name = name;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Create a new connector of the specified type.
+     *
+     * @param name    The connector name.
+     * @param type    The connector type.
+     * @param maxSize The maximum number of messages stored at any time in the connector.
+     * @return The new connector.
+     */
+    static FJConnector create(String name, ConnectorType type, int maxSize) {
+        switch (type) {
+            case LOAD_BALANCING_QUEUE:
+                return new FJLoadBalancingQueueConnector(name, maxSize);
+            case BROADCAST_QUEUE:
+                return new FJBroadcastQueueConnector(name, maxSize);
+            case SINGLE_VALUE:
+                return new FJSingleValueConnector(name, maxSize);
+            default:
+                throw new IllegalArgumentException("Unsupported connector type: " + type);
+        }
+    }
+
+    String getName() {
+        return name;
+    }
+
+    int getMaxSize() {
+        return maxSize;
+    }
+
+    abstract ConnectorType getConnectorType();
+
+    /**
+     * Register a task instance as a writer of this connector.
+     *
+     * @param writer The writer task instance.
+     */
+    void registerWriter(FJTaskInstance writer) {
+        lock.lock();
+        try {
+            openWriters.add(writer);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Register a task instance as a reader of this connector.
+     *
+     * @param reader The reader task instance.
+     */
+    void registerReader(FJTaskInstance reader) {
+    }
+
+    void putValue(FJTaskInstance writer, Serializable v) {
+        if (v == null)
+            throw new NullPointerException("The value to put is 'null'");
+        lock.lock();
+        try {
+            openWriters.add(writer);
+            doPut(writer, new FJConnectorMessage(v, null));
+        } finally {
+            lock.unlock();
+        }
+        fireReady();
+    }
+
+    ValuePromise<Serializable> putValueAndGet(FJTaskInstance writer, Serializable v) {
+        throw new ConnectorIllegalOperationException(writer.getTaskName(), name,
+                "The operation putValueAndGet() is not supported by connectors of type " + getConnectorType());
+    }
+
+    void signalEndOfStream(FJTaskInstance writer) {
+        lock.lock();
+        try {
+            if (openWriters.remove(writer) && openWriters.isEmpty()) {
+                notEmpty.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+        fireReady();
+    }
+
+    ConnectorMessage getValue(FJTaskInstance reader) {
+        lock.lock();
+        try {
+            return doGet(reader);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Indicate if a call to {@link #getValue(FJTaskInstance)} made by the specified reader
+     * will return without waiting.
+     *
+     * @param reader The reader task instance.
+     * @return True if the connector is ready for the reader, false otherwise.
+     */
+    boolean isReady(FJTaskInstance reader) {
+        lock.lock();
+        try {
+            return hasMessageFor(reader) || isEndOfStream() || reader.isRetiring();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void addReadyListener(Runnable listener) {
+        readyListeners.add(listener);
+    }
+
+    void removeReadyListener(Runnable listener) {
+        readyListeners.remove(listener);
+    }
+
+    /**
+     * Indicate if all registered writers have signaled the end of stream. Must be called with
+     * the lock held.
+     */
+    protected boolean isEndOfStream() {
+        return openWriters.isEmpty();
+    }
+
+    protected void fireReady() {
+        for (Runnable listener : readyListeners)
+            listener.run();
+    }
+
+    /**
+     * Store the message in the connector. Called with the lock held.
+     */
+    protected abstract void doPut(FJTaskInstance writer, FJConnectorMessage msg);
+
+    /**
+     * Extract the next message for the specified reader, waiting if necessary. Called with the lock held.
+     */
+    protected abstract ConnectorMessage doGet(FJTaskInstance reader);
+
+    /**
+     * Indicate if there is a message available for the specified reader. Called with the lock held.
+     */
+    protected abstract boolean hasMessageFor(FJTaskInstance reader);
+}
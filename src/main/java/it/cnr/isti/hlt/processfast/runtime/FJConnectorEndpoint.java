@@ -0,0 +1,75 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime;
+
+import it.cnr.isti.hlt.processfast.connector.Connector;
+import it.cnr.isti.hlt.processfast.connector.ConnectorMessage;
+import it.cnr.isti.hlt.processfast.connector.ValuePromise;
+import it.cnr.isti.hlt.processfast.exception.ConnectorIllegalOperationException;
+
+import java.io.Serializable;
+
+/**
+ * The view of a physical connector given to a specific task instance.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+class FJConnectorEndpoint implements Connector {
+
+    private final String name;
+    private final FJConnector connector;
+    private final FJTaskInstance instance;
+
+    FJConnectorEndpoint(String name, FJConnector connector, FJTaskInstance instance) {
+        this.name = name;
+        this.connector = connector;
+        this.instance = instance;
+    }
+
+    FJConnector getConnector() {
+        return connector;
+    }
+
+    @Override
+    public String getConnectorName() {
+        return name;
+    }
+
+    @Override
+    public ConnectorMessage getValue() {
+        return connector.getValue(instance);
+    }
+
+    @Override
+    public void putValue(Serializable v) {
+        connector.putValue(instance, v);
+    }
+
+    @Override
+    public ValuePromise<Serializable> putValueAndGet(Serializable v) throws ConnectorIllegalOperationException {
+        return connector.putValueAndGet(instance, v);
+    }
+
+    @Override
+    public void signalEndOfStream() {
+        connector.signalEndOfStream(instance);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime;
+
+import it.cnr.isti.hlt.processfast.connector.ConnectorCapability;
+import it.cnr.isti.hlt.processfast.connector.ConnectorManager;
+import it.cnr.isti.hlt.processfast.utils.Triple;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link ConnectorManager} recording the attachments declared by the tasks of a tasks set
+ * instance. The attachments are applied only when all the task instances of the tasks set
+ * have been created, so a task can be attached by name to any task of the same tasks set.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+class FJConnectorManager implements ConnectorManager {
+
+    private final FJTaskSetInstance taskSetInstance;
+    private final List<Triple<String, String, ConnectorCapability>> attachments = new ArrayList<>();
+
+    FJConnectorManager(FJTaskSetInstance taskSetInstance) {
+        this.taskSetInstance = taskSetInstance;
+    }
+
+    @Override
+    public void attachTaskToConnector(String taskName, String connectorName, ConnectorCapability capability) {
+        if (taskName == null || taskName.isEmpty())
+            throw new IllegalArgumentException("The task name is 'null' or empty");
+        if (connectorName == null || connectorName.isEmpty())
+            throw new IllegalArgumentException("The connector name is 'null' or empty");
+        if (capability == null)
+            throw new NullPointerException("The connector capability is 'null'");
+        if (taskSetInstance.getConnector(connectorName) == null)
+            throw new IllegalArgumentException("The connector " + connectorName + " is not declared in the tasks set");
+        synchronized (attachments) {
+            attachments.add(new Triple<>(taskName, connectorName, capability));
+        }
+    }
+
+    List<Triple<String, String, ConnectorCapability>> getAttachments() {
+        synchronized (attachments) {
+            return new ArrayList<>(attachments);
+        }
+    }
+}
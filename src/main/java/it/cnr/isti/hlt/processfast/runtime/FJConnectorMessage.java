@@ -0,0 +1,63 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime;
+
+import it.cnr.isti.hlt.processfast.connector.ConnectorMessage;
+
+import java.io.Serializable;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A message exchanged through a connector of {@link FJRuntime}.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+class FJConnectorMessage implements ConnectorMessage {
+
+    private final Serializable payload;
+
+    /**
+     * The reply expected by the producer or 'null' if the producer is not waiting for a reply.
+     */
+    private final CompletableFuture<Serializable> reply;
+
+    FJConnectorMessage(Serializable payload, CompletableFuture<Serializable> reply) {
+        this.payload = payload;
+        this.reply = reply;
+    }
+
+    @Override
+    public Serializable getPayload() {
+        return payload;
+    }
+
+    @Override
+    public boolean isWaitingReply() {
+        return reply != null;
+    }
+
+    @Override
+    public void replyValue(Serializable v) {
+        if (reply == null)
+            throw new IllegalStateException("The producer of this message is not waiting for a reply");
+        reply.complete(v);
+    }
+}
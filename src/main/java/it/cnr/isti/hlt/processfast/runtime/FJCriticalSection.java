@@ -0,0 +1,80 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * A named critical section. The submitted operations are executed one at a time on the
+ * runtime pool without keeping any worker blocked while waiting for the section to become free.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+class FJCriticalSection {
+
+    private final Executor executor;
+    private final ConcurrentLinkedQueue<Runnable> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    FJCriticalSection(Executor executor) {
+        if (executor == null)
+            throw new NullPointerException("The executor is 'null'");
+        this.executor = executor;
+    }
+
+    /**
+     * Submit an operation to be executed in mutual exclusion with all the other operations
+     * submitted on this critical section.
+     *
+     * @param operation The operation to execute.
+     * @return The future result of the operation.
+     */
+    <T> CompletableFuture<T> submit(Supplier<T> operation) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        pending.add(() -> {
+            try {
+                result.complete(operation.get());
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        });
+        schedule();
+        return result;
+    }
+
+    private void schedule() {
+        if (running.compareAndSet(false, true))
+            executor.execute(this::drain);
+    }
+
+    private void drain() {
+        Runnable op;
+        while ((op = pending.poll()) != null)
+            op.run();
+        running.set(false);
+        if (!pending.isEmpty())
+            schedule();
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime;
+
+/**
+ * The way {@link FJRuntime} executes the task instances.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+public enum FJExecutionMode {
+
+    /**
+     * Every task instance runs on the fork/join pool of the runtime. A blocked task instance
+     * keeps its pool thread and the pool compensates it with a new platform thread.
+     */
+    FORK_JOIN,
+
+    /**
+     * Every task instance runs on its own virtual thread, so a blocked task instance
+     * costs only the memory of its stack. The computations on partitionable datasets still run on the
+     * fork/join pool. Requires Java 21 or later.
+     */
+    VIRTUAL_THREADS
+}
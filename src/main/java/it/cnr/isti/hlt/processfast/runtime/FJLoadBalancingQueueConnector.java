@@ -0,0 +1,119 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime;
+
+import it.cnr.isti.hlt.processfast.connector.ConnectorMessage;
+import it.cnr.isti.hlt.processfast.connector.ConnectorType;
+import it.cnr.isti.hlt.processfast.connector.ValuePromise;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A {@link ConnectorType#LOAD_BALANCING_QUEUE} connector. Each message is delivered
+ * to exactly one reader. A reader retired by its {@link FJTaskGroup} always reads 'null'.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+class FJLoadBalancingQueueConnector extends FJConnector {
+
+    private final ArrayDeque<FJConnectorMessage> queue = new ArrayDeque<>();
+
+    FJLoadBalancingQueueConnector(String name, int maxSize) {
+        super(name, maxSize);
+    }
+
+    @Override
+    ConnectorType getConnectorType() {
+        return ConnectorType.LOAD_BALANCING_QUEUE;
+    }
+
+    @Override
+    ValuePromise<Serializable> putValueAndGet(FJTaskInstance writer, Serializable v) {
+        if (v == null)
+            throw new NullPointerException("The value to put is 'null'");
+        CompletableFuture<Serializable> reply = new CompletableFuture<>();
+        lock.lock();
+        try {
+            registerWriter(writer);
+            doPut(writer, new FJConnectorMessage(v, reply));
+        } finally {
+            lock.unlock();
+        }
+        fireReady();
+        return new FJValuePromise<>(reply);
+    }
+
+    /**
+     * Get the number of messages waiting to be read.
+     *
+     * @return The number of queued messages.
+     */
+    int getBacklog() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wake up all the waiting readers, so the retired ones can leave.
+     */
+    void wakeUpReaders() {
+        lock.lock();
+        try {
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        fireReady();
+    }
+
+    @Override
+    protected void doPut(FJTaskInstance writer, FJConnectorMessage msg) {
+        while (queue.size() >= maxSize)
+            FJBlocking.await(notFull);
+        queue.addLast(msg);
+        notEmpty.signal();
+    }
+
+    @Override
+    protected ConnectorMessage doGet(FJTaskInstance reader) {
+        if (reader.isRetiring())
+            return null;
+        while (queue.isEmpty() && !isEndOfStream() && !reader.isRetiring())
+            FJBlocking.await(notEmpty);
+        if (reader.isRetiring())
+            return null;
+        FJConnectorMessage msg = queue.pollFirst();
+        if (msg != null)
+            notFull.signal();
+        return msg;
+    }
+
+    @Override
+    protected boolean hasMessageFor(FJTaskInstance reader) {
+        return !queue.isEmpty();
+    }
+}
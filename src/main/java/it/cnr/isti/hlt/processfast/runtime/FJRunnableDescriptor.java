@@ -0,0 +1,148 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime;
+
+import it.cnr.isti.hlt.processfast.core.FailureInfo;
+import it.cnr.isti.hlt.processfast.core.HardwareFailureAction;
+import it.cnr.isti.hlt.processfast.core.RunnableDescriptor;
+import it.cnr.isti.hlt.processfast.core.WithDataDictionaryInfo;
+import it.cnr.isti.hlt.processfast.core.WithVirtualMachineInfo;
+import it.cnr.isti.hlt.processfast.data.Dictionary;
+import it.cnr.isti.hlt.processfast.utils.Function1;
+
+/**
+ * Base implementation of a {@link RunnableDescriptor} for {@link FJRuntime}.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+abstract class FJRunnableDescriptor<T> implements RunnableDescriptor<T> {
+
+    private Function1<WithVirtualMachineInfo, String> machineSelector;
+    private int minNumInstances = 1;
+    private int maxNumInstances = 1;
+    private Function1<Integer, String> nameSelector;
+    private int dataComputationalResourcesPriority = 1;
+    private Dictionary dataDictionary;
+    private Function1<WithDataDictionaryInfo, Dictionary> dataDictionaryFunc;
+    private Function1<FailureInfo, HardwareFailureAction> failureFunc;
+
+    /**
+     * Get this descriptor with the proper type.
+     *
+     * @return This descriptor.
+     */
+    protected abstract T self();
+
+    @Override
+    public T onVirtualMachine(Function1<WithVirtualMachineInfo, String> machineSelector) {
+        if (machineSelector == null)
+            throw new NullPointerException("The machine selector is 'null'");
+        this.machineSelector = machineSelector;
+        return self();
+    }
+
+    @Override
+    public T withNumInstances(int minNumInstances, int maxNumInstances) {
+        if (minNumInstances < 1)
+            throw new IllegalArgumentException("The minimum number of instances is less than 1");
+        if (maxNumInstances < minNumInstances)
+            throw new IllegalArgumentException("The maximum number of instances is less than the minimum number of instances");
+        this.minNumInstances = minNumInstances;
+        this.maxNumInstances = maxNumInstances;
+        return self();
+    }
+
+    @Override
+    public T withName(Function1<Integer, String> nameSelector) {
+        if (nameSelector == null)
+            throw new NullPointerException("The name selector is 'null'");
+        this.nameSelector = nameSelector;
+        return self();
+    }
+
+    @Override
+    public T withDataComputationalResourcesPriority(int priority) {
+        if (priority < 1)
+            throw new IllegalArgumentException("The priority is less than 1");
+        this.dataComputationalResourcesPriority = priority;
+        return self();
+    }
+
+    @Override
+    public T withDataDictionary(Dictionary dictionary, Function1<WithDataDictionaryInfo, Dictionary> func) {
+        if (dictionary == null)
+            throw new NullPointerException("The dictionary is 'null'");
+        if (func == null)
+            throw new NullPointerException("The function is 'null'");
+        this.dataDictionary = dictionary;
+        this.dataDictionaryFunc = func;
+        return self();
+    }
+
+    @Override
+    public T withDataDictionary(Function1<WithDataDictionaryInfo, Dictionary> func) {
+        if (func == null)
+            throw new NullPointerException("The function is 'null'");
+        this.dataDictionary = null;
+        this.dataDictionaryFunc = func;
+        return self();
+    }
+
+    @Override
+    public T onFailure(Function1<FailureInfo, HardwareFailureAction> func) {
+        if (func == null)
+            throw new NullPointerException("The function is 'null'");
+        this.failureFunc = func;
+        return self();
+    }
+
+    Function1<WithVirtualMachineInfo, String> getMachineSelector() {
+        return machineSelector;
+    }
+
+    int getMinNumInstances() {
+        return minNumInstances;
+    }
+
+    int getMaxNumInstances() {
+        return maxNumInstances;
+    }
+
+    Function1<Integer, String> getNameSelector() {
+        return nameSelector;
+    }
+
+    int getDataComputationalResourcesPriority() {
+        return dataComputationalResourcesPriority;
+    }
+
+    Dictionary getDataDictionary() {
+        return dataDictionary;
+    }
+
+    Function1<WithDataDictionaryInfo, Dictionary> getDataDictionaryFunc() {
+        return dataDictionaryFunc;
+    }
+
+    Function1<FailureInfo, HardwareFailureAction> getFailureFunc() {
+        return failureFunc;
+    }
+}
@@ -0,0 +1,409 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime;
+
+import it.cnr.isti.hlt.processfast.core.LogManager;
+import it.cnr.isti.hlt.processfast.core.ProcessfastRuntime;
+import it.cnr.isti.hlt.processfast.core.SLF4JLogManager;
+import it.cnr.isti.hlt.processfast.core.SystemContext;
+import it.cnr.isti.hlt.processfast.core.Task;
+import it.cnr.isti.hlt.processfast.core.TaskSet;
+import it.cnr.isti.hlt.processfast.data.Dictionary;
+import it.cnr.isti.hlt.processfast.data.RamDictionary;
+import it.cnr.isti.hlt.processfast.data.RamStorageManager;
+import it.cnr.isti.hlt.processfast.data.StorageManager;
+import it.cnr.isti.hlt.processfast.runtime.data.PDCacheManager;
+import it.cnr.isti.hlt.processfast.runtime.data.PDEnvironment;
+import it.cnr.isti.hlt.processfast.runtime.data.PDMemoryBudget;
+import it.cnr.isti.hlt.processfast.runtime.data.PDScheduler;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A {@link ProcessfastRuntime} executing the whole application inside the current JVM. All task
+ * instances and all the computations on partitionable datasets are executed on a single
+ * work-stealing {@link ForkJoinPool}. Task instances blocking on connectors, barriers or value
+ * promises are compensated by the pool, so the number of task instances is not bounded
+ * by the parallelism level. With {@link FJExecutionMode#VIRTUAL_THREADS} the task instances run
+ * on virtual threads instead, while the computations on data stay on the pool.
+ * <p>
+ * <br/><br/>
+ * The runtime does not support checkpoints: {@link it.cnr.isti.hlt.processfast.core.TaskContext#makeCheckpoint(String, java.util.List)},
+ * {@link it.cnr.isti.hlt.processfast.core.TaskContext#loadCheckpoint(String)} and
+ * {@link it.cnr.isti.hlt.processfast.core.TaskContext#deleteCheckpoint(String)}
+ * throw an {@link UnsupportedOperationException}. Since the whole application lives in a single
+ * JVM, a failure loses the checkpoints together with the task sets which would restore them;
+ * tasks needing to keep some state across runs must save it explicitly in a persistent
+ * {@link StorageManager}. For the same reason the failure actions
+ * {@link it.cnr.isti.hlt.processfast.core.HardwareFailureAction#RESTART_TASKS_SET} and
+ * {@link it.cnr.isti.hlt.processfast.core.HardwareFailureAction#APPLICATION_RESTART} are
+ * handled as {@link it.cnr.isti.hlt.processfast.core.HardwareFailureAction#APPLICATION_TERMINATION}.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+public class FJRuntime implements ProcessfastRuntime, SystemContext {
+
+    /**
+     * The name of the virtual machine assigned to runnables with no machine selector.
+     */
+    public static final String LOCAL_VIRTUAL_MACHINE = "local";
+
+    /**
+     * The default interval in milliseconds between two checks of the backlog of elastic tasks.
+     */
+    public static final long DEFAULT_SCALING_INTERVAL = 100;
+
+    private final ForkJoinPool pool;
+    private final PDScheduler dataScheduler;
+    private final PDMemoryBudget shuffleMemoryBudget = new PDMemoryBudget(PDEnvironment.DEFAULT_SHUFFLE_MEMORY_BUDGET);
+    private final PDCacheManager cacheManager = new PDCacheManager(new PDMemoryBudget(PDEnvironment.DEFAULT_CACHE_MEMORY_BUDGET),
+            new PDMemoryBudget(PDEnvironment.DEFAULT_OFF_HEAP_CACHE_MEMORY_BUDGET), PDCacheManager.EvictionPolicy.LRU);
+    private final StorageManager storageManager;
+    private final LogManager logManager;
+    private final FJExecutionMode executionMode;
+
+    /**
+     * The executor running the task instances, 'null' if they run on the pool.
+     */
+    private final ExecutorService tasksExecutor;
+
+    /**
+     * The interval in milliseconds between two checks of the backlog of elastic tasks.
+     */
+    private volatile long scalingInterval = DEFAULT_SCALING_INTERVAL;
+
+    /**
+     * Create a new runtime using all the available processors, a {@link RamStorageManager}
+     * and a {@link SLF4JLogManager}.
+     */
+    public FJRuntime() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a new runtime with the specified parallelism level, a {@link RamStorageManager}
+     * and a {@link SLF4JLogManager}.
+     *
+     * @param parallelism The target number of threads actively running code.
+     */
+    public FJRuntime(int parallelism) {
+        this(parallelism, new RamStorageManager(), new SLF4JLogManager());
+    }
+
+    /**
+     * Create a new runtime.
+     *
+     * @param parallelism    The target number of threads actively running code.
+     * @param storageManager The storage manager shared by all tasks.
+     * @param logManager     The log manager shared by all tasks.
+     */
+    public FJRuntime(int parallelism, StorageManager storageManager, LogManager logManager) {
+        this(parallelism, storageManager, logManager, FJExecutionMode.FORK_JOIN);
+    }
+
+    /**
+     * Create a new runtime.
+     *
+     * @param parallelism    The target number of threads actively running code.
+     * @param storageManager The storage manager shared by all tasks.
+     * @param logManager     The log manager shared by all tasks.
+     * @param executionMode  The way task instances are executed.
+     * @throws UnsupportedOperationException If the execution mode is {@link FJExecutionMode#VIRTUAL_THREADS} and
+     *                                       the running JVM does not support virtual threads.
+     */
+    public FJRuntime(int parallelism, StorageManager storageManager, LogManager logManager, FJExecutionMode executionMode) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("The parallelism level is less than 1");
+        if (storageManager == null)
+            throw new NullPointerException("The storage manager is 'null'");
+        if (logManager == null)
+            throw new NullPointerException("The log manager is 'null'");
+        if (executionMode == null)
+            throw new NullPointerException("The execution mode is 'null'");
+        this.tasksExecutor = executionMode == FJExecutionMode.VIRTUAL_THREADS ? FJThreads.newVirtualThreadPerTaskExecutor() : null;
+        this.pool = new ForkJoinPool(parallelism);
+        this.dataScheduler = new PDScheduler(pool);
+        this.storageManager = storageManager;
+        this.logManager = logManager;
+        this.executionMode = executionMode;
+    }
+
+    /**
+     * Indicate if the running JVM supports {@link FJExecutionMode#VIRTUAL_THREADS}.
+     *
+     * @return True if virtual threads are supported, false otherwise.
+     */
+    public static boolean isVirtualThreadSupported() {
+        return FJThreads.isVirtualThreadSupported();
+    }
+
+    @Override
+    public void run(TaskSet taskSets) {
+        if (taskSets == null)
+            throw new NullPointerException("The tasks set is 'null'");
+        if (!(taskSets instanceof FJTaskSet))
+            throw new IllegalArgumentException("The tasks set must be created by this runtime");
+        FJTaskSet ts = (FJTaskSet) taskSets;
+        FJApplication application = new FJApplication(this);
+        RamDictionary dict = new RamDictionary();
+        FJTaskSetInstance.copyDictionary(ts.getDataDictionary(), dict);
+        FJTaskSetInstance main = new FJTaskSetInstance(application, ts, null, null, "main", dict);
+        main.prepare();
+        application.startScaling(scalingInterval);
+        try {
+            main.start();
+        } finally {
+            application.stopScaling();
+        }
+        if (application.getFailure() != null)
+            throw application.getFailure();
+    }
+
+    @Override
+    public void run(Dictionary dict, Task task) {
+        if (dict == null)
+            throw new NullPointerException("The dictionary is 'null'");
+        if (task == null)
+            throw new NullPointerException("The task is 'null'");
+        FJTaskSet ts = new FJTaskSet();
+        FJTaskSetInstance.copyDictionary(dict, ts.getDataDictionary());
+        ts.task(task);
+        run(ts);
+    }
+
+    @Override
+    public TaskSet createTaskSet() {
+        return new FJTaskSet();
+    }
+
+    @Override
+    public StorageManager getStorageManager() {
+        return storageManager;
+    }
+
+    @Override
+    public LogManager getLogManager() {
+        return logManager;
+    }
+
+    /**
+     * Get the parallelism level of this runtime.
+     *
+     * @return The target number of threads actively running code.
+     */
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Get the way task instances are executed by this runtime.
+     *
+     * @return The execution mode.
+     */
+    public FJExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    /**
+     * Get the interval between two checks of the backlog of the tasks declared with a maximum number
+     * of instances greater than the minimum.
+     *
+     * @return The interval in milliseconds.
+     */
+    public long getScalingInterval() {
+        return scalingInterval;
+    }
+
+    /**
+     * Set the interval between two checks of the backlog of the tasks declared with a maximum number
+     * of instances greater than the minimum. A task reading only from
+     * {@link it.cnr.isti.hlt.processfast.connector.ConnectorType#LOAD_BALANCING_QUEUE} connectors and
+     * using no barriers gets a new instance, up to the maximum, each time the backlog of its
+     * input connectors grows, and loses an instance, down to the minimum, after
+     * several consecutive checks with empty input connectors.
+     *
+     * @param scalingInterval The interval in milliseconds.
+     */
+    public void setScalingInterval(long scalingInterval) {
+        if (scalingInterval < 1)
+            throw new IllegalArgumentException("The scaling interval is less than 1");
+        this.scalingInterval = scalingInterval;
+    }
+
+    /**
+     * Get the maximum number of records buffered in memory by the shuffles of the wide
+     * transformations (groupByKey, reduceByKey, join, etc.) of all tasks.
+     *
+     * @return The maximum number of records.
+     */
+    public long getShuffleMemoryBudget() {
+        return shuffleMemoryBudget.getLimit();
+    }
+
+    /**
+     * Set the maximum number of records buffered in memory by the shuffles of the wide
+     * transformations (groupByKey, reduceByKey, join, etc.) of all tasks. Once the limit is
+     * reached, the shuffles spill the records to temporary files.
+     *
+     * @param shuffleMemoryBudget The maximum number of records.
+     */
+    public void setShuffleMemoryBudget(long shuffleMemoryBudget) {
+        this.shuffleMemoryBudget.setLimit(shuffleMemoryBudget);
+    }
+
+    /**
+     * Get the maximum number of bytes of the blocks of the datasets cached in the heap by all tasks.
+     *
+     * @return The maximum number of bytes.
+     */
+    public long getCacheMemoryBudget() {
+        return cacheManager.getBudget().getLimit();
+    }
+
+    /**
+     * Set the maximum number of bytes of the blocks of the datasets cached in the heap by all tasks.
+     * Once the limit is reached, the blocks chosen by the eviction policy are dropped and
+     * recomputed from the lineage of their datasets when needed again.
+     *
+     * @param cacheMemoryBudget The maximum number of bytes.
+     */
+    public void setCacheMemoryBudget(long cacheMemoryBudget) {
+        cacheManager.getBudget().setLimit(cacheMemoryBudget);
+        cacheManager.trim();
+    }
+
+    /**
+     * Get the maximum number of bytes of the blocks of the datasets cached in direct memory,
+     * outside the heap, by all tasks.
+     *
+     * @return The maximum number of bytes.
+     */
+    public long getOffHeapCacheMemoryBudget() {
+        return cacheManager.getOffHeapBudget().getLimit();
+    }
+
+    /**
+     * Set the maximum number of bytes of the blocks of the datasets cached in direct memory,
+     * outside the heap, by all tasks. The limit should not exceed the maximum direct memory of
+     * the virtual machine.
+     *
+     * @param offHeapCacheMemoryBudget The maximum number of bytes.
+     */
+    public void setOffHeapCacheMemoryBudget(long offHeapCacheMemoryBudget) {
+        cacheManager.getOffHeapBudget().setLimit(offHeapCacheMemoryBudget);
+        cacheManager.trim();
+    }
+
+    /**
+     * Get the policy choosing the cached blocks to drop when the cache memory budget is exhausted.
+     *
+     * @return The eviction policy.
+     */
+    public PDCacheManager.EvictionPolicy getCacheEvictionPolicy() {
+        return cacheManager.getEvictionPolicy();
+    }
+
+    /**
+     * Set the policy choosing the cached blocks to drop when the cache memory budget is exhausted.
+     *
+     * @param policy The eviction policy.
+     */
+    public void setCacheEvictionPolicy(PDCacheManager.EvictionPolicy policy) {
+        cacheManager.setEvictionPolicy(policy);
+    }
+
+    /**
+     * Check if the blocks of the datasets cached from now on are compressed.
+     *
+     * @return True if the cached blocks are compressed, false otherwise.
+     */
+    public boolean isCacheCompressionEnabled() {
+        return cacheManager.isCompressionEnabled();
+    }
+
+    /**
+     * Enable or disable the compression of the blocks of the datasets cached from now on.
+     *
+     * @param compression True to compress the cached blocks, false otherwise.
+     */
+    public void setCacheCompressionEnabled(boolean compression) {
+        cacheManager.setCompressionEnabled(compression);
+    }
+
+    /**
+     * Release the threads used by this runtime. The runtime can not be used anymore after this
+     * call.
+     */
+    public void shutdown() {
+        if (tasksExecutor != null)
+            tasksExecutor.shutdown();
+        pool.shutdown();
+    }
+
+    ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Get the scheduler sharing the pool among the computations on partitionable datasets of all
+     * tasks, according to their
+     * {@link it.cnr.isti.hlt.processfast.core.RunnableDescriptor#withDataComputationalResourcesPriority(int) priority}.
+     *
+     * @return The data scheduler.
+     */
+    PDScheduler getDataScheduler() {
+        return dataScheduler;
+    }
+
+    /**
+     * Get the memory budget shared by the shuffles of the computations on partitionable datasets
+     * of all tasks.
+     *
+     * @return The shuffle memory budget.
+     */
+    PDMemoryBudget getDataShuffleMemoryBudget() {
+        return shuffleMemoryBudget;
+    }
+
+    /**
+     * Get the manager of the blocks of the datasets cached in memory by all tasks.
+     *
+     * @return The cache manager.
+     */
+    PDCacheManager getDataCacheManager() {
+        return cacheManager;
+    }
+
+    /**
+     * Execute asynchronously the code of a task instance or of a tasks set, according to the execution
+     * mode of this runtime.
+     *
+     * @param code The code to execute.
+     * @return The future signaling the termination of the code.
+     */
+    CompletableFuture<Void> execute(Runnable code) {
+        Executor executor = tasksExecutor != null ? tasksExecutor : pool;
+        return CompletableFuture.runAsync(code, executor);
+    }
+}
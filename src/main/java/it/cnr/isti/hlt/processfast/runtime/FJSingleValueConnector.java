@@ -0,0 +1,66 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime;
+
+import it.cnr.isti.hlt.processfast.connector.ConnectorMessage;
+import it.cnr.isti.hlt.processfast.connector.ConnectorType;
+import it.cnr.isti.hlt.processfast.exception.ConnectorIllegalOperationException;
+
+/**
+ * A {@link ConnectorType#SINGLE_VALUE} connector. The value can be written only once and,
+ * once written, every read returns it.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+class FJSingleValueConnector extends FJConnector {
+
+    private FJConnectorMessage value;
+
+    FJSingleValueConnector(String name, int maxSize) {
+        super(name, maxSize);
+    }
+
+    @Override
+    ConnectorType getConnectorType() {
+        return ConnectorType.SINGLE_VALUE;
+    }
+
+    @Override
+    protected void doPut(FJTaskInstance writer, FJConnectorMessage msg) {
+        if (value != null)
+            throw new ConnectorIllegalOperationException(writer.getTaskName(), name,
+                    "The value of a single value connector can be written only once");
+        value = msg;
+        notEmpty.signalAll();
+    }
+
+    @Override
+    protected ConnectorMessage doGet(FJTaskInstance reader) {
+        while (value == null && !isEndOfStream())
+            FJBlocking.await(notEmpty);
+        return value;
+    }
+
+    @Override
+    protected boolean hasMessageFor(FJTaskInstance reader) {
+        return value != null;
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime;
+
+import it.cnr.isti.hlt.processfast.connector.ConnectorReader;
+import it.cnr.isti.hlt.processfast.connector.ConnectorWriter;
+import it.cnr.isti.hlt.processfast.connector.TaskConnectorManager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The {@link TaskConnectorManager} of a task instance. It gives access only to the connectors
+ * attached to the task instance with the proper capability.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+class FJTaskConnectorManager implements TaskConnectorManager {
+
+    private final FJTaskInstance instance;
+    private final HashMap<String, FJConnectorEndpoint> readers = new HashMap<>();
+    private final HashMap<String, FJConnectorEndpoint> writers = new HashMap<>();
+
+    /**
+     * The position where to start the next scan of ready connectors, used to give all
+     * connectors the same chance to be selected.
+     */
+    private final AtomicInteger nextScanStart = new AtomicInteger();
+
+    FJTaskConnectorManager(FJTaskInstance instance) {
+        this.instance = instance;
+    }
+
+    synchronized void addReader(String name, FJConnector connector) {
+        readers.put(name, new FJConnectorEndpoint(name, connector, instance));
+    }
+
+    synchronized void addWriter(String name, FJConnector connector) {
+        writers.put(name, new FJConnectorEndpoint(name, connector, instance));
+    }
+
+    synchronized List<FJConnector> getReaderConnectors() {
+        List<FJConnector> ret = new ArrayList<>();
+        for (FJConnectorEndpoint endpoint : readers.values())
+            ret.add(endpoint.getConnector());
+        return ret;
+    }
+
+    synchronized List<FJConnector> getWriterConnectors() {
+        List<FJConnector> ret = new ArrayList<>();
+        for (FJConnectorEndpoint endpoint : writers.values())
+            ret.add(endpoint.getConnector());
+        return ret;
+    }
+
+    @Override
+    public synchronized ConnectorReader getConnectorReader(String name) {
+        if (name == null || name.isEmpty())
+            throw new IllegalArgumentException("The connector name is 'null' or empty");
+        return readers.get(name);
+    }
+
+    @Override
+    public synchronized ConnectorWriter getConnectorWriter(String name) {
+        if (name == null || name.isEmpty())
+            throw new IllegalArgumentException("The connector name is 'null' or empty");
+        return writers.get(name);
+    }
+
+    @Override
+    public ConnectorReader getReadyConnectorReader(List<String> connectors, long maxWaitTime) {
+        return waitReadyConnector(connectors, maxWaitTime, false);
+    }
+
+    @Override
+    public ConnectorReader getReadyConnectorReaderWithPriority(List<String> connectors, long maxWaitTime) {
+        return waitReadyConnector(connectors, maxWaitTime, true);
+    }
+
+    private ConnectorReader waitReadyConnector(List<String> connectors, long maxWaitTime, boolean withPriority) {
+        if (connectors == null || connectors.isEmpty())
+            throw new IllegalArgumentException("The list of connectors is 'null' or empty");
+        List<FJConnectorEndpoint> endpoints = new ArrayList<>();
+        for (String name : connectors) {
+            FJConnectorEndpoint endpoint = (FJConnectorEndpoint) getConnectorReader(name);
+            if (endpoint == null)
+                throw new IllegalArgumentException("The connector " + name + " is not attached in read mode to task " + instance.getTaskName());
+            endpoints.add(endpoint);
+        }
+
+        Thread waiter = Thread.currentThread();
+        Runnable listener = () -> LockSupport.unpark(waiter);
+        for (FJConnectorEndpoint endpoint : endpoints)
+            endpoint.getConnector().addReadyListener(listener);
+        try {
+            long deadline = maxWaitTime < 0 ? 0 : System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitTime);
+            while (true) {
+                int start = withPriority ? 0 : Math.floorMod(nextScanStart.getAndIncrement(), endpoints.size());
+                for (int i = 0; i < endpoints.size(); i++) {
+                    FJConnectorEndpoint endpoint = endpoints.get((start + i) % endpoints.size());
+                    if (endpoint.getConnector().isReady(instance))
+                        return endpoint;
+                }
+                if (maxWaitTime < 0) {
+                    FJBlocking.park(-1);
+                } else {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0)
+                        return null;
+                    FJBlocking.park(remaining);
+                }
+            }
+        } finally {
+            for (FJConnectorEndpoint endpoint : endpoints)
+                endpoint.getConnector().removeReadyListener(listener);
+        }
+    }
+}
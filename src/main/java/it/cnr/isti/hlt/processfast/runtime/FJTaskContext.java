@@ -0,0 +1,225 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime;
+
+import it.cnr.isti.hlt.processfast.connector.ConnectorReader;
+import it.cnr.isti.hlt.processfast.connector.TaskConnectorManager;
+import it.cnr.isti.hlt.processfast.connector.ValuePromise;
+import it.cnr.isti.hlt.processfast.core.AtomicGetOperationsSet;
+import it.cnr.isti.hlt.processfast.core.AtomicOperationsSet;
+import it.cnr.isti.hlt.processfast.core.CheckpointDataInfo;
+import it.cnr.isti.hlt.processfast.core.LogManager;
+import it.cnr.isti.hlt.processfast.core.TaskContext;
+import it.cnr.isti.hlt.processfast.data.DataIterable;
+import it.cnr.isti.hlt.processfast.data.Dictionary;
+import it.cnr.isti.hlt.processfast.data.DoubleDataSourceIteratorProvider;
+import it.cnr.isti.hlt.processfast.data.DoublePartitionableDataset;
+import it.cnr.isti.hlt.processfast.data.ImmutableDataSourceIteratorProvider;
+import it.cnr.isti.hlt.processfast.data.LongDataSourceIteratorProvider;
+import it.cnr.isti.hlt.processfast.data.LongPartitionableDataset;
+import it.cnr.isti.hlt.processfast.data.PairPartitionableDataset;
+import it.cnr.isti.hlt.processfast.data.PartitionableDataset;
+import it.cnr.isti.hlt.processfast.data.RamDictionary;
+import it.cnr.isti.hlt.processfast.data.ReadableDictionary;
+import it.cnr.isti.hlt.processfast.data.StorageManager;
+import it.cnr.isti.hlt.processfast.data.StreamingPartitionableDataset;
+import it.cnr.isti.hlt.processfast.runtime.data.FJDoublePartitionableDataset;
+import it.cnr.isti.hlt.processfast.runtime.data.FJLongPartitionableDataset;
+import it.cnr.isti.hlt.processfast.runtime.data.FJPairPartitionableDataset;
+import it.cnr.isti.hlt.processfast.runtime.data.FJPartitionableDataset;
+import it.cnr.isti.hlt.processfast.runtime.data.FJStreamingPartitionableDataset;
+import it.cnr.isti.hlt.processfast.runtime.data.PDEnvironment;
+import it.cnr.isti.hlt.processfast.runtime.data.PDListDataSourceIteratorProvider;
+import it.cnr.isti.hlt.processfast.runtime.data.ProviderDataIterable;
+import it.cnr.isti.hlt.processfast.utils.Pair;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * The {@link TaskContext} given to a task instance executed by {@link FJRuntime}.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+class FJTaskContext implements TaskContext {
+
+    private final FJTaskInstance instance;
+
+    FJTaskContext(FJTaskInstance instance) {
+        this.instance = instance;
+    }
+
+    private FJRuntime getRuntime() {
+        return instance.getTaskSetInstance().getApplication().getRuntime();
+    }
+
+    private PDEnvironment createDataEnvironment() {
+        FJRuntime runtime = getRuntime();
+        return new PDEnvironment(runtime.getDataScheduler(), runtime.getDataShuffleMemoryBudget(), runtime.getDataCacheManager(), runtime.getStorageManager(), runtime.getLogManager(),
+                instance.getDescriptor().getDataComputationalResourcesPriority());
+    }
+
+    @Override
+    public void makeCheckpoint(String checkpointName, List<CheckpointDataInfo> data) {
+        throw new UnsupportedOperationException("Checkpoints are not supported by FJRuntime");
+    }
+
+    @Override
+    public void loadCheckpoint(String checkpointName) {
+        throw new UnsupportedOperationException("Checkpoints are not supported by FJRuntime");
+    }
+
+    @Override
+    public void deleteCheckpoint(String checkpointName) {
+        throw new UnsupportedOperationException("Checkpoints are not supported by FJRuntime");
+    }
+
+    @Override
+    public void barrier(String barrierName) {
+        if (barrierName == null || barrierName.isEmpty())
+            throw new IllegalArgumentException("The barrier name is 'null' or empty");
+        FJBarrier barrier = instance.getBarrier(barrierName);
+        if (barrier == null)
+            throw new IllegalArgumentException("The barrier " + barrierName + " is not declared for task " + instance.getTaskName());
+        barrier.await();
+    }
+
+    @Override
+    public <T extends Serializable> PartitionableDataset<T> createPartitionableDataset(ImmutableDataSourceIteratorProvider<T> dataSource) {
+        if (dataSource == null)
+            throw new NullPointerException("The data source is 'null'");
+        return new FJPartitionableDataset<>(createDataEnvironment(), dataSource);
+    }
+
+    @Override
+    public <K extends Serializable, V extends Serializable> PairPartitionableDataset<K, V> createPairPartitionableDataset(ImmutableDataSourceIteratorProvider<Pair<K, V>> dataSource) {
+        if (dataSource == null)
+            throw new NullPointerException("The data source is 'null'");
+        return new FJPairPartitionableDataset<>(createDataEnvironment(), dataSource);
+    }
+
+    @Override
+    public <V extends Serializable> PairPartitionableDataset<Integer, DataIterable<V>> createPairPartitionableDataset(Iterator<ImmutableDataSourceIteratorProvider<V>> dataSources) {
+        if (dataSources == null)
+            throw new NullPointerException("The data sources are 'null'");
+        List<Pair<Integer, DataIterable<V>>> items = new ArrayList<>();
+        int idx = 0;
+        while (dataSources.hasNext())
+            items.add(new Pair<>(idx++, new ProviderDataIterable<>(dataSources.next())));
+        return new FJPairPartitionableDataset<>(createDataEnvironment(), new PDListDataSourceIteratorProvider<>(items));
+    }
+
+    @Override
+    public DoublePartitionableDataset createDoublePartitionableDataset(DoubleDataSourceIteratorProvider dataSource) {
+        if (dataSource == null)
+            throw new NullPointerException("The data source is 'null'");
+        return new FJDoublePartitionableDataset(createDataEnvironment(), dataSource);
+    }
+
+    @Override
+    public LongPartitionableDataset createLongPartitionableDataset(LongDataSourceIteratorProvider dataSource) {
+        if (dataSource == null)
+            throw new NullPointerException("The data source is 'null'");
+        return new FJLongPartitionableDataset(createDataEnvironment(), dataSource);
+    }
+
+    @Override
+    public <T extends Serializable> StreamingPartitionableDataset<T> createStreamingPartitionableDataset(ConnectorReader reader, int batchSize) {
+        if (reader == null)
+            throw new NullPointerException("The connector reader is 'null'");
+        return new FJStreamingPartitionableDataset<>(createDataEnvironment(), reader, batchSize);
+    }
+
+    @Override
+    public Dictionary getTasksSetDataDictionary() {
+        return instance.getTaskSetInstance().getDataDictionary();
+    }
+
+    @Override
+    public Dictionary getPrivateTaskDataDictionary() {
+        return instance.getPrivateDataDictionary();
+    }
+
+    @Override
+    public TaskConnectorManager getConnectorManager() {
+        return instance.getConnectorManager();
+    }
+
+    @Override
+    public ValuePromise<Void> atomic(String criticalSectionName, ReadableDictionary inputData, AtomicOperationsSet operations) {
+        if (inputData == null)
+            throw new NullPointerException("The input data is 'null'");
+        if (operations == null)
+            throw new NullPointerException("The operations set is 'null'");
+        FJCriticalSection cs = instance.getTaskSetInstance().getApplication().getCriticalSection(criticalSectionName);
+        return new FJValuePromise<>(cs.submit(() -> {
+            operations.call(inputData, this);
+            return null;
+        }));
+    }
+
+    @Override
+    public ValuePromise<Void> atomic(String criticalSectionName, AtomicOperationsSet operations) {
+        return atomic(criticalSectionName, new RamDictionary(), operations);
+    }
+
+    @Override
+    public ValuePromise<ReadableDictionary> atomicGet(String criticalSectionName, ReadableDictionary inputData, AtomicGetOperationsSet operations) {
+        if (inputData == null)
+            throw new NullPointerException("The input data is 'null'");
+        if (operations == null)
+            throw new NullPointerException("The operations set is 'null'");
+        FJCriticalSection cs = instance.getTaskSetInstance().getApplication().getCriticalSection(criticalSectionName);
+        return new FJValuePromise<>(cs.submit(() -> operations.call(inputData, this)));
+    }
+
+    @Override
+    public ValuePromise<ReadableDictionary> atomicGet(String criticalSectionName, AtomicGetOperationsSet operations) {
+        return atomicGet(criticalSectionName, new RamDictionary(), operations);
+    }
+
+    @Override
+    public LogManager getLogManager() {
+        return getRuntime().getLogManager();
+    }
+
+    @Override
+    public StorageManager getStorageManager() {
+        return getRuntime().getStorageManager();
+    }
+
+    @Override
+    public int getInstanceNumber() {
+        return instance.getInstanceNumber();
+    }
+
+    @Override
+    public int getNumTotalInstances() {
+        return instance.getNumTotalInstances();
+    }
+
+    @Override
+    public String getTaskName() {
+        return instance.getTaskName();
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime;
+
+import it.cnr.isti.hlt.processfast.core.Task;
+import it.cnr.isti.hlt.processfast.core.TaskDescriptor;
+import it.cnr.isti.hlt.processfast.core.WithBarrierInfo;
+import it.cnr.isti.hlt.processfast.core.WithConnectorInfo;
+import it.cnr.isti.hlt.processfast.utils.Function1;
+import it.cnr.isti.hlt.processfast.utils.Procedure1;
+
+import java.util.Iterator;
+
+/**
+ * A {@link TaskDescriptor} implementation for {@link FJRuntime}.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+class FJTaskDescriptor extends FJRunnableDescriptor<TaskDescriptor> implements TaskDescriptor {
+
+    private final Task task;
+    private Procedure1<WithConnectorInfo> connectorsFunc;
+    private Function1<WithBarrierInfo, Iterator<String>> barriersFunc;
+
+    FJTaskDescriptor(Task task) {
+        if (task == null)
+            throw new NullPointerException("The task is 'null'");
+        this.task = task;
+    }
+
+    @Override
+    protected TaskDescriptor self() {
+        return this;
+    }
+
+    @Override
+    public TaskDescriptor withConnectors(Procedure1<WithConnectorInfo> func) {
+        if (func == null)
+            throw new NullPointerException("The function is 'null'");
+        this.connectorsFunc = func;
+        return this;
+    }
+
+    @Override
+    public TaskDescriptor withBarriers(Function1<WithBarrierInfo, Iterator<String>> barriers) {
+        if (barriers == null)
+            throw new NullPointerException("The function is 'null'");
+        this.barriersFunc = barriers;
+        return this;
+    }
+
+    Task getTask() {
+        return task;
+    }
+
+    Procedure1<WithConnectorInfo> getConnectorsFunc() {
+        return connectorsFunc;
+    }
+
+    Function1<WithBarrierInfo, Iterator<String>> getBarriersFunc() {
+        return barriersFunc;
+    }
+}
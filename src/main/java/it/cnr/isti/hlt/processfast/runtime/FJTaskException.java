@@ -0,0 +1,66 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime;
+
+import it.cnr.isti.hlt.processfast.exception.TaskException;
+
+/**
+ * The exception raised by {@link FJRuntime} when a task terminates abnormally and
+ * the failure policy asks for the termination of the application.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+public class FJTaskException extends RuntimeException implements TaskException {
+
+    private static final long serialVersionUID = -2459021391839283726L;
+
+    private final String taskName;
+    private final String virtualMachineName;
+
+    /**
+     * Build new instance.
+     *
+     * @param taskName           The name of task causing the exception.
+     * @param virtualMachineName The name of the virtual machine where the task was running.
+     * @param msg                The message details.
+     * @param cause              The throwable raised by the task.
+     */
+    public FJTaskException(String taskName, String virtualMachineName, String msg, Throwable cause) {
+        super(msg, cause);
+        this.taskName = taskName;
+        this.virtualMachineName = virtualMachineName;
+    }
+
+    @Override
+    public String getTaskName() {
+        return taskName;
+    }
+
+    @Override
+    public Throwable getCausingThrowable() {
+        return getCause();
+    }
+
+    @Override
+    public String getVirtualMachineName() {
+        return virtualMachineName;
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime;
+
+import it.cnr.isti.hlt.processfast.connector.ConnectorType;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * The instances of a task declared in a tasks set. When the task is declared with
+ * {@link it.cnr.isti.hlt.processfast.core.RunnableDescriptor#withNumInstances(int, int)} with a
+ * maximum greater than the minimum, reads only from {@link ConnectorType#LOAD_BALANCING_QUEUE}
+ * connectors and uses no barriers, the group is elastic: {@link #rebalance()} adds an
+ * instance while the backlog of the input connectors grows, and retires the last instance
+ * once the input connectors have been idle for a while. A retired instance receives 'null'
+ * (end of stream) from its next read on the input connectors.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+class FJTaskGroup {
+
+    /**
+     * The number of consecutive idle checks after which an instance is retired.
+     */
+    static final int IDLE_CHECKS_BEFORE_SHRINK = 10;
+
+    private final FJTaskSetInstance taskSetInstance;
+    private final FJTaskDescriptor descriptor;
+    private final int declarationIndex;
+
+    /**
+     * The active instances, ordered by instance number.
+     */
+    private final List<FJTaskInstance> instances = new ArrayList<>();
+
+    /**
+     * The retired instances still executing their code.
+     */
+    private final HashSet<FJTaskInstance> retiring = new HashSet<>();
+
+    /**
+     * The number of instances whose code has not yet terminated.
+     */
+    private int numRunning;
+
+    private List<FJLoadBalancingQueueConnector> inputs;
+    private int previousBacklog;
+    private int idleChecks;
+
+    FJTaskGroup(FJTaskSetInstance taskSetInstance, FJTaskDescriptor descriptor, int declarationIndex) {
+        this.taskSetInstance = taskSetInstance;
+        this.descriptor = descriptor;
+        this.declarationIndex = declarationIndex;
+    }
+
+    FJTaskDescriptor getDescriptor() {
+        return descriptor;
+    }
+
+    int getDeclarationIndex() {
+        return declarationIndex;
+    }
+
+    /**
+     * Get the name of the first instance of the task.
+     *
+     * @return The name of the first instance or 'null' if the group has no instances.
+     */
+    synchronized String getTaskName() {
+        return instances.isEmpty() ? null : instances.get(0).getTaskName();
+    }
+
+    synchronized void addInstance(FJTaskInstance instance) {
+        instances.add(instance);
+        numRunning++;
+    }
+
+    /**
+     * Get the number of active instances of the task.
+     *
+     * @return The number of instances.
+     */
+    synchronized int getNumTotalInstances() {
+        return instances.size();
+    }
+
+    synchronized boolean isRunning() {
+        return numRunning > 0;
+    }
+
+    /**
+     * Called by an instance when its code has terminated, before signaling the end of stream on
+     * its output connectors.
+     */
+    synchronized void instanceTerminated(FJTaskInstance instance) {
+        numRunning--;
+        retiring.remove(instance);
+    }
+
+    /**
+     * Decide if the group can be resized, looking at the connectors read by its instances. Must
+     * be called after the connectors have been attached to the instances.
+     *
+     * @return True if the group is elastic, false otherwise.
+     */
+    synchronized boolean initElasticity() {
+        if (descriptor.getMaxNumInstances() <= descriptor.getMinNumInstances() || descriptor.getBarriersFunc() != null)
+            return false;
+        if (instances.isEmpty())
+            return false;
+        List<FJLoadBalancingQueueConnector> ret = new ArrayList<>();
+        for (FJConnector connector : instances.get(0).getConnectorManager().getReaderConnectors()) {
+            if (!(connector instanceof FJLoadBalancingQueueConnector))
+                return false;
+            ret.add((FJLoadBalancingQueueConnector) connector);
+        }
+        if (ret.isEmpty())
+            return false;
+        inputs = ret;
+        return true;
+    }
+
+    /**
+     * Check the backlog of the input connectors and add or retire an instance if necessary.
+     */
+    void rebalance() {
+        int backlog = 0;
+        int capacity = 0;
+        for (FJLoadBalancingQueueConnector connector : inputs) {
+            backlog += connector.getBacklog();
+            capacity += connector.getMaxSize();
+        }
+
+        FJTaskInstance toRetire = null;
+        boolean grow = false;
+        synchronized (this) {
+            if (numRunning == 0)
+                return;
+            int numInstances = instances.size();
+            boolean pressure = backlog >= numInstances && (backlog > previousBacklog || backlog * 2 >= capacity);
+            previousBacklog = backlog;
+            idleChecks = backlog == 0 ? idleChecks + 1 : 0;
+            if (pressure && numInstances < descriptor.getMaxNumInstances() && retiring.isEmpty()) {
+                grow = true;
+            } else if (idleChecks >= IDLE_CHECKS_BEFORE_SHRINK && numInstances > descriptor.getMinNumInstances()) {
+                idleChecks = 0;
+                toRetire = instances.remove(numInstances - 1);
+                retiring.add(toRetire);
+                toRetire.retire();
+                taskSetInstance.getLogger().debug("Retiring instance " + toRetire.getTaskName() + " after " + IDLE_CHECKS_BEFORE_SHRINK + " idle checks");
+            }
+            if (grow)
+                taskSetInstance.spawnInstance(this, numInstances);
+        }
+
+        if (toRetire != null) {
+            for (FJLoadBalancingQueueConnector connector : inputs)
+                connector.wakeUpReaders();
+        }
+    }
+}
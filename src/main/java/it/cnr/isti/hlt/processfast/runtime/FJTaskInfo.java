@@ -0,0 +1,95 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime;
+
+import it.cnr.isti.hlt.processfast.connector.ConnectorManager;
+import it.cnr.isti.hlt.processfast.core.FailureInfo;
+import it.cnr.isti.hlt.processfast.core.LogManager;
+import it.cnr.isti.hlt.processfast.core.WithAttachedVirtualBarrierInfo;
+import it.cnr.isti.hlt.processfast.core.WithAttachedVirtualConnectorInfo;
+import it.cnr.isti.hlt.processfast.core.WithBarrierInfo;
+import it.cnr.isti.hlt.processfast.core.WithConnectorInfo;
+import it.cnr.isti.hlt.processfast.core.WithDataDictionaryInfo;
+import it.cnr.isti.hlt.processfast.core.WithVirtualMachineInfo;
+import it.cnr.isti.hlt.processfast.data.Dictionary;
+import it.cnr.isti.hlt.processfast.data.StorageManager;
+
+/**
+ * The information about a runnable instance passed to the functions declared on the
+ * runnable descriptors.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+class FJTaskInfo implements WithConnectorInfo, WithBarrierInfo, WithVirtualMachineInfo, WithDataDictionaryInfo,
+        WithAttachedVirtualConnectorInfo, WithAttachedVirtualBarrierInfo, FailureInfo {
+
+    private final String taskName;
+    private final int instanceNumber;
+    private final int numTotalInstances;
+    private final Dictionary dataDictionary;
+    private final ConnectorManager connectorManager;
+    private final FJRuntime runtime;
+
+    FJTaskInfo(FJRuntime runtime, String taskName, int instanceNumber, int numTotalInstances, Dictionary dataDictionary,
+               ConnectorManager connectorManager) {
+        this.runtime = runtime;
+        this.taskName = taskName;
+        this.instanceNumber = instanceNumber;
+        this.numTotalInstances = numTotalInstances;
+        this.dataDictionary = dataDictionary;
+        this.connectorManager = connectorManager;
+    }
+
+    @Override
+    public ConnectorManager getConnectorManager() {
+        return connectorManager;
+    }
+
+    @Override
+    public LogManager getLogManager() {
+        return runtime.getLogManager();
+    }
+
+    @Override
+    public StorageManager getStorageManager() {
+        return runtime.getStorageManager();
+    }
+
+    @Override
+    public Dictionary getDataDictionary() {
+        return dataDictionary;
+    }
+
+    @Override
+    public int getInstanceNumber() {
+        return instanceNumber;
+    }
+
+    @Override
+    public int getNumTotalInstances() {
+        return numTotalInstances;
+    }
+
+    @Override
+    public String getTaskName() {
+        return taskName;
+    }
+}
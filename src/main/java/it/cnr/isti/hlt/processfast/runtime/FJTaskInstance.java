@@ -0,0 +1,206 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime;
+
+import it.cnr.isti.hlt.processfast.connector.ConnectorCapability;
+import it.cnr.isti.hlt.processfast.core.HardwareFailureAction;
+import it.cnr.isti.hlt.processfast.data.Dictionary;
+
+import java.util.LinkedHashMap;
+
+/**
+ * A running instance of a task declared in a tasks set.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+class FJTaskInstance {
+
+    private final FJTaskSetInstance taskSetInstance;
+    private final FJTaskDescriptor descriptor;
+    private final String taskName;
+    private final int instanceNumber;
+    private final FJTaskGroup group;
+    private final Dictionary privateDataDictionary;
+    private final FJTaskConnectorManager connectorManager;
+    private final LinkedHashMap<String, FJBarrier> barriers = new LinkedHashMap<>();
+    private String virtualMachineName = FJRuntime.LOCAL_VIRTUAL_MACHINE;
+
+    /**
+     * The thread executing the task code, 'null' if the task code is not running.
+     */
+    private Thread runner;
+
+    /**
+     * True if the instance has been retired by its group and must stop reading input data.
+     */
+    private volatile boolean retiring;
+
+    FJTaskInstance(FJTaskSetInstance taskSetInstance, FJTaskGroup group, String taskName, int instanceNumber,
+                   Dictionary privateDataDictionary) {
+        this.taskSetInstance = taskSetInstance;
+        this.group = group;
+        this.descriptor = group.getDescriptor();
+        this.taskName = taskName;
+        this.instanceNumber = instanceNumber;
+        this.privateDataDictionary = privateDataDictionary;
+        this.connectorManager = new FJTaskConnectorManager(this);
+    }
+
+    FJTaskSetInstance getTaskSetInstance() {
+        return taskSetInstance;
+    }
+
+    FJTaskDescriptor getDescriptor() {
+        return descriptor;
+    }
+
+    String getTaskName() {
+        return taskName;
+    }
+
+    int getInstanceNumber() {
+        return instanceNumber;
+    }
+
+    int getNumTotalInstances() {
+        return group.getNumTotalInstances();
+    }
+
+    void retire() {
+        retiring = true;
+    }
+
+    boolean isRetiring() {
+        return retiring;
+    }
+
+    Dictionary getPrivateDataDictionary() {
+        return privateDataDictionary;
+    }
+
+    FJTaskConnectorManager getConnectorManager() {
+        return connectorManager;
+    }
+
+    String getVirtualMachineName() {
+        return virtualMachineName;
+    }
+
+    void setVirtualMachineName(String virtualMachineName) {
+        if (virtualMachineName == null || virtualMachineName.isEmpty())
+            throw new IllegalArgumentException("The virtual machine name is 'null' or empty");
+        this.virtualMachineName = virtualMachineName;
+    }
+
+    /**
+     * Attach this instance to the specified connector.
+     *
+     * @param name       The name of the connector as seen by the task.
+     * @param connector  The physical connector.
+     * @param capability The access capability.
+     */
+    void attachConnector(String name, FJConnector connector, ConnectorCapability capability) {
+        if (capability == ConnectorCapability.READ || capability == ConnectorCapability.READ_WRITE) {
+            connector.registerReader(this);
+            connectorManager.addReader(name, connector);
+        }
+        if (capability == ConnectorCapability.WRITE || capability == ConnectorCapability.READ_WRITE) {
+            connector.registerWriter(this);
+            connectorManager.addWriter(name, connector);
+        }
+    }
+
+    void attachBarrier(String name, FJBarrier barrier) {
+        if (barriers.containsKey(name))
+            return;
+        barrier.registerParty();
+        barriers.put(name, barrier);
+    }
+
+    FJBarrier getBarrier(String name) {
+        return barriers.get(name);
+    }
+
+    /**
+     * Execute the task code, handling failures as declared by the programmer. When the task
+     * code terminates, the end of stream is signaled on every connector written by this instance and
+     * the instance leaves all its barriers.
+     */
+    void run() {
+        FJApplication application = taskSetInstance.getApplication();
+        try {
+            while (true) {
+                if (!setRunner(Thread.currentThread()))
+                    return;
+                try {
+                    descriptor.getTask().exec(new FJTaskContext(this));
+                    return;
+                } catch (Throwable t) {
+                    if (application.isAborted())
+                        return;
+                    HardwareFailureAction action = taskSetInstance.resolveFailureAction(descriptor.getFailureFunc(), this);
+                    if (action == HardwareFailureAction.RESTART_TASK) {
+                        taskSetInstance.getLogger().warning("The task " + taskName + " has failed, restarting it", t);
+                        continue;
+                    }
+                    application.abort(new FJTaskException(taskName, virtualMachineName, "The task " + taskName + " has failed", t));
+                    return;
+                } finally {
+                    setRunner(null);
+                }
+            }
+        } finally {
+            group.instanceTerminated(this);
+            for (FJConnector connector : connectorManager.getWriterConnectors())
+                connector.signalEndOfStream(this);
+            for (FJBarrier barrier : barriers.values())
+                barrier.deregisterParty();
+        }
+    }
+
+    /**
+     * Set the thread executing the task code.
+     *
+     * @param thread The thread or 'null' if the task code is no more running.
+     * @return False if the application has been aborted and the task code must not run, true otherwise.
+     */
+    private synchronized boolean setRunner(Thread thread) {
+        FJApplication application = taskSetInstance.getApplication();
+        if (thread == null) {
+            application.instanceEnded(this);
+            runner = null;
+            Thread.interrupted();
+            return true;
+        }
+        application.instanceStarted(this);
+        if (application.isAborted()) {
+            application.instanceEnded(this);
+            return false;
+        }
+        runner = thread;
+        return true;
+    }
+
+    synchronized void interrupt() {
+        if (runner != null)
+            runner.interrupt();
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime;
+
+import it.cnr.isti.hlt.processfast.connector.ConnectorType;
+import it.cnr.isti.hlt.processfast.core.FailureInfo;
+import it.cnr.isti.hlt.processfast.core.HardwareFailureAction;
+import it.cnr.isti.hlt.processfast.core.SystemContext;
+import it.cnr.isti.hlt.processfast.core.Task;
+import it.cnr.isti.hlt.processfast.core.TaskDescriptor;
+import it.cnr.isti.hlt.processfast.core.TaskSet;
+import it.cnr.isti.hlt.processfast.core.TaskSetDescriptor;
+import it.cnr.isti.hlt.processfast.data.Dictionary;
+import it.cnr.isti.hlt.processfast.data.RamDictionary;
+import it.cnr.isti.hlt.processfast.utils.Function1;
+import it.cnr.isti.hlt.processfast.utils.Pair;
+import it.cnr.isti.hlt.processfast.utils.Procedure1;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * A {@link TaskSet} implementation for {@link FJRuntime}. A tasks set only keeps the
+ * declarations made by the programmer, the running state is kept by {@link FJTaskSetInstance}.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+public class FJTaskSet implements TaskSet {
+
+    /**
+     * The default maximum number of messages stored in a connector.
+     */
+    public static final int DEFAULT_CONNECTOR_MAX_SIZE = 1000;
+
+    private final List<FJRunnableDescriptor<?>> descriptors = new ArrayList<>();
+    private final LinkedHashMap<String, Pair<ConnectorType, Integer>> connectors = new LinkedHashMap<>();
+    private final LinkedHashSet<String> barriers = new LinkedHashSet<>();
+    private final LinkedHashSet<String> virtualConnectors = new LinkedHashSet<>();
+    private final LinkedHashSet<String> virtualBarriers = new LinkedHashSet<>();
+    private final Dictionary dataDictionary = new RamDictionary();
+    private Function1<FailureInfo, HardwareFailureAction> genericFailureFunc;
+    private Procedure1<SystemContext> initializationFunc;
+    private Procedure1<SystemContext> terminationFunc;
+
+    @Override
+    public TaskDescriptor task(Task task) {
+        FJTaskDescriptor descriptor = new FJTaskDescriptor(task);
+        descriptors.add(descriptor);
+        return descriptor;
+    }
+
+    @Override
+    public TaskSetDescriptor task(TaskSet taskSet) {
+        if (taskSet == null)
+            throw new NullPointerException("The tasks set is 'null'");
+        if (!(taskSet instanceof FJTaskSet))
+            throw new IllegalArgumentException("The tasks set must be created by the same runtime");
+        if (taskSet == this)
+            throw new IllegalArgumentException("A tasks set can not contain itself");
+        FJTaskSetDescriptor descriptor = new FJTaskSetDescriptor((FJTaskSet) taskSet);
+        descriptors.add(descriptor);
+        return descriptor;
+    }
+
+    @Override
+    public void createVirtualConnector(String name) {
+        checkUnusedConnectorName(name);
+        virtualConnectors.add(name);
+    }
+
+    @Override
+    public void createVirtualBarrier(String name) {
+        checkUnusedBarrierName(name);
+        virtualBarriers.add(name);
+    }
+
+    @Override
+    public void onGenericTaskFailure(Function1<FailureInfo, HardwareFailureAction> func) {
+        if (func == null)
+            throw new NullPointerException("The function is 'null'");
+        this.genericFailureFunc = func;
+    }
+
+    @Override
+    public void createConnector(String name, ConnectorType ctype) {
+        createConnector(name, ctype, DEFAULT_CONNECTOR_MAX_SIZE);
+    }
+
+    @Override
+    public void createConnector(String name, ConnectorType ctype, int maxSize) {
+        checkUnusedConnectorName(name);
+        if (ctype == null)
+            throw new NullPointerException("The connector type is 'null'");
+        if (maxSize < 1)
+            throw new IllegalArgumentException("The maximum size of the connector is less than 1");
+        connectors.put(name, new Pair<>(ctype, maxSize));
+    }
+
+    @Override
+    public void createBarrier(String name) {
+        checkUnusedBarrierName(name);
+        barriers.add(name);
+    }
+
+    @Override
+    public void onTasksSetInitialization(Procedure1<SystemContext> func) {
+        if (func == null)
+            throw new NullPointerException("The function is 'null'");
+        this.initializationFunc = func;
+    }
+
+    @Override
+    public void onTasksSetTermination(Procedure1<SystemContext> func) {
+        if (func == null)
+            throw new NullPointerException("The function is 'null'");
+        this.terminationFunc = func;
+    }
+
+    @Override
+    public Dictionary getDataDictionary() {
+        return dataDictionary;
+    }
+
+    private void checkUnusedConnectorName(String name) {
+        if (name == null || name.isEmpty())
+            throw new IllegalArgumentException("The connector name is 'null' or empty");
+        if (connectors.containsKey(name) || virtualConnectors.contains(name))
+            throw new IllegalArgumentException("A connector with name " + name + " already exists");
+    }
+
+    private void checkUnusedBarrierName(String name) {
+        if (name == null || name.isEmpty())
+            throw new IllegalArgumentException("The barrier name is 'null' or empty");
+        if (barriers.contains(name) || virtualBarriers.contains(name))
+            throw new IllegalArgumentException("A barrier with name " + name + " already exists");
+    }
+
+    List<FJRunnableDescriptor<?>> getDescriptors() {
+        return descriptors;
+    }
+
+    LinkedHashMap<String, Pair<ConnectorType, Integer>> getConnectors() {
+        return connectors;
+    }
+
+    LinkedHashSet<String> getBarriers() {
+        return barriers;
+    }
+
+    LinkedHashSet<String> getVirtualConnectors() {
+        return virtualConnectors;
+    }
+
+    LinkedHashSet<String> getVirtualBarriers() {
+        return virtualBarriers;
+    }
+
+    Function1<FailureInfo, HardwareFailureAction> getGenericFailureFunc() {
+        return genericFailureFunc;
+    }
+
+    Procedure1<SystemContext> getInitializationFunc() {
+        return initializationFunc;
+    }
+
+    Procedure1<SystemContext> getTerminationFunc() {
+        return terminationFunc;
+    }
+}
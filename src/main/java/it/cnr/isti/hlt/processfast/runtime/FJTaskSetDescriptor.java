@@ -0,0 +1,80 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime;
+
+import it.cnr.isti.hlt.processfast.core.TaskSetDescriptor;
+import it.cnr.isti.hlt.processfast.core.WithAttachedVirtualBarrierInfo;
+import it.cnr.isti.hlt.processfast.core.WithAttachedVirtualConnectorInfo;
+import it.cnr.isti.hlt.processfast.utils.Function1;
+import it.cnr.isti.hlt.processfast.utils.Pair;
+
+import java.util.Iterator;
+
+/**
+ * A {@link TaskSetDescriptor} implementation for {@link FJRuntime}.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+class FJTaskSetDescriptor extends FJRunnableDescriptor<TaskSetDescriptor> implements TaskSetDescriptor {
+
+    private final FJTaskSet taskSet;
+    private Function1<WithAttachedVirtualConnectorInfo, Iterator<Pair<String, String>>> virtualConnectorsFunc;
+    private Function1<WithAttachedVirtualBarrierInfo, Iterator<Pair<String, String>>> virtualBarriersFunc;
+
+    FJTaskSetDescriptor(FJTaskSet taskSet) {
+        if (taskSet == null)
+            throw new NullPointerException("The tasks set is 'null'");
+        this.taskSet = taskSet;
+    }
+
+    @Override
+    protected TaskSetDescriptor self() {
+        return this;
+    }
+
+    @Override
+    public TaskSetDescriptor withAttachedVirtualConnectors(Function1<WithAttachedVirtualConnectorInfo, Iterator<Pair<String, String>>> func) {
+        if (func == null)
+            throw new NullPointerException("The function is 'null'");
+        this.virtualConnectorsFunc = func;
+        return this;
+    }
+
+    @Override
+    public TaskSetDescriptor withAttachedVirtualBarriers(Function1<WithAttachedVirtualBarrierInfo, Iterator<Pair<String, String>>> func) {
+        if (func == null)
+            throw new NullPointerException("The function is 'null'");
+        this.virtualBarriersFunc = func;
+        return this;
+    }
+
+    FJTaskSet getTaskSet() {
+        return taskSet;
+    }
+
+    Function1<WithAttachedVirtualConnectorInfo, Iterator<Pair<String, String>>> getVirtualConnectorsFunc() {
+        return virtualConnectorsFunc;
+    }
+
+    Function1<WithAttachedVirtualBarrierInfo, Iterator<Pair<String, String>>> getVirtualBarriersFunc() {
+        return virtualBarriersFunc;
+    }
+}
@@ -0,0 +1,381 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime;
+
+import it.cnr.isti.hlt.processfast.connector.ConnectorCapability;
+import it.cnr.isti.hlt.processfast.connector.ConnectorType;
+import it.cnr.isti.hlt.processfast.core.FailureInfo;
+import it.cnr.isti.hlt.processfast.core.HardwareFailureAction;
+import it.cnr.isti.hlt.processfast.core.Logger;
+import it.cnr.isti.hlt.processfast.data.Dictionary;
+import it.cnr.isti.hlt.processfast.data.RamDictionary;
+import it.cnr.isti.hlt.processfast.data.ReadableDictionary;
+import it.cnr.isti.hlt.processfast.utils.Function1;
+import it.cnr.isti.hlt.processfast.utils.Pair;
+import it.cnr.isti.hlt.processfast.utils.Triple;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A running instance of a {@link FJTaskSet}. The instance is first prepared, creating all
+ * connectors, barriers and task instances of the whole tree of tasks sets, and then started.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+class FJTaskSetInstance {
+
+    private final FJApplication application;
+    private final FJTaskSet taskSet;
+    private final FJTaskSetInstance parent;
+    private final FJTaskSetDescriptor descriptor;
+    private final String name;
+    private final Dictionary dataDictionary;
+
+    /**
+     * The connectors visible in this tasks set, including the virtual connectors bound to a
+     * connector of the parent tasks set.
+     */
+    private final HashMap<String, FJConnector> connectors = new HashMap<>();
+
+    /**
+     * The barriers visible in this tasks set, including the virtual barriers bound to a
+     * barrier of the parent tasks set.
+     */
+    private final HashMap<String, FJBarrier> barriers = new HashMap<>();
+
+    private final List<FJTaskInstance> taskInstances = new ArrayList<>();
+    private final List<FJTaskSetInstance> children = new ArrayList<>();
+    private final List<FJTaskGroup> groups = new ArrayList<>();
+
+    /**
+     * The names of all runnables created in this tasks set.
+     */
+    private final HashSet<String> usedNames = new HashSet<>();
+
+    /**
+     * The executions of the runnables of this tasks set, 'null' once all of them have terminated.
+     */
+    private List<CompletableFuture<Void>> running;
+
+    FJTaskSetInstance(FJApplication application, FJTaskSet taskSet, FJTaskSetInstance parent,
+                      FJTaskSetDescriptor descriptor, String name, Dictionary dataDictionary) {
+        this.application = application;
+        this.taskSet = taskSet;
+        this.parent = parent;
+        this.descriptor = descriptor;
+        this.name = name;
+        this.dataDictionary = dataDictionary;
+    }
+
+    FJApplication getApplication() {
+        return application;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    Dictionary getDataDictionary() {
+        return dataDictionary;
+    }
+
+    FJConnector getConnector(String name) {
+        return connectors.get(name);
+    }
+
+    Logger getLogger() {
+        return application.getRuntime().getLogManager().getLogger(FJRuntime.class.getName());
+    }
+
+    /**
+     * Create all connectors, barriers and runnable instances of this tasks set and of the nested
+     * tasks sets. The virtual connectors and barriers must have already been bound by the parent.
+     */
+    void prepare() {
+        for (String virtualName : taskSet.getVirtualConnectors()) {
+            if (!connectors.containsKey(virtualName))
+                throw new IllegalStateException("The virtual connector " + virtualName + " of tasks set " + name + " is not attached to any connector");
+        }
+        for (String virtualName : taskSet.getVirtualBarriers()) {
+            if (!barriers.containsKey(virtualName))
+                throw new IllegalStateException("The virtual barrier " + virtualName + " of tasks set " + name + " is not attached to any barrier");
+        }
+        for (Map.Entry<String, Pair<ConnectorType, Integer>> entry : taskSet.getConnectors().entrySet())
+            connectors.put(entry.getKey(), FJConnector.create(entry.getKey(), entry.getValue().getV1(), entry.getValue().getV2()));
+        for (String barrierName : taskSet.getBarriers())
+            barriers.put(barrierName, new FJBarrier(barrierName));
+
+        FJConnectorManager connectorManager = new FJConnectorManager(this);
+        HashMap<String, FJTaskInstance> instancesByName = new HashMap<>();
+        List<FJRunnableDescriptor<?>> descriptors = taskSet.getDescriptors();
+        for (int declIdx = 0; declIdx < descriptors.size(); declIdx++) {
+            FJRunnableDescriptor<?> d = descriptors.get(declIdx);
+            int numInstances = d.getMinNumInstances();
+            FJTaskGroup group = d instanceof FJTaskDescriptor ? new FJTaskGroup(this, (FJTaskDescriptor) d, declIdx) : null;
+            if (group != null)
+                groups.add(group);
+            for (int instanceIdx = 0; instanceIdx < numInstances; instanceIdx++) {
+                String instanceName = computeName(d, declIdx, instanceIdx);
+                if (!usedNames.add(instanceName))
+                    throw new IllegalStateException("The name " + instanceName + " is used by several runnables in tasks set " + name);
+                if (group != null) {
+                    FJTaskInstance instance = createTaskInstance(group, instanceName, instanceIdx, numInstances, connectorManager);
+                    taskInstances.add(instance);
+                    instancesByName.put(instanceName, instance);
+                } else {
+                    children.add(createTaskSetInstance((FJTaskSetDescriptor) d, instanceName, instanceIdx, numInstances));
+                }
+            }
+        }
+
+        for (Triple<String, String, ConnectorCapability> attachment : connectorManager.getAttachments()) {
+            FJTaskInstance instance = instancesByName.get(attachment.getV1());
+            if (instance == null)
+                throw new IllegalArgumentException("The task " + attachment.getV1() + " attached to connector " + attachment.getV2() + " does not exist in tasks set " + name);
+            instance.attachConnector(attachment.getV2(), connectors.get(attachment.getV2()), attachment.getV3());
+        }
+
+        for (FJTaskGroup group : groups) {
+            if (group.initElasticity())
+                application.addElasticGroup(group);
+        }
+
+        for (FJTaskSetInstance child : children)
+            child.prepare();
+    }
+
+    private String computeName(FJRunnableDescriptor<?> d, int declIdx, int instanceIdx) {
+        if (d.getNameSelector() != null) {
+            String selected = d.getNameSelector().call(instanceIdx);
+            if (selected == null || selected.isEmpty())
+                throw new IllegalArgumentException("The name selected for the runnable " + declIdx + " of tasks set " + name + " is 'null' or empty");
+            return selected;
+        }
+        if (d instanceof FJTaskDescriptor)
+            return "task_" + declIdx + "_" + instanceIdx;
+        return "tasksset_" + declIdx + "_" + instanceIdx;
+    }
+
+    private Dictionary createDataDictionary(FJRunnableDescriptor<?> d, String instanceName, int instanceIdx,
+                                            int numInstances, ReadableDictionary initialData) {
+        RamDictionary dict = new RamDictionary();
+        if (initialData != null)
+            copyDictionary(initialData, dict);
+        if (d.getDataDictionaryFunc() != null) {
+            Dictionary input = d.getDataDictionary() != null ? d.getDataDictionary() : dataDictionary;
+            Dictionary computed = d.getDataDictionaryFunc().call(new FJTaskInfo(application.getRuntime(), instanceName, instanceIdx, numInstances, input, null));
+            if (computed != null)
+                copyDictionary(computed, dict);
+        }
+        return dict;
+    }
+
+    private String computeVirtualMachineName(FJRunnableDescriptor<?> d, String instanceName, int instanceIdx,
+                                             int numInstances, Dictionary dict) {
+        if (d.getMachineSelector() == null)
+            return FJRuntime.LOCAL_VIRTUAL_MACHINE;
+        String vm = d.getMachineSelector().call(new FJTaskInfo(application.getRuntime(), instanceName, instanceIdx, numInstances, dict, null));
+        return vm == null || vm.isEmpty() ? FJRuntime.LOCAL_VIRTUAL_MACHINE : vm;
+    }
+
+    private FJTaskInstance createTaskInstance(FJTaskGroup group, String instanceName, int instanceIdx, int numInstances,
+                                              FJConnectorManager connectorManager) {
+        FJRuntime runtime = application.getRuntime();
+        FJTaskDescriptor d = group.getDescriptor();
+        Dictionary dict = createDataDictionary(d, instanceName, instanceIdx, numInstances, null);
+        FJTaskInstance instance = new FJTaskInstance(this, group, instanceName, instanceIdx, dict);
+        group.addInstance(instance);
+        instance.setVirtualMachineName(computeVirtualMachineName(d, instanceName, instanceIdx, numInstances, dict));
+        if (d.getConnectorsFunc() != null)
+            d.getConnectorsFunc().call(new FJTaskInfo(runtime, instanceName, instanceIdx, numInstances, dict, connectorManager));
+        if (d.getBarriersFunc() != null) {
+            Iterator<String> barrierNames = d.getBarriersFunc().call(new FJTaskInfo(runtime, instanceName, instanceIdx, numInstances, dict, null));
+            while (barrierNames != null && barrierNames.hasNext()) {
+                String barrierName = barrierNames.next();
+                FJBarrier barrier = barriers.get(barrierName);
+                if (barrier == null)
+                    throw new IllegalArgumentException("The barrier " + barrierName + " used by task " + instanceName + " is not declared in tasks set " + name);
+                instance.attachBarrier(barrierName, barrier);
+            }
+        }
+        return instance;
+    }
+
+    private FJTaskSetInstance createTaskSetInstance(FJTaskSetDescriptor d, String instanceName, int instanceIdx, int numInstances) {
+        FJRuntime runtime = application.getRuntime();
+        Dictionary dict = createDataDictionary(d, instanceName, instanceIdx, numInstances, d.getTaskSet().getDataDictionary());
+        FJTaskSetInstance child = new FJTaskSetInstance(application, d.getTaskSet(), this, d, instanceName, dict);
+        if (d.getVirtualConnectorsFunc() != null) {
+            Iterator<Pair<String, String>> bindings = d.getVirtualConnectorsFunc().call(new FJTaskInfo(runtime, instanceName, instanceIdx, numInstances, dict, null));
+            while (bindings != null && bindings.hasNext()) {
+                Pair<String, String> binding = bindings.next();
+                if (!d.getTaskSet().getVirtualConnectors().contains(binding.getV1()))
+                    throw new IllegalArgumentException("The virtual connector " + binding.getV1() + " is not declared in tasks set " + instanceName);
+                FJConnector connector = connectors.get(binding.getV2());
+                if (connector == null)
+                    throw new IllegalArgumentException("The connector " + binding.getV2() + " is not declared in tasks set " + name);
+                child.connectors.put(binding.getV1(), connector);
+            }
+        }
+        if (d.getVirtualBarriersFunc() != null) {
+            Iterator<Pair<String, String>> bindings = d.getVirtualBarriersFunc().call(new FJTaskInfo(runtime, instanceName, instanceIdx, numInstances, dict, null));
+            while (bindings != null && bindings.hasNext()) {
+                Pair<String, String> binding = bindings.next();
+                if (!d.getTaskSet().getVirtualBarriers().contains(binding.getV1()))
+                    throw new IllegalArgumentException("The virtual barrier " + binding.getV1() + " is not declared in tasks set " + instanceName);
+                FJBarrier barrier = barriers.get(binding.getV2());
+                if (barrier == null)
+                    throw new IllegalArgumentException("The barrier " + binding.getV2() + " is not declared in tasks set " + name);
+                child.barriers.put(binding.getV1(), barrier);
+            }
+        }
+        return child;
+    }
+
+    /**
+     * Run this tasks set: call the initialization function, run all the runnable instances
+     * concurrently on the pool of the runtime, wait for their termination and finally call
+     * the termination function.
+     */
+    void start() {
+        FJRuntime runtime = application.getRuntime();
+        try {
+            if (taskSet.getInitializationFunc() != null)
+                taskSet.getInitializationFunc().call(runtime);
+        } catch (Throwable t) {
+            application.abort(new FJTaskException(name, FJRuntime.LOCAL_VIRTUAL_MACHINE, "The initialization of tasks set " + name + " has failed", t));
+            return;
+        }
+
+        List<CompletableFuture<Void>> started = new ArrayList<>();
+        synchronized (this) {
+            running = started;
+            for (FJTaskInstance instance : taskInstances)
+                running.add(runtime.execute(instance::run));
+            for (FJTaskSetInstance child : children)
+                running.add(runtime.execute(child::start));
+        }
+        while (true) {
+            List<CompletableFuture<Void>> snapshot;
+            synchronized (this) {
+                snapshot = new ArrayList<>(running);
+            }
+            FJBlocking.get(CompletableFuture.allOf(snapshot.toArray(new CompletableFuture<?>[snapshot.size()])));
+            synchronized (this) {
+                if (running.size() == snapshot.size()) {
+                    running = null;
+                    break;
+                }
+            }
+        }
+
+        if (application.isAborted() || taskSet.getTerminationFunc() == null)
+            return;
+        try {
+            taskSet.getTerminationFunc().call(runtime);
+        } catch (Throwable t) {
+            application.abort(new FJTaskException(name, FJRuntime.LOCAL_VIRTUAL_MACHINE, "The termination of tasks set " + name + " has failed", t));
+        }
+    }
+
+    /**
+     * Create and start a new instance of the task managed by the specified group. Called by the
+     * group, with the group lock held, while at least one instance of the group is running.
+     *
+     * @param group          The group of the task.
+     * @param instanceNumber The number of the new instance.
+     */
+    synchronized void spawnInstance(FJTaskGroup group, int instanceNumber) {
+        if (running == null || application.isAborted())
+            return;
+        FJTaskDescriptor d = group.getDescriptor();
+        String instanceName = computeName(d, group.getDeclarationIndex(), instanceNumber);
+        if (!usedNames.add(instanceName) && !isNameOfGroup(group, instanceName))
+            throw new IllegalStateException("The name " + instanceName + " is used by several runnables in tasks set " + name);
+
+        FJConnectorManager connectorManager = new FJConnectorManager(this);
+        FJTaskInstance instance = createTaskInstance(group, instanceName, instanceNumber, instanceNumber + 1, connectorManager);
+        for (Triple<String, String, ConnectorCapability> attachment : connectorManager.getAttachments()) {
+            if (attachment.getV1().equals(instanceName))
+                instance.attachConnector(attachment.getV2(), connectors.get(attachment.getV2()), attachment.getV3());
+        }
+        getLogger().debug("Adding instance " + instanceName + " to tasks set " + name);
+        taskInstances.add(instance);
+        running.add(application.getRuntime().execute(instance::run));
+    }
+
+    private boolean isNameOfGroup(FJTaskGroup group, String instanceName) {
+        for (FJTaskInstance instance : taskInstances) {
+            if (instance.getTaskName().equals(instanceName))
+                return instance.getDescriptor() == group.getDescriptor();
+        }
+        return false;
+    }
+
+    /**
+     * Decide what to do after the failure of a task instance, asking to the enclosing tasks
+     * sets when required.
+     *
+     * @param func     The failure function declared on the failed runnable or 'null'.
+     * @param instance The failed task instance.
+     * @return The action to perform.
+     */
+    HardwareFailureAction resolveFailureAction(Function1<FailureInfo, HardwareFailureAction> func, FJTaskInstance instance) {
+        FailureInfo info = new FJTaskInfo(application.getRuntime(), instance.getTaskName(), instance.getInstanceNumber(),
+                instance.getNumTotalInstances(), instance.getPrivateDataDictionary(), null);
+        HardwareFailureAction action = func != null ? func.call(info) : HardwareFailureAction.ASK_PARENT;
+        FJTaskSetInstance current = this;
+        while (action == null || action == HardwareFailureAction.ASK_PARENT) {
+            Function1<FailureInfo, HardwareFailureAction> generic = current.taskSet.getGenericFailureFunc();
+            if (generic != null) {
+                action = generic.call(info);
+                if (action != null && action != HardwareFailureAction.ASK_PARENT)
+                    break;
+            }
+            if (current.parent == null) {
+                action = HardwareFailureAction.APPLICATION_TERMINATION;
+                break;
+            }
+            Function1<FailureInfo, HardwareFailureAction> parentFunc = current.descriptor.getFailureFunc();
+            current = current.parent;
+            action = parentFunc != null ? parentFunc.call(info) : HardwareFailureAction.ASK_PARENT;
+        }
+        if (action == HardwareFailureAction.RESTART_TASKS_SET || action == HardwareFailureAction.APPLICATION_RESTART) {
+            getLogger().warning("The failure action " + action + " is not supported by this runtime, terminating the application");
+            return HardwareFailureAction.APPLICATION_TERMINATION;
+        }
+        return action;
+    }
+
+    static void copyDictionary(ReadableDictionary from, Dictionary to) {
+        Iterator<String> keys = from.keySet();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            to.put(key, from.get(key));
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime;
+
+import it.cnr.isti.hlt.processfast.connector.ValuePromise;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A value promise backed by a completable future. Waiting for the value
+ * cooperates with the fork/join pool used by {@link FJRuntime}.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+public class FJValuePromise<T> implements ValuePromise<T> {
+
+    private final CompletableFuture<T> future;
+
+    public FJValuePromise(CompletableFuture<T> future) {
+        if (future == null)
+            throw new NullPointerException("The specified future is 'null'");
+        this.future = future;
+    }
+
+    @Override
+    public T get() {
+        return FJBlocking.get(future);
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime.data;
+
+import it.cnr.isti.hlt.processfast.core.TaskDataContext;
+import it.cnr.isti.hlt.processfast.data.DoubleDataSourceIteratorProvider;
+import it.cnr.isti.hlt.processfast.data.DoublePartitionableDataset;
+import it.cnr.isti.hlt.processfast.data.DoubleStatistics;
+import it.cnr.isti.hlt.processfast.data.PDDoubleFunction;
+import it.cnr.isti.hlt.processfast.data.PDDoublePredicate;
+import it.cnr.isti.hlt.processfast.utils.Pair;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.function.DoubleConsumer;
+import java.util.function.ObjDoubleConsumer;
+import java.util.function.Supplier;
+
+/**
+ * A {@link DoublePartitionableDataset} executed on the fork/join pool of the owning runtime. The
+ * transformations of the lineage are fused in a chain of primitive consumers, so the values are
+ * never boxed from the data source to the accumulators of the actions.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+public class FJDoublePartitionableDataset implements DoublePartitionableDataset {
+
+    /**
+     * A transformation of the values of the dataset.
+     */
+    private interface Transformation {
+        DoubleConsumer wrap(TaskDataContext ctx, DoubleConsumer downstream);
+    }
+
+    private final PDEnvironment env;
+    private final DoubleDataSourceIteratorProvider source;
+    private final List<Transformation> transformations;
+    private int partitionSize = PDEnvironment.DEFAULT_PARTITION_SIZE;
+
+    public FJDoublePartitionableDataset(PDEnvironment env, DoubleDataSourceIteratorProvider source) {
+        this(env, source, Collections.<Transformation>emptyList());
+    }
+
+    private FJDoublePartitionableDataset(PDEnvironment env, DoubleDataSourceIteratorProvider source, List<Transformation> transformations) {
+        if (env == null)
+            throw new NullPointerException("The environment is 'null'");
+        if (source == null)
+            throw new NullPointerException("The data source is 'null'");
+        this.env = env;
+        this.source = source;
+        this.transformations = transformations;
+    }
+
+    private FJDoublePartitionableDataset derive(Transformation t) {
+        List<Transformation> ts = new ArrayList<>(transformations.size() + 1);
+        ts.addAll(transformations);
+        ts.add(t);
+        FJDoublePartitionableDataset ds = new FJDoublePartitionableDataset(env, source, ts);
+        ds.partitionSize = partitionSize;
+        return ds;
+    }
+
+    /**
+     * Run the lineage of this dataset on every partition, adding the values to a new accumulator
+     * for each partition.
+     *
+     * @return The accumulators of the partitions, in the order of the data source.
+     */
+    private <A> List<A> execute(Supplier<A> newAccumulator, ObjDoubleConsumer<A> add) {
+        TaskDataContext ctx = new FJTaskDataContext(new HashMap<>(), env.getStorageManager());
+        List<DoubleDataSourceIteratorProvider> parts = PDPrimitiveExecutor.split(source, DoubleDataSourceIteratorProvider::size,
+                DoubleDataSourceIteratorProvider::trySplit, partitionSize);
+        return PDPrimitiveExecutor.run(env, parts, part -> {
+            A accumulator = newAccumulator.get();
+            DoubleConsumer sink = v -> add.accept(accumulator, v);
+            for (int i = transformations.size() - 1; i >= 0; i--)
+                sink = transformations.get(i).wrap(ctx, sink);
+            PrimitiveIterator.OfDouble values = part.iterator();
+            while (values.hasNext())
+                sink.accept(values.nextDouble());
+            return accumulator;
+        });
+    }
+
+    @Override
+    public DoublePartitionableDataset withPartitionSize(int partitionSize) {
+        if (partitionSize < 1)
+            throw new IllegalArgumentException("The partition size is less than 1");
+        FJDoublePartitionableDataset ds = new FJDoublePartitionableDataset(env, source, transformations);
+        ds.partitionSize = partitionSize;
+        return ds;
+    }
+
+    @Override
+    public DoublePartitionableDataset map(PDDoubleFunction func) {
+        if (func == null)
+            throw new NullPointerException("The function is 'null'");
+        return derive((ctx, downstream) -> v -> downstream.accept(func.call(ctx, v)));
+    }
+
+    @Override
+    public DoublePartitionableDataset filter(PDDoublePredicate func) {
+        if (func == null)
+            throw new NullPointerException("The function is 'null'");
+        return derive((ctx, downstream) -> v -> {
+            if (func.call(ctx, v))
+                downstream.accept(v);
+        });
+    }
+
+    @Override
+    public double[] collect() {
+        List<Buffer> buffers = execute(Buffer::new, Buffer::add);
+        int size = 0;
+        for (Buffer buffer : buffers)
+            size += buffer.size;
+        double[] ret = new double[size];
+        int pos = 0;
+        for (Buffer buffer : buffers) {
+            System.arraycopy(buffer.values, 0, ret, pos, buffer.size);
+            pos += buffer.size;
+        }
+        return ret;
+    }
+
+    @Override
+    public long count() {
+        if (transformations.isEmpty())
+            return source.size();
+        long count = 0;
+        for (long[] partial : execute(() -> new long[1], (c, v) -> c[0]++))
+            count += partial[0];
+        return count;
+    }
+
+    @Override
+    public DoubleStatistics stats() {
+        DoubleStatistics ret = new DoubleStatistics();
+        for (DoubleStatistics partial : execute(DoubleStatistics::new, DoubleStatistics::add))
+            ret.merge(partial);
+        return ret;
+    }
+
+    @Override
+    public double sum() {
+        double sum = 0;
+        for (double[] partial : execute(() -> new double[1], (s, v) -> s[0] += v))
+            sum += partial[0];
+        return sum;
+    }
+
+    @Override
+    public double mean() {
+        return stats().getMean();
+    }
+
+    @Override
+    public double min() {
+        return stats().getMin();
+    }
+
+    @Override
+    public double max() {
+        return stats().getMax();
+    }
+
+    @Override
+    public double variance() {
+        return stats().getVariance();
+    }
+
+    @Override
+    public double stdev() {
+        return stats().getStdev();
+    }
+
+    @Override
+    public long[] histogram(double[] buckets) {
+        if (buckets == null)
+            throw new NullPointerException("The buckets are 'null'");
+        if (buckets.length < 2)
+            throw new IllegalArgumentException("The number of bucket edges is less than 2");
+        for (int i = 1; i < buckets.length; i++) {
+            if (!(buckets[i - 1] < buckets[i]))
+                throw new IllegalArgumentException("The bucket edges are not sorted in increasing order");
+        }
+        double[] edges = buckets.clone();
+        long[] ret = new long[edges.length - 1];
+        for (long[] partial : execute(() -> new long[edges.length - 1], (counts, v) -> {
+            int bucket = bucketOf(edges, v);
+            if (bucket >= 0)
+                counts[bucket]++;
+        })) {
+            for (int i = 0; i < ret.length; i++)
+                ret[i] += partial[i];
+        }
+        return ret;
+    }
+
+    @Override
+    public Pair<double[], long[]> histogram(int numBuckets) {
+        if (numBuckets < 1)
+            throw new IllegalArgumentException("The number of buckets is less than 1");
+        DoubleStatistics stats = stats();
+        double min = stats.getMin();
+        double max = stats.getMax();
+        if (Double.isNaN(min) || Double.isNaN(max) || Double.isInfinite(min) || Double.isInfinite(max))
+            throw new IllegalStateException("The values of the dataset have no finite range");
+        double[] edges;
+        if (min == max) {
+            edges = new double[]{min, max};
+            return new Pair<>(edges, new long[]{stats.getCount()});
+        }
+        edges = new double[numBuckets + 1];
+        for (int i = 0; i < numBuckets; i++)
+            edges[i] = min + (max - min) * i / numBuckets;
+        edges[numBuckets] = max;
+        return new Pair<>(edges, histogram(edges));
+    }
+
+    /**
+     * Get the bucket containing a value.
+     *
+     * @return The index of the bucket, or -1 if the value is not in any bucket.
+     */
+    private static int bucketOf(double[] edges, double v) {
+        if (!(v >= edges[0] && v <= edges[edges.length - 1]))
+            return -1;
+        if (v == edges[edges.length - 1])
+            return edges.length - 2;
+        int idx = Arrays.binarySearch(edges, v);
+        return idx >= 0 ? idx : -idx - 2;
+    }
+
+
+    /**
+     * A growable array of the values of a partition.
+     */
+    private static class Buffer {
+        private double[] values = new double[16];
+        private int size;
+
+        void add(double v) {
+            if (size == values.length)
+                values = Arrays.copyOf(values, size * 2);
+            values[size++] = v;
+        }
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime.data;
+
+import it.cnr.isti.hlt.processfast.core.TaskDataContext;
+import it.cnr.isti.hlt.processfast.data.LongDataSourceIteratorProvider;
+import it.cnr.isti.hlt.processfast.data.LongPartitionableDataset;
+import it.cnr.isti.hlt.processfast.data.LongStatistics;
+import it.cnr.isti.hlt.processfast.data.PDLongFunction;
+import it.cnr.isti.hlt.processfast.data.PDLongPredicate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.function.LongConsumer;
+import java.util.function.ObjLongConsumer;
+import java.util.function.Supplier;
+
+/**
+ * A {@link LongPartitionableDataset} executed on the fork/join pool of the owning runtime. The
+ * transformations of the lineage are fused in a chain of primitive consumers, so the values are
+ * never boxed from the data source to the accumulators of the actions.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+public class FJLongPartitionableDataset implements LongPartitionableDataset {
+
+    /**
+     * A transformation of the values of the dataset.
+     */
+    private interface Transformation {
+        LongConsumer wrap(TaskDataContext ctx, LongConsumer downstream);
+    }
+
+    private final PDEnvironment env;
+    private final LongDataSourceIteratorProvider source;
+    private final List<Transformation> transformations;
+    private int partitionSize = PDEnvironment.DEFAULT_PARTITION_SIZE;
+
+    public FJLongPartitionableDataset(PDEnvironment env, LongDataSourceIteratorProvider source) {
+        this(env, source, Collections.<Transformation>emptyList());
+    }
+
+    private FJLongPartitionableDataset(PDEnvironment env, LongDataSourceIteratorProvider source, List<Transformation> transformations) {
+        if (env == null)
+            throw new NullPointerException("The environment is 'null'");
+        if (source == null)
+            throw new NullPointerException("The data source is 'null'");
+        this.env = env;
+        this.source = source;
+        this.transformations = transformations;
+    }
+
+    private FJLongPartitionableDataset derive(Transformation t) {
+        List<Transformation> ts = new ArrayList<>(transformations.size() + 1);
+        ts.addAll(transformations);
+        ts.add(t);
+        FJLongPartitionableDataset ds = new FJLongPartitionableDataset(env, source, ts);
+        ds.partitionSize = partitionSize;
+        return ds;
+    }
+
+    /**
+     * Run the lineage of this dataset on every partition, adding the values to a new accumulator
+     * for each partition.
+     *
+     * @return The accumulators of the partitions, in the order of the data source.
+     */
+    private <A> List<A> execute(Supplier<A> newAccumulator, ObjLongConsumer<A> add) {
+        TaskDataContext ctx = new FJTaskDataContext(new HashMap<>(), env.getStorageManager());
+        List<LongDataSourceIteratorProvider> parts = PDPrimitiveExecutor.split(source, LongDataSourceIteratorProvider::size,
+                LongDataSourceIteratorProvider::trySplit, partitionSize);
+        return PDPrimitiveExecutor.run(env, parts, part -> {
+            A accumulator = newAccumulator.get();
+            LongConsumer sink = v -> add.accept(accumulator, v);
+            for (int i = transformations.size() - 1; i >= 0; i--)
+                sink = transformations.get(i).wrap(ctx, sink);
+            PrimitiveIterator.OfLong values = part.iterator();
+            while (values.hasNext())
+                sink.accept(values.nextLong());
+            return accumulator;
+        });
+    }
+
+    @Override
+    public LongPartitionableDataset withPartitionSize(int partitionSize) {
+        if (partitionSize < 1)
+            throw new IllegalArgumentException("The partition size is less than 1");
+        FJLongPartitionableDataset ds = new FJLongPartitionableDataset(env, source, transformations);
+        ds.partitionSize = partitionSize;
+        return ds;
+    }
+
+    @Override
+    public LongPartitionableDataset map(PDLongFunction func) {
+        if (func == null)
+            throw new NullPointerException("The function is 'null'");
+        return derive((ctx, downstream) -> v -> downstream.accept(func.call(ctx, v)));
+    }
+
+    @Override
+    public LongPartitionableDataset filter(PDLongPredicate func) {
+        if (func == null)
+            throw new NullPointerException("The function is 'null'");
+        return derive((ctx, downstream) -> v -> {
+            if (func.call(ctx, v))
+                downstream.accept(v);
+        });
+    }
+
+    @Override
+    public long[] collect() {
+        List<Buffer> buffers = execute(Buffer::new, Buffer::add);
+        int size = 0;
+        for (Buffer buffer : buffers)
+            size += buffer.size;
+        long[] ret = new long[size];
+        int pos = 0;
+        for (Buffer buffer : buffers) {
+            System.arraycopy(buffer.values, 0, ret, pos, buffer.size);
+            pos += buffer.size;
+        }
+        return ret;
+    }
+
+    @Override
+    public long count() {
+        if (transformations.isEmpty())
+            return source.size();
+        long count = 0;
+        for (long[] partial : execute(() -> new long[1], (c, v) -> c[0]++))
+            count += partial[0];
+        return count;
+    }
+
+    @Override
+    public LongStatistics stats() {
+        LongStatistics ret = new LongStatistics();
+        for (LongStatistics partial : execute(LongStatistics::new, LongStatistics::add))
+            ret.merge(partial);
+        return ret;
+    }
+
+    @Override
+    public long sum() {
+        long sum = 0;
+        for (long[] partial : execute(() -> new long[1], (s, v) -> s[0] += v))
+            sum += partial[0];
+        return sum;
+    }
+
+    @Override
+    public double mean() {
+        return stats().getMean();
+    }
+
+    @Override
+    public long min() {
+        return stats().getLongMin();
+    }
+
+    @Override
+    public long max() {
+        return stats().getLongMax();
+    }
+
+    @Override
+    public double variance() {
+        return stats().getVariance();
+    }
+
+    @Override
+    public double stdev() {
+        return stats().getStdev();
+    }
+
+    @Override
+    public long[] histogram(long[] buckets) {
+        if (buckets == null)
+            throw new NullPointerException("The buckets are 'null'");
+        if (buckets.length < 2)
+            throw new IllegalArgumentException("The number of bucket edges is less than 2");
+        for (int i = 1; i < buckets.length; i++) {
+            if (buckets[i - 1] >= buckets[i])
+                throw new IllegalArgumentException("The bucket edges are not sorted in increasing order");
+        }
+        long[] edges = buckets.clone();
+        long[] ret = new long[edges.length - 1];
+        for (long[] partial : execute(() -> new long[edges.length - 1], (counts, v) -> {
+            int bucket = bucketOf(edges, v);
+            if (bucket >= 0)
+                counts[bucket]++;
+        })) {
+            for (int i = 0; i < ret.length; i++)
+                ret[i] += partial[i];
+        }
+        return ret;
+    }
+
+    /**
+     * Get the bucket containing a value.
+     *
+     * @return The index of the bucket, or -1 if the value is not in any bucket.
+     */
+    private static int bucketOf(long[] edges, long v) {
+        if (v < edges[0] || v > edges[edges.length - 1])
+            return -1;
+        if (v == edges[edges.length - 1])
+            return edges.length - 2;
+        int idx = Arrays.binarySearch(edges, v);
+        return idx >= 0 ? idx : -idx - 2;
+    }
+
+
+    /**
+     * A growable array of the values of a partition.
+     */
+    private static class Buffer {
+        private long[] values = new long[16];
+        private int size;
+
+        void add(long v) {
+            if (size == values.length)
+                values = Arrays.copyOf(values, size * 2);
+            values[size++] = v;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime.data;
+
+import it.cnr.isti.hlt.processfast.core.TaskDataContext;
+import it.cnr.isti.hlt.processfast.data.CacheType;
+import it.cnr.isti.hlt.processfast.data.DataIterable;
+import it.cnr.isti.hlt.processfast.data.ImmutableDataSourceIteratorProvider;
+import it.cnr.isti.hlt.processfast.data.PDFunction;
+import it.cnr.isti.hlt.processfast.data.PDFunction2;
+import it.cnr.isti.hlt.processfast.data.PairPartitionableDataset;
+import it.cnr.isti.hlt.processfast.data.PartitionableDataset;
+import it.cnr.isti.hlt.processfast.data.StorageManager;
+import it.cnr.isti.hlt.processfast.utils.Pair;
+import it.cnr.isti.hlt.processfast.utils.Procedure3;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link PairPartitionableDataset} executed on the fork/join pool of the owning runtime.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+public class FJPairPartitionableDataset<K extends Serializable, V extends Serializable>
+        extends FJPartitionableDataset<Pair<K, V>> implements PairPartitionableDataset<K, V> {
+
+    public FJPairPartitionableDataset(PDEnvironment env, ImmutableDataSourceIteratorProvider<Pair<K, V>> source) {
+        super(env, source);
+    }
+
+    FJPairPartitionableDataset(PDEnvironment env, ImmutableDataSourceIteratorProvider<?> source, List<PDTransformation> transformations) {
+        super(env, source, transformations);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    @Override
+    protected <Out extends Serializable> FJPartitionableDataset<Out> newInstance(ImmutableDataSourceIteratorProvider<?> source,
+                                                                                 List<PDTransformation> transformations) {
+        return (FJPartitionableDataset<Out>) copySettings(new FJPairPartitionableDataset(env, source, transformations));
+    }
+
+    @Override
+    public PairPartitionableDataset<K, V> reduceByKey(PDFunction2<V, V, V> func) {
+        return reduceByKey(func, PDEnvironment.DEFAULT_COMBINER_CAPACITY);
+    }
+
+    @Override
+    public PairPartitionableDataset<K, V> reduceByKey(PDFunction2<V, V, V> func, int combinerCapacity) {
+        return derivePair(new PDWideTransformations.ReduceByKey<K, V>(env.getShuffleMemoryBudget(), func, combinerCapacity));
+    }
+
+    @Override
+    public PairPartitionableDataset<K, V> sortByKey(boolean ascending) {
+        return derivePair(new PDWideTransformations.SortByKey<K, V>(env.getShuffleMemoryBudget(), ascending));
+    }
+
+    @Override
+    public PairPartitionableDataset<K, DataIterable<V>> groupByKey() {
+        return derivePair(new PDWideTransformations.GroupByKey<K, V>(env.getShuffleMemoryBudget()));
+    }
+
+    /**
+     * Get the order of the keys of this dataset, as known from its lineage.
+     *
+     * @return True if the keys are ascending, false if they are descending, 'null' if their order is not known.
+     */
+    Boolean getKeyOrder() {
+        for (int i = transformations.size() - 1; i >= 0; i--) {
+            PDTransformation t = transformations.get(i);
+            if (t instanceof PDWideTransformations.KeySorted)
+                return ((PDWideTransformations.KeySorted) t).isAscending();
+            if (!(t instanceof PDNarrowTransformation) || !((PDNarrowTransformation<?, ?>) t).preservesKeyOrder())
+                return null;
+        }
+        return null;
+    }
+
+    /**
+     * Join with the specified dataset choosing the strategy by the known sizes and orders of
+     * the two sides:
+     * <ul>
+     * <li>if a side has at most {@link PDEnvironment#BROADCAST_JOIN_THRESHOLD} pairs, it is
+     * loaded in a hash table and the other side is joined where it is, without shuffle;</li>
+     * <li>if both sides are sorted by key in the same order, they are joined by merging
+     * them;</li>
+     * <li>otherwise both sides are shuffled by key in a partitioned hash join.</li>
+     * </ul>
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    @Override
+    public <T extends Serializable> PairPartitionableDataset<K, Pair<V, T>> join(PairPartitionableDataset<K, T> dataset) {
+        if (dataset == null)
+            throw new NullPointerException("The dataset is 'null'");
+        FJPairPartitionableDataset<K, T> other = dataset instanceof FJPairPartitionableDataset ? (FJPairPartitionableDataset<K, T>) dataset : null;
+        long otherSize = other != null ? other.getKnownSize() : -1;
+        if (otherSize >= 0 && otherSize <= PDEnvironment.BROADCAST_JOIN_THRESHOLD)
+            return derivePair(new PDNarrowTransformations.BroadcastJoin<K, V, T>(asLazyDataSource(dataset), false));
+        long size = getKnownSize();
+        if (other != null && size >= 0 && size <= PDEnvironment.BROADCAST_JOIN_THRESHOLD)
+            return (PairPartitionableDataset) other.derivePair(new PDNarrowTransformations.BroadcastJoin<K, T, V>(asLazyDataSource(this), true));
+        Boolean keyOrder = getKeyOrder();
+        if (other != null && keyOrder != null && keyOrder.equals(other.getKeyOrder()))
+            return derivePair(new PDWideTransformations.SortMergeJoin<K, V, T>(env.getShuffleMemoryBudget(), dataset, keyOrder));
+        return derivePair(new PDWideTransformations.Join<K, V, T>(env.getShuffleMemoryBudget(), size, dataset, otherSize));
+    }
+
+    @Override
+    public PairPartitionableDataset<K, V> cache(CacheType cacheType) {
+        return (PairPartitionableDataset<K, V>) super.cache(cacheType);
+    }
+
+    @Override
+    public PairPartitionableDataset<K, V> saveOnStorageManager(Procedure3<TaskDataContext, StorageManager, Pair<K, V>> func) {
+        super.saveOnStorageManager(func);
+        return this;
+    }
+
+    @Override
+    public PairPartitionableDataset<K, V> enableLocalComputation(boolean enable) {
+        return (PairPartitionableDataset<K, V>) super.enableLocalComputation(enable);
+    }
+
+    @Override
+    public PartitionableDataset<V> values() {
+        return derive(new PDNarrowTransformations.Values<K, V>());
+    }
+
+    @Override
+    public PairPartitionableDataset<K, V> sampleByKey(boolean withReplacement, Map<K, Double> fractions, long seed) {
+        return derivePair(new PDNarrowTransformations.SampleByKey<K, V>(withReplacement, fractions, seed));
+    }
+
+    @Override
+    public List<Pair<K, Long>> topKeysApprox(int k, double relativeError) {
+        return this.<K>map((ctx, item) -> item.getV1()).topKApprox(k, relativeError);
+    }
+
+    @Override
+    public <T extends Serializable> PairPartitionableDataset<K, T> mapValues(PDFunction<V, T> func) {
+        return derivePair(new PDNarrowTransformations.MapValues<K, V, T>(func));
+    }
+
+    @Override
+    public PairPartitionableDataset<K, V> distinct() {
+        return (PairPartitionableDataset<K, V>) super.distinct();
+    }
+
+    @Override
+    public PairPartitionableDataset<K, V> withPartitionSize(int partitionSize) {
+        return (PairPartitionableDataset<K, V>) super.withPartitionSize(partitionSize);
+    }
+
+    @Override
+    public PairPartitionableDataset<K, V> union(PartitionableDataset<Pair<K, V>> dataset) {
+        return (PairPartitionableDataset<K, V>) super.union(dataset);
+    }
+}
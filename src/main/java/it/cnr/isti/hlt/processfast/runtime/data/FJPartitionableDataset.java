@@ -0,0 +1,498 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime.data;
+
+import it.cnr.isti.hlt.processfast.core.TaskDataContext;
+import it.cnr.isti.hlt.processfast.data.CacheType;
+import it.cnr.isti.hlt.processfast.data.DataIterable;
+import it.cnr.isti.hlt.processfast.data.ImmutableDataSourceIteratorProvider;
+import it.cnr.isti.hlt.processfast.data.PDFunction;
+import it.cnr.isti.hlt.processfast.data.PDFunction2;
+import it.cnr.isti.hlt.processfast.data.PDPairFunction;
+import it.cnr.isti.hlt.processfast.data.PDProcedure;
+import it.cnr.isti.hlt.processfast.data.PairPartitionableDataset;
+import it.cnr.isti.hlt.processfast.data.PartitionableDataset;
+import it.cnr.isti.hlt.processfast.data.SplittableDataSourceIteratorProvider;
+import it.cnr.isti.hlt.processfast.data.StorageManager;
+import it.cnr.isti.hlt.processfast.utils.Pair;
+import it.cnr.isti.hlt.processfast.utils.Procedure3;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A {@link PartitionableDataset} executed on the fork/join pool of the owning runtime. A dataset
+ * is an immutable description made of a data source and a lineage of transformations,
+ * which is evaluated only when an action is invoked.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+public class FJPartitionableDataset<T extends Serializable> implements PartitionableDataset<T> {
+
+    protected final PDEnvironment env;
+    protected final ImmutableDataSourceIteratorProvider<?> source;
+    protected final List<PDTransformation> transformations;
+    protected int partitionSize = PDEnvironment.DEFAULT_PARTITION_SIZE;
+    protected boolean localComputation;
+    protected HashMap<String, Serializable> inputData = new HashMap<>();
+
+    /**
+     * The cached data owned by this dataset, deleted by {@link #close()}.
+     */
+    private List<PDTemporaryDataSource> ownedCaches = new ArrayList<>();
+
+    public FJPartitionableDataset(PDEnvironment env, ImmutableDataSourceIteratorProvider<T> source) {
+        this(env, source, Collections.<PDTransformation>emptyList());
+    }
+
+    FJPartitionableDataset(PDEnvironment env, ImmutableDataSourceIteratorProvider<?> source, List<PDTransformation> transformations) {
+        if (env == null)
+            throw new NullPointerException("The environment is 'null'");
+        if (source == null)
+            throw new NullPointerException("The data source is 'null'");
+        this.env = env;
+        this.source = source;
+        this.transformations = transformations;
+    }
+
+    /**
+     * Create a new dataset of the same kind of this one, with the same settings and the specified plan.
+     */
+    protected <Out extends Serializable> FJPartitionableDataset<Out> newInstance(ImmutableDataSourceIteratorProvider<?> source,
+                                                                                 List<PDTransformation> transformations) {
+        return copySettings(new FJPartitionableDataset<Out>(env, source, transformations));
+    }
+
+    protected <D extends FJPartitionableDataset<?>> D copySettings(D ds) {
+        ds.partitionSize = partitionSize;
+        ds.localComputation = localComputation;
+        ds.inputData = new HashMap<>(inputData);
+        return ds;
+    }
+
+    protected List<PDTransformation> append(PDTransformation t) {
+        List<PDTransformation> ret = new ArrayList<>(transformations.size() + 1);
+        ret.addAll(transformations);
+        ret.add(t);
+        return ret;
+    }
+
+    protected <Out extends Serializable> FJPartitionableDataset<Out> derive(PDTransformation t) {
+        return copySettings(new FJPartitionableDataset<Out>(env, source, append(t)));
+    }
+
+    protected <K extends Serializable, V extends Serializable> FJPairPartitionableDataset<K, V> derivePair(PDTransformation t) {
+        return copySettings(new FJPairPartitionableDataset<K, V>(env, source, append(t)));
+    }
+
+    protected <R> R execute(PDAction<?, ?, R> action) {
+        TaskDataContext ctx = new FJTaskDataContext(new HashMap<>(inputData), env.getStorageManager());
+        return new PDExecutor(env).execute(source, transformations, partitionSize, ctx, action);
+    }
+
+    /**
+     * Check if the lineage of this dataset contains only one-to-one transformations, so the
+     * dataset has the same number of items of its data source.
+     */
+    private boolean hasOneToOneLineage() {
+        for (PDTransformation t : transformations) {
+            if (!(t instanceof PDNarrowTransformation) || !((PDNarrowTransformation<?, ?>) t).isOneToOne())
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Get the number of items of this dataset if it can be known without computing it, i.e. if
+     * the data source gives its size cheaply and the lineage contains only one-to-one
+     * transformations. The size of a {@link SplittableDataSourceIteratorProvider} is known only
+     * if its estimate is exact, so that a rough estimate, like the one of the line-file
+     * providers, never drives a broadcast join.
+     *
+     * @return The number of items or -1 if it is not known.
+     */
+    long getKnownSize() {
+        if (!hasOneToOneLineage())
+            return -1;
+        if (source instanceof SplittableDataSourceIteratorProvider) {
+            SplittableDataSourceIteratorProvider<?> splittable = (SplittableDataSourceIteratorProvider<?>) source;
+            return splittable.isEstimateExact() ? splittable.estimateSize() : -1;
+        }
+        if (source instanceof PDLazyDataSourceIteratorProvider || source instanceof PDConcatDataSourceIteratorProvider
+                || !source.sizeEnabled())
+            return -1;
+        return source.size();
+    }
+
+    /**
+     * Get a data source giving the items of the specified dataset.
+     */
+    static <T extends Serializable> ImmutableDataSourceIteratorProvider<T> asDataSource(PartitionableDataset<T> dataset) {
+        if (dataset instanceof FJPartitionableDataset) {
+            FJPartitionableDataset<T> ds = (FJPartitionableDataset<T>) dataset;
+            if (ds.transformations.isEmpty()) {
+                @SuppressWarnings("unchecked")
+                ImmutableDataSourceIteratorProvider<T> src = (ImmutableDataSourceIteratorProvider<T>) ds.source;
+                return src;
+            }
+        }
+        return asLazyDataSource(dataset);
+    }
+
+    static <T extends Serializable> PDLazyDataSourceIteratorProvider<T> asLazyDataSource(PartitionableDataset<T> dataset) {
+        if (dataset == null)
+            throw new NullPointerException("The dataset is 'null'");
+        return new PDLazyDataSourceIteratorProvider<>(dataset::collect);
+    }
+
+    @Override
+    public PartitionableDataset<T> enableLocalComputation(boolean enable) {
+        FJPartitionableDataset<T> ds = newInstance(source, transformations);
+        ds.localComputation = enable;
+        return ds;
+    }
+
+    @Override
+    public PartitionableDataset<T> withPartitionSize(int partitionSize) {
+        if (partitionSize < 1)
+            throw new IllegalArgumentException("The partition size is less than 1");
+        FJPartitionableDataset<T> ds = newInstance(source, transformations);
+        ds.partitionSize = partitionSize;
+        return ds;
+    }
+
+    @Override
+    public PartitionableDataset<T> cache(CacheType cacheType) {
+        if (cacheType == null)
+            throw new NullPointerException("The cache type is 'null'");
+        PDCacheManager manager = env.getCacheManager();
+        switch (cacheType) {
+            case RAM:
+                return cacheInMemory(manager.newStore());
+            case OFF_HEAP:
+                return cacheInMemory(manager.newOffHeapStore());
+            case RAM_AND_DISK:
+                return cacheInMemory(manager.newTieredStore());
+            default:
+                return cacheOnDisk();
+        }
+    }
+
+    /**
+     * Cache this dataset on disk, writing each partition as a block of the segment files of a
+     * {@link PDSegmentBlockStore}.
+     */
+    private FJPartitionableDataset<T> cacheOnDisk() {
+        PDSegmentBlockStore store = new PDSegmentBlockStore();
+        PDCachedDataSourceIteratorProvider<T> cached;
+        try {
+            cached = PDCachedDataSourceIteratorProvider.fromBlocks(store,
+                    execute(new PDActions.WriteBlocks<T>(store, env.getCacheManager().isCompressionEnabled())));
+        } catch (RuntimeException | Error e) {
+            store.delete();
+            throw e;
+        }
+        FJPartitionableDataset<T> ds = newInstance(cached, Collections.<PDTransformation>emptyList());
+        ds.ownedCaches.add(cached);
+        return ds;
+    }
+
+    /**
+     * Cache this dataset in memory as one serialized block per partition, kept in a store of the
+     * cache manager of the environment. A block dropped by the manager is recomputed from the
+     * lineage of its partition. If the lineage contains wide transformations, the output of the last one
+     * is first cached on disk, so the blocks are recomputed from it by the narrow
+     * transformations following it.
+     */
+    private FJPartitionableDataset<T> cacheInMemory(PDBlockStore store) {
+        int lastWide = transformations.size() - 1;
+        while (lastWide >= 0 && !(transformations.get(lastWide) instanceof PDWideTransformation))
+            lastWide--;
+        ImmutableDataSourceIteratorProvider<?> base = source;
+        List<PDTemporaryDataSource> owned = new ArrayList<>();
+        if (lastWide >= 0) {
+            FJPartitionableDataset<?> checkpoint = newInstance(source, transformations.subList(0, lastWide + 1)).cacheOnDisk();
+            base = checkpoint.source;
+            owned.addAll(checkpoint.ownedCaches);
+        }
+        List<PDTransformation> chain = new ArrayList<>(transformations.subList(lastWide + 1, transformations.size()));
+        TaskDataContext ctx = new FJTaskDataContext(new HashMap<>(inputData), env.getStorageManager());
+        PDCachedDataSourceIteratorProvider<T> cached;
+        try {
+            cached = PDCachedDataSourceIteratorProvider.build(env, base, chain, partitionSize, ctx, store,
+                    env.getCacheManager().isCompressionEnabled());
+        } catch (RuntimeException | Error e) {
+            for (PDTemporaryDataSource c : owned)
+                c.delete();
+            throw e;
+        }
+        owned.add(cached);
+        FJPartitionableDataset<T> ds = newInstance(cached, Collections.<PDTransformation>emptyList());
+        ds.ownedCaches = owned;
+        return ds;
+    }
+
+    @Override
+    public PartitionableDataset<T> withInputData(String key, Serializable value) {
+        if (key == null || key.isEmpty())
+            throw new IllegalArgumentException("The key is 'null' or empty");
+        FJPartitionableDataset<T> ds = newInstance(source, transformations);
+        ds.inputData.put(key, value);
+        return ds;
+    }
+
+    @Override
+    public <Out extends Serializable> PartitionableDataset<Out> map(PDFunction<T, Out> func) {
+        return derive(new PDNarrowTransformations.Map<>(func));
+    }
+
+    @Override
+    public <K extends Serializable, V extends Serializable> PairPartitionableDataset<K, V> mapPair(PDPairFunction<T, K, V> func) {
+        return derivePair(new PDNarrowTransformations.MapPair<>(func));
+    }
+
+    @Override
+    public PartitionableDataset<T> filter(PDFunction<T, Boolean> func) {
+        return newInstance(source, append(new PDNarrowTransformations.Filter<>(func)));
+    }
+
+    @Override
+    public <Out extends Serializable> PartitionableDataset<Out> mapFlat(PDFunction<T, Iterator<Out>> func) {
+        return derive(new PDNarrowTransformations.MapFlat<>(func));
+    }
+
+    @Override
+    public <Out extends Serializable> PartitionableDataset<Out> mapPartitions(PDFunction<Iterator<T>, Iterator<Out>> func) {
+        return derive(new PDNarrowTransformations.MapPartitions<>(func));
+    }
+
+    @Override
+    public <K extends Serializable, V extends Serializable> PairPartitionableDataset<K, V> mapPairFlat(PDFunction<T, Iterator<Pair<K, V>>> func) {
+        return derivePair(new PDNarrowTransformations.MapFlat<>(func));
+    }
+
+    @Override
+    public PartitionableDataset<T> union(PartitionableDataset<T> dataset) {
+        if (dataset == null)
+            throw new NullPointerException("The dataset is 'null'");
+        return newInstance(new PDConcatDataSourceIteratorProvider<>(asDataSource(this), asDataSource(dataset)),
+                Collections.<PDTransformation>emptyList());
+    }
+
+    @Override
+    public <T1 extends Serializable> PartitionableDataset<Pair<T, T1>> pair(PartitionableDataset<T1> dataset) {
+        if (dataset == null)
+            throw new NullPointerException("The dataset is 'null'");
+        PDLazyDataSourceIteratorProvider<Pair<T, T1>> paired = new PDLazyDataSourceIteratorProvider<>(() -> {
+            List<T> items = collect();
+            List<T1> otherItems = dataset.collect();
+            int size = Math.min(items.size(), otherItems.size());
+            List<Pair<T, T1>> ret = new ArrayList<>(size);
+            for (int i = 0; i < size; i++)
+                ret.add(new Pair<>(items.get(i), otherItems.get(i)));
+            return ret;
+        });
+        return copySettings(new FJPartitionableDataset<Pair<T, T1>>(env, paired, Collections.<PDTransformation>emptyList()));
+    }
+
+    @Override
+    public PartitionableDataset<T> intersection(PartitionableDataset<T> dataset) {
+        long otherSize = dataset instanceof FJPartitionableDataset ? ((FJPartitionableDataset<T>) dataset).getKnownSize() : -1;
+        return newInstance(source, append(new PDWideTransformations.Intersection<>(env.getShuffleMemoryBudget(), getKnownSize(), dataset, otherSize)));
+    }
+
+    @Override
+    public PartitionableDataset<T> distinct() {
+        return newInstance(source, append(new PDWideTransformations.Distinct<T>(env.getShuffleMemoryBudget())));
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    @Override
+    public PartitionableDataset<T> sort(boolean sortAscending) {
+        Comparator<T> comparator = (a, b) -> ((Comparable) a).compareTo(b);
+        return newInstance(source, append(new PDWideTransformations.Sort<>(env.getShuffleMemoryBudget(), sortAscending ? comparator : comparator.reversed())));
+    }
+
+    @Override
+    public <K extends Serializable> PairPartitionableDataset<K, DataIterable<T>> groupBy(PDFunction<T, K> func) {
+        return derivePair(new PDWideTransformations.GroupBy<>(env.getShuffleMemoryBudget(), func));
+    }
+
+    @Override
+    public <U extends Serializable> PairPartitionableDataset<T, U> cartesian(PartitionableDataset<U> dataset) {
+        return derivePair(new PDNarrowTransformations.Cartesian<T, U>(asLazyDataSource(dataset), null));
+    }
+
+    @Override
+    public <U extends Serializable> PairPartitionableDataset<T, U> cartesian(PartitionableDataset<U> dataset, PDFunction2<T, U, Boolean> filter) {
+        if (filter == null)
+            throw new NullPointerException("The filter is 'null'");
+        return derivePair(new PDNarrowTransformations.Cartesian<T, U>(asLazyDataSource(dataset), filter));
+    }
+
+    @Override
+    public T reduce(PDFunction2<T, T, T> func) {
+        return execute(new PDActions.Reduce<>(func));
+    }
+
+    @Override
+    public <U extends Serializable> U aggregate(U zero, PDFunction2<U, T, U> seqOp, PDFunction2<U, U, U> combOp) {
+        return execute(new PDActions.Aggregate<>(zero, seqOp, combOp));
+    }
+
+    @Override
+    public T fold(T zero, PDFunction2<T, T, T> op) {
+        return execute(new PDActions.Aggregate<>(zero, op, op));
+    }
+
+    @Override
+    public PartitionableDataset<T> sample(boolean withReplacement, double fraction, long seed) {
+        return derive(new PDNarrowTransformations.Sample<T>(withReplacement, fraction, seed));
+    }
+
+    @Override
+    public List<T> takeSample(int numItems, long seed) {
+        FJPartitionableDataset<Pair<Double, T>> keyed = derive(new PDNarrowTransformations.RandomKey<T>(seed));
+        List<T> ret = new ArrayList<>();
+        for (Pair<Double, T> item : keyed.execute(new PDActions.TakeOrdered<Pair<Double, T>>(numItems, (a, b) -> Double.compare(a.getV1(), b.getV1()))))
+            ret.add(item.getV2());
+        return ret;
+    }
+
+    @Override
+    public List<T> top(int k, Comparator<T> comparator) {
+        if (comparator == null)
+            throw new NullPointerException("The comparator is 'null'");
+        return execute(new PDActions.TakeOrdered<T>(k, comparator.reversed()));
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    @Override
+    public List<T> takeOrdered(int k) {
+        Comparator<T> comparator = (a, b) -> ((Comparable) a).compareTo(b);
+        return execute(new PDActions.TakeOrdered<T>(k, comparator));
+    }
+
+    @Override
+    public long countApproxDistinct(double relativeSD) {
+        PDHyperLogLog zero = new PDHyperLogLog(PDHyperLogLog.precisionFor(relativeSD));
+        return aggregate(zero, (ctx, sketch, item) -> sketch.add(item), (ctx, s1, s2) -> s1.merge(s2)).estimate();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public List<T> approxQuantiles(double[] probabilities, double relativeError) {
+        if (probabilities == null)
+            throw new NullPointerException("The probabilities are 'null'");
+        for (double p : probabilities) {
+            if (!(p >= 0 && p <= 1))
+                throw new IllegalArgumentException("The probability " + p + " is not in [0, 1]");
+        }
+        PDQuantileSketch zero = new PDQuantileSketch(PDQuantileSketch.capacityFor(relativeError));
+        PDQuantileSketch sketch = aggregate(zero, (ctx, s, item) -> s.add(item), (ctx, s1, s2) -> s1.merge(s2));
+        return (List<T>) (List<?>) sketch.quantiles(probabilities);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public List<Pair<T, Long>> topKApprox(int k, double relativeError) {
+        PDHeavyHitters zero = new PDHeavyHitters(k, relativeError);
+        List<Pair<T, Long>> ret = new ArrayList<>();
+        for (Pair<Object, Long> item : aggregate(zero, (ctx, s, item) -> s.add(item), (ctx, s1, s2) -> s1.merge(s2)).top(k))
+            ret.add(new Pair<>((T) item.getV1(), item.getV2()));
+        return ret;
+    }
+
+    @Override
+    public List<T> collect() {
+        return execute(new PDActions.Collect<T>());
+    }
+
+    /**
+     * Count the items of this dataset. If the lineage contains only one-to-one transformations
+     * and the data source knows its size, the size is returned without computing the dataset.
+     */
+    @Override
+    public long count() {
+        if (hasOneToOneLineage() && source.sizeEnabled())
+            return source.size();
+        return execute(new PDActions.Count<T>());
+    }
+
+    /**
+     * Check if the dataset contains the specified item. The computation stops at the first
+     * partition containing it.
+     */
+    @Override
+    public boolean contains(T item) {
+        return execute(new PDActions.Contains<>(item));
+    }
+
+    /**
+     * Take a range of items. The partitions are computed only until the first ones hold the
+     * requested range.
+     */
+    @Override
+    public List<T> take(long startFrom, long numItems) {
+        return execute(new PDActions.Take<T>(startFrom, numItems));
+    }
+
+    @Override
+    public PartitionableDataset<T> saveOnStorageManager(Procedure3<TaskDataContext, StorageManager, T> func) {
+        execute(new PDActions.SaveOnStorageManager<>(func));
+        return this;
+    }
+
+    @Override
+    public void processEach(PDProcedure<T> func) {
+        execute(new PDActions.ProcessEach<>(func));
+    }
+
+    @Override
+    public void processEachPartition(PDProcedure<Iterator<T>> func) {
+        if (func == null)
+            throw new NullPointerException("The function is 'null'");
+        FJPartitionableDataset<T> ds = derive(new PDNarrowTransformations.MapPartitions<T, T>((ctx, items) -> {
+            func.call(ctx, items);
+            return Collections.emptyIterator();
+        }));
+        ds.execute(new PDActions.Count<T>());
+    }
+
+    @Override
+    public void close() {
+        for (PDTemporaryDataSource c : ownedCaches)
+            c.delete();
+        ownedCaches = new ArrayList<>();
+    }
+
+    @Override
+    public Serializable getInputData(String key) {
+        if (key == null || key.isEmpty())
+            throw new IllegalArgumentException("The key is 'null' or empty");
+        return inputData.get(key);
+    }
+}
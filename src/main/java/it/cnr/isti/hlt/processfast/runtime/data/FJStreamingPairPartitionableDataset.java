@@ -0,0 +1,119 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+
+package it.cnr.isti.hlt.processfast.runtime.data;
+
+import it.cnr.isti.hlt.processfast.connector.ConnectorReader;
+import it.cnr.isti.hlt.processfast.core.TaskDataContext;
+import it.cnr.isti.hlt.processfast.data.PDFunction;
+import it.cnr.isti.hlt.processfast.data.PDFunction2;
+import it.cnr.isti.hlt.processfast.data.PDProcedure;
+import it.cnr.isti.hlt.processfast.data.StreamingPairPartitionableDataset;
+import it.cnr.isti.hlt.processfast.utils.Pair;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link StreamingPairPartitionableDataset} executed on the fork/join pool of the owning runtime.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+public class FJStreamingPairPartitionableDataset<K extends Serializable, V extends Serializable>
+        extends FJStreamingPartitionableDataset<Pair<K, V>> implements StreamingPairPartitionableDataset<K, V> {
+
+    protected FJStreamingPairPartitionableDataset(PDEnvironment env, ConnectorReader reader, int batchSize, long batchInterval,
+                                                  int partitionSize, List<PDNarrowTransformation<?, ?>> transformations) {
+        super(env, reader, batchSize, batchInterval, partitionSize, transformations);
+    }
+
+    @Override
+    public StreamingPairPartitionableDataset<K, V> withPartitionSize(int partitionSize) {
+        if (partitionSize < 1)
+            throw new IllegalArgumentException("The partition size is less than 1");
+        return new FJStreamingPairPartitionableDataset<>(env, reader, batchSize, batchInterval, partitionSize, transformations);
+    }
+
+    @Override
+    public StreamingPairPartitionableDataset<K, V> withBatchInterval(long batchInterval) {
+        if (batchInterval < 0)
+            throw new IllegalArgumentException("The batch interval is less than 0");
+        return new FJStreamingPairPartitionableDataset<>(env, reader, batchSize, batchInterval, partitionSize, transformations);
+    }
+
+    @Override
+    public StreamingPairPartitionableDataset<K, V> filter(PDFunction<Pair<K, V>, Boolean> func) {
+        if (func == null)
+            throw new NullPointerException("The function is 'null'");
+        return derivePair(new PDNarrowTransformations.Filter<>(func));
+    }
+
+    @Override
+    public <Out extends Serializable> StreamingPairPartitionableDataset<K, Out> mapValues(PDFunction<V, Out> func) {
+        if (func == null)
+            throw new NullPointerException("The function is 'null'");
+        return derivePair(new PDNarrowTransformations.MapValues<K, V, Out>(func));
+    }
+
+    @Override
+    public void reduceByKey(PDFunction2<V, V, V> func, int windowLength, PDProcedure<Map<K, V>> output) {
+        reduceByKey(func, windowLength, windowLength, output);
+    }
+
+    @Override
+    public void reduceByKey(PDFunction2<V, V, V> func, int windowLength, int slideLength, PDProcedure<Map<K, V>> output) {
+        if (func == null)
+            throw new NullPointerException("The reduce function is 'null'");
+        if (output == null)
+            throw new NullPointerException("The output procedure is 'null'");
+        TaskDataContext ctx = newContext();
+        // Only the aggregate of the newer panes is updated in place: the older aggregates and
+        // each window aggregate are new maps, costing a copy of their keys.
+        PDSlidingWindow<HashMap<K, V>> window = new PDSlidingWindow<>(windowLength, slideLength,
+                (older, newer) -> combineAll(ctx, func, new HashMap<>(older), newer),
+                (acc, newer) -> combineAll(ctx, func, acc, newer));
+        executeWindowed(ctx, window, HashMap<K, V>::new,
+                (acc, item) -> combine(ctx, func, acc, item.getV1(), item.getV2()),
+                partials -> {
+                    HashMap<K, V> pane = partials.get(0);
+                    for (int i = 1; i < partials.size(); i++)
+                        combineAll(ctx, func, pane, partials.get(i));
+                    return pane;
+                }, Collections::unmodifiableMap, output);
+    }
+
+    /**
+     * Combine a value into the value of its key, skipping the 'null' values as done by the batch
+     * reduceByKey.
+     */
+    private static <K, V> void combine(TaskDataContext ctx, PDFunction2<V, V, V> func, HashMap<K, V> acc, K key, V value) {
+        acc.put(key, PDWideTransformations.ReduceByKey.combine(ctx, func, acc.get(key), value));
+    }
+
+    private static <K, V> HashMap<K, V> combineAll(TaskDataContext ctx, PDFunction2<V, V, V> func, HashMap<K, V> acc, Map<K, V> values) {
+        for (Map.Entry<K, V> e : values.entrySet())
+            combine(ctx, func, acc, e.getKey(), e.getValue());
+        return acc;
+    }
+}
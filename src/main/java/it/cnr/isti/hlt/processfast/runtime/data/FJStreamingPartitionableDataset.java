@@ -0,0 +1,232 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+
+package it.cnr.isti.hlt.processfast.runtime.data;
+
+import it.cnr.isti.hlt.processfast.connector.ConnectorMessage;
+import it.cnr.isti.hlt.processfast.connector.ConnectorReader;
+import it.cnr.isti.hlt.processfast.core.TaskDataContext;
+import it.cnr.isti.hlt.processfast.data.PDFunction;
+import it.cnr.isti.hlt.processfast.data.PDPairFunction;
+import it.cnr.isti.hlt.processfast.data.PDProcedure;
+import it.cnr.isti.hlt.processfast.data.StreamingPairPartitionableDataset;
+import it.cnr.isti.hlt.processfast.data.StreamingPartitionableDataset;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * A {@link StreamingPartitionableDataset} executed on the fork/join pool of the owning runtime.
+ * The messages of the connector are grouped in micro-batches and the partitions of each
+ * micro-batch are pushed through the same chain of narrow transformations, fused as in the
+ * stages of {@link FJPartitionableDataset}, into an accumulator for each partition. The
+ * accumulators of a micro-batch are then merged in the pane of an incremental
+ * {@link PDSlidingWindow}.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+public class FJStreamingPartitionableDataset<T extends Serializable> implements StreamingPartitionableDataset<T> {
+
+    protected final PDEnvironment env;
+    protected final ConnectorReader reader;
+    protected final int batchSize;
+    protected final long batchInterval;
+    protected final int partitionSize;
+    protected final List<PDNarrowTransformation<?, ?>> transformations;
+
+    public FJStreamingPartitionableDataset(PDEnvironment env, ConnectorReader reader, int batchSize) {
+        this(env, reader, batchSize, 0, PDEnvironment.DEFAULT_PARTITION_SIZE, Collections.<PDNarrowTransformation<?, ?>>emptyList());
+    }
+
+    protected FJStreamingPartitionableDataset(PDEnvironment env, ConnectorReader reader, int batchSize, long batchInterval, int partitionSize,
+                                              List<PDNarrowTransformation<?, ?>> transformations) {
+        if (env == null)
+            throw new NullPointerException("The environment is 'null'");
+        if (reader == null)
+            throw new NullPointerException("The connector reader is 'null'");
+        if (batchSize < 1)
+            throw new IllegalArgumentException("The batch size is less than 1");
+        this.env = env;
+        this.reader = reader;
+        this.batchSize = batchSize;
+        this.batchInterval = batchInterval;
+        this.partitionSize = partitionSize;
+        this.transformations = transformations;
+    }
+
+    private List<PDNarrowTransformation<?, ?>> append(PDNarrowTransformation<?, ?> t) {
+        List<PDNarrowTransformation<?, ?>> ts = new ArrayList<>(transformations.size() + 1);
+        ts.addAll(transformations);
+        ts.add(t);
+        return ts;
+    }
+
+    private <Out extends Serializable> FJStreamingPartitionableDataset<Out> derive(PDNarrowTransformation<T, Out> t) {
+        return new FJStreamingPartitionableDataset<>(env, reader, batchSize, batchInterval, partitionSize, append(t));
+    }
+
+    <K extends Serializable, V extends Serializable> FJStreamingPairPartitionableDataset<K, V> derivePair(PDNarrowTransformation<T, ? extends Serializable> t) {
+        return new FJStreamingPairPartitionableDataset<>(env, reader, batchSize, batchInterval, partitionSize, append(t));
+    }
+
+    /**
+     * Process the stream until its end. The items of every micro-batch are added to a new
+     * accumulator for each of its partitions, and the accumulators are then given to the specified
+     * consumer, on the calling thread.
+     *
+     * @param ctx            The data context.
+     * @param newAccumulator The function creating the accumulator of a partition.
+     * @param add            The function adding an item to an accumulator.
+     * @param batchDone      The consumer of the accumulators of each micro-batch.
+     */
+    <A> void execute(TaskDataContext ctx, Supplier<A> newAccumulator, BiConsumer<A, T> add, Consumer<List<A>> batchDone) {
+        boolean endOfStream = false;
+        while (!endOfStream) {
+            List<Object> batch = new ArrayList<>(batchSize);
+            long deadline = 0;
+            while (batch.size() < batchSize) {
+                ConnectorMessage message = reader.getValue();
+                if (message == null) {
+                    endOfStream = true;
+                    break;
+                }
+                batch.add(message.getPayload());
+                if (batchInterval > 0) {
+                    if (batch.size() == 1)
+                        deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchInterval);
+                    else if (System.nanoTime() - deadline >= 0)
+                        break;
+                }
+            }
+            if (batch.isEmpty())
+                break;
+            List<List<Object>> parts = new ArrayList<>();
+            for (int from = 0; from < batch.size(); from += partitionSize)
+                parts.add(batch.subList(from, Math.min(batch.size(), from + partitionSize)));
+            batchDone.accept(PDPrimitiveExecutor.run(env, parts, part -> {
+                A accumulator = newAccumulator.get();
+                PDSink<Object> sink = PDExecutor.fuse(ctx, 0, transformations, (PDSink<T>) item -> add.accept(accumulator, item));
+                for (Object item : part)
+                    sink.accept(item);
+                return accumulator;
+            }));
+        }
+    }
+
+    /**
+     * Create the data context given to the functions of an action.
+     *
+     * @return The data context.
+     */
+    TaskDataContext newContext() {
+        return new FJTaskDataContext(new HashMap<>(), env.getStorageManager());
+    }
+
+    /**
+     * Feed the window with the panes computed by the specified action and output its aggregates.
+     *
+     * @param ctx            The data context.
+     * @param window         The window.
+     * @param newAccumulator The function creating the accumulator of a partition.
+     * @param add            The function adding an item to an accumulator.
+     * @param toPane         The function merging the accumulators of a micro-batch in a pane.
+     * @param toResult       The function converting a window aggregate in the result given to the output.
+     * @param output         The procedure receiving the aggregate of each window.
+     */
+    <A, S, R> void executeWindowed(TaskDataContext ctx, PDSlidingWindow<S> window, Supplier<A> newAccumulator, BiConsumer<A, T> add,
+                                   Function<List<A>, S> toPane, Function<S, R> toResult, PDProcedure<R> output) {
+        execute(ctx, newAccumulator, add, partials -> {
+            if (window.add(toPane.apply(partials)))
+                output.call(ctx, toResult.apply(window.aggregate()));
+        });
+        if (window.closePartialWindow())
+            output.call(ctx, toResult.apply(window.aggregate()));
+    }
+
+    @Override
+    public StreamingPartitionableDataset<T> withPartitionSize(int partitionSize) {
+        if (partitionSize < 1)
+            throw new IllegalArgumentException("The partition size is less than 1");
+        return new FJStreamingPartitionableDataset<>(env, reader, batchSize, batchInterval, partitionSize, transformations);
+    }
+
+    @Override
+    public StreamingPartitionableDataset<T> withBatchInterval(long batchInterval) {
+        if (batchInterval < 0)
+            throw new IllegalArgumentException("The batch interval is less than 0");
+        return new FJStreamingPartitionableDataset<>(env, reader, batchSize, batchInterval, partitionSize, transformations);
+    }
+
+    @Override
+    public <Out extends Serializable> StreamingPartitionableDataset<Out> map(PDFunction<T, Out> func) {
+        if (func == null)
+            throw new NullPointerException("The function is 'null'");
+        return derive(new PDNarrowTransformations.Map<>(func));
+    }
+
+    @Override
+    public StreamingPartitionableDataset<T> filter(PDFunction<T, Boolean> func) {
+        if (func == null)
+            throw new NullPointerException("The function is 'null'");
+        return derive(new PDNarrowTransformations.Filter<>(func));
+    }
+
+    @Override
+    public <Out extends Serializable> StreamingPartitionableDataset<Out> mapFlat(PDFunction<T, Iterator<Out>> func) {
+        if (func == null)
+            throw new NullPointerException("The function is 'null'");
+        return derive(new PDNarrowTransformations.MapFlat<>(func));
+    }
+
+    @Override
+    public <K extends Serializable, V extends Serializable> StreamingPairPartitionableDataset<K, V> mapPair(PDPairFunction<T, K, V> func) {
+        if (func == null)
+            throw new NullPointerException("The function is 'null'");
+        return derivePair(new PDNarrowTransformations.MapPair<>(func));
+    }
+
+    @Override
+    public void count(int windowLength, PDProcedure<Long> func) {
+        count(windowLength, windowLength, func);
+    }
+
+    @Override
+    public void count(int windowLength, int slideLength, PDProcedure<Long> func) {
+        if (func == null)
+            throw new NullPointerException("The procedure is 'null'");
+        PDSlidingWindow<Long> window = new PDSlidingWindow<>(windowLength, slideLength, Long::sum);
+        executeWindowed(newContext(), window, () -> new long[1], (acc, item) -> acc[0]++, partials -> {
+            long count = 0;
+            for (long[] partial : partials)
+                count += partial[0];
+            return count;
+        }, count -> count, func);
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime.data;
+
+import it.cnr.isti.hlt.processfast.core.TaskDataContext;
+import it.cnr.isti.hlt.processfast.data.StorageManager;
+
+import java.io.Serializable;
+import java.util.Map;
+
+/**
+ * The {@link TaskDataContext} passed to the functions applied on partitionable datasets.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+class FJTaskDataContext implements TaskDataContext {
+
+    private final Map<String, Serializable> inputData;
+    private final StorageManager storageManager;
+
+    FJTaskDataContext(Map<String, Serializable> inputData, StorageManager storageManager) {
+        this.inputData = inputData;
+        this.storageManager = storageManager;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T extends Serializable> T getInputData(String key) {
+        if (key == null || key.isEmpty())
+            throw new IllegalArgumentException("The key is 'null' or empty");
+        return (T) inputData.get(key);
+    }
+
+    @Override
+    public StorageManager getStorageManager() {
+        return storageManager;
+    }
+}
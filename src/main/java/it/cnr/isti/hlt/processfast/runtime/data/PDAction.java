@@ -0,0 +1,121 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime.data;
+
+import it.cnr.isti.hlt.processfast.core.TaskDataContext;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A computation over a whole dataset made of a partial result computed on each partition
+ * and a final merge of all partial results.
+ *
+ * @param <In> The type of input items.
+ * @param <P>  The type of the partial result computed on a partition.
+ * @param <R>  The type of the final result.
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+interface PDAction<In, P, R> {
+
+    /**
+     * Compute the partial result of a partition.
+     *
+     * @param ctx       The data context.
+     * @param partition The partition items.
+     * @return The partial result.
+     */
+    P computePartition(TaskDataContext ctx, List<In> partition);
+
+    /**
+     * Create the accumulator computing the partial result of a partition from the items pushed
+     * by the fused narrow transformations of the stage. The default implementation collects the
+     * items and calls {@link #computePartition(TaskDataContext, List)}, actions which can fold
+     * the items one at a time override it to avoid materializing the partition.
+     *
+     * @param ctx The data context.
+     * @return The accumulator of a partition.
+     */
+    default PDPartitionAccumulator<In, P> newAccumulator(TaskDataContext ctx) {
+        List<In> items = new ArrayList<>();
+        return new PDPartitionAccumulator<In, P>() {
+            @Override
+            public void accept(In item) {
+                items.add(item);
+            }
+
+            @Override
+            public P finish() {
+                return computePartition(ctx, items);
+            }
+        };
+    }
+
+    /**
+     * Merge the partial results of all partitions.
+     *
+     * @param ctx      The data context.
+     * @param partials The partial results, in the same order of the partitions.
+     * @return The final result.
+     */
+    R merge(TaskDataContext ctx, List<P> partials);
+
+    /**
+     * Called by the worker computing a partition right after the partition completes, outside of
+     * any lock. Actions can use it to combine the partial results in parallel as soon as they are
+     * available. The returned value replaces the partial result of the partition in the list
+     * passed to {@link #merge(TaskDataContext, List)}. The default implementation returns the
+     * partial result unchanged.
+     *
+     * @param ctx       The task context.
+     * @param partition The index of the completed partition, in the order of the partitions.
+     * @param partial   The partial result of the completed partition.
+     * @return The partial result to keep for the partition.
+     */
+    default P completed(TaskDataContext ctx, int partition, P partial) {
+        return partial;
+    }
+
+    /**
+     * Check if the partial results completed so far are enough to compute the final result.
+     * The method is called, one partition at a time, every time a partition completes. When it
+     * returns true, the partitions not yet started are skipped and the running ones are stopped:
+     * their partial results passed to {@link #merge(TaskDataContext, List)} are 'null' or
+     * computed on a part of their items. The default implementation returns false.
+     *
+     * @param partition The index of the completed partition, in the order of the partitions.
+     * @param partial   The partial result of the completed partition.
+     * @return True if the remaining partitions are not needed, false otherwise.
+     */
+    default boolean isEnough(int partition, P partial) {
+        return false;
+    }
+
+    /**
+     * Release the resources held by the partial results of a failed computation, which will
+     * never be merged. The default implementation does nothing.
+     *
+     * @param ctx      The data context.
+     * @param partials The partial results of the partitions completed successfully.
+     */
+    default void discard(TaskDataContext ctx, List<P> partials) {
+    }
+}
@@ -0,0 +1,628 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime.data;
+
+import it.cnr.isti.hlt.processfast.core.TaskDataContext;
+import it.cnr.isti.hlt.processfast.data.PDFunction2;
+import it.cnr.isti.hlt.processfast.data.PDProcedure;
+import it.cnr.isti.hlt.processfast.data.StorageManager;
+import it.cnr.isti.hlt.processfast.utils.Procedure3;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * The actions available on partitionable datasets.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+final class PDActions {
+
+    private PDActions() {
+    }
+
+
+    static class Collect<T> implements PDAction<T, List<T>, List<T>> {
+
+        @Override
+        public List<T> computePartition(TaskDataContext ctx, List<T> partition) {
+            return partition;
+        }
+
+        @Override
+        public List<T> merge(TaskDataContext ctx, List<List<T>> partials) {
+            int size = 0;
+            for (List<T> partial : partials)
+                size += partial.size();
+            List<T> ret = new ArrayList<>(size);
+            for (List<T> partial : partials)
+                ret.addAll(partial);
+            return ret;
+        }
+    }
+
+
+    static class Count<T> implements PDAction<T, Long, Long> {
+
+        @Override
+        public Long computePartition(TaskDataContext ctx, List<T> partition) {
+            return (long) partition.size();
+        }
+
+        @Override
+        public PDPartitionAccumulator<T, Long> newAccumulator(TaskDataContext ctx) {
+            return new PDPartitionAccumulator<T, Long>() {
+                private long count;
+
+                @Override
+                public void accept(T item) {
+                    count++;
+                }
+
+                @Override
+                public Long finish() {
+                    return count;
+                }
+            };
+        }
+
+        @Override
+        public Long merge(TaskDataContext ctx, List<Long> partials) {
+            long count = 0;
+            for (Long partial : partials)
+                count += partial;
+            return count;
+        }
+    }
+
+
+    /**
+     * Reduce the items with an associative and commutative function. The partial results of the
+     * partitions are combined in parallel with a {@link PDTreeCombiner} as the partitions
+     * complete.
+     */
+    static class Reduce<T> implements PDAction<T, T, T> {
+        private final PDFunction2<T, T, T> func;
+        private PDTreeCombiner<T> tree;
+
+        Reduce(PDFunction2<T, T, T> func) {
+            if (func == null)
+                throw new NullPointerException("The function is 'null'");
+            this.func = func;
+        }
+
+        @Override
+        public T computePartition(TaskDataContext ctx, List<T> partition) {
+            return reduce(ctx, partition);
+        }
+
+        @Override
+        public PDPartitionAccumulator<T, T> newAccumulator(TaskDataContext ctx) {
+            return new PDPartitionAccumulator<T, T>() {
+                private T acc;
+
+                @Override
+                public void accept(T item) {
+                    if (item != null)
+                        acc = acc == null ? item : func.call(ctx, acc, item);
+                }
+
+                @Override
+                public T finish() {
+                    return acc;
+                }
+            };
+        }
+
+        @Override
+        public T completed(TaskDataContext ctx, int partition, T partial) {
+            getTree(ctx).add(partition, partial);
+            return null;
+        }
+
+        private synchronized PDTreeCombiner<T> getTree(TaskDataContext ctx) {
+            if (tree == null)
+                tree = new PDTreeCombiner<>((v1, v2) -> func.call(ctx, v1, v2));
+            return tree;
+        }
+
+        @Override
+        public T merge(TaskDataContext ctx, List<T> partials) {
+            List<T> items = new ArrayList<>(partials);
+            items.add(getTree(ctx).finish());
+            return reduce(ctx, items);
+        }
+
+        private T reduce(TaskDataContext ctx, List<T> items) {
+            T acc = null;
+            for (T item : items) {
+                if (item == null)
+                    continue;
+                acc = acc == null ? item : func.call(ctx, acc, item);
+            }
+            return acc;
+        }
+    }
+
+
+    /**
+     * Aggregate the items of each partition into a mutable accumulator starting from a copy of the
+     * zero value, then combine the accumulators of the partitions in parallel with a
+     * {@link PDTreeCombiner}. The zero value is copied through serialization, so each partition
+     * can update its own accumulator in place.
+     */
+    static class Aggregate<T, U extends Serializable> implements PDAction<T, U, U> {
+        private final U zero;
+        private final PDFunction2<U, T, U> seqOp;
+        private final PDFunction2<U, U, U> combOp;
+        private PDTreeCombiner<U> tree;
+
+        Aggregate(U zero, PDFunction2<U, T, U> seqOp, PDFunction2<U, U, U> combOp) {
+            if (zero == null)
+                throw new NullPointerException("The zero value is 'null'");
+            if (seqOp == null)
+                throw new NullPointerException("The sequence function is 'null'");
+            if (combOp == null)
+                throw new NullPointerException("The combine function is 'null'");
+            this.zero = zero;
+            this.seqOp = seqOp;
+            this.combOp = combOp;
+        }
+
+        @Override
+        public U computePartition(TaskDataContext ctx, List<T> partition) {
+            U acc = copy(zero);
+            for (T item : partition)
+                acc = seqOp.call(ctx, acc, item);
+            return acc;
+        }
+
+        @Override
+        public PDPartitionAccumulator<T, U> newAccumulator(TaskDataContext ctx) {
+            return new PDPartitionAccumulator<T, U>() {
+                private U acc = copy(zero);
+
+                @Override
+                public void accept(T item) {
+                    acc = seqOp.call(ctx, acc, item);
+                }
+
+                @Override
+                public U finish() {
+                    return acc;
+                }
+            };
+        }
+
+        @Override
+        public U completed(TaskDataContext ctx, int partition, U partial) {
+            getTree(ctx).add(partition, partial);
+            return null;
+        }
+
+        private synchronized PDTreeCombiner<U> getTree(TaskDataContext ctx) {
+            if (tree == null)
+                tree = new PDTreeCombiner<>((v1, v2) -> combOp.call(ctx, v1, v2));
+            return tree;
+        }
+
+        @Override
+        public U merge(TaskDataContext ctx, List<U> partials) {
+            U acc = getTree(ctx).finish();
+            for (U partial : partials) {
+                if (partial != null)
+                    acc = acc == null ? partial : combOp.call(ctx, acc, partial);
+            }
+            return acc == null ? copy(zero) : acc;
+        }
+    }
+
+
+    /**
+     * Encode the items of each partition in a block (see {@link PDBlockCodec}) and write it in
+     * a {@link PDBlockStore}, at the index of the partition. The result is the number of items
+     * of each block.
+     */
+    static class WriteBlocks<T> implements PDAction<T, byte[], int[]> {
+        private final PDBlockStore store;
+        private final boolean compress;
+        private final HashMap<Integer, Integer> counts = new HashMap<>();
+
+        WriteBlocks(PDBlockStore store, boolean compress) {
+            if (store == null)
+                throw new NullPointerException("The store is 'null'");
+            this.store = store;
+            this.compress = compress;
+        }
+
+        @Override
+        public byte[] computePartition(TaskDataContext ctx, List<T> partition) {
+            return PDBlockCodec.encode(partition.iterator(), compress);
+        }
+
+        @Override
+        public PDPartitionAccumulator<T, byte[]> newAccumulator(TaskDataContext ctx) {
+            return new PDPartitionAccumulator<T, byte[]>() {
+                private final PDBlockCodec.Encoder encoder = new PDBlockCodec.Encoder(compress);
+
+                @Override
+                public void accept(T item) {
+                    encoder.add(item);
+                }
+
+                @Override
+                public byte[] finish() {
+                    return encoder.finish();
+                }
+            };
+        }
+
+        @Override
+        public byte[] completed(TaskDataContext ctx, int partition, byte[] partial) {
+            store.put(partition, partial);
+            synchronized (counts) {
+                counts.put(partition, PDBlockCodec.count(ByteBuffer.wrap(partial)));
+            }
+            return null;
+        }
+
+        @Override
+        public int[] merge(TaskDataContext ctx, List<byte[]> partials) {
+            int[] ret = new int[partials.size()];
+            synchronized (counts) {
+                for (int i = 0; i < ret.length; i++)
+                    ret[i] = counts.get(i);
+            }
+            return ret;
+        }
+    }
+
+
+    /**
+     * Get a deep copy of the specified value, through serialization.
+     *
+     * @param value The value to copy.
+     * @return The copy of the value.
+     */
+    @SuppressWarnings("unchecked")
+    static <T extends Serializable> T copy(T value) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream os = new ObjectOutputStream(bytes)) {
+                os.writeObject(value);
+            }
+            try (ObjectInputStream is = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+                return (T) is.readObject();
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            throw new RuntimeException("Copying the value " + value, e);
+        }
+    }
+
+
+    static class Contains<T> implements PDAction<T, Boolean, Boolean> {
+        private final T item;
+
+        Contains(T item) {
+            if (item == null)
+                throw new NullPointerException("The item is 'null'");
+            this.item = item;
+        }
+
+        @Override
+        public Boolean computePartition(TaskDataContext ctx, List<T> partition) {
+            return partition.contains(item);
+        }
+
+        @Override
+        public PDPartitionAccumulator<T, Boolean> newAccumulator(TaskDataContext ctx) {
+            return new PDPartitionAccumulator<T, Boolean>() {
+                private boolean found;
+
+                @Override
+                public void accept(T v) {
+                    if (!found && item.equals(v))
+                        found = true;
+                }
+
+                @Override
+                public Boolean finish() {
+                    return found;
+                }
+
+                @Override
+                public boolean isDone() {
+                    return found;
+                }
+            };
+        }
+
+        @Override
+        public Boolean merge(TaskDataContext ctx, List<Boolean> partials) {
+            for (Boolean partial : partials) {
+                if (partial != null && partial)
+                    return true;
+            }
+            return false;
+        }
+
+        @Override
+        public boolean isEnough(int partition, Boolean partial) {
+            return partial;
+        }
+    }
+
+
+    /**
+     * Take a range of items, in the order of the dataset. Each partition keeps at most the items
+     * needed to fill the range and the stage is stopped as soon as the first partitions hold
+     * enough items.
+     */
+    static class Take<T> implements PDAction<T, List<T>, List<T>> {
+        private final long startFrom;
+        private final long needed;
+        private final HashMap<Integer, Integer> completedSizes = new HashMap<>();
+        private int prefixPartitions;
+        private long prefixItems;
+
+        Take(long startFrom, long numItems) {
+            if (startFrom < 0)
+                throw new IllegalArgumentException("The startFrom parameter is < 0");
+            if (numItems < 1)
+                throw new IllegalArgumentException("The numItems parameter is < 1");
+            this.startFrom = startFrom;
+            this.needed = startFrom + numItems < 0 ? Long.MAX_VALUE : startFrom + numItems;
+        }
+
+        @Override
+        public List<T> computePartition(TaskDataContext ctx, List<T> partition) {
+            return partition.size() <= needed ? partition : new ArrayList<>(partition.subList(0, (int) needed));
+        }
+
+        @Override
+        public PDPartitionAccumulator<T, List<T>> newAccumulator(TaskDataContext ctx) {
+            return new PDPartitionAccumulator<T, List<T>>() {
+                private final List<T> items = new ArrayList<>();
+
+                @Override
+                public void accept(T item) {
+                    if (items.size() < needed)
+                        items.add(item);
+                }
+
+                @Override
+                public List<T> finish() {
+                    return items;
+                }
+
+                @Override
+                public boolean isDone() {
+                    return items.size() >= needed;
+                }
+            };
+        }
+
+        @Override
+        public boolean isEnough(int partition, List<T> partial) {
+            completedSizes.put(partition, partial.size());
+            Integer size;
+            while ((size = completedSizes.remove(prefixPartitions)) != null) {
+                prefixItems += size;
+                prefixPartitions++;
+            }
+            return prefixItems >= needed;
+        }
+
+        @Override
+        public List<T> merge(TaskDataContext ctx, List<List<T>> partials) {
+            List<T> ret = new ArrayList<>();
+            long idx = 0;
+            for (List<T> partial : partials) {
+                if (partial == null || idx >= needed)
+                    break;
+                for (T item : partial) {
+                    if (idx >= needed)
+                        break;
+                    if (idx >= startFrom)
+                        ret.add(item);
+                    idx++;
+                }
+            }
+            return ret;
+        }
+    }
+
+
+    /**
+     * Get the smallest items according to a comparator. Each partition keeps its smallest items
+     * in a bounded max-heap, so finding k items among n costs O(n log k) without any shuffle.
+     * The heap of every completed partition is folded into a single bounded heap, so at most
+     * O(numItems) items per running partition are retained.
+     */
+    static class TakeOrdered<T> implements PDAction<T, List<T>, List<T>> {
+        private final int numItems;
+        private final Comparator<? super T> comparator;
+        private final PriorityQueue<T> best;
+
+        TakeOrdered(int numItems, Comparator<? super T> comparator) {
+            if (numItems < 1)
+                throw new IllegalArgumentException("The numItems parameter is < 1");
+            if (comparator == null)
+                throw new NullPointerException("The comparator is 'null'");
+            this.numItems = numItems;
+            this.comparator = comparator;
+            this.best = newHeap();
+        }
+
+        private PriorityQueue<T> newHeap() {
+            return new PriorityQueue<>(Math.min(numItems, 1024) + 1, comparator.reversed());
+        }
+
+        /**
+         * Add an item to a bounded heap, if it is smaller than the largest kept item.
+         */
+        private void offer(PriorityQueue<T> heap, T item) {
+            if (heap.size() < numItems) {
+                heap.add(item);
+            } else if (comparator.compare(item, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(item);
+            }
+        }
+
+        @Override
+        public List<T> computePartition(TaskDataContext ctx, List<T> partition) {
+            PDPartitionAccumulator<T, List<T>> acc = newAccumulator(ctx);
+            for (T item : partition)
+                acc.accept(item);
+            return acc.finish();
+        }
+
+        @Override
+        public PDPartitionAccumulator<T, List<T>> newAccumulator(TaskDataContext ctx) {
+            return new PDPartitionAccumulator<T, List<T>>() {
+                private final PriorityQueue<T> heap = newHeap();
+
+                @Override
+                public void accept(T item) {
+                    offer(heap, item);
+                }
+
+                @Override
+                public List<T> finish() {
+                    return new ArrayList<>(heap);
+                }
+            };
+        }
+
+        @Override
+        public List<T> completed(TaskDataContext ctx, int partition, List<T> partial) {
+            synchronized (best) {
+                for (T item : partial)
+                    offer(best, item);
+            }
+            return null;
+        }
+
+        @Override
+        public List<T> merge(TaskDataContext ctx, List<List<T>> partials) {
+            List<T> ret;
+            synchronized (best) {
+                for (List<T> partial : partials) {
+                    if (partial != null) {
+                        for (T item : partial)
+                            offer(best, item);
+                    }
+                }
+                ret = new ArrayList<>(best);
+            }
+            ret.sort(comparator);
+            return ret;
+        }
+    }
+
+
+    static class ProcessEach<T> implements PDAction<T, Void, Void> {
+        private final PDProcedure<T> func;
+
+        ProcessEach(PDProcedure<T> func) {
+            if (func == null)
+                throw new NullPointerException("The function is 'null'");
+            this.func = func;
+        }
+
+        @Override
+        public Void computePartition(TaskDataContext ctx, List<T> partition) {
+            for (T item : partition)
+                func.call(ctx, item);
+            return null;
+        }
+
+        @Override
+        public PDPartitionAccumulator<T, Void> newAccumulator(TaskDataContext ctx) {
+            return new PDPartitionAccumulator<T, Void>() {
+                @Override
+                public void accept(T item) {
+                    func.call(ctx, item);
+                }
+
+                @Override
+                public Void finish() {
+                    return null;
+                }
+            };
+        }
+
+        @Override
+        public Void merge(TaskDataContext ctx, List<Void> partials) {
+            return null;
+        }
+    }
+
+
+    static class SaveOnStorageManager<T> implements PDAction<T, Void, Void> {
+        private final Procedure3<TaskDataContext, StorageManager, T> func;
+
+        SaveOnStorageManager(Procedure3<TaskDataContext, StorageManager, T> func) {
+            if (func == null)
+                throw new NullPointerException("The function is 'null'");
+            this.func = func;
+        }
+
+        @Override
+        public Void computePartition(TaskDataContext ctx, List<T> partition) {
+            for (T item : partition)
+                func.call(ctx, ctx.getStorageManager(), item);
+            return null;
+        }
+
+        @Override
+        public PDPartitionAccumulator<T, Void> newAccumulator(TaskDataContext ctx) {
+            StorageManager storageManager = ctx.getStorageManager();
+            return new PDPartitionAccumulator<T, Void>() {
+                @Override
+                public void accept(T item) {
+                    func.call(ctx, storageManager, item);
+                }
+
+                @Override
+                public Void finish() {
+                    return null;
+                }
+            };
+        }
+
+        @Override
+        public Void merge(TaskDataContext ctx, List<Void> partials) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,394 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime.data;
+
+import it.cnr.isti.hlt.processfast.utils.Pair;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The encoding of the items of a partition in a compact block of bytes, used by the caches of
+ * the datasets. The block starts with the number of items and the format of the rest of the
+ * block:
+ * <ul>
+ * <li>{@link #FORMAT_COLUMNS}, used when all the items are {@link Pair}s whose keys have the same
+ * primitive wrapper type (Integer, Long or Double) and whose values have the same primitive
+ * wrapper type: the keys and the values are stored in two primitive columns, so no object
+ * serialization is needed and the pairs are scanned back directly from the buffer;</li>
+ * <li>{@link #FORMAT_OBJECTS} or {@link #FORMAT_DEFLATED_OBJECTS} otherwise: the items are
+ * serialized in a single object stream, optionally compressed with the fastest deflate
+ * level.</li>
+ * </ul>
+ * In both cases the items are decoded lazily one at a time.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+final class PDBlockCodec {
+
+    static final byte FORMAT_OBJECTS = 0;
+    static final byte FORMAT_DEFLATED_OBJECTS = 1;
+    static final byte FORMAT_COLUMNS = 2;
+
+    /**
+     * The number of items written before resetting the object stream, to avoid keeping
+     * references to all written items.
+     */
+    private static final int RESET_INTERVAL = 1000;
+
+    private static final int HEADER_SIZE = 5;
+
+    private static final byte TYPE_INT = 'I';
+    private static final byte TYPE_LONG = 'J';
+    private static final byte TYPE_DOUBLE = 'D';
+
+    private PDBlockCodec() {
+    }
+
+    /**
+     * Encode the specified items.
+     *
+     * @param items    The items to encode.
+     * @param compress True if the items must be compressed, false otherwise. Items stored in
+     *                 columns are never compressed.
+     * @return The encoded block.
+     */
+    static byte[] encode(Iterator<?> items, boolean compress) {
+        if (items == null)
+            throw new NullPointerException("The items iterator is 'null'");
+        Encoder encoder = new Encoder(compress);
+        while (items.hasNext())
+            encoder.add(items.next());
+        return encoder.finish();
+    }
+
+    /**
+     * Get the number of items of an encoded block.
+     *
+     * @param block The encoded block.
+     * @return The number of items.
+     */
+    static int count(ByteBuffer block) {
+        return block.getInt(block.position());
+    }
+
+    /**
+     * Get the format of an encoded block.
+     *
+     * @param block The encoded block.
+     * @return The format of the block.
+     */
+    static byte format(ByteBuffer block) {
+        return block.get(block.position() + 4);
+    }
+
+    /**
+     * Decode lazily the items of an encoded block.
+     *
+     * @param block The encoded block. Its position is not changed.
+     * @return The iterator over the items of the block.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> Iterator<T> decode(ByteBuffer block) {
+        if (block == null)
+            throw new NullPointerException("The block is 'null'");
+        ByteBuffer data = block.slice();
+        int count = data.getInt();
+        byte format = data.get();
+        if (format == FORMAT_COLUMNS)
+            return (Iterator<T>) new ColumnsIterator(data, count);
+        return new Iterator<T>() {
+            private ObjectInputStream is;
+            private int read;
+
+            @Override
+            public boolean hasNext() {
+                return read < count;
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                try {
+                    if (is == null) {
+                        InputStream in = new ByteBufferInputStream(data);
+                        is = new ObjectInputStream(format == FORMAT_DEFLATED_OBJECTS ? new InflaterInputStream(in) : in);
+                    }
+                    read++;
+                    return (T) is.readObject();
+                } catch (IOException | ClassNotFoundException e) {
+                    throw new RuntimeException("Decoding a cached block", e);
+                }
+            }
+        };
+    }
+
+    private static byte typeOf(Object value) {
+        if (value instanceof Integer)
+            return TYPE_INT;
+        if (value instanceof Long)
+            return TYPE_LONG;
+        if (value instanceof Double)
+            return TYPE_DOUBLE;
+        return 0;
+    }
+
+    private static int sizeOf(byte type) {
+        return type == TYPE_INT ? 4 : 8;
+    }
+
+    private static long toBits(byte type, Object value) {
+        if (type == TYPE_DOUBLE)
+            return Double.doubleToRawLongBits((Double) value);
+        return ((Number) value).longValue();
+    }
+
+    private static Object fromBits(byte type, long bits) {
+        if (type == TYPE_INT)
+            return (int) bits;
+        if (type == TYPE_LONG)
+            return bits;
+        return Double.longBitsToDouble(bits);
+    }
+
+
+    /**
+     * An encoder receiving the items of a block one at a time. The items are kept in primitive
+     * columns while they are all pairs of the same primitive wrapper types; at the first item
+     * which is not, the encoder switches to an object stream, writing the pairs received so far.
+     */
+    static class Encoder {
+        private final boolean compress;
+        private ByteArrayOutputStream bytes;
+        private ObjectOutputStream os;
+        private boolean columns = true;
+        private byte keyType;
+        private byte valueType;
+        private long[] keys = new long[16];
+        private long[] values = new long[16];
+        private int count;
+
+        /**
+         * Create a new encoder.
+         *
+         * @param compress True if the items must be compressed, false otherwise. Items stored in
+         *                 columns are never compressed.
+         */
+        Encoder(boolean compress) {
+            this.compress = compress;
+        }
+
+        /**
+         * Add an item to the block.
+         *
+         * @param item The item.
+         */
+        void add(Object item) {
+            if (columns) {
+                if (addToColumns(item)) {
+                    count++;
+                    return;
+                }
+                switchToObjects();
+            }
+            writeObject(item);
+        }
+
+        private boolean addToColumns(Object item) {
+            if (!(item instanceof Pair))
+                return false;
+            Pair<?, ?> pair = (Pair<?, ?>) item;
+            byte kt = typeOf(pair.getV1());
+            byte vt = typeOf(pair.getV2());
+            if (kt == 0 || vt == 0)
+                return false;
+            if (count == 0) {
+                keyType = kt;
+                valueType = vt;
+            } else if (kt != keyType || vt != valueType) {
+                return false;
+            }
+            if (count == keys.length) {
+                keys = Arrays.copyOf(keys, count * 2);
+                values = Arrays.copyOf(values, count * 2);
+            }
+            keys[count] = toBits(kt, pair.getV1());
+            values[count] = toBits(vt, pair.getV2());
+            return true;
+        }
+
+        private void switchToObjects() {
+            columns = false;
+            int buffered = count;
+            count = 0;
+            try {
+                bytes = new ByteArrayOutputStream();
+                bytes.write(new byte[HEADER_SIZE]);
+                os = new ObjectOutputStream(compress ? new DeflaterOutputStream(bytes, new Deflater(Deflater.BEST_SPEED)) : bytes);
+            } catch (IOException e) {
+                throw new RuntimeException("Encoding a cached block", e);
+            }
+            for (int i = 0; i < buffered; i++)
+                writeObject(new Pair<>(fromBits(keyType, keys[i]), fromBits(valueType, values[i])));
+            keys = null;
+            values = null;
+        }
+
+        private void writeObject(Object item) {
+            try {
+                os.writeObject(item);
+                count++;
+                if (count % RESET_INTERVAL == 0)
+                    os.reset();
+            } catch (IOException e) {
+                throw new RuntimeException("Encoding a cached block", e);
+            }
+        }
+
+        /**
+         * Complete the block. The encoder can not be used anymore after this call.
+         *
+         * @return The encoded block.
+         */
+        byte[] finish() {
+            if (columns)
+                return count == 0 ? ByteBuffer.allocate(HEADER_SIZE).putInt(0).put(FORMAT_OBJECTS).array() : finishColumns();
+            try {
+                os.close();
+            } catch (IOException e) {
+                throw new RuntimeException("Encoding a cached block", e);
+            }
+            byte[] block = bytes.toByteArray();
+            ByteBuffer.wrap(block).putInt(count).put(compress ? FORMAT_DEFLATED_OBJECTS : FORMAT_OBJECTS);
+            return block;
+        }
+
+        private byte[] finishColumns() {
+            ByteBuffer block = ByteBuffer.allocate(HEADER_SIZE + 2 + count * (sizeOf(keyType) + sizeOf(valueType)));
+            block.putInt(count).put(FORMAT_COLUMNS).put(keyType).put(valueType);
+            writeColumn(block, keyType, keys);
+            writeColumn(block, valueType, values);
+            return block.array();
+        }
+
+        private void writeColumn(ByteBuffer block, byte type, long[] column) {
+            for (int i = 0; i < count; i++) {
+                if (type == TYPE_INT)
+                    block.putInt((int) column[i]);
+                else
+                    block.putLong(column[i]);
+            }
+        }
+    }
+
+
+    /**
+     * An iterator over the pairs of a block stored in columns, reading the keys and the values
+     * directly from the buffer of the block.
+     */
+    private static class ColumnsIterator implements Iterator<Pair<Object, Object>> {
+        private final ByteBuffer data;
+        private final int count;
+        private final byte keyType;
+        private final byte valueType;
+        private final int keysOffset;
+        private final int valuesOffset;
+        private int read;
+
+        ColumnsIterator(ByteBuffer data, int count) {
+            this.data = data;
+            this.count = count;
+            this.keyType = data.get();
+            this.valueType = data.get();
+            this.keysOffset = data.position();
+            this.valuesOffset = keysOffset + count * sizeOf(keyType);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return read < count;
+        }
+
+        @Override
+        public Pair<Object, Object> next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            Pair<Object, Object> ret = new Pair<>(get(keyType, keysOffset), get(valueType, valuesOffset));
+            read++;
+            return ret;
+        }
+
+        private Object get(byte type, int offset) {
+            switch (type) {
+                case TYPE_INT:
+                    return data.getInt(offset + read * 4);
+                case TYPE_LONG:
+                    return data.getLong(offset + read * 8);
+                default:
+                    return data.getDouble(offset + read * 8);
+            }
+        }
+    }
+
+
+    /**
+     * An input stream reading the remaining bytes of a buffer, without copying them.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0)
+                return 0;
+            if (!buffer.hasRemaining())
+                return -1;
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
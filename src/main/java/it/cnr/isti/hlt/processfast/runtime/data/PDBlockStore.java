@@ -0,0 +1,54 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime.data;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The storage of the serialized blocks of a cached dataset, one block per partition. A store
+ * can drop blocks at any time (e.g. to respect a memory budget): a missing block is recomputed
+ * from the lineage of the dataset and stored again.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+interface PDBlockStore {
+
+    /**
+     * Get the data of a block.
+     *
+     * @param block The index of the block.
+     * @return The data of the block, or 'null' if the block is not available.
+     */
+    ByteBuffer get(int block);
+
+    /**
+     * Store the data of a block, replacing the previous one if any.
+     *
+     * @param block The index of the block.
+     * @param data  The data of the block, encoded by {@link PDBlockCodec}.
+     */
+    void put(int block, byte[] data);
+
+    /**
+     * Release all the blocks of this store. The store can not be used anymore after this call.
+     */
+    void delete();
+}
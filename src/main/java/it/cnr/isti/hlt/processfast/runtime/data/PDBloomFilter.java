@@ -0,0 +1,100 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime.data;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A Bloom filter over the hash codes of a set of items, used to drop the records which can not
+ * match before writing them on a shuffle. The bits are set atomically, so all the partitions of
+ * a dataset can add their items to the same filter concurrently. The filter has no false
+ * negatives: a record is dropped only if its key has surely not been added.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+class PDBloomFilter {
+
+    /**
+     * The default false positive probability.
+     */
+    static final double DEFAULT_FPP = 0.01;
+
+    /**
+     * The number of items expected when the size of a dataset is not known.
+     */
+    static final long DEFAULT_EXPECTED_ITEMS = 1000000;
+
+    /**
+     * The maximum number of bits of a filter (16 MB). Larger sets get a higher false positive
+     * probability.
+     */
+    static final long MAX_BITS = 1L << 27;
+
+    private final AtomicLongArray bits;
+    private final long numBits;
+    private final int numHashes;
+
+    /**
+     * Create a new filter.
+     *
+     * @param expectedItems The expected number of items, or a negative number if unknown.
+     * @param fpp           The false positive probability with the expected number of items.
+     */
+    PDBloomFilter(long expectedItems, double fpp) {
+        if (!(fpp > 0 && fpp < 1))
+            throw new IllegalArgumentException("The false positive probability is not in (0, 1)");
+        long n = Math.max(1, expectedItems < 0 ? DEFAULT_EXPECTED_ITEMS : expectedItems);
+        long m = (long) Math.ceil(-n * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        m = Math.min(MAX_BITS, Math.max(64, (m + 63) / 64 * 64));
+        this.numBits = m;
+        this.numHashes = (int) Math.max(1, Math.min(16, Math.round((double) m / n * Math.log(2))));
+        this.bits = new AtomicLongArray((int) (m / 64));
+    }
+
+    void add(Object item) {
+        long h = PDHyperLogLog.hash(item);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        for (int i = 0; i < numHashes; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, numBits);
+            int idx = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long old;
+            do {
+                old = bits.get(idx);
+                if ((old & mask) != 0)
+                    break;
+            } while (!bits.compareAndSet(idx, old, old | mask));
+        }
+    }
+
+    boolean mightContain(Object item) {
+        long h = PDHyperLogLog.hash(item);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        for (int i = 0; i < numHashes; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, numBits);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0)
+                return false;
+        }
+        return true;
+    }
+}
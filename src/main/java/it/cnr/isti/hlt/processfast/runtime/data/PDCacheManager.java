@@ -0,0 +1,434 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime.data;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The manager of the blocks of the datasets cached in memory by all the tasks. The blocks are
+ * kept serialized (see {@link PDBlockCodec}), either in the heap or in direct memory outside
+ * the heap, and accounted in bytes on a {@link PDMemoryBudget} for each of the two tiers: when a
+ * new block does not fit in the budget of its tier, the blocks of the tier chosen by the
+ * {@link EvictionPolicy} are dropped until it fits. A dropped block is recomputed from the
+ * lineage of its dataset the next time it is read, unless its dataset is cached in RAM and on
+ * disk: in that case the block is demoted to the segment files of the dataset (see
+ * {@link PDSegmentBlockStore}) and promoted back to the heap when read again.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+public class PDCacheManager {
+
+    /**
+     * The policy choosing the blocks to drop when the memory budget is exhausted.
+     */
+    public enum EvictionPolicy {
+        /**
+         * Drop the least recently used block.
+         */
+        LRU,
+
+        /**
+         * Drop the least frequently used block, the least recently used one among blocks with
+         * the same number of accesses.
+         */
+        LFU
+    }
+
+    private final AtomicLong nextCacheId = new AtomicLong();
+    private final HashMap<Long, Block> blocks = new HashMap<>();
+    private final Tier heap;
+    private final Tier offHeap;
+    private EvictionPolicy policy;
+    private long tick;
+    private volatile boolean compression;
+
+    /**
+     * Create a new cache manager whose off-heap budget is the same of the heap one.
+     *
+     * @param budget The budget, in bytes, of the blocks cached in the heap.
+     * @param policy The eviction policy.
+     */
+    public PDCacheManager(PDMemoryBudget budget, EvictionPolicy policy) {
+        this(budget, new PDMemoryBudget(budget.getLimit()), policy);
+    }
+
+    /**
+     * Create a new cache manager.
+     *
+     * @param budget        The budget, in bytes, of the blocks cached in the heap.
+     * @param offHeapBudget The budget, in bytes, of the blocks cached in direct memory.
+     * @param policy        The eviction policy.
+     */
+    public PDCacheManager(PDMemoryBudget budget, PDMemoryBudget offHeapBudget, EvictionPolicy policy) {
+        if (budget == null)
+            throw new NullPointerException("The budget is 'null'");
+        if (offHeapBudget == null)
+            throw new NullPointerException("The off-heap budget is 'null'");
+        this.heap = new Tier(budget);
+        this.offHeap = new Tier(offHeapBudget);
+        setEvictionPolicy(policy);
+    }
+
+    /**
+     * Get the budget, in bytes, of the blocks cached in the heap.
+     *
+     * @return The budget.
+     */
+    public PDMemoryBudget getBudget() {
+        return heap.budget;
+    }
+
+    /**
+     * Get the budget, in bytes, of the blocks cached in direct memory.
+     *
+     * @return The budget.
+     */
+    public PDMemoryBudget getOffHeapBudget() {
+        return offHeap.budget;
+    }
+
+    /**
+     * Get the policy choosing the blocks to drop when a budget is exhausted.
+     *
+     * @return The eviction policy.
+     */
+    public synchronized EvictionPolicy getEvictionPolicy() {
+        return policy;
+    }
+
+    /**
+     * Change the eviction policy. The blocks already cached are ordered again according to the
+     * new policy.
+     *
+     * @param policy The eviction policy.
+     */
+    public synchronized void setEvictionPolicy(EvictionPolicy policy) {
+        if (policy == null)
+            throw new NullPointerException("The eviction policy is 'null'");
+        Comparator<Block> order = policy == EvictionPolicy.LRU ?
+                Comparator.comparingLong(b -> b.lastAccess) :
+                Comparator.<Block>comparingLong(b -> b.hits).thenComparingLong(b -> b.lastAccess);
+        this.policy = policy;
+        heap.reorder(order);
+        offHeap.reorder(order);
+    }
+
+    /**
+     * Check if the blocks cached from now on are compressed.
+     *
+     * @return True if the blocks are compressed, false otherwise.
+     */
+    public boolean isCompressionEnabled() {
+        return compression;
+    }
+
+    /**
+     * Enable or disable the compression of the blocks cached from now on.
+     *
+     * @param compression True to compress the blocks, false otherwise.
+     */
+    public void setCompressionEnabled(boolean compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * Drop the blocks exceeding the limits of the budgets, e.g. after a limit has been lowered.
+     */
+    public void trim() {
+        List<Block> evicted = new ArrayList<>();
+        synchronized (this) {
+            for (Tier tier : new Tier[]{heap, offHeap}) {
+                while (tier.budget.getUsed() > tier.budget.getLimit() && !tier.order.isEmpty())
+                    evictForDemotion(tier.order.first(), evicted);
+            }
+        }
+        demote(evicted);
+    }
+
+    /**
+     * Create a new store whose blocks are kept in the heap.
+     *
+     * @return The new store.
+     */
+    PDBlockStore newStore() {
+        return new Store(nextCacheId.incrementAndGet(), heap);
+    }
+
+    /**
+     * Create a new store whose blocks are kept in direct memory, outside the heap.
+     *
+     * @return The new store.
+     */
+    PDBlockStore newOffHeapStore() {
+        return new Store(nextCacheId.incrementAndGet(), offHeap);
+    }
+
+    /**
+     * Create a new store whose blocks are kept in the heap while they fit in the budget, and
+     * demoted to segment files on disk when they are evicted.
+     *
+     * @return The new store.
+     */
+    PDBlockStore newTieredStore() {
+        return new TieredStore(nextCacheId.incrementAndGet(), heap);
+    }
+
+    private static long key(long cacheId, int block) {
+        return (cacheId << 32) | block;
+    }
+
+    private synchronized ByteBuffer get(long cacheId, int block) {
+        Block b = blocks.get(key(cacheId, block));
+        if (b == null)
+            return null;
+        Tier tier = b.store.tier;
+        tier.order.remove(b);
+        b.hits++;
+        b.lastAccess = ++tick;
+        tier.order.add(b);
+        return b.data.asReadOnlyBuffer();
+    }
+
+    private void put(Store store, int block, byte[] data) {
+        List<Block> evicted = new ArrayList<>();
+        synchronized (this) {
+            Tier tier = store.tier;
+            Block old = blocks.get(key(store.cacheId, block));
+            if (old != null)
+                evict(old);
+            if (data.length > tier.budget.getLimit())
+                return;
+            while (!tier.budget.tryReserve(data.length)) {
+                if (tier.order.isEmpty())
+                    return;
+                evictForDemotion(tier.order.first(), evicted);
+            }
+            ByteBuffer buffer;
+            if (tier == offHeap) {
+                buffer = ByteBuffer.allocateDirect(data.length);
+                buffer.put(data);
+                buffer.flip();
+            } else {
+                buffer = ByteBuffer.wrap(data);
+            }
+            Block b = new Block(store, block, buffer);
+            b.hits = 1;
+            b.lastAccess = ++tick;
+            blocks.put(key(store.cacheId, block), b);
+            tier.order.add(b);
+        }
+        demote(evicted);
+    }
+
+    private synchronized void remove(long cacheId) {
+        for (Tier tier : new Tier[]{heap, offHeap}) {
+            Iterator<Block> iter = tier.order.iterator();
+            while (iter.hasNext()) {
+                Block b = iter.next();
+                if (b.store.cacheId == cacheId) {
+                    iter.remove();
+                    blocks.remove(key(cacheId, b.index));
+                    tier.budget.release(b.data.capacity());
+                }
+            }
+        }
+    }
+
+    private void evict(Block b) {
+        Tier tier = b.store.tier;
+        tier.order.remove(b);
+        blocks.remove(key(b.store.cacheId, b.index));
+        tier.budget.release(b.data.capacity());
+    }
+
+    /**
+     * Evict a block to be given to its store once the lock of the manager is released. The store
+     * is told at once, so it can keep the block readable until it has been demoted.
+     */
+    private void evictForDemotion(Block b, List<Block> evicted) {
+        evict(b);
+        b.store.evicting(b.index, b.data);
+        evicted.add(b);
+    }
+
+    /**
+     * Give the evicted blocks to their stores, outside of the lock of the manager.
+     */
+    private static void demote(List<Block> evicted) {
+        for (Block b : evicted)
+            b.store.evicted(b.index, b.data);
+    }
+
+
+    private static class Tier {
+        private final PDMemoryBudget budget;
+        private TreeSet<Block> order;
+
+        Tier(PDMemoryBudget budget) {
+            this.budget = budget;
+        }
+
+        void reorder(Comparator<Block> comparator) {
+            TreeSet<Block> newOrder = new TreeSet<>(comparator);
+            if (order != null)
+                newOrder.addAll(order);
+            order = newOrder;
+        }
+    }
+
+
+    private static class Block {
+        private final Store store;
+        private final int index;
+        private final ByteBuffer data;
+        private long hits;
+        private long lastAccess;
+
+        Block(Store store, int index, ByteBuffer data) {
+            this.store = store;
+            this.index = index;
+            this.data = data;
+        }
+    }
+
+
+    /**
+     * The blocks of a cached dataset.
+     */
+    private class Store implements PDBlockStore {
+        private final long cacheId;
+        private final Tier tier;
+
+        Store(long cacheId, Tier tier) {
+            this.cacheId = cacheId;
+            this.tier = tier;
+        }
+
+        @Override
+        public ByteBuffer get(int block) {
+            return PDCacheManager.this.get(cacheId, block);
+        }
+
+        @Override
+        public void put(int block, byte[] data) {
+            if (data == null)
+                throw new NullPointerException("The data is 'null'");
+            PDCacheManager.this.put(this, block, data);
+        }
+
+        /**
+         * Called, under the lock of the manager, when a block of this store is evicted from
+         * memory and will be given to {@link #evicted(int, ByteBuffer)}.
+         *
+         * @param block The index of the block.
+         * @param data  The data of the block.
+         */
+        void evicting(int block, ByteBuffer data) {
+        }
+
+        /**
+         * Called when a block of this store has been evicted from memory.
+         *
+         * @param block The index of the block.
+         * @param data  The data of the block.
+         */
+        void evicted(int block, ByteBuffer data) {
+        }
+
+        @Override
+        public void delete() {
+            remove(cacheId);
+        }
+    }
+
+
+    /**
+     * The blocks of a dataset cached in RAM and on disk. An evicted block is kept readable among
+     * the demoting ones until it has been written on disk, so a concurrent read finds it in one
+     * of the tiers and does not recompute it.
+     */
+    private class TieredStore extends Store {
+        private final PDSegmentBlockStore disk = new PDSegmentBlockStore();
+        private final ConcurrentHashMap<Integer, ByteBuffer> demoting = new ConcurrentHashMap<>();
+        private volatile boolean deleted;
+
+        TieredStore(long cacheId, Tier tier) {
+            super(cacheId, tier);
+        }
+
+        @Override
+        public ByteBuffer get(int block) {
+            ByteBuffer data = super.get(block);
+            if (data != null)
+                return data;
+            data = demoting.get(block);
+            if (data != null)
+                return data.asReadOnlyBuffer();
+            data = disk.get(block);
+            if (data != null)
+                super.put(block, toArray(data));
+            return data;
+        }
+
+        @Override
+        void evicting(int block, ByteBuffer data) {
+            if (!deleted)
+                demoting.put(block, data);
+        }
+
+        @Override
+        void evicted(int block, ByteBuffer data) {
+            try {
+                if (deleted || disk.get(block) != null)
+                    return;
+                disk.put(block, toArray(data));
+            } catch (RuntimeException e) {
+                // The store can be deleted while the block is demoted.
+                if (!deleted)
+                    throw e;
+            } finally {
+                demoting.remove(block, data);
+            }
+        }
+
+        @Override
+        public void delete() {
+            deleted = true;
+            super.delete();
+            demoting.clear();
+            disk.delete();
+        }
+
+        private byte[] toArray(ByteBuffer data) {
+            byte[] ret = new byte[data.remaining()];
+            data.duplicate().get(ret);
+            return ret;
+        }
+    }
+}
@@ -0,0 +1,373 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime.data;
+
+import it.cnr.isti.hlt.processfast.core.TaskDataContext;
+import it.cnr.isti.hlt.processfast.data.ImmutableDataSourceIteratorProvider;
+import it.cnr.isti.hlt.processfast.data.SplittableDataSourceIteratorProvider;
+import it.cnr.isti.hlt.processfast.runtime.FJBlocking;
+import it.cnr.isti.hlt.processfast.utils.Pair;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A data source over the items of a cached dataset, stored as one encoded block (see
+ * {@link PDBlockCodec}) per partition in a {@link PDBlockStore}. When built by
+ * {@link #build(PDEnvironment, ImmutableDataSourceIteratorProvider, List, int, TaskDataContext, PDBlockStore, boolean)},
+ * each block remembers how to compute its partition from the lineage of the dataset (a part of
+ * the original data source and the narrow transformations applied to it), so a block dropped by
+ * the store is recomputed and stored again when read. The data source is split by ranges of
+ * blocks.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+class PDCachedDataSourceIteratorProvider<T extends Serializable> implements SplittableDataSourceIteratorProvider<T>, PDTemporaryDataSource {
+
+    private final Blocks blocks;
+    private final int fromBlock;
+    private final int toBlock;
+    private final long size;
+
+    private PDCachedDataSourceIteratorProvider(Blocks blocks, int fromBlock, int toBlock) {
+        this.blocks = blocks;
+        this.fromBlock = fromBlock;
+        this.toBlock = toBlock;
+        long s = 0;
+        for (int i = fromBlock; i < toBlock; i++)
+            s += blocks.counts[i];
+        this.size = s;
+    }
+
+    /**
+     * Compute the items of a dataset made of narrow transformations only, and cache them one
+     * partition at a time. The partitions are computed in parallel on the scheduler of the
+     * environment. A splittable data source is split in parts of about the partition size, each
+     * part becoming a block read in parallel; a part which can not be split down to the partition
+     * size, and any other data source, is read sequentially and cut into partitions of the
+     * partition size, so no block grows beyond a partition.
+     *
+     * @param env           The environment.
+     * @param source        The data source of the dataset.
+     * @param chain         The narrow and partition transformations of the dataset.
+     * @param partitionSize The number of items in each partition.
+     * @param ctx           The data context.
+     * @param store         The store of the blocks.
+     * @param compress      True if the blocks must be compressed, false otherwise.
+     * @return The data source over the cached items.
+     */
+    @SuppressWarnings("unchecked")
+    static <T extends Serializable> PDCachedDataSourceIteratorProvider<T> build(PDEnvironment env, ImmutableDataSourceIteratorProvider<?> source,
+                                                                                List<PDTransformation> chain, int partitionSize,
+                                                                                TaskDataContext ctx, PDBlockStore store, boolean compress) {
+        List<CompletableFuture<Integer>> counts = new ArrayList<>();
+        PDScheduler.Job job = env.getScheduler().newJob(env.getPriority());
+        Blocks blocks;
+        try {
+            int maxInFlight = 2 * env.getScheduler().getMaxWorkers();
+            if (source instanceof SplittableDataSourceIteratorProvider) {
+                List<SplittableDataSourceIteratorProvider<?>> parts = PDExecutor.split((SplittableDataSourceIteratorProvider<?>) source, partitionSize);
+                List<long[]> locations = new ArrayList<>();
+                blocks = new Blocks(store, ctx, chain, compress, i -> {
+                    SplittableDataSourceIteratorProvider<?> part = parts.get((int) locations.get(i)[0]);
+                    if (part.estimateSize() <= partitionSize)
+                        return (Iterator<Object>) part.iterator();
+                    return range(part, locations.get(i)[1], partitionSize);
+                });
+                for (int i = 0; i < parts.size(); i++) {
+                    SplittableDataSourceIteratorProvider<?> part = parts.get(i);
+                    if (part.estimateSize() <= partitionSize) {
+                        locations.add(new long[]{i, 0});
+                        counts.add(submit(job, blocks, counts.size(), (Iterator<Object>) part.iterator()));
+                        continue;
+                    }
+                    long offset = 0;
+                    Iterator<?> items = part.iterator();
+                    while (items.hasNext()) {
+                        List<Object> partition = new ArrayList<>(partitionSize);
+                        while (items.hasNext() && partition.size() < partitionSize)
+                            partition.add(items.next());
+                        locations.add(new long[]{i, offset});
+                        offset += partition.size();
+                        if (counts.size() >= maxInFlight)
+                            FJBlocking.get(counts.get(counts.size() - maxInFlight));
+                        counts.add(submit(job, blocks, counts.size(), partition.iterator()));
+                    }
+                }
+            } else {
+                blocks = new Blocks(store, ctx, chain, compress, i -> range(source, (long) i * partitionSize, partitionSize));
+                Iterator<?> items = source.iterator();
+                while (items.hasNext()) {
+                    List<Object> partition = new ArrayList<>(partitionSize);
+                    while (items.hasNext() && partition.size() < partitionSize)
+                        partition.add(items.next());
+                    if (counts.size() >= maxInFlight)
+                        FJBlocking.get(counts.get(counts.size() - maxInFlight));
+                    counts.add(submit(job, blocks, counts.size(), partition.iterator()));
+                }
+            }
+            blocks.counts = new int[counts.size()];
+            for (int i = 0; i < counts.size(); i++)
+                blocks.counts[i] = FJBlocking.get(counts.get(i));
+        } catch (RuntimeException | Error e) {
+            for (CompletableFuture<Integer> c : counts)
+                c.cancel(false);
+            store.delete();
+            throw e;
+        }
+        return new PDCachedDataSourceIteratorProvider<>(blocks, 0, blocks.counts.length);
+    }
+
+    /**
+     * Create a data source over blocks already written in a store which never drops them.
+     *
+     * @param store  The store of the blocks.
+     * @param counts The number of items of each block.
+     * @return The data source over the cached items.
+     */
+    static <T extends Serializable> PDCachedDataSourceIteratorProvider<T> fromBlocks(PDBlockStore store, int[] counts) {
+        if (store == null)
+            throw new NullPointerException("The store is 'null'");
+        if (counts == null)
+            throw new NullPointerException("The counts are 'null'");
+        Blocks blocks = new Blocks(store, null, Collections.<PDTransformation>emptyList(), false, null);
+        blocks.counts = counts;
+        return new PDCachedDataSourceIteratorProvider<>(blocks, 0, counts.length);
+    }
+
+    private static CompletableFuture<Integer> submit(PDScheduler.Job job, Blocks blocks, int block, Iterator<Object> partition) {
+        CompletableFuture<Integer> count = new CompletableFuture<>();
+        job.submit(() -> {
+            if (count.isDone())
+                return;
+            try {
+                count.complete(PDBlockCodec.count(blocks.compute(block, partition)));
+            } catch (Throwable t) {
+                count.completeExceptionally(t);
+            }
+        });
+        return count;
+    }
+
+    /**
+     * Get the items of a range of a data source which can not be split.
+     */
+    @SuppressWarnings("unchecked")
+    private static Iterator<Object> range(ImmutableDataSourceIteratorProvider<?> source, long startFrom, int numItems) {
+        if (source.takeEnabled())
+            return (Iterator<Object>) source.take(startFrom, numItems).iterator();
+        Iterator<Object> items = (Iterator<Object>) source.iterator();
+        for (long i = 0; i < startFrom && items.hasNext(); i++)
+            items.next();
+        return new Iterator<Object>() {
+            private int read;
+
+            @Override
+            public boolean hasNext() {
+                return read < numItems && items.hasNext();
+            }
+
+            @Override
+            public Object next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                read++;
+                return items.next();
+            }
+        };
+    }
+
+    /**
+     * Get the number of blocks of this data source.
+     *
+     * @return The number of blocks.
+     */
+    int getNumBlocks() {
+        return toBlock - fromBlock;
+    }
+
+    /**
+     * Release the blocks of the cached dataset. The data source can not be used anymore after
+     * this call.
+     */
+    @Override
+    public void delete() {
+        blocks.store.delete();
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            private int block = fromBlock;
+            private Iterator<T> current = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext() && block < toBlock)
+                    current = PDBlockCodec.decode(blocks.get(block++));
+                return current.hasNext();
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return current.next();
+            }
+        };
+    }
+
+    @Override
+    public boolean sizeEnabled() {
+        return true;
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public boolean contains(T item) {
+        Iterator<T> iter = iterator();
+        while (iter.hasNext()) {
+            T v = iter.next();
+            if (v == null ? item == null : v.equals(item))
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean containsEnabled() {
+        return true;
+    }
+
+    @Override
+    public Collection<T> take(long startFrom, long numItems) {
+        if (startFrom < 0)
+            throw new IllegalArgumentException("The startFrom parameter is < 0");
+        if (numItems < 1)
+            throw new IllegalArgumentException("The numItems parameter is < 1");
+        ArrayList<T> ret = new ArrayList<>();
+        long idx = 0;
+        for (int i = fromBlock; i < toBlock && idx < startFrom + numItems; i++) {
+            if (idx + blocks.counts[i] <= startFrom) {
+                idx += blocks.counts[i];
+                continue;
+            }
+            Iterator<T> iter = PDBlockCodec.decode(blocks.get(i));
+            while (iter.hasNext() && idx < startFrom + numItems) {
+                T item = iter.next();
+                if (idx >= startFrom)
+                    ret.add(item);
+                idx++;
+            }
+        }
+        return ret;
+    }
+
+    @Override
+    public boolean takeEnabled() {
+        return true;
+    }
+
+    @Override
+    public long estimateSize() {
+        return size;
+    }
+
+    @Override
+    public boolean isEstimateExact() {
+        return true;
+    }
+
+    @Override
+    public Pair<SplittableDataSourceIteratorProvider<T>, SplittableDataSourceIteratorProvider<T>> trySplit() {
+        if (toBlock - fromBlock < 2)
+            return null;
+        long half = 0;
+        int mid = fromBlock;
+        while (mid < toBlock - 1 && half + blocks.counts[mid] <= size / 2)
+            half += blocks.counts[mid++];
+        if (mid == fromBlock)
+            mid++;
+        return new Pair<>(new PDCachedDataSourceIteratorProvider<>(blocks, fromBlock, mid),
+                new PDCachedDataSourceIteratorProvider<>(blocks, mid, toBlock));
+    }
+
+
+    /**
+     * A function giving the items of a partition of the original data source.
+     */
+    interface PartitionSource {
+        Iterator<Object> open(int partition);
+    }
+
+
+    /**
+     * The blocks of a cached dataset, shared by the parts of the data source.
+     */
+    private static class Blocks {
+        private final PDBlockStore store;
+        private final TaskDataContext ctx;
+        private final List<PDTransformation> chain;
+        private final boolean compress;
+        private final PartitionSource partitions;
+        private int[] counts;
+
+        Blocks(PDBlockStore store, TaskDataContext ctx, List<PDTransformation> chain, boolean compress, PartitionSource partitions) {
+            this.store = store;
+            this.ctx = ctx;
+            this.chain = chain;
+            this.compress = compress;
+            this.partitions = partitions;
+        }
+
+        /**
+         * Compute and store a block from the items of its partition.
+         */
+        ByteBuffer compute(int block, Iterator<Object> partition) {
+            byte[] data = PDBlockCodec.encode(PDExecutor.pull(ctx, block, partition, chain), compress);
+            store.put(block, data);
+            return ByteBuffer.wrap(data);
+        }
+
+        /**
+         * Get a block, recomputing it if it has been dropped by the store.
+         */
+        ByteBuffer get(int block) {
+            ByteBuffer data = store.get(block);
+            if (data != null)
+                return data;
+            if (partitions == null)
+                throw new IllegalStateException("The cached block " + block + " is not available");
+            return compute(block, partitions.open(block));
+        }
+    }
+}
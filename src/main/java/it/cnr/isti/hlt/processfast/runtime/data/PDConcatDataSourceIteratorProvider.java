@@ -0,0 +1,118 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime.data;
+
+import it.cnr.isti.hlt.processfast.data.ImmutableDataSourceIteratorProvider;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A data source made by the concatenation of two data sources.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+class PDConcatDataSourceIteratorProvider<T extends Serializable> implements ImmutableDataSourceIteratorProvider<T> {
+
+    private final ImmutableDataSourceIteratorProvider<T> first;
+    private final ImmutableDataSourceIteratorProvider<T> second;
+
+    PDConcatDataSourceIteratorProvider(ImmutableDataSourceIteratorProvider<T> first, ImmutableDataSourceIteratorProvider<T> second) {
+        if (first == null)
+            throw new NullPointerException("The first data source is 'null'");
+        if (second == null)
+            throw new NullPointerException("The second data source is 'null'");
+        this.first = first;
+        this.second = second;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            private Iterator<T> current = first.iterator();
+            private boolean onSecond;
+
+            @Override
+            public boolean hasNext() {
+                if (current.hasNext())
+                    return true;
+                if (onSecond)
+                    return false;
+                onSecond = true;
+                current = second.iterator();
+                return current.hasNext();
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return current.next();
+            }
+        };
+    }
+
+    @Override
+    public boolean sizeEnabled() {
+        return first.sizeEnabled() && second.sizeEnabled();
+    }
+
+    @Override
+    public long size() {
+        return first.size() + second.size();
+    }
+
+    @Override
+    public boolean contains(T item) {
+        return first.contains(item) || second.contains(item);
+    }
+
+    @Override
+    public boolean containsEnabled() {
+        return first.containsEnabled() && second.containsEnabled();
+    }
+
+    @Override
+    public Collection<T> take(long startFrom, long numItems) {
+        if (startFrom < 0)
+            throw new IllegalArgumentException("The startFrom parameter is < 0");
+        if (numItems < 1)
+            throw new IllegalArgumentException("The numItems parameter is < 1");
+        ArrayList<T> ret = new ArrayList<>();
+        Iterator<T> iter = iterator();
+        long idx = 0;
+        while (iter.hasNext() && idx < startFrom + numItems) {
+            T item = iter.next();
+            if (idx >= startFrom)
+                ret.add(item);
+            idx++;
+        }
+        return ret;
+    }
+
+    @Override
+    public boolean takeEnabled() {
+        return true;
+    }
+}
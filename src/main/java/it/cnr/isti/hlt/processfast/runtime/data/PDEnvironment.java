@@ -0,0 +1,189 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime.data;
+
+import it.cnr.isti.hlt.processfast.core.LogManager;
+import it.cnr.isti.hlt.processfast.data.StorageManager;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The execution environment of the partitionable datasets created by a task.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+public class PDEnvironment {
+
+    /**
+     * The default number of items assigned to a partition.
+     */
+    public static final int DEFAULT_PARTITION_SIZE = 10000;
+
+    /**
+     * The default maximum number of distinct keys held by the map-side combiner of a partition.
+     */
+    public static final int DEFAULT_COMBINER_CAPACITY = 100000;
+
+    /**
+     * The default maximum number of records buffered in memory by all the shuffles sharing a
+     * memory budget.
+     */
+    public static final long DEFAULT_SHUFFLE_MEMORY_BUDGET = 2000000;
+
+    /**
+     * The maximum number of pairs of a dataset, when known without computing it, for which a
+     * join loads the dataset in a hash table shared by all partitions instead of shuffling
+     * both sides.
+     */
+    public static final long BROADCAST_JOIN_THRESHOLD = 100000;
+
+    /**
+     * The default maximum number of bytes of the blocks cached in RAM by all the datasets sharing
+     * a cache manager: a quarter of the maximum heap size.
+     */
+    public static final long DEFAULT_CACHE_MEMORY_BUDGET = Runtime.getRuntime().maxMemory() / 4;
+
+    /**
+     * The default maximum number of bytes of the blocks cached in direct memory, outside the
+     * heap, by all the datasets sharing a cache manager: a quarter of the maximum heap size, so
+     * it stays well below the default limit of the direct memory (the maximum heap size), which
+     * is shared with the other users of direct buffers.
+     */
+    public static final long DEFAULT_OFF_HEAP_CACHE_MEMORY_BUDGET = Runtime.getRuntime().maxMemory() / 4;
+
+    private final PDScheduler scheduler;
+    private final PDMemoryBudget shuffleMemoryBudget;
+    private final PDCacheManager cacheManager;
+    private final StorageManager storageManager;
+    private final LogManager logManager;
+    private final int priority;
+
+    /**
+     * Create a new environment with a private scheduler on the specified pool.
+     *
+     * @param pool           The pool executing the computations on data.
+     * @param storageManager The storage manager available to the computations.
+     * @param logManager     The log manager.
+     * @param priority       The priority of the owning task in computational resources allocation.
+     */
+    public PDEnvironment(ForkJoinPool pool, StorageManager storageManager, LogManager logManager, int priority) {
+        this(new PDScheduler(pool), storageManager, logManager, priority);
+    }
+
+    /**
+     * Create a new environment.
+     *
+     * @param scheduler      The scheduler shared by the computations on data of all tasks.
+     * @param storageManager The storage manager available to the computations.
+     * @param logManager     The log manager.
+     * @param priority       The priority of the owning task in computational resources allocation.
+     */
+    public PDEnvironment(PDScheduler scheduler, StorageManager storageManager, LogManager logManager, int priority) {
+        this(scheduler, new PDMemoryBudget(DEFAULT_SHUFFLE_MEMORY_BUDGET), storageManager, logManager, priority);
+    }
+
+    /**
+     * Create a new environment.
+     *
+     * @param scheduler           The scheduler shared by the computations on data of all tasks.
+     * @param shuffleMemoryBudget The budget, in records, shared by the shuffles of the wide transformations.
+     * @param storageManager      The storage manager available to the computations.
+     * @param logManager          The log manager.
+     * @param priority            The priority of the owning task in computational resources allocation.
+     */
+    public PDEnvironment(PDScheduler scheduler, PDMemoryBudget shuffleMemoryBudget, StorageManager storageManager,
+                         LogManager logManager, int priority) {
+        this(scheduler, shuffleMemoryBudget, new PDCacheManager(new PDMemoryBudget(DEFAULT_CACHE_MEMORY_BUDGET),
+                        new PDMemoryBudget(DEFAULT_OFF_HEAP_CACHE_MEMORY_BUDGET), PDCacheManager.EvictionPolicy.LRU),
+                storageManager, logManager, priority);
+    }
+
+    /**
+     * Create a new environment.
+     *
+     * @param scheduler           The scheduler shared by the computations on data of all tasks.
+     * @param shuffleMemoryBudget The budget, in records, shared by the shuffles of the wide transformations.
+     * @param cacheManager        The manager of the blocks of the datasets cached in memory.
+     * @param storageManager      The storage manager available to the computations.
+     * @param logManager          The log manager.
+     * @param priority            The priority of the owning task in computational resources allocation.
+     */
+    public PDEnvironment(PDScheduler scheduler, PDMemoryBudget shuffleMemoryBudget, PDCacheManager cacheManager,
+                         StorageManager storageManager, LogManager logManager, int priority) {
+        if (scheduler == null)
+            throw new NullPointerException("The scheduler is 'null'");
+        if (shuffleMemoryBudget == null)
+            throw new NullPointerException("The shuffle memory budget is 'null'");
+        if (cacheManager == null)
+            throw new NullPointerException("The cache manager is 'null'");
+        if (storageManager == null)
+            throw new NullPointerException("The storage manager is 'null'");
+        if (logManager == null)
+            throw new NullPointerException("The log manager is 'null'");
+        if (priority < 1)
+            throw new IllegalArgumentException("The priority is less than 1");
+        this.scheduler = scheduler;
+        this.shuffleMemoryBudget = shuffleMemoryBudget;
+        this.cacheManager = cacheManager;
+        this.storageManager = storageManager;
+        this.logManager = logManager;
+        this.priority = priority;
+    }
+
+    public ForkJoinPool getPool() {
+        return scheduler.getPool();
+    }
+
+    public PDScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Get the budget limiting the number of records buffered in memory by the shuffles of the
+     * wide transformations. When the budget is exhausted the shuffles spill to temporary files.
+     *
+     * @return The shuffle memory budget.
+     */
+    public PDMemoryBudget getShuffleMemoryBudget() {
+        return shuffleMemoryBudget;
+    }
+
+    /**
+     * Get the manager of the blocks of the datasets cached in memory.
+     *
+     * @return The cache manager.
+     */
+    public PDCacheManager getCacheManager() {
+        return cacheManager;
+    }
+
+    public StorageManager getStorageManager() {
+        return storageManager;
+    }
+
+    public LogManager getLogManager() {
+        return logManager;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+}
@@ -0,0 +1,397 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime.data;
+
+import it.cnr.isti.hlt.processfast.core.TaskDataContext;
+import it.cnr.isti.hlt.processfast.data.ImmutableDataSourceIteratorProvider;
+import it.cnr.isti.hlt.processfast.data.SplittableDataSourceIteratorProvider;
+import it.cnr.isti.hlt.processfast.runtime.FJBlocking;
+import it.cnr.isti.hlt.processfast.utils.Pair;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Execute the lineage of a partitionable dataset on the pool of the environment.
+ * <p>
+ * <br/><br/>
+ * The lineage is split in stages ending with a wide transformation or with the final action.
+ * In each stage a {@link SplittableDataSourceIteratorProvider} is split in parts of about the
+ * partition size, each part read by the worker processing it; any other data source (or a part
+ * which can not be split enough, when there are fewer parts than workers or when the stage
+ * depends on the indices of the partitions) is read sequentially by the caller and cut into
+ * partitions. So the partitions of a stage depending on their indices, like a seeded sampling,
+ * are cut by the partition size only, whatever the number of workers.
+ * Every partition is processed in parallel by pushing its items through the narrow
+ * transformations of the stage, fused in a single chain of {@link PDSink}s, into the
+ * {@link PDPartitionAccumulator} of the wide transformation (or of the action); the
+ * transformations of whole partitions pull their items through an iterator instead (see
+ * {@link #pull(TaskDataContext, int, Iterator, List)}). An action can
+ * stop the stage as soon as it has enough partial results (see
+ * {@link PDAction#isEnough(int, Object)}), skipping the rest of the data source. When reading
+ * sequentially, at most two partitions per worker are kept in memory at the same time. All the partitions of an
+ * execution belong to the same {@link PDScheduler} job, weighted by the priority of the
+ * environment.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+class PDExecutor {
+
+    private final PDEnvironment env;
+
+    PDExecutor(PDEnvironment env) {
+        if (env == null)
+            throw new NullPointerException("The environment is 'null'");
+        this.env = env;
+    }
+
+    /**
+     * Execute the specified action on the data computed by applying the given transformations
+     * to the data source.
+     *
+     * @param source          The data source.
+     * @param transformations The transformations to apply.
+     * @param partitionSize   The number of items in each partition.
+     * @param ctx             The data context.
+     * @param action          The action to compute.
+     * @return The result of the action.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    <R> R execute(ImmutableDataSourceIteratorProvider<?> source, List<PDTransformation> transformations,
+                  int partitionSize, TaskDataContext ctx, PDAction<?, ?, R> action) {
+        PDScheduler.Job job = env.getScheduler().newJob(env.getPriority());
+        ImmutableDataSourceIteratorProvider<?> current = source;
+        List<PDTransformation> chain = new ArrayList<>();
+        try {
+            for (PDTransformation t : transformations) {
+                if (!(t instanceof PDWideTransformation)) {
+                    chain.add(t);
+                } else {
+                    ImmutableDataSourceIteratorProvider<?> next =
+                            (ImmutableDataSourceIteratorProvider<?>) runStage(job, current, chain, partitionSize, ctx, (PDWideTransformation) t);
+                    deleteIntermediate(source, current);
+                    current = next;
+                    chain = new ArrayList<>();
+                }
+            }
+            return (R) runStage(job, current, chain, partitionSize, ctx, (PDAction) action);
+        } finally {
+            deleteIntermediate(source, current);
+        }
+    }
+
+    /**
+     * Delete the temporary data holding the output of a wide transformation once it has been
+     * consumed by the following stage.
+     */
+    private static void deleteIntermediate(ImmutableDataSourceIteratorProvider<?> source, ImmutableDataSourceIteratorProvider<?> data) {
+        if (data != source && data instanceof PDTemporaryDataSource)
+            ((PDTemporaryDataSource) data).delete();
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private <P, R> R runStage(PDScheduler.Job job, ImmutableDataSourceIteratorProvider<?> source, List<PDTransformation> chain,
+                              int partitionSize, TaskDataContext ctx, PDAction<Object, P, R> action) {
+        StageRun<P> run = new StageRun<>(job, chain, ctx, action);
+        if (source instanceof SplittableDataSourceIteratorProvider) {
+            List<SplittableDataSourceIteratorProvider<?>> parts = split((SplittableDataSourceIteratorProvider<?>) source, partitionSize);
+            boolean enoughParts = parts.size() >= env.getScheduler().getMaxWorkers() && !dependsOnPartition(chain);
+            for (SplittableDataSourceIteratorProvider<?> part : parts) {
+                if (run.isStopped())
+                    break;
+                if (enoughParts || part.estimateSize() <= partitionSize)
+                    run.submit(() -> (Iterator<Object>) part.iterator());
+                else
+                    run.submitChunks(part.iterator(), partitionSize);
+            }
+        } else {
+            run.submitChunks(source.iterator(), partitionSize);
+        }
+        return action.merge(ctx, run.await());
+    }
+
+    /**
+     * Check if the output of a chain depends on the indices of the partitions it is applied to.
+     *
+     * @param chain The narrow and partition transformations, in lineage order.
+     * @return True if a transformation of the chain depends on the partition, false otherwise.
+     */
+    private static boolean dependsOnPartition(List<PDTransformation> chain) {
+        for (PDTransformation t : chain) {
+            if (t instanceof PDNarrowTransformation && ((PDNarrowTransformation<?, ?>) t).dependsOnPartition())
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Split recursively a data source until the parts contain at most the specified number of
+     * items or can not be split anymore.
+     *
+     * @param source   The data source.
+     * @param maxItems The maximum number of items wanted in a part.
+     * @return The parts, in the iteration order of the data source.
+     */
+    static List<SplittableDataSourceIteratorProvider<?>> split(SplittableDataSourceIteratorProvider<?> source, int maxItems) {
+        List<SplittableDataSourceIteratorProvider<?>> parts = new ArrayList<>();
+        ArrayDeque<SplittableDataSourceIteratorProvider<?>> toSplit = new ArrayDeque<>();
+        toSplit.push(source);
+        while (!toSplit.isEmpty()) {
+            SplittableDataSourceIteratorProvider<?> p = toSplit.pop();
+            Pair<? extends SplittableDataSourceIteratorProvider<?>, ? extends SplittableDataSourceIteratorProvider<?>> halves =
+                    p.estimateSize() > maxItems ? p.trySplit() : null;
+            if (halves == null) {
+                parts.add(p);
+            } else {
+                toSplit.push(halves.getV2());
+                toSplit.push(halves.getV1());
+            }
+        }
+        return parts;
+    }
+
+    /**
+     * Fuse the narrow transformations of a stage into a single chain of sinks.
+     *
+     * @param ctx         The data context.
+     * @param partition   The index of the partition processed by the chain.
+     * @param chain       The narrow transformations, in lineage order.
+     * @param accumulator The accumulator at the end of the stage.
+     * @return The first sink of the chain.
+     */
+    static PDSink<Object> fuse(TaskDataContext ctx, int partition, List<? extends PDTransformation> chain, PDSink<?> accumulator) {
+        @SuppressWarnings("unchecked")
+        PDSink<Object> sink = (PDSink<Object>) accumulator;
+        for (int i = chain.size() - 1; i >= 0; i--) {
+            @SuppressWarnings("unchecked")
+            PDNarrowTransformation<Object, Object> t = (PDNarrowTransformation<Object, Object>) chain.get(i);
+            sink = t.wrap(ctx, partition, sink);
+        }
+        return sink;
+    }
+
+
+    /**
+     * Get the index of the last {@link PDPartitionTransformation} in a chain.
+     *
+     * @param chain The narrow and partition transformations, in lineage order.
+     * @return The index of the last partition transformation, or -1 if there is none.
+     */
+    private static int lastPartitionTransformation(List<PDTransformation> chain) {
+        for (int i = chain.size() - 1; i >= 0; i--) {
+            if (chain.get(i) instanceof PDPartitionTransformation)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Apply a chain of narrow and partition transformations to the items of a partition, pulling the
+     * transformed items through an iterator. Partition transformations consume the iterator of
+     * the transformations before them, the other ones are fused as usual and the items they push
+     * are buffered until pulled, so the partition is streamed and never fully materialized.
+     *
+     * @param ctx       The data context.
+     * @param partition The index of the partition.
+     * @param items     The items of the partition.
+     * @param chain     The narrow and partition transformations, in lineage order.
+     * @return The transformed items.
+     */
+    static Iterator<Object> pull(TaskDataContext ctx, int partition, Iterator<Object> items, List<PDTransformation> chain) {
+        int last = lastPartitionTransformation(chain);
+        if (last >= 0) {
+            @SuppressWarnings("unchecked")
+            PDPartitionTransformation<Object, Object> t = (PDPartitionTransformation<Object, Object>) chain.get(last);
+            items = t.apply(ctx, pull(ctx, partition, items, chain.subList(0, last)));
+            chain = chain.subList(last + 1, chain.size());
+        }
+        if (chain.isEmpty())
+            return items;
+        Iterator<Object> input = items;
+        ArrayList<Object> buffer = new ArrayList<>();
+        PDSink<Object> sink = fuse(ctx, partition, chain, buffer::add);
+        return new Iterator<Object>() {
+            private int read;
+
+            @Override
+            public boolean hasNext() {
+                while (read >= buffer.size() && input.hasNext()) {
+                    buffer.clear();
+                    read = 0;
+                    sink.accept(input.next());
+                }
+                return read < buffer.size();
+            }
+
+            @Override
+            public Object next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return buffer.get(read++);
+            }
+        };
+    }
+
+
+    /**
+     * The partitions of a stage submitted to the scheduler.
+     */
+    private class StageRun<P> {
+        private final PDScheduler.Job job;
+        private final List<PDTransformation> chain;
+        private final TaskDataContext ctx;
+        private final PDAction<Object, P, ?> action;
+        private final List<CompletableFuture<P>> partials = new ArrayList<>();
+
+        private final int maxInFlight = 2 * env.getScheduler().getMaxWorkers();
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition slotReleased = lock.newCondition();
+        private int inFlight;
+
+        /**
+         * True if the stage failed or the action has got enough partial results.
+         */
+        private volatile boolean stopped;
+
+        StageRun(PDScheduler.Job job, List<PDTransformation> chain, TaskDataContext ctx, PDAction<Object, P, ?> action) {
+            this.job = job;
+            this.chain = chain;
+            this.ctx = ctx;
+            this.action = action;
+        }
+
+        /**
+         * Submit a partition whose items are read by the worker processing it.
+         */
+        CompletableFuture<P> submit(Iterable<Object> partition) {
+            CompletableFuture<P> partial = new CompletableFuture<>();
+            int index = partials.size();
+            job.submit(() -> {
+                if (stopped) {
+                    partial.complete(null);
+                    return;
+                }
+                try {
+                    PDPartitionAccumulator<Object, P> accumulator = action.newAccumulator(ctx);
+                    int split = lastPartitionTransformation(chain) + 1;
+                    Iterator<Object> items = pull(ctx, index, partition.iterator(), chain.subList(0, split));
+                    PDSink<Object> sink = fuse(ctx, index, chain.subList(split, chain.size()), accumulator);
+                    while (items.hasNext()) {
+                        sink.accept(items.next());
+                        if (accumulator.isDone() || stopped)
+                            break;
+                    }
+                    P result = action.completed(ctx, index, accumulator.finish());
+                    if (isEnough(index, result))
+                        stopped = true;
+                    partial.complete(result);
+                } catch (Throwable t) {
+                    partial.completeExceptionally(t);
+                }
+            });
+            partials.add(partial);
+            return partial;
+        }
+
+        private boolean isEnough(int index, P result) {
+            lock.lock();
+            try {
+                return !stopped && action.isEnough(index, result);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        boolean isStopped() {
+            return stopped;
+        }
+
+        /**
+         * Read sequentially the specified items, cutting them into partitions. At most two
+         * partitions per worker are kept in memory at the same time.
+         */
+        void submitChunks(Iterator<?> iter, int partitionSize) {
+            while (iter.hasNext()) {
+                lock.lock();
+                try {
+                    while (inFlight >= maxInFlight && !stopped)
+                        FJBlocking.await(slotReleased);
+                    if (stopped)
+                        return;
+                    inFlight++;
+                } finally {
+                    lock.unlock();
+                }
+
+                List<Object> partition = new ArrayList<>(Math.min(partitionSize, 1024));
+                while (partition.size() < partitionSize && iter.hasNext())
+                    partition.add(iter.next());
+                submit(partition).whenComplete((r, t) -> {
+                    lock.lock();
+                    try {
+                        inFlight--;
+                        if (t != null)
+                            stopped = true;
+                        slotReleased.signal();
+                    } finally {
+                        lock.unlock();
+                    }
+                });
+            }
+        }
+
+        /**
+         * Wait for all the submitted partitions.
+         *
+         * @return The partial results, in the order of submission.
+         */
+        List<P> await() {
+            try {
+                FJBlocking.get(CompletableFuture.allOf(partials.toArray(new CompletableFuture<?>[partials.size()])));
+            } catch (RuntimeException | Error e) {
+                discardCompleted();
+                throw e;
+            }
+            List<P> results = new ArrayList<>(partials.size());
+            for (CompletableFuture<P> partial : partials)
+                results.add(partial.join());
+            return results;
+        }
+
+        /**
+         * Release the resources of the partitions completed successfully in a failed stage.
+         */
+        private void discardCompleted() {
+            List<P> completed = new ArrayList<>();
+            for (CompletableFuture<P> partial : partials) {
+                if (partial.isDone() && !partial.isCompletedExceptionally())
+                    completed.add(partial.join());
+            }
+            action.discard(ctx, completed);
+        }
+    }
+}
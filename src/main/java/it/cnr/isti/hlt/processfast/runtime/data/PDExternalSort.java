@@ -0,0 +1,384 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime.data;
+
+import it.cnr.isti.hlt.processfast.data.ImmutableDataSourceIteratorProvider;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * The external merge sort used by the sort transformations. Each partition sorts its items in
+ * memory through a {@link Writer}, accounting them on a shared {@link PDMemoryBudget}: when the
+ * writer can not reserve more memory, it sorts the items buffered so far and spills them as a
+ * run in a temporary file. A writer spills also the items left in memory when it finishes while
+ * more than half of the budget is used, so the budget is left to the partitions still writing.
+ * The sorted runs of all partitions are then merged by a {@link LoserTree}, which needs log2(k)
+ * comparisons per item with k runs, after intermediate passes bringing them down to at most
+ * {@link #MAX_MERGE_FAN_IN} runs, so a bounded number of files is open at once. The sort is
+ * stable: equal items keep the order they have in the partitions.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+final class PDExternalSort {
+
+    /**
+     * The maximum number of items reserved at once on the memory budget.
+     */
+    private static final int RESERVATION_CHUNK = 1024;
+
+    /**
+     * The maximum number of spilled runs merged at once.
+     */
+    static final int MAX_MERGE_FAN_IN = 64;
+
+    private PDExternalSort() {
+    }
+
+    /**
+     * Merge the sorted runs of the specified outputs into a data source. The outputs are
+     * discarded once merged.
+     *
+     * @param outputs    The outputs of all partitions, in partitions order.
+     * @param comparator The comparator used to sort the runs.
+     * @param budget     The memory budget, limiting also the items of the result kept in memory.
+     * @return The sorted data source.
+     */
+    static <T extends Serializable> ImmutableDataSourceIteratorProvider<T> merge(List<Output<T>> outputs, Comparator<? super T> comparator,
+                                                                              PDMemoryBudget budget) {
+        try {
+            return PDShuffle.toDataSource(open(outputs, comparator), budget.getLimit());
+        } finally {
+            discard(outputs);
+        }
+    }
+
+    /**
+     * Get an iterator merging the sorted runs of the specified outputs, after merging them down
+     * to at most {@link #MAX_MERGE_FAN_IN} runs. The outputs must be discarded once the iterator
+     * is not used anymore.
+     *
+     * @param outputs    The outputs of all partitions, in partitions order.
+     * @param comparator The comparator used to sort the runs.
+     * @return The iterator over all the items of the outputs, sorted.
+     */
+    static <T extends Serializable> Iterator<T> open(List<Output<T>> outputs, Comparator<? super T> comparator) {
+        mergeRuns(outputs, comparator);
+        List<Iterator<T>> runs = new ArrayList<>();
+        for (Output<T> output : outputs) {
+            for (PDFileDataSourceIteratorProvider<T> run : output.runs)
+                runs.add(run.iterator());
+            runs.add(output.items.iterator());
+        }
+        return new LoserTree<>(runs, comparator);
+    }
+
+    /**
+     * Merge the spilled runs of the specified outputs until they are at most
+     * {@link #MAX_MERGE_FAN_IN}. Each pass merges groups of consecutive outputs, spilled runs and
+     * items in memory together, into a single run held by the first output of the group; the
+     * runs of an output having too many of them are merged in consecutive chunks. Since the
+     * merged runs are consecutive, the sort stays stable.
+     *
+     * @param outputs    The outputs of all partitions, in partitions order.
+     * @param comparator The comparator used to sort the runs.
+     */
+    static <T extends Serializable> void mergeRuns(List<Output<T>> outputs, Comparator<? super T> comparator) {
+        while (numRuns(outputs) > MAX_MERGE_FAN_IN) {
+            int from = 0;
+            int runs = 0;
+            for (int i = 0; i < outputs.size(); i++) {
+                Output<T> output = outputs.get(i);
+                if (output.runs.size() > MAX_MERGE_FAN_IN) {
+                    mergeOutputs(outputs.subList(from, i), comparator);
+                    output.mergeOwnRuns(comparator);
+                    from = i + 1;
+                    runs = 0;
+                    continue;
+                }
+                if (runs + output.runs.size() > MAX_MERGE_FAN_IN) {
+                    mergeOutputs(outputs.subList(from, i), comparator);
+                    from = i;
+                    runs = 0;
+                }
+                runs += output.runs.size();
+            }
+            mergeOutputs(outputs.subList(from, outputs.size()), comparator);
+        }
+    }
+
+    private static <T extends Serializable> int numRuns(List<Output<T>> outputs) {
+        int runs = 0;
+        for (Output<T> output : outputs)
+            runs += output.runs.size();
+        return runs;
+    }
+
+    /**
+     * Merge all the items of a group of consecutive outputs into a single run, held by the first
+     * output of the group.
+     */
+    private static <T extends Serializable> void mergeOutputs(List<Output<T>> group, Comparator<? super T> comparator) {
+        if (numRuns(group) < 2)
+            return;
+        List<Iterator<T>> sources = new ArrayList<>();
+        for (Output<T> output : group) {
+            for (PDFileDataSourceIteratorProvider<T> run : output.runs)
+                sources.add(run.iterator());
+            sources.add(output.items.iterator());
+        }
+        PDFileDataSourceIteratorProvider<T> merged = new PDFileDataSourceIteratorProvider<>(new LoserTree<>(sources, comparator));
+        for (Output<T> output : group) {
+            output.discard();
+            output.items.clear();
+        }
+        group.get(0).runs.add(merged);
+    }
+
+    static <T extends Serializable> void discard(List<Output<T>> outputs) {
+        for (Output<T> output : outputs)
+            output.discard();
+    }
+
+
+    /**
+     * The writer used by a partition.
+     */
+    static final class Writer<T extends Serializable> {
+        private final PDMemoryBudget budget;
+        private final Comparator<? super T> comparator;
+        private final List<PDFileDataSourceIteratorProvider<T>> runs = new ArrayList<>();
+        private List<T> items = new ArrayList<>();
+        private long reserved;
+
+        Writer(PDMemoryBudget budget, Comparator<? super T> comparator) {
+            if (budget == null)
+                throw new NullPointerException("The memory budget is 'null'");
+            if (comparator == null)
+                throw new NullPointerException("The comparator is 'null'");
+            this.budget = budget;
+            this.comparator = comparator;
+        }
+
+        void add(T item) {
+            items.add(item);
+            if (items.size() > reserved) {
+                long chunk = Math.min(RESERVATION_CHUNK, budget.getLimit());
+                if (budget.tryReserve(chunk))
+                    reserved += chunk;
+                else if (items.size() >= chunk)
+                    spill();
+            }
+        }
+
+        private void spill() {
+            items.sort(comparator);
+            runs.add(new PDFileDataSourceIteratorProvider<>(items.iterator()));
+            items = new ArrayList<>();
+            budget.release(reserved);
+            reserved = 0;
+        }
+
+        /**
+         * Terminate the writes of the partition, sorting the items still in memory. The items
+         * still in memory are spilled too if more than half of the budget is used.
+         *
+         * @return The output of the partition.
+         */
+        Output<T> finish() {
+            if (!items.isEmpty() && budget.getUsed() > budget.getLimit() / 2)
+                spill();
+            if (items.isEmpty()) {
+                budget.release(reserved);
+                reserved = 0;
+            }
+            items.sort(comparator);
+            return new Output<>(budget, items, runs, reserved);
+        }
+    }
+
+
+    /**
+     * The sorted runs written by a partition: the spilled ones, in spill order, followed by the
+     * one kept in memory.
+     */
+    static final class Output<T extends Serializable> {
+        private final PDMemoryBudget budget;
+        private final List<T> items;
+        private final List<PDFileDataSourceIteratorProvider<T>> runs;
+        private long reserved;
+
+        Output(PDMemoryBudget budget, List<T> items, List<PDFileDataSourceIteratorProvider<T>> runs, long reserved) {
+            this.budget = budget;
+            this.items = items;
+            this.runs = runs;
+            this.reserved = reserved;
+        }
+
+        int getNumSpilledRuns() {
+            return runs.size();
+        }
+
+        /**
+         * Merge the spilled runs of this output in consecutive chunks of at most
+         * {@link #MAX_MERGE_FAN_IN} runs.
+         */
+        void mergeOwnRuns(Comparator<? super T> comparator) {
+            List<PDFileDataSourceIteratorProvider<T>> merged = new ArrayList<>();
+            try {
+                for (int from = 0; from < runs.size(); from += MAX_MERGE_FAN_IN) {
+                    List<PDFileDataSourceIteratorProvider<T>> chunk = runs.subList(from, Math.min(runs.size(), from + MAX_MERGE_FAN_IN));
+                    if (chunk.size() == 1) {
+                        merged.add(chunk.get(0));
+                        continue;
+                    }
+                    List<Iterator<T>> sources = new ArrayList<>();
+                    for (PDFileDataSourceIteratorProvider<T> run : chunk)
+                        sources.add(run.iterator());
+                    merged.add(new PDFileDataSourceIteratorProvider<>(new LoserTree<>(sources, comparator)));
+                }
+            } catch (RuntimeException | Error e) {
+                for (PDFileDataSourceIteratorProvider<T> run : merged) {
+                    if (!runs.contains(run))
+                        run.delete();
+                }
+                throw e;
+            }
+            for (PDFileDataSourceIteratorProvider<T> run : runs) {
+                if (!merged.contains(run))
+                    run.delete();
+            }
+            runs.clear();
+            runs.addAll(merged);
+        }
+
+        /**
+         * Release the memory and the files used by this output.
+         */
+        synchronized void discard() {
+            budget.release(reserved);
+            reserved = 0;
+            for (PDFileDataSourceIteratorProvider<T> run : runs)
+                run.delete();
+            runs.clear();
+        }
+    }
+
+
+    /**
+     * A k-way merge of sorted iterators through a tournament tree of losers. The leaves of the
+     * tree are the k iterators, each internal node keeps the loser of the match played there
+     * and the winner of the whole tournament is the next item returned. After an item is taken,
+     * only the matches on the path from its leaf to the root are played again. Equal items are
+     * returned in the order of their iterators.
+     */
+    static final class LoserTree<T> implements Iterator<T> {
+        private final List<? extends Iterator<? extends T>> runs;
+        private final Comparator<? super T> comparator;
+        private final Object[] heads;
+        private final boolean[] exhausted;
+        private final int[] tree;
+        private final int k;
+
+        LoserTree(List<? extends Iterator<? extends T>> runs, Comparator<? super T> comparator) {
+            if (runs == null)
+                throw new NullPointerException("The runs are 'null'");
+            if (comparator == null)
+                throw new NullPointerException("The comparator is 'null'");
+            this.runs = runs;
+            this.comparator = comparator;
+            this.k = runs.size();
+            this.heads = new Object[k];
+            this.exhausted = new boolean[k];
+            this.tree = new int[Math.max(k, 1)];
+            for (int i = 0; i < k; i++)
+                advance(i);
+            if (k > 0)
+                tree[0] = k == 1 ? 0 : play(1);
+        }
+
+        /**
+         * Play the matches of the subtree rooted at the specified node.
+         *
+         * @return The winner of the subtree.
+         */
+        private int play(int node) {
+            if (node >= k)
+                return node - k;
+            int w1 = play(2 * node);
+            int w2 = play(2 * node + 1);
+            if (beats(w1, w2)) {
+                tree[node] = w2;
+                return w1;
+            }
+            tree[node] = w1;
+            return w2;
+        }
+
+        @SuppressWarnings("unchecked")
+        private boolean beats(int r1, int r2) {
+            if (exhausted[r1])
+                return false;
+            if (exhausted[r2])
+                return true;
+            int c = comparator.compare((T) heads[r1], (T) heads[r2]);
+            return c < 0 || (c == 0 && r1 < r2);
+        }
+
+        private void advance(int run) {
+            Iterator<? extends T> iter = runs.get(run);
+            if (iter.hasNext()) {
+                heads[run] = iter.next();
+            } else {
+                heads[run] = null;
+                exhausted[run] = true;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return k > 0 && !exhausted[tree[0]];
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public T next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            int winner = tree[0];
+            T item = (T) heads[winner];
+            advance(winner);
+            for (int node = (winner + k) / 2; node > 0; node /= 2) {
+                if (beats(tree[node], winner)) {
+                    int loser = winner;
+                    winner = tree[node];
+                    tree[node] = loser;
+                }
+            }
+            tree[0] = winner;
+            return item;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime.data;
+
+import it.cnr.isti.hlt.processfast.data.ImmutableDataSourceIteratorProvider;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A data source whose items are stored serialized in a temporary file. Used to spill the data
+ * of the shuffles and of the external sorts.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+class PDFileDataSourceIteratorProvider<T extends Serializable> implements ImmutableDataSourceIteratorProvider<T>, PDTemporaryDataSource {
+
+    /**
+     * The number of items written before resetting the object stream, to avoid keeping
+     * references to all written items.
+     */
+    private static final int RESET_INTERVAL = 1000;
+
+    private final File file;
+    private final long size;
+
+    /**
+     * Write the specified items into a new temporary file.
+     *
+     * @param items The items to write.
+     */
+    PDFileDataSourceIteratorProvider(Iterator<T> items) {
+        if (items == null)
+            throw new NullPointerException("The items iterator is 'null'");
+        try {
+            file = File.createTempFile("processfast-cache-", ".bin");
+            file.deleteOnExit();
+            long written = 0;
+            try (ObjectOutputStream os = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+                while (items.hasNext()) {
+                    os.writeObject(items.next());
+                    written++;
+                    if (written % RESET_INTERVAL == 0)
+                        os.reset();
+                }
+            } catch (IOException | RuntimeException | Error e) {
+                file.delete();
+                throw e;
+            }
+            size = written;
+        } catch (IOException e) {
+            throw new RuntimeException("Writing cached data on disk", e);
+        }
+    }
+
+    /**
+     * Delete the file used by this data source. The data source can not be used anymore after this call.
+     */
+    @Override
+    public void delete() {
+        file.delete();
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        final ObjectInputStream is;
+        try {
+            is = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+        } catch (IOException e) {
+            throw new RuntimeException("Reading cached data from disk", e);
+        }
+        return new Iterator<T>() {
+            private long read;
+
+            @Override
+            public boolean hasNext() {
+                if (read < size)
+                    return true;
+                close();
+                return false;
+            }
+
+            @SuppressWarnings("unchecked")
+            @Override
+            public T next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                try {
+                    T item = (T) is.readObject();
+                    read++;
+                    return item;
+                } catch (IOException | ClassNotFoundException e) {
+                    close();
+                    throw new RuntimeException("Reading cached data from disk", e);
+                }
+            }
+
+            private void close() {
+                try {
+                    is.close();
+                } catch (IOException e) {
+                    // Nothing to do.
+                }
+            }
+        };
+    }
+
+    @Override
+    public boolean sizeEnabled() {
+        return true;
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public boolean contains(T item) {
+        Iterator<T> iter = iterator();
+        while (iter.hasNext()) {
+            if (iter.next().equals(item))
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean containsEnabled() {
+        return true;
+    }
+
+    @Override
+    public Collection<T> take(long startFrom, long numItems) {
+        if (startFrom < 0)
+            throw new IllegalArgumentException("The startFrom parameter is < 0");
+        if (numItems < 1)
+            throw new IllegalArgumentException("The numItems parameter is < 1");
+        ArrayList<T> ret = new ArrayList<>();
+        Iterator<T> iter = iterator();
+        long idx = 0;
+        while (iter.hasNext() && idx < startFrom + numItems) {
+            T item = iter.next();
+            if (idx >= startFrom)
+                ret.add(item);
+            idx++;
+        }
+        return ret;
+    }
+
+    @Override
+    public boolean takeEnabled() {
+        return true;
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime.data;
+
+import it.cnr.isti.hlt.processfast.utils.Pair;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * A mergeable sketch of the most frequent items of a dataset: a Count-Min sketch estimates the
+ * frequency of every item and a min-heap keeps the candidates with the highest estimates. The
+ * estimates never underestimate and, with probability 1 - e^-{@value #DEPTH}, exceed the true
+ * frequency by at most relativeError * n, with n the number of items. Merging two sketches
+ * sums their tables and keeps the best candidates of both, so items frequent overall but never
+ * among the candidates of a partition can be missed; each partition keeps twice the requested
+ * number of candidates to make it unlikely.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+class PDHeavyHitters implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The number of hash functions of the Count-Min sketch.
+     */
+    static final int DEPTH = 5;
+
+    private final int width;
+    private final long[] counts;
+    private final int capacity;
+    private final HashMap<Object, Long> candidates = new HashMap<>();
+
+    /**
+     * The candidates ordered by estimate. An entry is stale if the candidate has been removed or
+     * has a newer estimate, and is skipped.
+     */
+    private transient PriorityQueue<Candidate> heap;
+
+    /**
+     * Create a new sketch.
+     *
+     * @param k             The number of most frequent items to find.
+     * @param relativeError The maximum overestimate of a frequency, relative to the number of items.
+     */
+    PDHeavyHitters(int k, double relativeError) {
+        if (k < 1)
+            throw new IllegalArgumentException("The k parameter is less than 1");
+        if (!(relativeError > 0 && relativeError < 1))
+            throw new IllegalArgumentException("The relative error is not in (0, 1)");
+        this.width = (int) Math.ceil(Math.E / relativeError);
+        this.counts = new long[width * DEPTH];
+        this.capacity = 2 * k;
+    }
+
+    PDHeavyHitters add(Object item) {
+        long h = PDHyperLogLog.hash(item);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        long estimate = Long.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            int idx = i * width + Math.floorMod(h1 + i * h2, width);
+            estimate = Math.min(estimate, ++counts[idx]);
+        }
+        offer(item, estimate);
+        return this;
+    }
+
+    private long estimate(Object item) {
+        long h = PDHyperLogLog.hash(item);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        long estimate = Long.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++)
+            estimate = Math.min(estimate, counts[i * width + Math.floorMod(h1 + i * h2, width)]);
+        return estimate;
+    }
+
+    private void offer(Object item, long estimate) {
+        PriorityQueue<Candidate> heap = heap();
+        if (!candidates.containsKey(item) && candidates.size() == capacity) {
+            Candidate min = heap.peek();
+            while (!min.isCurrent()) {
+                heap.poll();
+                min = heap.peek();
+            }
+            if (estimate <= min.estimate)
+                return;
+            heap.poll();
+            candidates.remove(min.item);
+        }
+        candidates.put(item, estimate);
+        heap.add(new Candidate(item, estimate));
+        if (heap.size() > 4 * capacity)
+            this.heap = null;
+    }
+
+    private PriorityQueue<Candidate> heap() {
+        if (heap == null) {
+            heap = new PriorityQueue<>(Math.max(1, candidates.size()), (a, b) -> Long.compare(a.estimate, b.estimate));
+            for (Map.Entry<Object, Long> e : candidates.entrySet())
+                heap.add(new Candidate(e.getKey(), e.getValue()));
+        }
+        return heap;
+    }
+
+    PDHeavyHitters merge(PDHeavyHitters other) {
+        if (other.width != width || other.capacity != capacity)
+            throw new IllegalArgumentException("The sketches have different sizes");
+        for (int i = 0; i < counts.length; i++)
+            counts[i] += other.counts[i];
+        List<Pair<Object, Long>> merged = new ArrayList<>();
+        for (Object item : candidates.keySet())
+            merged.add(new Pair<>(item, estimate(item)));
+        for (Object item : other.candidates.keySet()) {
+            if (!candidates.containsKey(item))
+                merged.add(new Pair<>(item, estimate(item)));
+        }
+        merged.sort((a, b) -> Long.compare(b.getV2(), a.getV2()));
+        candidates.clear();
+        heap = null;
+        for (Pair<Object, Long> candidate : merged.subList(0, Math.min(capacity, merged.size())))
+            candidates.put(candidate.getV1(), candidate.getV2());
+        return this;
+    }
+
+    /**
+     * Get the most frequent items with their estimated frequencies.
+     *
+     * @param k The number of items to return.
+     * @return At most k items, sorted by decreasing estimated frequency.
+     */
+    List<Pair<Object, Long>> top(int k) {
+        List<Pair<Object, Long>> ret = new ArrayList<>();
+        for (Object item : candidates.keySet())
+            ret.add(new Pair<>(item, estimate(item)));
+        ret.sort((a, b) -> Long.compare(b.getV2(), a.getV2()));
+        return new ArrayList<>(ret.subList(0, Math.min(k, ret.size())));
+    }
+
+
+    private final class Candidate {
+        private final Object item;
+        private final long estimate;
+
+        Candidate(Object item, long estimate) {
+            this.item = item;
+            this.estimate = estimate;
+        }
+
+        boolean isCurrent() {
+            Long current = candidates.get(item);
+            return current != null && current == estimate;
+        }
+    }
+}
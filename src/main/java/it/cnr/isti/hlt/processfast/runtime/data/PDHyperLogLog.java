@@ -0,0 +1,126 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime.data;
+
+import java.io.Serializable;
+
+/**
+ * A HyperLogLog sketch estimating the number of distinct items of a dataset. Every partition
+ * adds its items to its own sketch and the sketches are merged by taking the maximum of each
+ * register, so the merge costs only 2^precision byte comparisons. The relative standard error
+ * of the estimate is about 1.04 / sqrt(2^precision).
+ * <p>
+ * <br/><br/>
+ * The items are hashed from their {@link Object#hashCode()}, so items having the same hash
+ * code are counted once. With 32-bit hash codes this lowers the estimate noticeably only
+ * beyond hundreds of millions of distinct items.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+class PDHyperLogLog implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    static final int MIN_PRECISION = 4;
+    static final int MAX_PRECISION = 18;
+
+    private final int precision;
+    private final byte[] registers;
+
+    PDHyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION)
+            throw new IllegalArgumentException("The precision is not in [" + MIN_PRECISION + ", " + MAX_PRECISION + "]");
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    /**
+     * Get the smallest precision giving the specified relative standard error.
+     *
+     * @param relativeSD The relative standard error, greater than 0.
+     * @return The precision.
+     */
+    static int precisionFor(double relativeSD) {
+        if (!(relativeSD > 0))
+            throw new IllegalArgumentException("The relative standard deviation is not greater than 0");
+        int precision = (int) Math.ceil(2 * Math.log(1.04 / relativeSD) / Math.log(2));
+        if (precision > MAX_PRECISION)
+            throw new IllegalArgumentException("The relative standard deviation is less than " + 1.04 / Math.sqrt(1 << MAX_PRECISION));
+        return Math.max(precision, MIN_PRECISION);
+    }
+
+    /**
+     * Get a 64-bit hash of an item, spreading the bits of its hash code.
+     *
+     * @param item The item.
+     * @return The hash of the item.
+     */
+    static long hash(Object item) {
+        long h = item == null ? 0 : item.hashCode();
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    PDHyperLogLog add(Object item) {
+        long h = hash(item);
+        int idx = (int) (h >>> (64 - precision));
+        byte rank = (byte) (Long.numberOfLeadingZeros((h << precision) | (1L << (precision - 1))) + 1);
+        if (rank > registers[idx])
+            registers[idx] = rank;
+        return this;
+    }
+
+    PDHyperLogLog merge(PDHyperLogLog other) {
+        if (other.precision != precision)
+            throw new IllegalArgumentException("The sketches have different precisions");
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i])
+                registers[i] = other.registers[i];
+        }
+        return this;
+    }
+
+    /**
+     * Estimate the number of distinct items added to this sketch.
+     *
+     * @return The estimated number of distinct items.
+     */
+    long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte r : registers) {
+            sum += 1.0 / (1L << r);
+            if (r == 0)
+                zeros++;
+        }
+        double alpha = m == 16 ? 0.673 : m == 32 ? 0.697 : m == 64 ? 0.709 : 0.7213 / (1 + 1.079 / m);
+        double estimate = alpha * m * m / sum;
+        // Linear counting is more accurate on small cardinalities.
+        if (estimate <= 2.5 * m && zeros > 0)
+            estimate = m * Math.log((double) m / zeros);
+        return Math.round(estimate);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime.data;
+
+import it.cnr.isti.hlt.processfast.data.ImmutableDataSourceIteratorProvider;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * A data source whose items are computed the first time they are requested and then kept
+ * in memory. Used to read the other side of binary operations (union, pair, cartesian, etc.)
+ * only when the operation is really executed.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+class PDLazyDataSourceIteratorProvider<T extends Serializable> implements ImmutableDataSourceIteratorProvider<T> {
+
+    private final PDLazyValue<PDListDataSourceIteratorProvider<T>> materialized;
+
+    PDLazyDataSourceIteratorProvider(Supplier<List<T>> supplier) {
+        if (supplier == null)
+            throw new NullPointerException("The supplier is 'null'");
+        this.materialized = new PDLazyValue<>(() -> new PDListDataSourceIteratorProvider<>(supplier.get()));
+    }
+
+    /**
+     * Get the items of this data source, computing them if necessary.
+     *
+     * @return The unmodifiable list of items.
+     */
+    List<T> getItems() {
+        return materialize().getItems();
+    }
+
+    private PDListDataSourceIteratorProvider<T> materialize() {
+        return materialized.get();
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return materialize().iterator();
+    }
+
+    @Override
+    public boolean sizeEnabled() {
+        return true;
+    }
+
+    @Override
+    public long size() {
+        return materialize().size();
+    }
+
+    @Override
+    public boolean contains(T item) {
+        return materialize().contains(item);
+    }
+
+    @Override
+    public boolean containsEnabled() {
+        return true;
+    }
+
+    @Override
+    public Collection<T> take(long startFrom, long numItems) {
+        return materialize().take(startFrom, numItems);
+    }
+
+    @Override
+    public boolean takeEnabled() {
+        return true;
+    }
+}
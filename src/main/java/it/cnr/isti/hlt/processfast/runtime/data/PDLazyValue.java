@@ -0,0 +1,68 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime.data;
+
+import it.cnr.isti.hlt.processfast.runtime.FJBlocking;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * A value computed the first time it is requested. The computation may execute other jobs on
+ * the data scheduler, so the threads waiting for it block through {@link FJBlocking} and
+ * release their worker slot instead of holding a monitor.
+ *
+ * @param <T> The type of the value.
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+class PDLazyValue<T> {
+
+    private final Supplier<T> supplier;
+    private final AtomicReference<CompletableFuture<T>> value = new AtomicReference<>();
+
+    PDLazyValue(Supplier<T> supplier) {
+        if (supplier == null)
+            throw new NullPointerException("The supplier is 'null'");
+        this.supplier = supplier;
+    }
+
+    /**
+     * Get the value, computing it if necessary.
+     *
+     * @return The value.
+     */
+    T get() {
+        CompletableFuture<T> f = value.get();
+        if (f == null) {
+            CompletableFuture<T> computed = new CompletableFuture<>();
+            if (value.compareAndSet(null, computed)) {
+                try {
+                    computed.complete(supplier.get());
+                } catch (Throwable t) {
+                    computed.completeExceptionally(t);
+                }
+            }
+            f = value.get();
+        }
+        return FJBlocking.get(f);
+    }
+}
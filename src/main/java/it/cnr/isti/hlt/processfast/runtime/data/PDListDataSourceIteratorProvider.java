@@ -0,0 +1,121 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime.data;
+
+import it.cnr.isti.hlt.processfast.data.SplittableDataSourceIteratorProvider;
+import it.cnr.isti.hlt.processfast.utils.Pair;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A data source over the items of a list. The list must not be modified after the creation
+ * of the provider.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+public class PDListDataSourceIteratorProvider<T extends Serializable> implements SplittableDataSourceIteratorProvider<T> {
+
+    private final List<T> items;
+
+    public PDListDataSourceIteratorProvider(List<T> items) {
+        if (items == null)
+            throw new NullPointerException("The list of items is 'null'");
+        this.items = Collections.unmodifiableList(items);
+    }
+
+    private PDListDataSourceIteratorProvider(List<T> items, int fromIndex, int toIndex) {
+        this.items = items.subList(fromIndex, toIndex);
+    }
+
+    /**
+     * Get the items of this data source.
+     *
+     * @return The unmodifiable list of items.
+     */
+    public List<T> getItems() {
+        return items;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return items.iterator();
+    }
+
+    @Override
+    public boolean sizeEnabled() {
+        return true;
+    }
+
+    @Override
+    public long size() {
+        return items.size();
+    }
+
+    @Override
+    public boolean contains(T item) {
+        return items.contains(item);
+    }
+
+    @Override
+    public boolean containsEnabled() {
+        return true;
+    }
+
+    @Override
+    public Collection<T> take(long startFrom, long numItems) {
+        if (startFrom < 0)
+            throw new IllegalArgumentException("The startFrom parameter is < 0");
+        if (numItems < 1)
+            throw new IllegalArgumentException("The numItems parameter is < 1");
+        int from = (int) Math.min(startFrom, items.size());
+        int to = (int) Math.min(startFrom + numItems, items.size());
+        return new ArrayList<>(items.subList(from, to));
+    }
+
+    @Override
+    public boolean takeEnabled() {
+        return true;
+    }
+
+    @Override
+    public long estimateSize() {
+        return items.size();
+    }
+
+    @Override
+    public boolean isEstimateExact() {
+        return true;
+    }
+
+    @Override
+    public Pair<SplittableDataSourceIteratorProvider<T>, SplittableDataSourceIteratorProvider<T>> trySplit() {
+        if (items.size() < 2)
+            return null;
+        int mid = items.size() / 2;
+        return new Pair<>(new PDListDataSourceIteratorProvider<>(items, 0, mid),
+                new PDListDataSourceIteratorProvider<>(items, mid, items.size()));
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime.data;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A limit on the amount of data kept in memory, shared by all the computations using it. The
+ * unit of the budget depends on the user: the shuffles of the wide transformations count
+ * records.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+public class PDMemoryBudget {
+
+    private final AtomicLong used = new AtomicLong();
+    private volatile long limit;
+
+    /**
+     * Create a new budget.
+     *
+     * @param limit The maximum amount of memory which can be reserved.
+     */
+    public PDMemoryBudget(long limit) {
+        setLimit(limit);
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    /**
+     * Change the maximum amount of memory which can be reserved. The reservations already made
+     * are not affected.
+     *
+     * @param limit The new limit.
+     */
+    public void setLimit(long limit) {
+        if (limit < 1)
+            throw new IllegalArgumentException("The limit is less than 1");
+        this.limit = limit;
+    }
+
+    /**
+     * Get the amount of memory currently reserved.
+     *
+     * @return The reserved amount.
+     */
+    public long getUsed() {
+        return used.get();
+    }
+
+    /**
+     * Try to reserve the specified amount of memory.
+     *
+     * @param amount The amount to reserve.
+     * @return True if the amount has been reserved, false if the reservation would exceed the limit.
+     */
+    public boolean tryReserve(long amount) {
+        while (true) {
+            long current = used.get();
+            if (current + amount > limit)
+                return false;
+            if (used.compareAndSet(current, current + amount))
+                return true;
+        }
+    }
+
+    /**
+     * Release an amount of memory previously reserved.
+     *
+     * @param amount The amount to release.
+     */
+    public void release(long amount) {
+        used.addAndGet(-amount);
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime.data;
+
+import it.cnr.isti.hlt.processfast.core.TaskDataContext;
+
+/**
+ * A transformation computed independently on each item of a partition. The narrow
+ * transformations of a stage are fused: each one wraps the sink of the following
+ * transformation, and the items of a partition are pushed through the resulting chain.
+ *
+ * @param <In>  The type of input items.
+ * @param <Out> The type of output items.
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+interface PDNarrowTransformation<In, Out> extends PDTransformation {
+
+    /**
+     * Create the sink applying this transformation to the items of a partition.
+     *
+     * @param ctx        The data context.
+     * @param downstream The sink receiving the transformed items.
+     * @return The sink receiving the input items.
+     */
+    PDSink<In> wrap(TaskDataContext ctx, PDSink<Out> downstream);
+
+    /**
+     * Create the sink applying this transformation to the items of the specified partition.
+     * Transformations whose result depends on the partition, like the seeded samplings, override
+     * this method so that recomputing a partition gives the same items.
+     *
+     * @param ctx        The data context.
+     * @param partition  The index of the partition.
+     * @param downstream The sink receiving the transformed items.
+     * @return The sink receiving the input items.
+     */
+    default PDSink<In> wrap(TaskDataContext ctx, int partition, PDSink<Out> downstream) {
+        return wrap(ctx, downstream);
+    }
+
+    /**
+     * Check if the output of this transformation depends on the index of the partition, i.e. if
+     * {@link #wrap(TaskDataContext, int, PDSink)} is overridden. The executor then cuts the
+     * partitions by the partition size only, so that their indices do not depend on the number
+     * of workers.
+     *
+     * @return True if the output depends on the partition, false otherwise.
+     */
+    default boolean dependsOnPartition() {
+        return false;
+    }
+
+    /**
+     * Check if this transformation produces exactly one output item for each input item, so
+     * that the number of items of a dataset is not changed by it.
+     *
+     * @return True if the transformation is one-to-one, false otherwise.
+     */
+    default boolean isOneToOne() {
+        return false;
+    }
+
+    /**
+     * Check if this transformation, applied on pairs, outputs pairs having the same keys of the
+     * input ones and in the same order, possibly skipping some of them.
+     *
+     * @return True if the order of the keys is preserved, false otherwise.
+     */
+    default boolean preservesKeyOrder() {
+        return false;
+    }
+}
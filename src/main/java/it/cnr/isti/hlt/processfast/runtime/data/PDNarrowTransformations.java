@@ -0,0 +1,535 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime.data;
+
+import it.cnr.isti.hlt.processfast.core.TaskDataContext;
+import it.cnr.isti.hlt.processfast.data.PDFunction;
+import it.cnr.isti.hlt.processfast.data.PDFunction2;
+import it.cnr.isti.hlt.processfast.data.PDPairFunction;
+import it.cnr.isti.hlt.processfast.utils.Pair;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * The narrow and partition transformations available on partitionable datasets.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+final class PDNarrowTransformations {
+
+    private PDNarrowTransformations() {
+    }
+
+
+    static class Map<In, Out> implements PDNarrowTransformation<In, Out> {
+        private final PDFunction<In, Out> func;
+
+        Map(PDFunction<In, Out> func) {
+            if (func == null)
+                throw new NullPointerException("The function is 'null'");
+            this.func = func;
+        }
+
+        @Override
+        public PDSink<In> wrap(TaskDataContext ctx, PDSink<Out> downstream) {
+            return item -> downstream.accept(func.call(ctx, item));
+        }
+
+        @Override
+        public boolean isOneToOne() {
+            return true;
+        }
+    }
+
+
+    static class Filter<T> implements PDNarrowTransformation<T, T> {
+        private final PDFunction<T, Boolean> func;
+
+        Filter(PDFunction<T, Boolean> func) {
+            if (func == null)
+                throw new NullPointerException("The function is 'null'");
+            this.func = func;
+        }
+
+        @Override
+        public PDSink<T> wrap(TaskDataContext ctx, PDSink<T> downstream) {
+            return item -> {
+                if (func.call(ctx, item))
+                    downstream.accept(item);
+            };
+        }
+
+        @Override
+        public boolean preservesKeyOrder() {
+            return true;
+        }
+    }
+
+
+    static class MapFlat<In, Out> implements PDNarrowTransformation<In, Out> {
+        private final PDFunction<In, Iterator<Out>> func;
+
+        MapFlat(PDFunction<In, Iterator<Out>> func) {
+            if (func == null)
+                throw new NullPointerException("The function is 'null'");
+            this.func = func;
+        }
+
+        @Override
+        public PDSink<In> wrap(TaskDataContext ctx, PDSink<Out> downstream) {
+            return item -> {
+                Iterator<Out> results = func.call(ctx, item);
+                while (results != null && results.hasNext())
+                    downstream.accept(results.next());
+            };
+        }
+    }
+
+
+    /**
+     * Map the items of a whole partition at once. The items are pulled by the function through an
+     * iterator.
+     */
+    static class MapPartitions<In, Out> implements PDPartitionTransformation<In, Out> {
+        private final PDFunction<Iterator<In>, Iterator<Out>> func;
+
+        MapPartitions(PDFunction<Iterator<In>, Iterator<Out>> func) {
+            if (func == null)
+                throw new NullPointerException("The function is 'null'");
+            this.func = func;
+        }
+
+        @Override
+        public Iterator<Out> apply(TaskDataContext ctx, Iterator<In> items) {
+            Iterator<Out> results = func.call(ctx, items);
+            return results == null ? Collections.emptyIterator() : results;
+        }
+    }
+
+
+    /**
+     * Get the random generator of a partition for a seeded transformation, so that the same seed
+     * on the same partition always gives the same sequence.
+     */
+    private static Random partitionRandom(long seed, int partition) {
+        return new Random(seed ^ (0x9E3779B97F4A7C15L * (partition + 1)));
+    }
+
+    /**
+     * Draw the number of copies of an item sampled with replacement, from a Poisson distribution.
+     */
+    private static int poisson(Random random, double mean) {
+        double limit = Math.exp(-mean);
+        double p = random.nextDouble();
+        int k = 0;
+        while (p > limit) {
+            k++;
+            p *= random.nextDouble();
+        }
+        return k;
+    }
+
+
+    /**
+     * Sample the items of each partition. Without replacement each item is kept with probability
+     * "fraction" (Bernoulli sampling), drawing the gaps between the kept items from a geometric
+     * distribution so that a small fraction costs one random number per kept item. With
+     * replacement each item is repeated a number of times drawn from a Poisson distribution of
+     * mean "fraction".
+     */
+    static class Sample<T> implements PDNarrowTransformation<T, T> {
+        private final boolean withReplacement;
+        private final double fraction;
+        private final long seed;
+
+        Sample(boolean withReplacement, double fraction, long seed) {
+            if (!(fraction >= 0) || (!withReplacement && fraction > 1))
+                throw new IllegalArgumentException("The fraction " + fraction + " is not in " + (withReplacement ? "[0, +inf)" : "[0, 1]"));
+            this.withReplacement = withReplacement;
+            this.fraction = fraction;
+            this.seed = seed;
+        }
+
+        @Override
+        public PDSink<T> wrap(TaskDataContext ctx, PDSink<T> downstream) {
+            return wrap(ctx, 0, downstream);
+        }
+
+        @Override
+        public boolean dependsOnPartition() {
+            return true;
+        }
+
+        @Override
+        public PDSink<T> wrap(TaskDataContext ctx, int partition, PDSink<T> downstream) {
+            Random random = partitionRandom(seed, partition);
+            if (withReplacement) {
+                return item -> {
+                    for (int i = poisson(random, fraction); i > 0; i--)
+                        downstream.accept(item);
+                };
+            }
+            if (fraction == 0)
+                return item -> {
+                };
+            if (fraction == 1)
+                return downstream;
+            double logSkip = Math.log1p(-fraction);
+            return new PDSink<T>() {
+                private long toSkip = gap();
+
+                private long gap() {
+                    return (long) (Math.log(1 - random.nextDouble()) / logSkip);
+                }
+
+                @Override
+                public void accept(T item) {
+                    if (toSkip > 0) {
+                        toSkip--;
+                        return;
+                    }
+                    downstream.accept(item);
+                    toSkip = gap();
+                }
+            };
+        }
+
+        @Override
+        public boolean preservesKeyOrder() {
+            return true;
+        }
+    }
+
+
+    /**
+     * Sample the pairs of each partition with a different fraction for each key (stratified
+     * sampling), with the same distributions of {@link Sample}.
+     */
+    static class SampleByKey<K, V> implements PDNarrowTransformation<Pair<K, V>, Pair<K, V>> {
+        private final boolean withReplacement;
+        private final HashMap<K, Double> fractions;
+        private final long seed;
+
+        SampleByKey(boolean withReplacement, java.util.Map<K, Double> fractions, long seed) {
+            if (fractions == null)
+                throw new NullPointerException("The fractions are 'null'");
+            for (java.util.Map.Entry<K, Double> e : fractions.entrySet()) {
+                double fraction = e.getValue() == null ? Double.NaN : e.getValue();
+                if (!(fraction >= 0) || (!withReplacement && fraction > 1))
+                    throw new IllegalArgumentException("The fraction " + fraction + " of key " + e.getKey() + " is not in " + (withReplacement ? "[0, +inf)" : "[0, 1]"));
+            }
+            this.withReplacement = withReplacement;
+            this.fractions = new HashMap<>(fractions);
+            this.seed = seed;
+        }
+
+        @Override
+        public PDSink<Pair<K, V>> wrap(TaskDataContext ctx, PDSink<Pair<K, V>> downstream) {
+            return wrap(ctx, 0, downstream);
+        }
+
+        @Override
+        public boolean dependsOnPartition() {
+            return true;
+        }
+
+        @Override
+        public PDSink<Pair<K, V>> wrap(TaskDataContext ctx, int partition, PDSink<Pair<K, V>> downstream) {
+            Random random = partitionRandom(seed, partition);
+            return item -> {
+                Double fraction = fractions.get(item.getV1());
+                if (fraction == null)
+                    throw new IllegalArgumentException("There is no fraction for the key " + item.getV1());
+                if (withReplacement) {
+                    for (int i = poisson(random, fraction); i > 0; i--)
+                        downstream.accept(item);
+                } else if (random.nextDouble() < fraction) {
+                    downstream.accept(item);
+                }
+            };
+        }
+
+        @Override
+        public boolean preservesKeyOrder() {
+            return true;
+        }
+    }
+
+
+    /**
+     * Pair each item with a random key uniform in [0, 1). The items with the n smallest keys are a
+     * uniform sample without replacement of n items, and the samples of the partitions can be
+     * merged by keeping again the smallest keys.
+     */
+    static class RandomKey<T> implements PDNarrowTransformation<T, Pair<Double, T>> {
+        private final long seed;
+
+        RandomKey(long seed) {
+            this.seed = seed;
+        }
+
+        @Override
+        public PDSink<T> wrap(TaskDataContext ctx, PDSink<Pair<Double, T>> downstream) {
+            return wrap(ctx, 0, downstream);
+        }
+
+        @Override
+        public boolean dependsOnPartition() {
+            return true;
+        }
+
+        @Override
+        public PDSink<T> wrap(TaskDataContext ctx, int partition, PDSink<Pair<Double, T>> downstream) {
+            Random random = partitionRandom(seed, partition);
+            return item -> downstream.accept(new Pair<>(random.nextDouble(), item));
+        }
+
+        @Override
+        public boolean isOneToOne() {
+            return true;
+        }
+    }
+
+
+    static class MapPair<In, K, V> implements PDNarrowTransformation<In, Pair<K, V>> {
+        private final PDPairFunction<In, K, V> func;
+
+        MapPair(PDPairFunction<In, K, V> func) {
+            if (func == null)
+                throw new NullPointerException("The function is 'null'");
+            this.func = func;
+        }
+
+        @Override
+        public PDSink<In> wrap(TaskDataContext ctx, PDSink<Pair<K, V>> downstream) {
+            return item -> downstream.accept(func.call(ctx, item));
+        }
+
+        @Override
+        public boolean isOneToOne() {
+            return true;
+        }
+    }
+
+
+    static class MapValues<K, V, Out> implements PDNarrowTransformation<Pair<K, V>, Pair<K, Out>> {
+        private final PDFunction<V, Out> func;
+
+        MapValues(PDFunction<V, Out> func) {
+            if (func == null)
+                throw new NullPointerException("The function is 'null'");
+            this.func = func;
+        }
+
+        @Override
+        public PDSink<Pair<K, V>> wrap(TaskDataContext ctx, PDSink<Pair<K, Out>> downstream) {
+            return item -> downstream.accept(new Pair<>(item.getV1(), func.call(ctx, item.getV2())));
+        }
+
+        @Override
+        public boolean isOneToOne() {
+            return true;
+        }
+
+        @Override
+        public boolean preservesKeyOrder() {
+            return true;
+        }
+    }
+
+
+    static class Values<K, V> implements PDNarrowTransformation<Pair<K, V>, V> {
+        @Override
+        public PDSink<Pair<K, V>> wrap(TaskDataContext ctx, PDSink<V> downstream) {
+            return item -> downstream.accept(item.getV2());
+        }
+
+        @Override
+        public boolean isOneToOne() {
+            return true;
+        }
+    }
+
+
+    /**
+     * The cartesian product of the items of a partition with all the items of another dataset,
+     * computed with a block nested loop: the items of the partition are read in tiles of
+     * {@link #TILE_SIZE} items and each tile is paired with the other items one tile at a time,
+     * so the items of the inner loop stay in the CPU cache. The pairs are produced lazily while
+     * they are pulled, so the product is never materialized. An optional filter is checked
+     * before a pair is created, so the rejected pairs cost no allocation.
+     */
+    static class Cartesian<T, U extends Serializable> extends MapPartitions<T, Pair<T, U>> {
+
+        /**
+         * The number of items of each side in a tile.
+         */
+        static final int TILE_SIZE = 256;
+
+        /**
+         * Create a new cartesian product.
+         *
+         * @param other  The other dataset.
+         * @param filter The condition the pairs must satisfy, or 'null' to keep all pairs.
+         */
+        Cartesian(PDLazyDataSourceIteratorProvider<U> other, PDFunction2<T, U, Boolean> filter) {
+            super(product(other, filter));
+        }
+
+        private static <T, U extends Serializable> PDFunction<Iterator<T>, Iterator<Pair<T, U>>> product(PDLazyDataSourceIteratorProvider<U> other,
+                                                                                                         PDFunction2<T, U, Boolean> filter) {
+            if (other == null)
+                throw new NullPointerException("The other dataset is 'null'");
+            return (ctx, items) -> new TiledProductIterator<>(ctx, items, other.getItems(), filter);
+        }
+    }
+
+
+    private static class TiledProductIterator<T, U> implements Iterator<Pair<T, U>> {
+        private final TaskDataContext ctx;
+        private final Iterator<T> left;
+        private final List<U> right;
+        private final PDFunction2<T, U, Boolean> filter;
+        private final ArrayList<T> leftTile = new ArrayList<>(Cartesian.TILE_SIZE);
+        private int rightStart;
+        private int leftIdx;
+        private int rightIdx;
+        private Pair<T, U> next;
+        private boolean done;
+
+        TiledProductIterator(TaskDataContext ctx, Iterator<T> left, List<U> right, PDFunction2<T, U, Boolean> filter) {
+            this.ctx = ctx;
+            this.left = left;
+            this.right = right;
+            this.filter = filter;
+        }
+
+        /**
+         * Compute the next pair satisfying the filter.
+         *
+         * @return The next pair, or 'null' if the product is over.
+         */
+        private Pair<T, U> advance() {
+            while (true) {
+                if (leftTile.isEmpty() || rightStart >= right.size()) {
+                    leftTile.clear();
+                    while (leftTile.size() < Cartesian.TILE_SIZE && left.hasNext())
+                        leftTile.add(left.next());
+                    if (leftTile.isEmpty() || right.isEmpty())
+                        return null;
+                    rightStart = 0;
+                    leftIdx = 0;
+                    rightIdx = rightStart;
+                }
+                int rightEnd = Math.min(rightStart + Cartesian.TILE_SIZE, right.size());
+                for (; leftIdx < leftTile.size(); leftIdx++, rightIdx = rightStart) {
+                    T l = leftTile.get(leftIdx);
+                    while (rightIdx < rightEnd) {
+                        U r = right.get(rightIdx++);
+                        if (filter == null || filter.call(ctx, l, r))
+                            return new Pair<>(l, r);
+                    }
+                }
+                rightStart = rightEnd;
+                leftIdx = 0;
+                rightIdx = rightStart;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && !done) {
+                next = advance();
+                done = next == null;
+            }
+            return next != null;
+        }
+
+        @Override
+        public Pair<T, U> next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            Pair<T, U> ret = next;
+            next = null;
+            return ret;
+        }
+    }
+
+
+    /**
+     * Join each pair with the pairs of a small dataset having the same key. The small dataset is
+     * loaded once in a hash table shared by all the partitions, so the pairs of this dataset are
+     * joined where they are, without any shuffle. The table side can be the left or the right
+     * side of the join.
+     */
+    static class BroadcastJoin<K, S, B extends Serializable> implements PDNarrowTransformation<Pair<K, S>, Pair<K, Pair<?, ?>>> {
+        private final PDLazyValue<HashMap<K, List<B>>> table;
+        private final boolean broadcastIsLeft;
+
+        /**
+         * Create a new broadcast join.
+         *
+         * @param broadcast       The small dataset loaded in the hash table.
+         * @param broadcastIsLeft True if the small dataset is the left side of the join, false if it is the right one.
+         */
+        BroadcastJoin(PDLazyDataSourceIteratorProvider<Pair<K, B>> broadcast, boolean broadcastIsLeft) {
+            if (broadcast == null)
+                throw new NullPointerException("The broadcast dataset is 'null'");
+            this.table = new PDLazyValue<>(() -> {
+                HashMap<K, List<B>> t = new HashMap<>();
+                for (Pair<K, B> item : broadcast.getItems()) {
+                    List<B> values = t.get(item.getV1());
+                    if (values == null) {
+                        values = new ArrayList<>(1);
+                        t.put(item.getV1(), values);
+                    }
+                    values.add(item.getV2());
+                }
+                return t;
+            });
+            this.broadcastIsLeft = broadcastIsLeft;
+        }
+
+        @Override
+        public PDSink<Pair<K, S>> wrap(TaskDataContext ctx, PDSink<Pair<K, Pair<?, ?>>> downstream) {
+            HashMap<K, List<B>> t = table.get();
+            return item -> {
+                List<B> values = t.get(item.getV1());
+                if (values == null)
+                    return;
+                for (B value : values)
+                    downstream.accept(new Pair<>(item.getV1(), broadcastIsLeft ? new Pair<>(value, item.getV2()) : new Pair<>(item.getV2(), value)));
+            };
+        }
+
+        @Override
+        public boolean preservesKeyOrder() {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime.data;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * A set of items stored with open addressing and linear probing in a flat array, with the hash
+ * codes cached in a parallel array. Unlike {@link java.util.HashSet} it allocates no entry
+ * object per item, so it holds about three times more items in the same memory. The 'null'
+ * item, which marks the empty slots of the table, is tracked by a flag. Items can not be
+ * removed, only the whole set can be cleared.
+ *
+ * @param <T> The type of the items.
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+class PDOpenHashSet<T> {
+
+    private static final int MIN_TABLE_SIZE = 16;
+
+    private Object[] items;
+    private int[] hashes;
+    private int size;
+    private boolean containsNull;
+
+    PDOpenHashSet() {
+        items = new Object[MIN_TABLE_SIZE];
+        hashes = new int[MIN_TABLE_SIZE];
+    }
+
+    private static int spread(Object item) {
+        int h = item == null ? 0 : item.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Add an item to the set.
+     *
+     * @param item The item to add, possibly 'null'.
+     * @return True if the item has been added, false if it was already in the set.
+     */
+    boolean add(T item) {
+        if (item == null) {
+            if (containsNull)
+                return false;
+            containsNull = true;
+            size++;
+            return true;
+        }
+        int h = spread(item);
+        int mask = items.length - 1;
+        int idx = h & mask;
+        Object current;
+        while ((current = items[idx]) != null) {
+            if (hashes[idx] == h && current.equals(item))
+                return false;
+            idx = (idx + 1) & mask;
+        }
+        items[idx] = item;
+        hashes[idx] = h;
+        size++;
+        if (size * 2 > items.length)
+            resize(items.length * 2);
+        return true;
+    }
+
+    private void resize(int tableSize) {
+        Object[] oldItems = items;
+        int[] oldHashes = hashes;
+        items = new Object[tableSize];
+        hashes = new int[tableSize];
+        int mask = tableSize - 1;
+        for (int i = 0; i < oldItems.length; i++) {
+            if (oldItems[i] == null)
+                continue;
+            int idx = oldHashes[i] & mask;
+            while (items[idx] != null)
+                idx = (idx + 1) & mask;
+            items[idx] = oldItems[i];
+            hashes[idx] = oldHashes[i];
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    void forEach(Consumer<T> action) {
+        if (containsNull)
+            action.accept(null);
+        for (Object item : items) {
+            if (item != null)
+                action.accept((T) item);
+        }
+    }
+
+    /**
+     * Remove all the items, keeping the allocated table.
+     */
+    void clear() {
+        Arrays.fill(items, null);
+        size = 0;
+        containsNull = false;
+    }
+}
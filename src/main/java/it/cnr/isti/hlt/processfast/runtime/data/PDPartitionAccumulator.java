@@ -0,0 +1,48 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime.data;
+
+/**
+ * The sink at the end of a fused stage, building the partial result of a partition.
+ *
+ * @param <In> The type of input items.
+ * @param <P>  The type of the partial result.
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+interface PDPartitionAccumulator<In, P> extends PDSink<In> {
+
+    /**
+     * Get the partial result after all the items of the partition have been consumed.
+     *
+     * @return The partial result.
+     */
+    P finish();
+
+    /**
+     * Check if the partial result does not depend on further items, so the remaining items of
+     * the partition can be skipped. The default implementation returns false.
+     *
+     * @return True if no more items are needed, false otherwise.
+     */
+    default boolean isDone() {
+        return false;
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime.data;
+
+import it.cnr.isti.hlt.processfast.core.TaskDataContext;
+
+import java.util.Iterator;
+
+/**
+ * A transformation computed independently on all the items of a partition at once. The items
+ * are pulled by the transformation through an iterator, so it can not be fused in a chain of
+ * sinks like a {@link PDNarrowTransformation}: the executor feeds it with the items pulled from
+ * the transformations before it (see {@link PDExecutor#pull}).
+ *
+ * @param <In>  The type of input items.
+ * @param <Out> The type of output items.
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+interface PDPartitionTransformation<In, Out> extends PDTransformation {
+
+    /**
+     * Apply the transformation to the items of a partition.
+     *
+     * @param ctx   The data context.
+     * @param items The items of the partition.
+     * @return The transformed items.
+     */
+    Iterator<Out> apply(TaskDataContext ctx, Iterator<In> items);
+}
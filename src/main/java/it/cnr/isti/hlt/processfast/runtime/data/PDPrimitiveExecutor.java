@@ -0,0 +1,97 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime.data;
+
+import it.cnr.isti.hlt.processfast.runtime.FJBlocking;
+import it.cnr.isti.hlt.processfast.utils.Pair;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Execute the actions of the primitive datasets. The data source is split in parts no larger
+ * than the partition size and every part is processed as a partition of a job of the
+ * {@link PDScheduler}, so the primitive datasets share the workers with the other datasets.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+final class PDPrimitiveExecutor {
+
+    private PDPrimitiveExecutor() {
+    }
+
+    /**
+     * Split a source in parts having at most the specified size, if the source allows it.
+     *
+     * @param source        The source to split.
+     * @param size          The function giving the size of a source.
+     * @param trySplit      The function splitting a source in two parts, or returning 'null'.
+     * @param partitionSize The maximum size of a part.
+     * @return The parts, in the order of the source.
+     */
+    static <S> List<S> split(S source, ToLongFunction<S> size, Function<S, Pair<S, S>> trySplit, int partitionSize) {
+        List<S> parts = new ArrayList<>();
+        split(source, size, trySplit, partitionSize, parts);
+        return parts;
+    }
+
+    private static <S> void split(S source, ToLongFunction<S> size, Function<S, Pair<S, S>> trySplit, int partitionSize, List<S> parts) {
+        Pair<S, S> halves = size.applyAsLong(source) > partitionSize ? trySplit.apply(source) : null;
+        if (halves == null) {
+            parts.add(source);
+            return;
+        }
+        split(halves.getV1(), size, trySplit, partitionSize, parts);
+        split(halves.getV2(), size, trySplit, partitionSize, parts);
+    }
+
+    /**
+     * Process the specified parts in parallel and wait for all of them.
+     *
+     * @param env   The environment.
+     * @param parts The parts to process.
+     * @param task  The function processing a part.
+     * @return The results of the parts, in the order of the parts.
+     */
+    static <S, R> List<R> run(PDEnvironment env, List<S> parts, Function<S, R> task) {
+        PDScheduler.Job job = env.getScheduler().newJob(env.getPriority());
+        List<CompletableFuture<R>> partials = new ArrayList<>(parts.size());
+        for (S part : parts) {
+            CompletableFuture<R> partial = new CompletableFuture<>();
+            job.submit(() -> {
+                try {
+                    partial.complete(task.apply(part));
+                } catch (Throwable t) {
+                    partial.completeExceptionally(t);
+                }
+            });
+            partials.add(partial);
+        }
+        FJBlocking.get(CompletableFuture.allOf(partials.toArray(new CompletableFuture<?>[partials.size()])));
+        List<R> results = new ArrayList<>(partials.size());
+        for (CompletableFuture<R> partial : partials)
+            results.add(partial.join());
+        return results;
+    }
+}
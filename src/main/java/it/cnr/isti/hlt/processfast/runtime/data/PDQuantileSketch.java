@@ -0,0 +1,161 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime.data;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A mergeable sketch of the distribution of comparable items, answering quantile queries with a
+ * bounded rank error (a KLL-like compactor hierarchy). The items of level h stand for 2^h
+ * original items: when a level is full it is sorted and every other item, starting from a
+ * random offset, is promoted to the next level. Merging two sketches concatenates their levels
+ * and compacts the full ones, so the partitions of a dataset are summarized independently and
+ * merged cheaply.
+ * <p>
+ * <br/><br/>
+ * With a capacity of c items per level, the rank error of a quantile is about 2n / c, with n
+ * the number of items, and the sketch keeps at most c * log2(n / c) items. The minimum and the
+ * maximum item, i.e. the quantiles 0 and 1, are kept exactly.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+class PDQuantileSketch implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @SuppressWarnings("unchecked")
+    private static final Comparator<Object> NATURAL_ORDER = (a, b) -> ((Comparable) a).compareTo(b);
+
+    private final int capacity;
+    private final ArrayList<ArrayList<Object>> levels = new ArrayList<>();
+    private Object min;
+    private Object max;
+
+    PDQuantileSketch(int capacity) {
+        if (capacity < 2)
+            throw new IllegalArgumentException("The capacity is less than 2");
+        this.capacity = capacity;
+        levels.add(new ArrayList<>());
+    }
+
+    /**
+     * Get the capacity per level giving the specified relative rank error.
+     *
+     * @param relativeError The relative rank error, in (0, 1).
+     * @return The capacity of each level.
+     */
+    static int capacityFor(double relativeError) {
+        if (!(relativeError > 0 && relativeError < 1))
+            throw new IllegalArgumentException("The relative error is not in (0, 1)");
+        return (int) Math.max(8, Math.ceil(4 / relativeError));
+    }
+
+    PDQuantileSketch add(Object item) {
+        if (item == null)
+            throw new NullPointerException("The item is 'null'");
+        if (min == null || NATURAL_ORDER.compare(item, min) < 0)
+            min = item;
+        if (max == null || NATURAL_ORDER.compare(item, max) > 0)
+            max = item;
+        levels.get(0).add(item);
+        compact();
+        return this;
+    }
+
+    PDQuantileSketch merge(PDQuantileSketch other) {
+        if (other.capacity != capacity)
+            throw new IllegalArgumentException("The sketches have different capacities");
+        for (int h = 0; h < other.levels.size(); h++) {
+            if (h == levels.size())
+                levels.add(new ArrayList<>());
+            levels.get(h).addAll(other.levels.get(h));
+        }
+        if (other.min != null && (min == null || NATURAL_ORDER.compare(other.min, min) < 0))
+            min = other.min;
+        if (other.max != null && (max == null || NATURAL_ORDER.compare(other.max, max) > 0))
+            max = other.max;
+        compact();
+        return this;
+    }
+
+    /**
+     * Compact the full levels, from the lowest one.
+     */
+    private void compact() {
+        for (int h = 0; h < levels.size(); h++) {
+            ArrayList<Object> level = levels.get(h);
+            if (level.size() < capacity)
+                continue;
+            level.sort(NATURAL_ORDER);
+            if (h + 1 == levels.size())
+                levels.add(new ArrayList<>());
+            ArrayList<Object> next = levels.get(h + 1);
+            int compacted = level.size() - level.size() % 2;
+            for (int i = ThreadLocalRandom.current().nextInt(2); i < compacted; i += 2)
+                next.add(level.get(i));
+            ArrayList<Object> kept = new ArrayList<>(capacity);
+            kept.addAll(level.subList(compacted, level.size()));
+            levels.set(h, kept);
+        }
+    }
+
+    /**
+     * Get the items at the specified quantiles of the items added to this sketch.
+     *
+     * @param probabilities The quantiles, each in [0, 1].
+     * @return The item at each quantile, or an empty list if the sketch is empty.
+     */
+    List<Object> quantiles(double[] probabilities) {
+        List<Object[]> weighted = new ArrayList<>();
+        long total = 0;
+        for (int h = 0; h < levels.size(); h++) {
+            for (Object item : levels.get(h)) {
+                weighted.add(new Object[]{item, 1L << h});
+                total += 1L << h;
+            }
+        }
+        List<Object> ret = new ArrayList<>(probabilities.length);
+        if (total == 0)
+            return ret;
+        weighted.sort((a, b) -> NATURAL_ORDER.compare(a[0], b[0]));
+        for (double p : probabilities) {
+            if (p == 0 || p == 1) {
+                ret.add(p == 0 ? min : max);
+                continue;
+            }
+            double target = p * total;
+            long cumulative = 0;
+            Object item = null;
+            for (Object[] w : weighted) {
+                item = w[0];
+                cumulative += (Long) w[1];
+                if (cumulative >= target)
+                    break;
+            }
+            ret.add(item);
+        }
+        return ret;
+    }
+}
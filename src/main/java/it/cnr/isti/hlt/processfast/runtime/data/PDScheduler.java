@@ -0,0 +1,216 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime.data;
+
+import it.cnr.isti.hlt.processfast.runtime.FJBlocking;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Share the threads of a pool among the jobs on partitionable datasets submitted concurrently by
+ * different tasks. Every job has a weight, the
+ * {@link it.cnr.isti.hlt.processfast.core.RunnableDescriptor#withDataComputationalResourcesPriority(int) priority}
+ * of the owning task, and the partitions of all jobs are dispatched with weighted fair queuing
+ * (stride scheduling): each job has a virtual pass advanced by 1/weight for every partition
+ * dispatched, and a free worker always takes the next partition of the job with the lowest
+ * pass. Partitions are never interrupted, so a job arriving while the workers are busy preempts
+ * the other jobs at the next partition boundary. A job which has been idle does not accumulate
+ * credit: when it submits again its pass restarts from the current virtual time.
+ * <p>
+ * <br/><br/>
+ * At most {@link ForkJoinPool#getParallelism()} workers run at the same time. A worker blocking
+ * through {@link FJBlocking} (e.g. waiting for a nested job) releases its slot while waiting.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+public class PDScheduler {
+
+    private final ForkJoinPool pool;
+    private final int maxWorkers;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * The jobs having partitions waiting for a worker.
+     */
+    private final List<Job> pending = new ArrayList<>();
+
+    private int activeWorkers;
+    private double virtualTime;
+
+    private final FJBlocking.BlockingListener slotReleaser = new FJBlocking.BlockingListener() {
+        @Override
+        public void beforeBlocking() {
+            lock.lock();
+            try {
+                activeWorkers--;
+                startWorkerIfNeeded();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void afterBlocking() {
+            lock.lock();
+            try {
+                activeWorkers++;
+            } finally {
+                lock.unlock();
+            }
+        }
+    };
+
+    /**
+     * Create a new scheduler.
+     *
+     * @param pool The pool executing the partitions.
+     */
+    public PDScheduler(ForkJoinPool pool) {
+        if (pool == null)
+            throw new NullPointerException("The pool is 'null'");
+        this.pool = pool;
+        this.maxWorkers = pool.getParallelism();
+    }
+
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Get the maximum number of partitions processed at the same time.
+     *
+     * @return The maximum number of workers.
+     */
+    public int getMaxWorkers() {
+        return maxWorkers;
+    }
+
+    /**
+     * Create a new job.
+     *
+     * @param weight The weight of the job, greater than 0.
+     * @return The new job.
+     */
+    Job newJob(int weight) {
+        if (weight < 1)
+            throw new IllegalArgumentException("The weight is less than 1");
+        return new Job(weight);
+    }
+
+    private void submit(Job job, Runnable partition) {
+        lock.lock();
+        try {
+            if (job.queue.isEmpty()) {
+                job.pass = Math.max(job.pass, virtualTime);
+                pending.add(job);
+            }
+            job.queue.add(partition);
+            startWorkerIfNeeded();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Start a new worker if there are pending partitions and free slots. Must be called with
+     * the lock held.
+     */
+    private void startWorkerIfNeeded() {
+        if (activeWorkers < maxWorkers && !pending.isEmpty()) {
+            activeWorkers++;
+            pool.execute(this::work);
+        }
+    }
+
+    /**
+     * Get the next partition to process, or 'null' if the worker must terminate. Must be called
+     * with the lock held.
+     */
+    private Runnable next() {
+        if (activeWorkers > maxWorkers || pending.isEmpty())
+            return null;
+        Job selected = pending.get(0);
+        for (int i = 1; i < pending.size(); i++) {
+            if (pending.get(i).pass < selected.pass)
+                selected = pending.get(i);
+        }
+        virtualTime = selected.pass;
+        selected.pass += 1.0 / selected.weight;
+        Runnable partition = selected.queue.poll();
+        if (selected.queue.isEmpty())
+            pending.remove(selected);
+        return partition;
+    }
+
+    private void work() {
+        FJBlocking.BlockingListener previous = FJBlocking.setBlockingListener(slotReleaser);
+        try {
+            while (true) {
+                Runnable partition;
+                lock.lock();
+                try {
+                    partition = next();
+                    if (partition == null) {
+                        activeWorkers--;
+                        return;
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                partition.run();
+            }
+        } finally {
+            FJBlocking.setBlockingListener(previous);
+        }
+    }
+
+    /**
+     * A sequence of partitions sharing the computational resources with the same weight.
+     */
+    final class Job {
+        private final int weight;
+        private final ArrayDeque<Runnable> queue = new ArrayDeque<>();
+        private double pass;
+
+        private Job(int weight) {
+            this.weight = weight;
+        }
+
+        int getWeight() {
+            return weight;
+        }
+
+        /**
+         * Queue a partition of this job. The partition must handle its own failures.
+         *
+         * @param partition The code processing the partition.
+         */
+        void submit(Runnable partition) {
+            if (partition == null)
+                throw new NullPointerException("The partition is 'null'");
+            PDScheduler.this.submit(this, partition);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A store keeping the blocks in append-only segment files on disk, read back through
+ * memory-mapped buffers: the items of a block are decoded directly from the page cache, without
+ * copying the block in the heap. Blocks are appended to the current segment until it reaches
+ * {@link #SEGMENT_SIZE} bytes, then a new segment is started. The blocks are written
+ * concurrently, each one in the region reserved for it in the segment, and are visible once
+ * written. The segment files are deleted by {@link #delete()}.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+class PDSegmentBlockStore implements PDBlockStore {
+
+    /**
+     * The maximum size in bytes of a segment file, unless it contains a single bigger block.
+     */
+    static final long SEGMENT_SIZE = 1L << 30;
+
+    private final List<Segment> segments = new ArrayList<>();
+    private final ConcurrentHashMap<Integer, Location> locations = new ConcurrentHashMap<>();
+    private boolean deleted;
+
+    @Override
+    public ByteBuffer get(int block) {
+        Location loc = locations.get(block);
+        return loc == null ? null : loc.segment.read(loc.offset, loc.length);
+    }
+
+    @Override
+    public void put(int block, byte[] data) {
+        if (data == null)
+            throw new NullPointerException("The data is 'null'");
+        Segment segment;
+        long offset;
+        synchronized (segments) {
+            if (deleted)
+                throw new IllegalStateException("The store has been deleted");
+            segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+            offset = segment == null ? -1 : segment.reserve(data.length);
+            if (offset < 0) {
+                segment = new Segment();
+                segments.add(segment);
+                offset = segment.reserve(data.length);
+            }
+        }
+        segment.write(offset, data);
+        synchronized (segments) {
+            if (deleted)
+                throw new IllegalStateException("The store has been deleted");
+            locations.put(block, new Location(segment, offset, data.length));
+        }
+    }
+
+    @Override
+    public void delete() {
+        synchronized (segments) {
+            deleted = true;
+            locations.clear();
+            for (Segment s : segments)
+                s.delete();
+            segments.clear();
+        }
+    }
+
+
+    private static class Location {
+        private final Segment segment;
+        private final long offset;
+        private final int length;
+
+        Location(Segment segment, long offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+
+    private static class Segment {
+        private final File file;
+        private final RandomAccessFile raf;
+        private final FileChannel channel;
+        private long length;
+        private volatile MappedByteBuffer mapped;
+
+        Segment() {
+            try {
+                file = File.createTempFile("processfast-segment-", ".bin");
+                raf = new RandomAccessFile(file, "rw");
+                channel = raf.getChannel();
+            } catch (IOException e) {
+                throw new RuntimeException("Creating a cache segment on disk", e);
+            }
+        }
+
+        /**
+         * Reserve the region of a block at the end of the segment.
+         *
+         * @return The offset of the region, or -1 if the block does not fit in the segment.
+         */
+        synchronized long reserve(int size) {
+            if (length > 0 && length + size > SEGMENT_SIZE)
+                return -1;
+            long offset = length;
+            length += size;
+            return offset;
+        }
+
+        void write(long offset, byte[] data) {
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(data);
+                while (buffer.hasRemaining())
+                    offset += channel.write(buffer, offset);
+            } catch (IOException e) {
+                throw new RuntimeException("Writing a cache segment on disk", e);
+            }
+        }
+
+        ByteBuffer read(long offset, int size) {
+            MappedByteBuffer m = mapped;
+            if (m == null || m.capacity() < offset + size) {
+                synchronized (this) {
+                    m = mapped;
+                    if (m == null || m.capacity() < offset + size) {
+                        try {
+                            m = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(length, channel.size()));
+                        } catch (IOException e) {
+                            throw new RuntimeException("Mapping a cache segment on disk", e);
+                        }
+                        mapped = m;
+                    }
+                }
+            }
+            ByteBuffer b = m.duplicate();
+            b.limit((int) (offset + size));
+            b.position((int) offset);
+            return b.slice();
+        }
+
+        void delete() {
+            mapped = null;
+            try {
+                raf.close();
+            } catch (IOException e) {
+                // Nothing to do.
+            }
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,1063 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime.data;
+
+import it.cnr.isti.hlt.processfast.data.ImmutableDataSourceIteratorProvider;
+import it.cnr.isti.hlt.processfast.data.SplittableDataSourceIteratorProvider;
+import it.cnr.isti.hlt.processfast.utils.Pair;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.IntFunction;
+import java.util.function.UnaryOperator;
+
+/**
+ * The hash shuffle used by the wide transformations working on keys. Each partition writes its
+ * (key, value) records through a {@link Writer}, which distributes them in
+ * {@link #NUM_BUCKETS} buckets by key hash. The records buffered in memory by all the writers
+ * are accounted on a shared {@link PDMemoryBudget}: when a writer can not reserve more memory it
+ * sorts its buckets by hash and spills them as a run in a temporary file (to avoid tiny runs, a
+ * writer buffers up to one reservation chunk beyond the budget before spilling). The outputs of
+ * all partitions are then read as {@link ShuffledData}, a data source which the following stage
+ * splits in ranges of buckets and reads in parallel. Each range is read through a
+ * {@link Reader}, which merges the in-memory buffers and the spilled runs by hash and returns
+ * the records grouped by key. Only the records sharing the same hash are kept in memory by a
+ * reader.
+ * <p>
+ * <br/><br/>
+ * Every record carries a side, so two datasets (e.g. the two sides of a join) can be shuffled
+ * together. A writer can detect the hot keys of side 0, i.e. the keys taking a share of its
+ * records much larger than a bucket, and salt them: their records are spread round-robin over
+ * {@link #HOT_KEY_SALTS} consecutive buckets, and the side 1 records of the same keys must be
+ * replicated in all those buckets. This is suitable for operations, like the join, whose output
+ * for a key can be computed independently on each part of its side 0 records. The operations
+ * needing all the values of a key, like the grouping, read the parts of the group of a salted
+ * key from the different buckets and merge them in a second step, once all the buckets have
+ * been read.
+ * <p>
+ * <br/><br/>
+ * A writer spills all its records when it finishes while more than half of the budget is used,
+ * so the budget is left to the partitions still writing. Before reading, the runs of all
+ * partitions are merged in passes of at most {@link #MAX_MERGE_FAN_IN} runs, so every reader
+ * keeps a bounded number of files open whatever the number of spills.
+ * <p>
+ * <br/><br/>
+ * The groups are returned in bucket and hash order, not in the order of the source.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+final class PDShuffle {
+
+    /**
+     * The number of buckets, a power of 2.
+     */
+    static final int NUM_BUCKETS = 256;
+
+    /**
+     * The number of buckets over which the records of a hot key are spread.
+     */
+    static final int HOT_KEY_SALTS = 16;
+
+    /**
+     * The maximum number of records reserved at once on the memory budget.
+     */
+    private static final int RESERVATION_CHUNK = 1024;
+
+    /**
+     * The maximum number of spilled runs merged at once. A reader opens a stream on every run of
+     * the bucket it reads, so the runs of a shuffle are first merged down to this number (see
+     * {@link #mergeRuns(List)}).
+     */
+    static final int MAX_MERGE_FAN_IN = 64;
+
+    /**
+     * The number of records written before resetting an object stream.
+     */
+    private static final int RESET_INTERVAL = 1000;
+
+    /**
+     * One record out of this number is sampled to detect the hot keys.
+     */
+    private static final int SAMPLE_INTERVAL = 8;
+
+    /**
+     * The number of sampled records needed before declaring a key as hot.
+     */
+    private static final int MIN_HOT_KEY_SAMPLES = 512;
+
+    /**
+     * A key is hot if it takes more than 1/HOT_KEY_RATIO of the sampled records, i.e. about four
+     * times the share of a bucket.
+     */
+    private static final int HOT_KEY_RATIO = NUM_BUCKETS / 4;
+
+    private static final Comparator<Record<?, ?>> BY_HASH = (r1, r2) -> Integer.compare(r1.hash, r2.hash);
+
+    private PDShuffle() {
+    }
+
+    static int bucket(int hash) {
+        return (hash ^ (hash >>> 16)) & (NUM_BUCKETS - 1);
+    }
+
+    /**
+     * Get a data source over the specified items, keeping them in memory if they are at most
+     * "maxInMemory", writing them in a temporary file otherwise. A temporary file is deleted by
+     * {@link PDExecutor} once the following stage has been computed.
+     *
+     * @param items       The items.
+     * @param maxInMemory The maximum number of items kept in memory.
+     * @return The data source.
+     */
+    static <T extends Serializable> ImmutableDataSourceIteratorProvider<T> toDataSource(Iterator<T> items, long maxInMemory) {
+        List<T> buffer = new ArrayList<>();
+        while (items.hasNext() && buffer.size() < maxInMemory)
+            buffer.add(items.next());
+        if (!items.hasNext())
+            return new PDListDataSourceIteratorProvider<>(buffer);
+        Iterator<T> head = buffer.iterator();
+        return new PDFileDataSourceIteratorProvider<>(new Iterator<T>() {
+            @Override
+            public boolean hasNext() {
+                return head.hasNext() || items.hasNext();
+            }
+
+            @Override
+            public T next() {
+                return head.hasNext() ? head.next() : items.next();
+            }
+        });
+    }
+
+    /**
+     * Merge the spilled runs of the specified outputs until they are at most
+     * {@link #MAX_MERGE_FAN_IN}, so a reader never opens more streams than that on a bucket.
+     * Each pass merges groups of consecutive outputs, runs and in-memory records together, into
+     * a single run held by the first output of the group; the runs of an output having too many
+     * of them are merged in consecutive chunks. The records of a group keep their order, so the
+     * values of a group are still returned in partitions order. On failure the outputs are left
+     * as they are, to be discarded by the caller.
+     *
+     * @param outputs The outputs of all partitions, in partitions order.
+     */
+    static <K, V> void mergeRuns(List<Output<K, V>> outputs) {
+        while (numRuns(outputs) > MAX_MERGE_FAN_IN) {
+            int from = 0;
+            int runs = 0;
+            for (int i = 0; i < outputs.size(); i++) {
+                Output<K, V> output = outputs.get(i);
+                if (output.runs.size() > MAX_MERGE_FAN_IN) {
+                    mergeOutputs(outputs.subList(from, i));
+                    output.mergeOwnRuns();
+                    from = i + 1;
+                    runs = 0;
+                    continue;
+                }
+                if (runs + output.runs.size() > MAX_MERGE_FAN_IN) {
+                    mergeOutputs(outputs.subList(from, i));
+                    from = i;
+                    runs = 0;
+                }
+                runs += output.runs.size();
+            }
+            mergeOutputs(outputs.subList(from, outputs.size()));
+        }
+    }
+
+    private static <K, V> int numRuns(List<Output<K, V>> outputs) {
+        int runs = 0;
+        for (Output<K, V> output : outputs)
+            runs += output.runs.size();
+        return runs;
+    }
+
+    /**
+     * Merge all the records of a group of consecutive outputs into a single run, held by the
+     * first output of the group.
+     */
+    private static <K, V> void mergeOutputs(List<Output<K, V>> group) {
+        if (numRuns(group) < 2)
+            return;
+        RunFile merged = RunFile.write(bucket -> {
+            List<Iterator<Record<K, V>>> sources = new ArrayList<>();
+            for (Output<K, V> output : group) {
+                for (RunFile run : output.runs)
+                    sources.add(run.open(bucket));
+                sources.add(output.buckets[bucket].iterator());
+            }
+            return new PDExternalSort.LoserTree<>(sources, BY_HASH);
+        });
+        Output<K, V> first = group.get(0);
+        for (Output<K, V> output : group) {
+            if (output != first) {
+                for (int b = 0; b < NUM_BUCKETS; b++) {
+                    first.bucketSizes[b] += output.bucketSizes[b];
+                    output.bucketSizes[b] = 0;
+                }
+            }
+            output.discard();
+        }
+        first.runs.add(merged);
+    }
+
+    /**
+     * Get the keys salted by the writers of the specified outputs.
+     *
+     * @param outputs The outputs.
+     * @return The salted keys.
+     */
+    static <K, V> Set<K> saltedKeys(List<Output<K, V>> outputs) {
+        Set<K> keys = new HashSet<>();
+        for (Output<K, V> output : outputs)
+            keys.addAll(output.saltedKeys);
+        return keys;
+    }
+
+
+    static final class Record<K, V> implements Serializable {
+        private static final long serialVersionUID = 4431226915503470921L;
+        final int hash;
+        final byte side;
+        final K key;
+        final V value;
+
+        Record(int hash, byte side, K key, V value) {
+            this.hash = hash;
+            this.side = side;
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+
+    /**
+     * The records of the shuffle sharing the same key, in a bucket.
+     */
+    static final class Group<K, V> {
+        private final K key;
+        private final List<V> left = new ArrayList<>();
+        private List<V> right;
+
+        Group(K key) {
+            this.key = key;
+        }
+
+        K getKey() {
+            return key;
+        }
+
+        /**
+         * Get the values written on the specified side, in partitions order (in no specific order
+         * for the merged group of a salted hot key).
+         *
+         * @param side The side, 0 or 1.
+         * @return The values.
+         */
+        List<V> getValues(int side) {
+            if (side == 0)
+                return left;
+            return right == null ? Collections.<V>emptyList() : right;
+        }
+
+        void add(Record<K, V> r) {
+            add(r.side, r.value);
+        }
+
+        /**
+         * Add a value on the specified side.
+         *
+         * @param side  The side, 0 or 1.
+         * @param value The value.
+         */
+        void add(int side, V value) {
+            if (side == 0) {
+                left.add(value);
+            } else {
+                if (right == null)
+                    right = new ArrayList<>();
+                right.add(value);
+            }
+        }
+
+        /**
+         * Add all the values of another group of the same key.
+         *
+         * @param other The other group.
+         */
+        void addAll(Group<K, V> other) {
+            left.addAll(other.left);
+            if (other.right != null) {
+                if (right == null)
+                    right = new ArrayList<>();
+                right.addAll(other.right);
+            }
+        }
+    }
+
+
+    /**
+     * The groups of the hot keys salted by the writers of a shuffle whose groups must be reduced
+     * as a whole. The records of such a key are spread over several buckets, read by different
+     * parts of the {@link ShuffledData}: every part compacts and adds here the groups of these keys
+     * it reads, and the part reading the last bucket gets the merged groups and reduces them.
+     */
+    private static final class SaltedGroups<K, V> {
+        private final Set<K> keys;
+        private final UnaryOperator<Group<K, V>> compact;
+        private final HashMap<K, Group<K, V>> groups = new HashMap<>();
+        private int remainingBuckets = NUM_BUCKETS;
+
+        /**
+         * Create a new set of salted groups.
+         *
+         * @param keys    The salted keys.
+         * @param compact The function compacting the values of a part of a group.
+         */
+        SaltedGroups(Set<K> keys, UnaryOperator<Group<K, V>> compact) {
+            this.keys = keys;
+            this.compact = compact;
+        }
+
+        boolean isSalted(K key) {
+            return keys.contains(key);
+        }
+
+        void add(Group<K, V> group) {
+            Group<K, V> compacted = compact.apply(group);
+            synchronized (this) {
+                Group<K, V> merged = groups.get(compacted.getKey());
+                if (merged == null)
+                    groups.put(compacted.getKey(), compacted);
+                else
+                    merged.addAll(compacted);
+            }
+        }
+
+        /**
+         * Signal that a part has read all its buckets.
+         *
+         * @param numBuckets The number of buckets read by the part.
+         * @return The merged groups if the part has read the last bucket, 'null' otherwise.
+         */
+        synchronized Collection<Group<K, V>> finish(int numBuckets) {
+            remainingBuckets -= numBuckets;
+            return remainingBuckets == 0 ? new ArrayList<>(groups.values()) : null;
+        }
+    }
+
+
+    /**
+     * The writer used by a partition.
+     */
+    static final class Writer<K, V> {
+        private final PDMemoryBudget budget;
+        private final byte side;
+        private final List<Record<K, V>>[] buckets;
+        private final long[] bucketSizes = new long[NUM_BUCKETS];
+        private final List<RunFile> runs = new ArrayList<>();
+        private final FrequentKeys<K> frequentKeys;
+        private final Set<K> saltedKeys = new HashSet<>();
+        private final Set<K> replicatedKeys;
+        private long reserved;
+        private long buffered;
+        private long written;
+        private int nextSalt;
+
+        Writer(PDMemoryBudget budget, int side) {
+            this(budget, side, false, Collections.<K>emptySet());
+        }
+
+        /**
+         * Create a new writer.
+         *
+         * @param budget         The memory budget.
+         * @param side           The side of the written records, 0 or 1.
+         * @param saltHotKeys    True if the hot keys must be detected and salted.
+         * @param replicatedKeys The keys salted on side 0, whose records must be replicated in all their buckets.
+         */
+        Writer(PDMemoryBudget budget, int side, boolean saltHotKeys, Set<K> replicatedKeys) {
+            if (budget == null)
+                throw new NullPointerException("The memory budget is 'null'");
+            if (replicatedKeys == null)
+                throw new NullPointerException("The replicated keys are 'null'");
+            this.budget = budget;
+            this.side = (byte) side;
+            this.frequentKeys = saltHotKeys ? new FrequentKeys<>(2 * HOT_KEY_RATIO) : null;
+            this.replicatedKeys = replicatedKeys;
+            @SuppressWarnings("unchecked")
+            List<Record<K, V>>[] b = (List<Record<K, V>>[]) new List<?>[NUM_BUCKETS];
+            this.buckets = b;
+            for (int i = 0; i < NUM_BUCKETS; i++)
+                buckets[i] = new ArrayList<>();
+        }
+
+        void write(K key, V value) {
+            int hash = key == null ? 0 : key.hashCode();
+            int bucket = bucket(hash);
+            Record<K, V> record = new Record<>(hash, side, key, value);
+            if (!replicatedKeys.isEmpty() && replicatedKeys.contains(key)) {
+                for (int salt = 0; salt < HOT_KEY_SALTS; salt++)
+                    add((bucket + salt) & (NUM_BUCKETS - 1), record);
+                return;
+            }
+            if (frequentKeys != null && isHot(key))
+                bucket = (bucket + (nextSalt++ % HOT_KEY_SALTS)) & (NUM_BUCKETS - 1);
+            add(bucket, record);
+        }
+
+        private boolean isHot(K key) {
+            if (saltedKeys.contains(key))
+                return true;
+            if (written++ % SAMPLE_INTERVAL != 0)
+                return false;
+            long count = frequentKeys.add(key);
+            long sampled = frequentKeys.getNumAdded();
+            if (sampled >= MIN_HOT_KEY_SAMPLES && count * HOT_KEY_RATIO > sampled) {
+                saltedKeys.add(key);
+                return true;
+            }
+            return false;
+        }
+
+        private void add(int bucket, Record<K, V> record) {
+            buckets[bucket].add(record);
+            bucketSizes[bucket]++;
+            buffered++;
+            if (buffered > reserved) {
+                long chunk = Math.min(RESERVATION_CHUNK, budget.getLimit());
+                if (budget.tryReserve(chunk))
+                    reserved += chunk;
+                else if (buffered >= chunk)
+                    spill();
+            }
+        }
+
+        private void spill() {
+            runs.add(RunFile.write(buckets));
+            for (List<Record<K, V>> b : buckets)
+                b.clear();
+            budget.release(reserved);
+            reserved = 0;
+            buffered = 0;
+        }
+
+        /**
+         * Terminate the writes of the partition, sorting by hash the records still in memory. The
+         * records still in memory are spilled too if more than half of the budget is used, so the
+         * finished partitions never hold more than half of it and the partitions still writing
+         * are not forced to spill tiny runs.
+         *
+         * @return The output of the partition.
+         */
+        Output<K, V> finish() {
+            if (buffered > 0 && budget.getUsed() > budget.getLimit() / 2)
+                spill();
+            if (buffered == 0) {
+                budget.release(reserved);
+                reserved = 0;
+            }
+            for (List<Record<K, V>> b : buckets)
+                b.sort(BY_HASH);
+            return new Output<>(budget, buckets, bucketSizes, runs, saltedKeys, reserved);
+        }
+    }
+
+
+    /**
+     * The records written by a partition, partly in memory and partly in spilled runs.
+     */
+    static final class Output<K, V> {
+        private final PDMemoryBudget budget;
+        private final List<Record<K, V>>[] buckets;
+        private final long[] bucketSizes;
+        private final List<RunFile> runs;
+        private final Set<K> saltedKeys;
+        private long reserved;
+
+        Output(PDMemoryBudget budget, List<Record<K, V>>[] buckets, long[] bucketSizes, List<RunFile> runs, Set<K> saltedKeys,
+               long reserved) {
+            this.budget = budget;
+            this.buckets = buckets;
+            this.bucketSizes = bucketSizes;
+            this.runs = runs;
+            this.saltedKeys = saltedKeys;
+            this.reserved = reserved;
+        }
+
+        int getNumSpilledRuns() {
+            return runs.size();
+        }
+
+        /**
+         * Get the keys detected as hot and salted by the writer of this output.
+         *
+         * @return The salted keys.
+         */
+        Set<K> getSaltedKeys() {
+            return saltedKeys;
+        }
+
+        /**
+         * Merge the spilled runs of this output in consecutive chunks of at most
+         * {@link #MAX_MERGE_FAN_IN} runs.
+         */
+        void mergeOwnRuns() {
+            List<RunFile> merged = new ArrayList<>();
+            try {
+                for (int from = 0; from < runs.size(); from += MAX_MERGE_FAN_IN) {
+                    List<RunFile> chunk = runs.subList(from, Math.min(runs.size(), from + MAX_MERGE_FAN_IN));
+                    if (chunk.size() == 1) {
+                        merged.add(chunk.get(0));
+                        continue;
+                    }
+                    merged.add(RunFile.write(bucket -> {
+                        List<Iterator<Record<K, V>>> sources = new ArrayList<>();
+                        for (RunFile run : chunk)
+                            sources.add(run.open(bucket));
+                        return new PDExternalSort.LoserTree<>(sources, BY_HASH);
+                    }));
+                }
+            } catch (RuntimeException | Error e) {
+                for (RunFile run : merged) {
+                    if (!runs.contains(run))
+                        run.delete();
+                }
+                throw e;
+            }
+            for (RunFile run : runs) {
+                if (!merged.contains(run))
+                    run.delete();
+            }
+            runs.clear();
+            runs.addAll(merged);
+        }
+
+        /**
+         * Release the memory and the files used by this output.
+         */
+        synchronized void discard() {
+            budget.release(reserved);
+            reserved = 0;
+            for (List<Record<K, V>> b : buckets)
+                b.clear();
+            for (RunFile run : runs)
+                run.delete();
+            runs.clear();
+        }
+    }
+
+
+    /**
+     * The approximate counts of the most frequent keys, computed with the Misra-Gries algorithm:
+     * every key taking more than 1/(capacity + 1) of the added keys is counted, with an error
+     * of at most 1/(capacity + 1) of the added keys.
+     */
+    private static final class FrequentKeys<K> {
+        private final int capacity;
+        private final HashMap<K, long[]> counters = new HashMap<>();
+        private long numAdded;
+
+        FrequentKeys(int capacity) {
+            this.capacity = capacity;
+        }
+
+        long getNumAdded() {
+            return numAdded;
+        }
+
+        /**
+         * Count the specified key.
+         *
+         * @return The current approximate count of the key.
+         */
+        long add(K key) {
+            numAdded++;
+            long[] counter = counters.get(key);
+            if (counter != null)
+                return ++counter[0];
+            if (counters.size() < capacity) {
+                counters.put(key, new long[]{1});
+                return 1;
+            }
+            Iterator<long[]> iter = counters.values().iterator();
+            while (iter.hasNext()) {
+                if (--iter.next()[0] == 0)
+                    iter.remove();
+            }
+            return 0;
+        }
+    }
+
+
+    /**
+     * A spilled run: the buckets of a writer, each sorted by hash, stored one after the other in
+     * a temporary file.
+     */
+    private static final class RunFile {
+        private final File file;
+        private final long[] offsets = new long[NUM_BUCKETS];
+        private final int[] counts = new int[NUM_BUCKETS];
+
+        /**
+         * The streams opened on the file and not yet closed, e.g. by readers abandoned before
+         * reaching the end of a bucket.
+         */
+        private final Set<InputStream> openStreams = new HashSet<>();
+        private boolean deleted;
+
+        private RunFile(File file) {
+            this.file = file;
+        }
+
+        static <K, V> RunFile write(List<Record<K, V>>[] buckets) {
+            return write(b -> {
+                buckets[b].sort(BY_HASH);
+                return buckets[b].iterator();
+            });
+        }
+
+        /**
+         * Write a new run.
+         *
+         * @param bucketRecords The function giving the records of a bucket, sorted by hash.
+         * @return The new run.
+         */
+        static <K, V> RunFile write(IntFunction<Iterator<Record<K, V>>> bucketRecords) {
+            RunFile run;
+            try {
+                run = new RunFile(File.createTempFile("processfast-shuffle-", ".bin"));
+            } catch (IOException e) {
+                throw new RuntimeException("Spilling shuffle data on disk", e);
+            }
+            run.file.deleteOnExit();
+            try (FileOutputStream fos = new FileOutputStream(run.file)) {
+                for (int b = 0; b < NUM_BUCKETS; b++) {
+                    Iterator<Record<K, V>> records = bucketRecords.apply(b);
+                    if (!records.hasNext())
+                        continue;
+                    run.offsets[b] = fos.getChannel().position();
+                    ObjectOutputStream os = new ObjectOutputStream(new BufferedOutputStream(fos));
+                    int count = 0;
+                    while (records.hasNext()) {
+                        os.writeObject(records.next());
+                        if (++count % RESET_INTERVAL == 0)
+                            os.reset();
+                    }
+                    os.flush();
+                    run.counts[b] = count;
+                }
+            } catch (IOException e) {
+                run.delete();
+                throw new RuntimeException("Spilling shuffle data on disk", e);
+            } catch (RuntimeException | Error e) {
+                run.delete();
+                throw e;
+            }
+            return run;
+        }
+
+        @SuppressWarnings("unchecked")
+        <K, V> Iterator<Record<K, V>> open(int bucket) {
+            int count = counts[bucket];
+            if (count == 0)
+                return Collections.emptyIterator();
+            final ObjectInputStream is;
+            synchronized (this) {
+                if (deleted)
+                    throw new IllegalStateException("The spilled shuffle data has been deleted");
+                FileInputStream fis = null;
+                try {
+                    fis = new FileInputStream(file);
+                    fis.getChannel().position(offsets[bucket]);
+                    is = new ObjectInputStream(new BufferedInputStream(fis));
+                } catch (IOException e) {
+                    closeQuietly(fis);
+                    throw new RuntimeException("Reading spilled shuffle data", e);
+                }
+                openStreams.add(is);
+            }
+            return new Iterator<Record<K, V>>() {
+                private int read;
+
+                @Override
+                public boolean hasNext() {
+                    if (read < count)
+                        return true;
+                    close();
+                    return false;
+                }
+
+                @Override
+                public Record<K, V> next() {
+                    if (!hasNext())
+                        throw new NoSuchElementException();
+                    try {
+                        Record<K, V> r = (Record<K, V>) is.readObject();
+                        read++;
+                        return r;
+                    } catch (IOException | ClassNotFoundException e) {
+                        close();
+                        throw new RuntimeException("Reading spilled shuffle data", e);
+                    }
+                }
+
+                private void close() {
+                    synchronized (RunFile.this) {
+                        if (openStreams.remove(is))
+                            closeQuietly(is);
+                    }
+                }
+            };
+        }
+
+        /**
+         * Close the streams still open on the file and delete it.
+         */
+        synchronized void delete() {
+            deleted = true;
+            for (InputStream is : openStreams)
+                closeQuietly(is);
+            openStreams.clear();
+            file.delete();
+        }
+
+        private static void closeQuietly(InputStream is) {
+            if (is == null)
+                return;
+            try {
+                is.close();
+            } catch (IOException e) {
+                // Nothing to do.
+            }
+        }
+    }
+
+
+    /**
+     * Read the groups of a range of buckets from the outputs of all partitions.
+     */
+    static final class Reader<K, V> implements Iterator<Group<K, V>> {
+        private final List<Output<K, V>> outputs;
+        private final int toBucket;
+        private int nextBucket;
+        private PriorityQueue<RunHead<K, V>> heads;
+        private Iterator<Group<K, V>> pending = Collections.emptyIterator();
+
+        /**
+         * Create a new reader.
+         *
+         * @param outputs    The outputs of all partitions.
+         * @param fromBucket The first bucket to read.
+         * @param toBucket   The bucket following the last one to read.
+         */
+        Reader(List<Output<K, V>> outputs, int fromBucket, int toBucket) {
+            this.outputs = outputs;
+            this.nextBucket = fromBucket;
+            this.toBucket = toBucket;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!pending.hasNext()) {
+                if (heads == null || heads.isEmpty()) {
+                    if (nextBucket >= toBucket)
+                        return false;
+                    openBucket(nextBucket++);
+                    continue;
+                }
+                pending = nextHashGroups();
+            }
+            return true;
+        }
+
+        @Override
+        public Group<K, V> next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            return pending.next();
+        }
+
+        private void openBucket(int bucket) {
+            heads = new PriorityQueue<>();
+            int runIndex = 0;
+            for (Output<K, V> output : outputs) {
+                for (RunFile run : output.runs)
+                    RunHead.add(heads, run.<K, V>open(bucket), runIndex++);
+                RunHead.add(heads, output.buckets[bucket].iterator(), runIndex++);
+            }
+        }
+
+        private Iterator<Group<K, V>> nextHashGroups() {
+            int hash = heads.peek().current.hash;
+            LinkedHashMap<K, Group<K, V>> groups = new LinkedHashMap<>();
+            while (!heads.isEmpty() && heads.peek().current.hash == hash) {
+                RunHead<K, V> head = heads.poll();
+                Record<K, V> r = head.current;
+                Group<K, V> group = groups.get(r.key);
+                if (group == null) {
+                    group = new Group<>(r.key);
+                    groups.put(r.key, group);
+                }
+                group.add(r);
+                if (head.advance())
+                    heads.add(head);
+            }
+            return groups.values().iterator();
+        }
+    }
+
+
+    private static final class RunHead<K, V> implements Comparable<RunHead<K, V>> {
+        private final Iterator<Record<K, V>> iter;
+        private final int runIndex;
+        private Record<K, V> current;
+
+        private RunHead(Iterator<Record<K, V>> iter, int runIndex) {
+            this.iter = iter;
+            this.runIndex = runIndex;
+        }
+
+        static <K, V> void add(PriorityQueue<RunHead<K, V>> heads, Iterator<Record<K, V>> iter, int runIndex) {
+            RunHead<K, V> head = new RunHead<>(iter, runIndex);
+            if (head.advance())
+                heads.add(head);
+        }
+
+        boolean advance() {
+            if (!iter.hasNext())
+                return false;
+            current = iter.next();
+            return true;
+        }
+
+        @Override
+        public int compareTo(RunHead<K, V> o) {
+            int c = Integer.compare(current.hash, o.current.hash);
+            return c != 0 ? c : Integer.compare(runIndex, o.runIndex);
+        }
+    }
+
+
+    /**
+     * The result of a shuffle: a data source giving, for each group of records, the items
+     * computed from it by a reducer. The data source can be split in ranges of buckets, read in
+     * parallel; the outputs of the shuffle are kept until {@link #delete()} is called.
+     *
+     * @param <Out> The type of items computed from the groups.
+     */
+    static final class ShuffledData<K, V, Out extends Serializable>
+            implements SplittableDataSourceIteratorProvider<Out>, PDTemporaryDataSource {
+        private final List<Output<K, V>> outputs;
+        private final BiConsumer<Group<K, V>, List<Out>> reducer;
+        private final long[] bucketSizes;
+        private final SaltedGroups<K, V> salted;
+        private final int fromBucket;
+        private final int toBucket;
+
+        /**
+         * Create a new data source over all the buckets of the specified outputs.
+         *
+         * @param outputs The outputs of all partitions.
+         * @param reducer The function adding to a list the items computed from a group.
+         */
+        ShuffledData(List<Output<K, V>> outputs, BiConsumer<Group<K, V>, List<Out>> reducer) {
+            this(outputs, reducer, totalBucketSizes(outputs), null, 0, NUM_BUCKETS);
+        }
+
+        /**
+         * Create a new data source over all the buckets of the specified outputs, reducing the
+         * hot keys salted by the writers in a second step, once all the parts of their groups
+         * have been read. The data source must be read only once.
+         *
+         * @param outputs The outputs of all partitions.
+         * @param reducer The function adding to a list the items computed from a group.
+         * @param compact The function compacting the values of a part of the group of a salted key.
+         */
+        ShuffledData(List<Output<K, V>> outputs, BiConsumer<Group<K, V>, List<Out>> reducer, UnaryOperator<Group<K, V>> compact) {
+            this(outputs, reducer, totalBucketSizes(outputs), saltedGroups(outputs, compact), 0, NUM_BUCKETS);
+        }
+
+        private ShuffledData(List<Output<K, V>> outputs, BiConsumer<Group<K, V>, List<Out>> reducer, long[] bucketSizes,
+                             SaltedGroups<K, V> salted, int fromBucket, int toBucket) {
+            this.outputs = outputs;
+            this.reducer = reducer;
+            this.bucketSizes = bucketSizes;
+            this.salted = salted;
+            this.fromBucket = fromBucket;
+            this.toBucket = toBucket;
+        }
+
+        private static <K, V> SaltedGroups<K, V> saltedGroups(List<Output<K, V>> outputs, UnaryOperator<Group<K, V>> compact) {
+            Set<K> keys = saltedKeys(outputs);
+            return keys.isEmpty() ? null : new SaltedGroups<>(keys, compact);
+        }
+
+        private static <K, V> long[] totalBucketSizes(List<Output<K, V>> outputs) {
+            long[] sizes = new long[NUM_BUCKETS];
+            for (Output<K, V> output : outputs) {
+                for (int i = 0; i < NUM_BUCKETS; i++)
+                    sizes[i] += output.bucketSizes[i];
+            }
+            return sizes;
+        }
+
+        @Override
+        public Iterator<Out> iterator() {
+            Reader<K, V> reader = new Reader<>(outputs, fromBucket, toBucket);
+            return new Iterator<Out>() {
+                private final List<Out> buffer = new ArrayList<>();
+                private int next;
+                private Iterator<Group<K, V>> mergedGroups;
+
+                private Group<K, V> nextGroup() {
+                    while (mergedGroups == null) {
+                        if (!reader.hasNext()) {
+                            Collection<Group<K, V>> merged = salted != null ? salted.finish(toBucket - fromBucket) : null;
+                            mergedGroups = merged != null ? merged.iterator() : Collections.<Group<K, V>>emptyIterator();
+                            break;
+                        }
+                        Group<K, V> group = reader.next();
+                        if (salted == null || !salted.isSalted(group.getKey()))
+                            return group;
+                        salted.add(group);
+                    }
+                    return mergedGroups.hasNext() ? mergedGroups.next() : null;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    while (next >= buffer.size()) {
+                        Group<K, V> group = nextGroup();
+                        if (group == null)
+                            return false;
+                        buffer.clear();
+                        next = 0;
+                        reducer.accept(group, buffer);
+                    }
+                    return true;
+                }
+
+                @Override
+                public Out next() {
+                    if (!hasNext())
+                        throw new NoSuchElementException();
+                    return buffer.get(next++);
+                }
+            };
+        }
+
+        /**
+         * Get the number of records in the buckets of this data source.
+         */
+        @Override
+        public long estimateSize() {
+            long size = 0;
+            for (int i = fromBucket; i < toBucket; i++)
+                size += bucketSizes[i];
+            return size;
+        }
+
+        /**
+         * Split the range of buckets in two ranges holding about the same number of records.
+         */
+        @Override
+        public Pair<SplittableDataSourceIteratorProvider<Out>, SplittableDataSourceIteratorProvider<Out>> trySplit() {
+            if (toBucket - fromBucket < 2)
+                return null;
+            long half = estimateSize() / 2;
+            long size = 0;
+            int mid = fromBucket + 1;
+            while (mid < toBucket - 1 && size + bucketSizes[mid - 1] < half) {
+                size += bucketSizes[mid - 1];
+                mid++;
+            }
+            return new Pair<>(new ShuffledData<>(outputs, reducer, bucketSizes, salted, fromBucket, mid),
+                    new ShuffledData<>(outputs, reducer, bucketSizes, salted, mid, toBucket));
+        }
+
+        /**
+         * Release the memory and the files used by the shuffle. The data source, and all the
+         * parts split from it, can not be used anymore after this call.
+         */
+        @Override
+        public void delete() {
+            for (Output<K, V> output : outputs)
+                output.discard();
+        }
+
+        @Override
+        public boolean sizeEnabled() {
+            return false;
+        }
+
+        /**
+         * Not supported: a group gives any number of items through the reducer, so the number of
+         * items is known only after reading and reducing all the groups, which is why
+         * {@link #sizeEnabled()} returns false. The cheap {@link #estimateSize()} counts the
+         * shuffled records instead.
+         */
+        @Override
+        public long size() {
+            throw new UnsupportedOperationException("The operation is not supported");
+        }
+
+        @Override
+        public boolean contains(Out item) {
+            return false;
+        }
+
+        @Override
+        public boolean containsEnabled() {
+            return false;
+        }
+
+        @Override
+        public Collection<Out> take(long startFrom, long numItems) {
+            return null;
+        }
+
+        @Override
+        public boolean takeEnabled() {
+            return false;
+        }
+    }
+}
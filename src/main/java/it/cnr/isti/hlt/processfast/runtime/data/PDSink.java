@@ -0,0 +1,40 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime.data;
+
+/**
+ * A consumer of the items of a partition, pushed one at a time. The narrow transformations
+ * of a stage are fused into a chain of sinks ending with the {@link PDPartitionAccumulator}
+ * of the wide transformation or of the action, so every item crosses the whole stage in a
+ * single loop without intermediate collections.
+ *
+ * @param <T> The type of items.
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+interface PDSink<T> {
+
+    /**
+     * Consume an item.
+     *
+     * @param item The item.
+     */
+    void accept(T item);
+}
@@ -0,0 +1,165 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+
+package it.cnr.isti.hlt.processfast.runtime.data;
+
+import java.util.ArrayList;
+import java.util.function.BinaryOperator;
+
+/**
+ * The incremental state of a windowed aggregation over a stream of micro-batches. Each
+ * micro-batch is summarized by a partial result, the pane, and a window is the combination of
+ * the panes of its micro-batches. The panes are kept in a queue made of two stacks: the newer
+ * panes are folded in a running aggregate as they arrive, while the older ones are stored with
+ * the aggregate of themselves and all the following older panes. Adding, evicting and reading
+ * the window aggregate thus take an amortized constant number of combinations, whatever the
+ * length of the window, and the combine function is not required to be invertible.
+ *
+ * @param <S> The type of panes.
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+class PDSlidingWindow<S> {
+
+    private final int windowLength;
+    private final int slideLength;
+    private final BinaryOperator<S> combine;
+    private final BinaryOperator<S> accumulate;
+
+    /**
+     * The aggregates of the older panes: the last element aggregates all of them.
+     */
+    private final ArrayList<S> front = new ArrayList<>();
+
+    /**
+     * The newer panes, in arrival order.
+     */
+    private final ArrayList<S> back = new ArrayList<>();
+    private S backAggregate;
+
+    /**
+     * True if the aggregate of the newer panes is owned by the window, not being one of the panes.
+     */
+    private boolean backOwned;
+    private long numPanes;
+
+    /**
+     * Create a new window.
+     *
+     * @param windowLength The number of panes of a window.
+     * @param slideLength  The number of panes between two consecutive windows.
+     * @param combine      The function combining two partial results, which must not modify its arguments.
+     */
+    PDSlidingWindow(int windowLength, int slideLength, BinaryOperator<S> combine) {
+        this(windowLength, slideLength, combine, combine);
+    }
+
+    /**
+     * Create a new window whose running aggregate of the newer panes is updated in place, so
+     * that adding a pane costs only the combination of the pane itself.
+     *
+     * @param windowLength The number of panes of a window.
+     * @param slideLength  The number of panes between two consecutive windows.
+     * @param combine      The function combining two partial results, which must not modify its arguments.
+     * @param accumulate   The function combining the second partial result into the first one,
+     *                     which can be modified and returned.
+     */
+    PDSlidingWindow(int windowLength, int slideLength, BinaryOperator<S> combine, BinaryOperator<S> accumulate) {
+        if (windowLength < 1)
+            throw new IllegalArgumentException("The window length is less than 1");
+        if (slideLength < 1)
+            throw new IllegalArgumentException("The slide length is less than 1");
+        if (combine == null)
+            throw new NullPointerException("The combine function is 'null'");
+        if (accumulate == null)
+            throw new NullPointerException("The accumulate function is 'null'");
+        this.windowLength = windowLength;
+        this.slideLength = slideLength;
+        this.combine = combine;
+        this.accumulate = accumulate;
+    }
+
+    /**
+     * Add the pane of a new micro-batch, evicting the panes no more covered by the window.
+     *
+     * @param pane The pane to add.
+     * @return True if a window ends with this pane, false otherwise.
+     */
+    boolean add(S pane) {
+        back.add(pane);
+        if (backAggregate == null) {
+            backAggregate = pane;
+        } else if (backOwned) {
+            backAggregate = accumulate.apply(backAggregate, pane);
+        } else {
+            backAggregate = combine.apply(backAggregate, pane);
+            backOwned = true;
+        }
+        if (front.size() + back.size() > windowLength)
+            evict();
+        numPanes++;
+        return numPanes % slideLength == 0;
+    }
+
+    private void evict() {
+        if (front.isEmpty()) {
+            for (int i = back.size() - 1; i >= 0; i--)
+                front.add(front.isEmpty() ? back.get(i) : combine.apply(back.get(i), front.get(front.size() - 1)));
+            back.clear();
+            backAggregate = null;
+            backOwned = false;
+        }
+        front.remove(front.size() - 1);
+    }
+
+    /**
+     * Close the window following the last completed one, truncated at the last added pane, as
+     * done at the end of the stream. The panes of the truncated window are the only ones kept,
+     * so that {@link #aggregate()} returns its aggregate.
+     *
+     * @return True if the truncated window contains some panes, false otherwise.
+     */
+    boolean closePartialWindow() {
+        long missing = slideLength - numPanes % slideLength;
+        long keep = windowLength - missing;
+        if (missing == slideLength || keep <= 0)
+            return false;
+        while (front.size() + back.size() > keep)
+            evict();
+        return true;
+    }
+
+    /**
+     * Get the aggregate of the panes of the current window. The returned aggregate is never
+     * modified afterwards by the window.
+     *
+     * @return The aggregate, or 'null' if no panes have been added.
+     */
+    S aggregate() {
+        S older = front.isEmpty() ? null : front.get(front.size() - 1);
+        if (older == null) {
+            backOwned = false;
+            return backAggregate;
+        }
+        if (backAggregate == null)
+            return older;
+        return combine.apply(older, backAggregate);
+    }
+}
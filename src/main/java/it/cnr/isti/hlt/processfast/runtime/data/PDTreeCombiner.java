@@ -0,0 +1,119 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime.data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BinaryOperator;
+
+/**
+ * Combine the partial results of the partitions of a stage with a binary tree, while the
+ * partitions complete. Each partial result is combined with its sibling in the tree by the
+ * worker completing the last of the two, so the combines run in parallel on the workers and the
+ * caller only combines the at most logarithmic number of nodes left without a sibling. The
+ * order of the partitions is preserved: the left node is always the first argument of the
+ * combine function. 'null' partial results are skipped.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+class PDTreeCombiner<P> {
+    private final BinaryOperator<P> combine;
+
+    /**
+     * The nodes waiting for their sibling, indexed by level and position in the level.
+     */
+    private final HashMap<Long, P> pending = new HashMap<>();
+
+    /**
+     * Create a new tree combiner.
+     *
+     * @param combine The function combining two not 'null' partial results.
+     */
+    PDTreeCombiner(BinaryOperator<P> combine) {
+        if (combine == null)
+            throw new NullPointerException("The combine function is 'null'");
+        this.combine = combine;
+    }
+
+    private static long node(int level, long position) {
+        return ((long) level << 32) | position;
+    }
+
+    /**
+     * Add the partial result of a partition, combining it with the completed siblings.
+     *
+     * @param partition The index of the partition.
+     * @param partial   The partial result of the partition.
+     */
+    void add(int partition, P partial) {
+        if (partition < 0)
+            throw new IllegalArgumentException("The partition index is less than 0");
+        int level = 0;
+        long position = partition;
+        while (true) {
+            P sibling;
+            synchronized (pending) {
+                if (!pending.containsKey(node(level, position ^ 1))) {
+                    pending.put(node(level, position), partial);
+                    return;
+                }
+                sibling = pending.remove(node(level, position ^ 1));
+            }
+            partial = (position & 1) == 0 ? combine(partial, sibling) : combine(sibling, partial);
+            level++;
+            position >>= 1;
+        }
+    }
+
+    private P combine(P left, P right) {
+        if (left == null)
+            return right;
+        if (right == null)
+            return left;
+        return combine.apply(left, right);
+    }
+
+    /**
+     * Combine the nodes left in the tree, in the order of the partitions. Must be called after
+     * all the partitions have been added.
+     *
+     * @return The combined result, or 'null' if no partition has a not 'null' result.
+     */
+    P finish() {
+        List<Map.Entry<Long, P>> nodes;
+        synchronized (pending) {
+            nodes = new ArrayList<>(pending.entrySet());
+            pending.clear();
+        }
+        // A node at level l and position p covers the partitions starting from p << l.
+        nodes.sort((n1, n2) -> Long.compare(firstPartition(n1.getKey()), firstPartition(n2.getKey())));
+        P ret = null;
+        for (Map.Entry<Long, P> n : nodes)
+            ret = combine(ret, n.getValue());
+        return ret;
+    }
+
+    private static long firstPartition(long node) {
+        return (node & 0xffffffffL) << (node >>> 32);
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime.data;
+
+import it.cnr.isti.hlt.processfast.data.ImmutableDataSourceIteratorProvider;
+
+import java.io.Serializable;
+
+/**
+ * A transformation which needs to see the whole dataset. Its result becomes the data source
+ * of the following transformations.
+ *
+ * @param <In>  The type of input items.
+ * @param <P>   The type of the partial result computed on a partition.
+ * @param <Out> The type of output items.
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+interface PDWideTransformation<In, P, Out extends Serializable>
+        extends PDTransformation, PDAction<In, P, ImmutableDataSourceIteratorProvider<Out>> {
+}
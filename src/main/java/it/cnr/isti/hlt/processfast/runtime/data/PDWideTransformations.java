@@ -0,0 +1,913 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime.data;
+
+import it.cnr.isti.hlt.processfast.core.TaskDataContext;
+import it.cnr.isti.hlt.processfast.data.CollectionDataIterable;
+import it.cnr.isti.hlt.processfast.data.DataIterable;
+import it.cnr.isti.hlt.processfast.data.ImmutableDataSourceIteratorProvider;
+import it.cnr.isti.hlt.processfast.data.PDFunction;
+import it.cnr.isti.hlt.processfast.data.PDFunction2;
+import it.cnr.isti.hlt.processfast.data.PartitionableDataset;
+import it.cnr.isti.hlt.processfast.utils.Pair;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * The wide transformations available on partitionable datasets. Each partition computes a
+ * partial result which is merged, in partitions order, into the data source of the following
+ * transformations. The transformations working on keys exchange their data through a
+ * {@link PDShuffle} and the sort through a {@link PDExternalSort}, so they keep in memory at most
+ * the records allowed by the shuffle memory budget of the environment and spill the rest to disk.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+final class PDWideTransformations {
+
+    private PDWideTransformations() {
+    }
+
+
+    /**
+     * A wide transformation whose partitions write (key, value) records on a shuffle. The
+     * following stage reads the shuffle in parallel, by ranges of buckets, and turns every group
+     * of records sharing a key into zero or more output items.
+     *
+     * @param <In>  The type of input items.
+     * @param <K>   The type of the shuffle keys.
+     * @param <V>   The type of the shuffle values.
+     * @param <Out> The type of output items.
+     */
+    abstract static class ShuffleTransformation<In, K, V, Out extends Serializable>
+            implements PDWideTransformation<In, PDShuffle.Output<K, V>, Out> {
+        protected final PDMemoryBudget budget;
+
+        ShuffleTransformation(PDMemoryBudget budget) {
+            if (budget == null)
+                throw new NullPointerException("The memory budget is 'null'");
+            this.budget = budget;
+        }
+
+        /**
+         * Write on the shuffle the records of an input item.
+         *
+         * @param ctx    The data context.
+         * @param item   The input item.
+         * @param writer The writer of the partition.
+         */
+        protected abstract void write(TaskDataContext ctx, In item, PDShuffle.Writer<K, V> writer);
+
+        /**
+         * Compute the output items of a group of records sharing the same key.
+         *
+         * @param ctx   The data context.
+         * @param group The group.
+         * @param out   The list receiving the output items.
+         */
+        protected abstract void reduce(TaskDataContext ctx, PDShuffle.Group<K, V> group, List<Out> out);
+
+        /**
+         * Write on the shuffle the records coming from other datasets, before reading it. The
+         * default implementation does nothing.
+         *
+         * @param ctx     The data context.
+         * @param outputs The list receiving the outputs of the written partitions.
+         */
+        protected void writeOthers(TaskDataContext ctx, List<PDShuffle.Output<K, V>> outputs) {
+        }
+
+        /**
+         * Write on the shuffle, on side 1, all the items of the specified dataset. A dataset
+         * executed by this runtime is written in parallel by its own partitions. The records of
+         * the keys salted on side 0 are replicated in all the buckets of the key.
+         */
+        protected <T extends Serializable> void writeOtherSide(PartitionableDataset<T> other, BiConsumer<T, PDShuffle.Writer<K, V>> writeItem,
+                                                               List<PDShuffle.Output<K, V>> outputs) {
+            Set<K> saltedKeys = PDShuffle.saltedKeys(outputs);
+            if (other instanceof FJPartitionableDataset) {
+                outputs.addAll(((FJPartitionableDataset<T>) other).execute(new ShuffleWrite<>(budget, writeItem, saltedKeys)));
+            } else {
+                PDShuffle.Writer<K, V> writer = new PDShuffle.Writer<>(budget, 1, false, saltedKeys);
+                for (T item : other.collect())
+                    writeItem.accept(item, writer);
+                outputs.add(writer.finish());
+            }
+        }
+
+        @Override
+        public PDShuffle.Output<K, V> computePartition(TaskDataContext ctx, List<In> partition) {
+            PDPartitionAccumulator<In, PDShuffle.Output<K, V>> accumulator = newAccumulator(ctx);
+            for (In item : partition)
+                accumulator.accept(item);
+            return accumulator.finish();
+        }
+
+        /**
+         * Check if the hot keys of this transformation must be salted, i.e. if the output of a
+         * group can be computed independently on parts of its side 0 values, each paired with all
+         * the side 1 values, or if the parts of the group are merged before computing its output
+         * (see {@link #mergesSaltedGroups()}). The default implementation returns false.
+         *
+         * @return True if the hot keys must be salted, false otherwise.
+         */
+        protected boolean saltsHotKeys() {
+            return false;
+        }
+
+        /**
+         * Check if the groups of the salted hot keys must be merged before being reduced, i.e. if
+         * the output of a group needs all its values. The parts of such a group are compacted
+         * while the buckets are read in parallel, and the merged group is reduced once all the
+         * buckets have been read. The default implementation returns false.
+         *
+         * @return True if the groups of the salted keys must be merged, false otherwise.
+         */
+        protected boolean mergesSaltedGroups() {
+            return false;
+        }
+
+        /**
+         * Compact the values of the part of a group of a salted hot key read from one bucket,
+         * before merging it with the other parts. The default implementation keeps all the values.
+         *
+         * @param ctx   The data context.
+         * @param group The part of the group.
+         * @return The compacted group.
+         */
+        protected PDShuffle.Group<K, V> compact(TaskDataContext ctx, PDShuffle.Group<K, V> group) {
+            return group;
+        }
+
+        @Override
+        public PDPartitionAccumulator<In, PDShuffle.Output<K, V>> newAccumulator(TaskDataContext ctx) {
+            PDShuffle.Writer<K, V> writer = new PDShuffle.Writer<>(budget, 0, saltsHotKeys(), Collections.<K>emptySet());
+            return new PDPartitionAccumulator<In, PDShuffle.Output<K, V>>() {
+                @Override
+                public void accept(In item) {
+                    write(ctx, item, writer);
+                }
+
+                @Override
+                public PDShuffle.Output<K, V> finish() {
+                    return writer.finish();
+                }
+            };
+        }
+
+        /**
+         * Write on the shuffle the records coming from other datasets and get the shuffled data,
+         * read in parallel by the following stage.
+         */
+        @Override
+        public ImmutableDataSourceIteratorProvider<Out> merge(TaskDataContext ctx, List<PDShuffle.Output<K, V>> partials) {
+            List<PDShuffle.Output<K, V>> outputs = new ArrayList<>(partials);
+            try {
+                writeOthers(ctx, outputs);
+                PDShuffle.mergeRuns(outputs);
+            } catch (RuntimeException | Error e) {
+                discard(ctx, outputs);
+                throw e;
+            }
+            if (mergesSaltedGroups())
+                return new PDShuffle.ShuffledData<>(outputs, (group, out) -> reduce(ctx, group, out), group -> compact(ctx, group));
+            return new PDShuffle.ShuffledData<>(outputs, (group, out) -> reduce(ctx, group, out));
+        }
+
+        @Override
+        public void discard(TaskDataContext ctx, List<PDShuffle.Output<K, V>> partials) {
+            for (PDShuffle.Output<K, V> output : partials)
+                output.discard();
+        }
+    }
+
+
+    /**
+     * Write all the items of a dataset on side 1 of a shuffle.
+     */
+    static class ShuffleWrite<T, K, V> implements PDAction<T, PDShuffle.Output<K, V>, List<PDShuffle.Output<K, V>>> {
+        private final PDMemoryBudget budget;
+        private final BiConsumer<T, PDShuffle.Writer<K, V>> writeItem;
+        private final Set<K> replicatedKeys;
+
+        ShuffleWrite(PDMemoryBudget budget, BiConsumer<T, PDShuffle.Writer<K, V>> writeItem, Set<K> replicatedKeys) {
+            this.budget = budget;
+            this.writeItem = writeItem;
+            this.replicatedKeys = replicatedKeys;
+        }
+
+        @Override
+        public PDShuffle.Output<K, V> computePartition(TaskDataContext ctx, List<T> partition) {
+            PDShuffle.Writer<K, V> writer = new PDShuffle.Writer<>(budget, 1, false, replicatedKeys);
+            for (T item : partition)
+                writeItem.accept(item, writer);
+            return writer.finish();
+        }
+
+        @Override
+        public PDPartitionAccumulator<T, PDShuffle.Output<K, V>> newAccumulator(TaskDataContext ctx) {
+            PDShuffle.Writer<K, V> writer = new PDShuffle.Writer<>(budget, 1, false, replicatedKeys);
+            return new PDPartitionAccumulator<T, PDShuffle.Output<K, V>>() {
+                @Override
+                public void accept(T item) {
+                    writeItem.accept(item, writer);
+                }
+
+                @Override
+                public PDShuffle.Output<K, V> finish() {
+                    return writer.finish();
+                }
+            };
+        }
+
+        @Override
+        public List<PDShuffle.Output<K, V>> merge(TaskDataContext ctx, List<PDShuffle.Output<K, V>> partials) {
+            return partials;
+        }
+
+        @Override
+        public void discard(TaskDataContext ctx, List<PDShuffle.Output<K, V>> partials) {
+            for (PDShuffle.Output<K, V> output : partials)
+                output.discard();
+        }
+    }
+
+
+    /**
+     * The Bloom filters dropping, before a shuffle, the records of a two-sided transformation
+     * whose key can not be on the other side. The keys written by the partitions of side 0 are
+     * added to a filter which prunes the records of side 1, written after them, at no extra
+     * cost. When the other dataset is known to be the smaller one, a filter of its keys is also
+     * built in one pass before side 0 is written, and prunes side 0 as well. The filters only
+     * grow, so a transformation executed again keeps pruning correctly.
+     */
+    static final class BloomPruning<K> {
+        private final PDLazyValue<PDBloomFilter> side0Keys;
+        private final PDLazyValue<PDBloomFilter> side1Keys;
+
+        /**
+         * Create the filters of a transformation.
+         *
+         * @param size      The number of items of this dataset, or -1 if unknown.
+         * @param other     The other dataset.
+         * @param otherSize The number of items of the other dataset, or -1 if unknown.
+         * @param key       The function giving the key of an item of the other dataset.
+         */
+        <T extends Serializable> BloomPruning(long size, PartitionableDataset<T> other, long otherSize, Function<T, K> key) {
+            this.side0Keys = new PDLazyValue<>(() -> new PDBloomFilter(size, PDBloomFilter.DEFAULT_FPP));
+            if (size >= 0 && otherSize >= 0 && otherSize < size) {
+                this.side1Keys = new PDLazyValue<>(() -> {
+                    PDBloomFilter filter = new PDBloomFilter(otherSize, PDBloomFilter.DEFAULT_FPP);
+                    other.processEach((ctx, item) -> filter.add(key.apply(item)));
+                    return filter;
+                });
+            } else {
+                this.side1Keys = null;
+            }
+        }
+
+        /**
+         * Check if a record of side 0 can match, remembering its key.
+         */
+        boolean acceptSide0(K key) {
+            if (side1Keys != null && !side1Keys.get().mightContain(key))
+                return false;
+            side0Keys.get().add(key);
+            return true;
+        }
+
+        /**
+         * Check if a record of side 1 can match. Must be called after all side 0 records have been written.
+         */
+        boolean acceptSide1(K key) {
+            return side0Keys.get().mightContain(key);
+        }
+    }
+
+
+    static class GroupBy<T extends Serializable, K extends Serializable>
+            extends ShuffleTransformation<T, K, T, Pair<K, DataIterable<T>>> {
+        private final PDFunction<T, K> func;
+
+        GroupBy(PDMemoryBudget budget, PDFunction<T, K> func) {
+            super(budget);
+            if (func == null)
+                throw new NullPointerException("The function is 'null'");
+            this.func = func;
+        }
+
+        @Override
+        protected void write(TaskDataContext ctx, T item, PDShuffle.Writer<K, T> writer) {
+            writer.write(func.call(ctx, item), item);
+        }
+
+        @Override
+        protected boolean saltsHotKeys() {
+            return true;
+        }
+
+        @Override
+        protected boolean mergesSaltedGroups() {
+            return true;
+        }
+
+        @Override
+        protected void reduce(TaskDataContext ctx, PDShuffle.Group<K, T> group, List<Pair<K, DataIterable<T>>> out) {
+            out.add(new Pair<>(group.getKey(), new CollectionDataIterable<>(group.getValues(0))));
+        }
+    }
+
+
+    static class GroupByKey<K extends Serializable, V extends Serializable>
+            extends ShuffleTransformation<Pair<K, V>, K, V, Pair<K, DataIterable<V>>> {
+
+        GroupByKey(PDMemoryBudget budget) {
+            super(budget);
+        }
+
+        @Override
+        protected void write(TaskDataContext ctx, Pair<K, V> item, PDShuffle.Writer<K, V> writer) {
+            writer.write(item.getV1(), item.getV2());
+        }
+
+        @Override
+        protected boolean saltsHotKeys() {
+            return true;
+        }
+
+        @Override
+        protected boolean mergesSaltedGroups() {
+            return true;
+        }
+
+        @Override
+        protected void reduce(TaskDataContext ctx, PDShuffle.Group<K, V> group, List<Pair<K, DataIterable<V>>> out) {
+            out.add(new Pair<>(group.getKey(), new CollectionDataIterable<>(group.getValues(0))));
+        }
+    }
+
+
+    /**
+     * Reduce the values of each key. The values are combined inside each partition by a hash
+     * table holding at most "combinerCapacity" keys: when the table is full its partial aggregates
+     * are written on the shuffle and the table is cleared. The partial aggregates of all
+     * partitions are then combined again while reading the shuffle. The records of a hot key are
+     * salted over several buckets: each bucket combines its part of them, and the partial
+     * aggregates are combined in a second step once all the buckets have been read.
+     */
+    static class ReduceByKey<K extends Serializable, V extends Serializable>
+            extends ShuffleTransformation<Pair<K, V>, K, V, Pair<K, V>> {
+        private final PDFunction2<V, V, V> func;
+        private final int combinerCapacity;
+
+        ReduceByKey(PDMemoryBudget budget, PDFunction2<V, V, V> func, int combinerCapacity) {
+            super(budget);
+            if (func == null)
+                throw new NullPointerException("The function is 'null'");
+            if (combinerCapacity < 1)
+                throw new IllegalArgumentException("The combiner capacity is less than 1");
+            this.func = func;
+            this.combinerCapacity = combinerCapacity;
+        }
+
+        private V combine(TaskDataContext ctx, V acc, V value) {
+            return combine(ctx, func, acc, value);
+        }
+
+        /**
+         * Combine two values of a key, skipping the 'null' ones.
+         */
+        static <V> V combine(TaskDataContext ctx, PDFunction2<V, V, V> func, V acc, V value) {
+            if (acc == null)
+                return value;
+            return value == null ? acc : func.call(ctx, acc, value);
+        }
+
+        @Override
+        protected void write(TaskDataContext ctx, Pair<K, V> item, PDShuffle.Writer<K, V> writer) {
+            writer.write(item.getV1(), item.getV2());
+        }
+
+        @Override
+        public PDPartitionAccumulator<Pair<K, V>, PDShuffle.Output<K, V>> newAccumulator(TaskDataContext ctx) {
+            PDShuffle.Writer<K, V> writer = new PDShuffle.Writer<>(budget, 0, true, Collections.<K>emptySet());
+            return new PDPartitionAccumulator<Pair<K, V>, PDShuffle.Output<K, V>>() {
+                private final LinkedHashMap<K, V> table = new LinkedHashMap<>();
+
+                @Override
+                public void accept(Pair<K, V> item) {
+                    if (table.size() >= combinerCapacity && !table.containsKey(item.getV1()))
+                        flush();
+                    table.put(item.getV1(), combine(ctx, table.get(item.getV1()), item.getV2()));
+                }
+
+                private void flush() {
+                    for (Map.Entry<K, V> entry : table.entrySet())
+                        writer.write(entry.getKey(), entry.getValue());
+                    table.clear();
+                }
+
+                @Override
+                public PDShuffle.Output<K, V> finish() {
+                    flush();
+                    return writer.finish();
+                }
+            };
+        }
+
+        @Override
+        protected boolean mergesSaltedGroups() {
+            return true;
+        }
+
+        @Override
+        protected PDShuffle.Group<K, V> compact(TaskDataContext ctx, PDShuffle.Group<K, V> group) {
+            PDShuffle.Group<K, V> compacted = new PDShuffle.Group<>(group.getKey());
+            compacted.add(0, combineAll(ctx, group));
+            return compacted;
+        }
+
+        private V combineAll(TaskDataContext ctx, PDShuffle.Group<K, V> group) {
+            V acc = null;
+            for (V value : group.getValues(0))
+                acc = combine(ctx, acc, value);
+            return acc;
+        }
+
+        @Override
+        protected void reduce(TaskDataContext ctx, PDShuffle.Group<K, V> group, List<Pair<K, V>> out) {
+            out.add(new Pair<>(group.getKey(), combineAll(ctx, group)));
+        }
+    }
+
+
+    /**
+     * Remove the duplicated items. Each partition collects its distinct items in an open
+     * addressing set holding at most {@link PDEnvironment#DEFAULT_COMBINER_CAPACITY} items: when
+     * the set is full its items are spilled to the shuffle and the set is cleared.
+     */
+    static class Distinct<T extends Serializable> extends ShuffleTransformation<T, T, Object, T> {
+
+        Distinct(PDMemoryBudget budget) {
+            super(budget);
+        }
+
+        @Override
+        protected void write(TaskDataContext ctx, T item, PDShuffle.Writer<T, Object> writer) {
+            writer.write(item, null);
+        }
+
+        @Override
+        public PDPartitionAccumulator<T, PDShuffle.Output<T, Object>> newAccumulator(TaskDataContext ctx) {
+            PDShuffle.Writer<T, Object> writer = new PDShuffle.Writer<>(budget, 0);
+            return new PDPartitionAccumulator<T, PDShuffle.Output<T, Object>>() {
+                private final PDOpenHashSet<T> seen = new PDOpenHashSet<>();
+
+                @Override
+                public void accept(T item) {
+                    if (seen.add(item) && seen.size() >= PDEnvironment.DEFAULT_COMBINER_CAPACITY)
+                        spill();
+                }
+
+                private void spill() {
+                    seen.forEach(item -> writer.write(item, null));
+                    seen.clear();
+                }
+
+                @Override
+                public PDShuffle.Output<T, Object> finish() {
+                    spill();
+                    return writer.finish();
+                }
+            };
+        }
+
+        @Override
+        protected void reduce(TaskDataContext ctx, PDShuffle.Group<T, Object> group, List<T> out) {
+            out.add(group.getKey());
+        }
+    }
+
+
+    /**
+     * Keep the distinct items which are also contained in another dataset. The items of both
+     * datasets are shuffled together, the other dataset on side 1, after dropping the items
+     * which can not be on the other side (see {@link BloomPruning}).
+     */
+    static class Intersection<T extends Serializable> extends ShuffleTransformation<T, T, Object, T> {
+        private final PartitionableDataset<T> other;
+        private final BloomPruning<T> pruning;
+
+        /**
+         * Create a new intersection.
+         *
+         * @param budget    The shuffle memory budget.
+         * @param size      The number of items of this dataset, or -1 if unknown.
+         * @param other     The other dataset.
+         * @param otherSize The number of items of the other dataset, or -1 if unknown.
+         */
+        Intersection(PDMemoryBudget budget, long size, PartitionableDataset<T> other, long otherSize) {
+            super(budget);
+            if (other == null)
+                throw new NullPointerException("The other dataset is 'null'");
+            this.other = other;
+            this.pruning = new BloomPruning<>(size, other, otherSize, item -> item);
+        }
+
+        @Override
+        protected void write(TaskDataContext ctx, T item, PDShuffle.Writer<T, Object> writer) {
+            if (pruning.acceptSide0(item))
+                writer.write(item, null);
+        }
+
+        @Override
+        protected void writeOthers(TaskDataContext ctx, List<PDShuffle.Output<T, Object>> outputs) {
+            writeOtherSide(other, (item, writer) -> {
+                if (pruning.acceptSide1(item))
+                    writer.write(item, null);
+            }, outputs);
+        }
+
+        @Override
+        protected void reduce(TaskDataContext ctx, PDShuffle.Group<T, Object> group, List<T> out) {
+            if (!group.getValues(0).isEmpty() && !group.getValues(1).isEmpty())
+                out.add(group.getKey());
+        }
+    }
+
+
+    /**
+     * Sort the items with an external merge sort: each partition is sorted in parallel, spilling
+     * sorted runs to disk when the shuffle memory budget is exhausted, and all the runs are
+     * merged at the end.
+     */
+    static class Sort<T extends Serializable> implements PDWideTransformation<T, PDExternalSort.Output<T>, T> {
+        private final PDMemoryBudget budget;
+        private final Comparator<? super T> comparator;
+
+        /**
+         * Sort the items using the specified comparator.
+         *
+         * @param budget     The memory budget of the sort.
+         * @param comparator The comparator.
+         */
+        Sort(PDMemoryBudget budget, Comparator<? super T> comparator) {
+            if (budget == null)
+                throw new NullPointerException("The memory budget is 'null'");
+            if (comparator == null)
+                throw new NullPointerException("The comparator is 'null'");
+            this.budget = budget;
+            this.comparator = comparator;
+        }
+
+        @Override
+        public PDExternalSort.Output<T> computePartition(TaskDataContext ctx, List<T> partition) {
+            PDPartitionAccumulator<T, PDExternalSort.Output<T>> accumulator = newAccumulator(ctx);
+            for (T item : partition)
+                accumulator.accept(item);
+            return accumulator.finish();
+        }
+
+        @Override
+        public PDPartitionAccumulator<T, PDExternalSort.Output<T>> newAccumulator(TaskDataContext ctx) {
+            PDExternalSort.Writer<T> writer = new PDExternalSort.Writer<>(budget, comparator);
+            return new PDPartitionAccumulator<T, PDExternalSort.Output<T>>() {
+                @Override
+                public void accept(T item) {
+                    writer.add(item);
+                }
+
+                @Override
+                public PDExternalSort.Output<T> finish() {
+                    return writer.finish();
+                }
+            };
+        }
+
+        @Override
+        public ImmutableDataSourceIteratorProvider<T> merge(TaskDataContext ctx, List<PDExternalSort.Output<T>> partials) {
+            return PDExternalSort.merge(partials, comparator, budget);
+        }
+
+        @Override
+        public void discard(TaskDataContext ctx, List<PDExternalSort.Output<T>> partials) {
+            PDExternalSort.discard(partials);
+        }
+    }
+
+
+    /**
+     * A wide transformation whose output pairs are sorted by key.
+     */
+    interface KeySorted {
+
+        /**
+         * @return True if the keys are in ascending order, false if they are in descending order.
+         */
+        boolean isAscending();
+    }
+
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <K, V> Comparator<Pair<K, V>> keyComparator(boolean ascending) {
+        Comparator<Pair<K, V>> comparator = (a, b) -> ((Comparable) a.getV1()).compareTo(b.getV1());
+        return ascending ? comparator : comparator.reversed();
+    }
+
+
+    static class SortByKey<K extends Serializable, V extends Serializable> extends Sort<Pair<K, V>> implements KeySorted {
+        private final boolean ascending;
+
+        SortByKey(PDMemoryBudget budget, boolean ascending) {
+            super(budget, keyComparator(ascending));
+            this.ascending = ascending;
+        }
+
+        @Override
+        public boolean isAscending() {
+            return ascending;
+        }
+    }
+
+
+    /**
+     * Write all the items of a dataset in sorted runs.
+     */
+    static class SortWrite<T extends Serializable> implements PDAction<T, PDExternalSort.Output<T>, List<PDExternalSort.Output<T>>> {
+        private final PDMemoryBudget budget;
+        private final Comparator<? super T> comparator;
+
+        SortWrite(PDMemoryBudget budget, Comparator<? super T> comparator) {
+            this.budget = budget;
+            this.comparator = comparator;
+        }
+
+        @Override
+        public PDExternalSort.Output<T> computePartition(TaskDataContext ctx, List<T> partition) {
+            PDExternalSort.Writer<T> writer = new PDExternalSort.Writer<>(budget, comparator);
+            for (T item : partition)
+                writer.add(item);
+            return writer.finish();
+        }
+
+        @Override
+        public PDPartitionAccumulator<T, PDExternalSort.Output<T>> newAccumulator(TaskDataContext ctx) {
+            PDExternalSort.Writer<T> writer = new PDExternalSort.Writer<>(budget, comparator);
+            return new PDPartitionAccumulator<T, PDExternalSort.Output<T>>() {
+                @Override
+                public void accept(T item) {
+                    writer.add(item);
+                }
+
+                @Override
+                public PDExternalSort.Output<T> finish() {
+                    return writer.finish();
+                }
+            };
+        }
+
+        @Override
+        public List<PDExternalSort.Output<T>> merge(TaskDataContext ctx, List<PDExternalSort.Output<T>> partials) {
+            return partials;
+        }
+
+        @Override
+        public void discard(TaskDataContext ctx, List<PDExternalSort.Output<T>> partials) {
+            PDExternalSort.discard(partials);
+        }
+    }
+
+
+    /**
+     * Inner join on keys of two datasets already sorted by key in the same order. Both sides are
+     * written in sorted runs, which costs a linear scan for sorted partitions, and the two sorted
+     * streams are then merged without hashing. The output is sorted by key.
+     */
+    static class SortMergeJoin<K extends Serializable, V extends Serializable, T extends Serializable>
+            implements PDWideTransformation<Pair<K, V>, PDExternalSort.Output<Pair<K, V>>, Pair<K, Pair<V, T>>>, KeySorted {
+        private final PDMemoryBudget budget;
+        private final PartitionableDataset<Pair<K, T>> other;
+        private final boolean ascending;
+        private final SortWrite<Pair<K, V>> leftWrite;
+
+        SortMergeJoin(PDMemoryBudget budget, PartitionableDataset<Pair<K, T>> other, boolean ascending) {
+            if (budget == null)
+                throw new NullPointerException("The memory budget is 'null'");
+            if (other == null)
+                throw new NullPointerException("The other dataset is 'null'");
+            this.budget = budget;
+            this.other = other;
+            this.ascending = ascending;
+            this.leftWrite = new SortWrite<>(budget, keyComparator(ascending));
+        }
+
+        @Override
+        public boolean isAscending() {
+            return ascending;
+        }
+
+        @Override
+        public PDExternalSort.Output<Pair<K, V>> computePartition(TaskDataContext ctx, List<Pair<K, V>> partition) {
+            return leftWrite.computePartition(ctx, partition);
+        }
+
+        @Override
+        public PDPartitionAccumulator<Pair<K, V>, PDExternalSort.Output<Pair<K, V>>> newAccumulator(TaskDataContext ctx) {
+            return leftWrite.newAccumulator(ctx);
+        }
+
+        private List<PDExternalSort.Output<Pair<K, T>>> writeOther() {
+            Comparator<Pair<K, T>> comparator = keyComparator(ascending);
+            if (other instanceof FJPartitionableDataset)
+                return ((FJPartitionableDataset<Pair<K, T>>) other).execute(new SortWrite<>(budget, comparator));
+            PDExternalSort.Writer<Pair<K, T>> writer = new PDExternalSort.Writer<>(budget, comparator);
+            for (Pair<K, T> item : other.collect())
+                writer.add(item);
+            List<PDExternalSort.Output<Pair<K, T>>> ret = new ArrayList<>();
+            ret.add(writer.finish());
+            return ret;
+        }
+
+        @Override
+        public ImmutableDataSourceIteratorProvider<Pair<K, Pair<V, T>>> merge(TaskDataContext ctx, List<PDExternalSort.Output<Pair<K, V>>> partials) {
+            List<PDExternalSort.Output<Pair<K, T>>> otherPartials = Collections.emptyList();
+            try {
+                otherPartials = writeOther();
+                Comparator<Pair<K, V>> leftComparator = keyComparator(ascending);
+                Comparator<Pair<K, T>> rightComparator = keyComparator(ascending);
+                Iterator<Pair<K, V>> left = PDExternalSort.open(partials, leftComparator);
+                Iterator<Pair<K, T>> right = PDExternalSort.open(otherPartials, rightComparator);
+                return PDShuffle.toDataSource(new MergeJoinIterator<>(left, right, ascending), budget.getLimit());
+            } finally {
+                PDExternalSort.discard(partials);
+                PDExternalSort.discard(otherPartials);
+            }
+        }
+
+        @Override
+        public void discard(TaskDataContext ctx, List<PDExternalSort.Output<Pair<K, V>>> partials) {
+            PDExternalSort.discard(partials);
+        }
+    }
+
+
+    /**
+     * Join two streams of pairs sorted by key. Only the right pairs sharing the current key are
+     * kept in memory.
+     */
+    private static class MergeJoinIterator<K, V, T> implements Iterator<Pair<K, Pair<V, T>>> {
+        private final Iterator<Pair<K, V>> left;
+        private final Iterator<Pair<K, T>> right;
+        private final int direction;
+        private final List<T> rightGroup = new ArrayList<>();
+        private Pair<K, V> leftHead;
+        private Pair<K, T> rightHead;
+        private K groupKey;
+        private boolean inGroup;
+        private int nextInGroup;
+
+        MergeJoinIterator(Iterator<Pair<K, V>> left, Iterator<Pair<K, T>> right, boolean ascending) {
+            this.left = left;
+            this.right = right;
+            this.direction = ascending ? 1 : -1;
+            this.leftHead = left.hasNext() ? left.next() : null;
+            this.rightHead = right.hasNext() ? right.next() : null;
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private int compare(K k1, K k2) {
+            return direction * ((Comparable) k1).compareTo(k2);
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (true) {
+                if (leftHead == null)
+                    return false;
+                if (inGroup) {
+                    if (compare(leftHead.getV1(), groupKey) == 0) {
+                        if (nextInGroup < rightGroup.size())
+                            return true;
+                        nextInGroup = 0;
+                        leftHead = left.hasNext() ? left.next() : null;
+                        continue;
+                    }
+                    inGroup = false;
+                    rightGroup.clear();
+                }
+                if (rightHead == null)
+                    return false;
+                int c = compare(leftHead.getV1(), rightHead.getV1());
+                if (c < 0) {
+                    leftHead = left.hasNext() ? left.next() : null;
+                } else if (c > 0) {
+                    rightHead = right.hasNext() ? right.next() : null;
+                } else {
+                    groupKey = rightHead.getV1();
+                    inGroup = true;
+                    while (rightHead != null && compare(rightHead.getV1(), groupKey) == 0) {
+                        rightGroup.add(rightHead.getV2());
+                        rightHead = right.hasNext() ? right.next() : null;
+                    }
+                    nextInGroup = 0;
+                }
+            }
+        }
+
+        @Override
+        public Pair<K, Pair<V, T>> next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            return new Pair<>(leftHead.getV1(), new Pair<>(leftHead.getV2(), rightGroup.get(nextInGroup++)));
+        }
+    }
+
+
+    /**
+     * Inner join on keys with another pair dataset, as a partitioned hash join: the pairs of both
+     * datasets are shuffled together, the other dataset on side 1. The hot keys of this dataset
+     * are salted, so the cross product of a hot key is computed in parallel by several
+     * partitions, each one using a part of the values of this dataset and all the values of the
+     * other one.
+     */
+    static class Join<K extends Serializable, V extends Serializable, T extends Serializable>
+            extends ShuffleTransformation<Pair<K, V>, K, Object, Pair<K, Pair<V, T>>> {
+        private final PartitionableDataset<Pair<K, T>> other;
+        private final BloomPruning<K> pruning;
+
+        /**
+         * Create a new join.
+         *
+         * @param budget    The shuffle memory budget.
+         * @param size      The number of pairs of this dataset, or -1 if unknown.
+         * @param other     The other dataset.
+         * @param otherSize The number of pairs of the other dataset, or -1 if unknown.
+         */
+        Join(PDMemoryBudget budget, long size, PartitionableDataset<Pair<K, T>> other, long otherSize) {
+            super(budget);
+            if (other == null)
+                throw new NullPointerException("The other dataset is 'null'");
+            this.other = other;
+            this.pruning = new BloomPruning<>(size, other, otherSize, Pair::getV1);
+        }
+
+        @Override
+        protected void write(TaskDataContext ctx, Pair<K, V> item, PDShuffle.Writer<K, Object> writer) {
+            if (pruning.acceptSide0(item.getV1()))
+                writer.write(item.getV1(), item.getV2());
+        }
+
+        @Override
+        protected boolean saltsHotKeys() {
+            return true;
+        }
+
+        @Override
+        protected void writeOthers(TaskDataContext ctx, List<PDShuffle.Output<K, Object>> outputs) {
+            writeOtherSide(other, (item, writer) -> {
+                if (pruning.acceptSide1(item.getV1()))
+                    writer.write(item.getV1(), item.getV2());
+            }, outputs);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        protected void reduce(TaskDataContext ctx, PDShuffle.Group<K, Object> group, List<Pair<K, Pair<V, T>>> out) {
+            List<Object> otherValues = group.getValues(1);
+            if (otherValues.isEmpty())
+                return;
+            for (Object value : group.getValues(0)) {
+                for (Object otherValue : otherValues)
+                    out.add(new Pair<>(group.getKey(), new Pair<>((V) value, (T) otherValue)));
+            }
+        }
+    }
+}
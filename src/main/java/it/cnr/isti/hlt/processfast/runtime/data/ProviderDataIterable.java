@@ -0,0 +1,62 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime.data;
+
+import it.cnr.isti.hlt.processfast.data.CollectionDataIterable;
+import it.cnr.isti.hlt.processfast.data.DataIterable;
+import it.cnr.isti.hlt.processfast.data.ImmutableDataSourceIteratorProvider;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+/**
+ * A {@link DataIterable} over the items of a data source. When serialized, the items of the
+ * data source are copied into a {@link CollectionDataIterable}.
+ *
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ * @since 1.0.0
+ */
+public class ProviderDataIterable<T extends Serializable> implements DataIterable<T> {
+
+    private static final long serialVersionUID = 4071580957624512983L;
+
+    private final transient ImmutableDataSourceIteratorProvider<T> provider;
+
+    public ProviderDataIterable(ImmutableDataSourceIteratorProvider<T> provider) {
+        if (provider == null)
+            throw new NullPointerException("The data source is 'null'");
+        this.provider = provider;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return provider.iterator();
+    }
+
+    private Object writeReplace() throws ObjectStreamException {
+        ArrayList<T> items = new ArrayList<>();
+        Iterator<T> iter = provider.iterator();
+        while (iter.hasNext())
+            items.add(iter.next());
+        return new CollectionDataIterable<>(items);
+    }
+}
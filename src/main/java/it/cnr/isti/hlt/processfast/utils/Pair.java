@@ -71,4 +71,10 @@ public class Pair<T1, T2> implements Serializable {
 		Pair<T1, T2> p = (Pair<T1, T2>) obj;
 		return p.getV1().equals(getV1()) && p.getV2().equals(getV2());
 	}
+
+	@Override
+	public int hashCode() {
+		int h = v1 == null ? 0 : v1.hashCode();
+		return 31 * h + (v2 == null ? 0 : v2.hashCode());
+	}
 }
@@ -24,6 +24,7 @@ import junit.framework.Assert;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 
@@ -51,6 +52,30 @@ public abstract class AbstractArrayTest {
     }
 
 
+    @Test
+    public void splitIteratorProviderTest() {
+        Array<Double> ar = initArray("ar", true);
+        for (int i = 0; i < 1000; i++)
+            ar.appendValue((double) i);
+        SplittableDataSourceIteratorProvider<Double> provider = new ArrayDataSourceIteratorProvider<>(ar, 7);
+        Pair<SplittableDataSourceIteratorProvider<Double>, SplittableDataSourceIteratorProvider<Double>> halves = provider.trySplit();
+        Assert.assertEquals(500, halves.getV1().estimateSize());
+        Pair<SplittableDataSourceIteratorProvider<Double>, SplittableDataSourceIteratorProvider<Double>> quarters = halves.getV2().trySplit();
+        Assert.assertEquals(250, quarters.getV2().size());
+        Iterator<Double> iter = quarters.getV2().iterator();
+        for (int i = 750; i < 1000; i++)
+            Assert.assertEquals((double) i, iter.next());
+        Assert.assertTrue(!iter.hasNext());
+        Assert.assertEquals(Arrays.asList(752.0, 753.0), new ArrayList<>(quarters.getV2().take(2, 2)));
+        Assert.assertTrue(quarters.getV1().contains(600.0));
+        Assert.assertTrue(!quarters.getV1().contains(800.0));
+
+        SplittableDataSourceIteratorProvider<Pair<Long, Double>> withIndex = new ArrayPairDataSourceIteratorProvider<>(ar, 7);
+        Pair<Long, Double> first = withIndex.trySplit().getV2().iterator().next();
+        Assert.assertEquals(500, (long) first.getV1());
+        Assert.assertEquals(500.0, first.getV2());
+    }
+
     @Test
     public void sizeTest() {
         Array<Double> ar = initArray("ar", true);
@@ -0,0 +1,119 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.data;
+
+import it.cnr.isti.hlt.processfast.utils.Pair;
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ */
+public class SplittableDataSourceIteratorProviderTest {
+
+    private static <T extends Serializable> List<T> readAll(List<SplittableDataSourceIteratorProvider<T>> parts) {
+        List<T> ret = new ArrayList<>();
+        for (SplittableDataSourceIteratorProvider<T> part : parts) {
+            Iterator<T> iter = part.iterator();
+            while (iter.hasNext())
+                ret.add(iter.next());
+        }
+        return ret;
+    }
+
+    private static <T extends Serializable> List<SplittableDataSourceIteratorProvider<T>> splitAll(SplittableDataSourceIteratorProvider<T> provider) {
+        List<SplittableDataSourceIteratorProvider<T>> ret = new ArrayList<>();
+        Pair<SplittableDataSourceIteratorProvider<T>, SplittableDataSourceIteratorProvider<T>> halves = provider.trySplit();
+        if (halves == null) {
+            ret.add(provider);
+        } else {
+            ret.addAll(splitAll(halves.getV1()));
+            ret.addAll(splitAll(halves.getV2()));
+        }
+        return ret;
+    }
+
+    @Test
+    public void collectionTest() {
+        LinkedHashSet<String> items = new LinkedHashSet<>();
+        for (int i = 0; i < 37; i++)
+            items.add("item" + i);
+        CollectionDataSourceIteratorProvider<String> provider = new CollectionDataSourceIteratorProvider<>(items);
+        Assert.assertEquals(37, provider.estimateSize());
+        Assert.assertTrue(provider.isEstimateExact());
+        List<SplittableDataSourceIteratorProvider<Pair<Integer, String>>> parts = splitAll(provider);
+        Assert.assertEquals(37, parts.size());
+        List<Pair<Integer, String>> all = readAll(parts);
+        for (int i = 0; i < 37; i++)
+            Assert.assertEquals(new Pair<>(i, "item" + i), all.get(i));
+        Assert.assertTrue(parts.get(5).contains(new Pair<>(5, "item5")));
+        Assert.assertEquals(new Pair<>(20, "item20"), provider.trySplit().getV2().take(2, 1).iterator().next());
+    }
+
+    @Test
+    public void matrixTest() {
+        double[][] matrix = new double[][]{{1, 2, 3}, {4, 5, 6}};
+        RamDoubleMatrixIteratorProvider columns = new RamDoubleMatrixIteratorProvider(matrix, false);
+        Pair<SplittableDataSourceIteratorProvider<Pair<Integer, double[]>>, SplittableDataSourceIteratorProvider<Pair<Integer, double[]>>> halves = columns.trySplit();
+        Assert.assertEquals(1, halves.getV1().size());
+        Assert.assertEquals(2, halves.getV2().size());
+        Pair<Integer, double[]> column = halves.getV2().iterator().next();
+        Assert.assertEquals(1, (int) column.getV1());
+        Assert.assertEquals(5.0, column.getV2()[1]);
+        Assert.assertEquals(2, (int) halves.getV2().take(1, 5).iterator().next().getV1());
+        Assert.assertNull(new RamDoubleMatrixIteratorProvider(new double[][]{{1, 2}}, true).trySplit());
+    }
+
+    @Test
+    public void filesTest() throws IOException {
+        File dir = Files.createTempDirectory("splittable").toFile();
+        try {
+            for (int f = 0; f < 5; f++) {
+                try (PrintWriter pw = new PrintWriter(new File(dir, "file" + f + ".txt"))) {
+                    for (int l = 0; l < 10; l++)
+                        pw.println("line " + f + "_" + l);
+                }
+            }
+            RecursiveFileLineIteratorProvider provider = new RecursiveFileLineIteratorProvider(dir.getAbsolutePath(), null);
+            Assert.assertTrue(provider.estimateSize() > 0);
+            Assert.assertFalse(provider.isEstimateExact());
+            List<SplittableDataSourceIteratorProvider<String>> parts = splitAll(provider);
+            Assert.assertEquals(5, parts.size());
+            List<String> lines = readAll(parts);
+            Assert.assertEquals(50, lines.size());
+            Assert.assertEquals(50, new HashSet<>(lines).size());
+        } finally {
+            for (File f : dir.listFiles())
+                f.delete();
+            dir.delete();
+        }
+    }
+}
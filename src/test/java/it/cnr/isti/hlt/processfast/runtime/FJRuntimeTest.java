@@ -0,0 +1,245 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime;
+
+import it.cnr.isti.hlt.processfast.connector.ConnectorCapability;
+import it.cnr.isti.hlt.processfast.connector.ConnectorMessage;
+import it.cnr.isti.hlt.processfast.connector.ConnectorReader;
+import it.cnr.isti.hlt.processfast.connector.ConnectorType;
+import it.cnr.isti.hlt.processfast.connector.ConnectorWriter;
+import it.cnr.isti.hlt.processfast.core.HardwareFailureAction;
+import it.cnr.isti.hlt.processfast.core.SLF4JLogManager;
+import it.cnr.isti.hlt.processfast.core.TaskSet;
+import it.cnr.isti.hlt.processfast.data.RamDictionary;
+import it.cnr.isti.hlt.processfast.data.RamStorageManager;
+import it.cnr.isti.hlt.processfast.utils.Pair;
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ */
+public class FJRuntimeTest {
+
+    private static final AtomicLong sum = new AtomicLong();
+    private static final AtomicInteger counter = new AtomicInteger();
+
+    @Test
+    public void loadBalancingQueueTest() {
+        sum.set(0);
+        FJRuntime runtime = new FJRuntime(4);
+        TaskSet ts = runtime.createTaskSet();
+        ts.createConnector("numbers", ConnectorType.LOAD_BALANCING_QUEUE, 10);
+        ts.task(ctx -> {
+            ConnectorWriter writer = ctx.getConnectorManager().getConnectorWriter("numbers");
+            for (int i = 1; i <= 1000; i++)
+                writer.putValue(i);
+        }).withConnectors(wci -> wci.getConnectorManager().attachTaskToConnector(wci.getTaskName(), "numbers", ConnectorCapability.WRITE))
+                .withName(idx -> "producer");
+        ts.task(ctx -> {
+            ConnectorReader reader = ctx.getConnectorManager().getConnectorReader("numbers");
+            ConnectorMessage msg;
+            while ((msg = reader.getValue()) != null)
+                sum.addAndGet((Integer) msg.getPayload());
+        }).withConnectors(wci -> wci.getConnectorManager().attachTaskToConnector(wci.getTaskName(), "numbers", ConnectorCapability.READ))
+                .withNumInstances(8, 8);
+        runtime.run(ts);
+        Assert.assertEquals(500500, sum.get());
+        runtime.shutdown();
+    }
+
+    @Test
+    public void virtualThreadsTest() {
+        if (!FJRuntime.isVirtualThreadSupported()) {
+            try {
+                new FJRuntime(2, new RamStorageManager(), new SLF4JLogManager(), FJExecutionMode.VIRTUAL_THREADS);
+                Assert.fail();
+            } catch (UnsupportedOperationException e) {
+            }
+            return;
+        }
+
+        sum.set(0);
+        FJRuntime runtime = new FJRuntime(2, new RamStorageManager(), new SLF4JLogManager(), FJExecutionMode.VIRTUAL_THREADS);
+        TaskSet ts = runtime.createTaskSet();
+        ts.createConnector("numbers", ConnectorType.LOAD_BALANCING_QUEUE, 10);
+        ts.task(ctx -> {
+            ConnectorWriter writer = ctx.getConnectorManager().getConnectorWriter("numbers");
+            for (int i = 1; i <= 1000; i++)
+                writer.putValue(i);
+        }).withConnectors(wci -> wci.getConnectorManager().attachTaskToConnector(wci.getTaskName(), "numbers", ConnectorCapability.WRITE))
+                .withName(idx -> "producer");
+        ts.task(ctx -> {
+            ConnectorReader reader = ctx.getConnectorManager().getConnectorReader("numbers");
+            ConnectorMessage msg;
+            while ((msg = reader.getValue()) != null)
+                sum.addAndGet((Integer) msg.getPayload());
+        }).withConnectors(wci -> wci.getConnectorManager().attachTaskToConnector(wci.getTaskName(), "numbers", ConnectorCapability.READ))
+                .withNumInstances(2000, 2000);
+        runtime.run(ts);
+        Assert.assertEquals(500500, sum.get());
+        runtime.shutdown();
+    }
+
+    @Test
+    public void elasticScalingTest() {
+        sum.set(0);
+        counter.set(0);
+        FJRuntime runtime = new FJRuntime(4);
+        runtime.setScalingInterval(5);
+        TaskSet ts = runtime.createTaskSet();
+        ts.createConnector("numbers", ConnectorType.LOAD_BALANCING_QUEUE, 20);
+        ts.task(ctx -> {
+            ConnectorWriter writer = ctx.getConnectorManager().getConnectorWriter("numbers");
+            for (int i = 1; i <= 300; i++)
+                writer.putValue(i);
+        }).withConnectors(wci -> wci.getConnectorManager().attachTaskToConnector(wci.getTaskName(), "numbers", ConnectorCapability.WRITE))
+                .withName(idx -> "producer");
+        ts.task(ctx -> {
+            ConnectorReader reader = ctx.getConnectorManager().getConnectorReader("numbers");
+            ConnectorMessage msg;
+            while ((msg = reader.getValue()) != null) {
+                LockSupport.parkNanos(2000000);
+                sum.addAndGet((Integer) msg.getPayload());
+                counter.accumulateAndGet(ctx.getNumTotalInstances(), Math::max);
+            }
+        }).withConnectors(wci -> wci.getConnectorManager().attachTaskToConnector(wci.getTaskName(), "numbers", ConnectorCapability.READ))
+                .withNumInstances(1, 4);
+        runtime.run(ts);
+        Assert.assertEquals(45150, sum.get());
+        Assert.assertTrue(counter.get() > 1);
+        Assert.assertTrue(counter.get() <= 4);
+        runtime.shutdown();
+    }
+
+    @Test
+    public void broadcastAndReplyTest() {
+        sum.set(0);
+        FJRuntime runtime = new FJRuntime(2);
+        TaskSet ts = runtime.createTaskSet();
+        ts.createConnector("broadcast", ConnectorType.BROADCAST_QUEUE);
+        ts.createConnector("requests", ConnectorType.LOAD_BALANCING_QUEUE);
+        ts.task(ctx -> {
+            ConnectorWriter writer = ctx.getConnectorManager().getConnectorWriter("broadcast");
+            for (int i = 1; i <= 10; i++)
+                writer.putValue(i);
+            ConnectorWriter requests = ctx.getConnectorManager().getConnectorWriter("requests");
+            sum.addAndGet((Integer) requests.putValueAndGet(1000).get());
+        }).withConnectors(wci -> {
+            wci.getConnectorManager().attachTaskToConnector(wci.getTaskName(), "broadcast", ConnectorCapability.WRITE);
+            wci.getConnectorManager().attachTaskToConnector(wci.getTaskName(), "requests", ConnectorCapability.WRITE);
+        });
+        ts.task(ctx -> {
+            ConnectorReader reader = ctx.getConnectorManager().getConnectorReader("broadcast");
+            ConnectorMessage msg;
+            while ((msg = reader.getValue()) != null)
+                sum.addAndGet((Integer) msg.getPayload());
+        }).withConnectors(wci -> wci.getConnectorManager().attachTaskToConnector(wci.getTaskName(), "broadcast", ConnectorCapability.READ))
+                .withNumInstances(3, 3);
+        ts.task(ctx -> {
+            ConnectorReader reader = ctx.getConnectorManager().getReadyConnectorReader(Collections.singletonList("requests"), -1);
+            ConnectorMessage msg;
+            while ((msg = reader.getValue()) != null)
+                msg.replyValue(((Integer) msg.getPayload()) + 1);
+        }).withConnectors(wci -> wci.getConnectorManager().attachTaskToConnector(wci.getTaskName(), "requests", ConnectorCapability.READ));
+        runtime.run(ts);
+        Assert.assertEquals(3 * 55 + 1001, sum.get());
+        runtime.shutdown();
+    }
+
+    @Test
+    public void barrierAndAtomicTest() {
+        counter.set(0);
+        FJRuntime runtime = new FJRuntime(2);
+        TaskSet ts = runtime.createTaskSet();
+        ts.createBarrier("phase");
+        ts.task(ctx -> {
+            ctx.atomic("counter", (dict, c) -> counter.incrementAndGet()).get();
+            ctx.barrier("phase");
+            if (counter.get() != 6)
+                throw new IllegalStateException("The barrier has been passed too early");
+            ctx.barrier("phase");
+        }).withBarriers(wbi -> Collections.singletonList("phase").iterator()).withNumInstances(6, 6);
+        runtime.run(ts);
+        Assert.assertEquals(6, counter.get());
+        runtime.shutdown();
+    }
+
+    @Test
+    public void nestedTaskSetTest() {
+        sum.set(0);
+        FJRuntime runtime = new FJRuntime(2);
+        TaskSet inner = runtime.createTaskSet();
+        inner.createVirtualConnector("out");
+        inner.task(ctx -> ctx.getConnectorManager().getConnectorWriter("out").putValue(ctx.getTasksSetDataDictionary().<Integer>get("value")))
+                .withConnectors(wci -> wci.getConnectorManager().attachTaskToConnector(wci.getTaskName(), "out", ConnectorCapability.WRITE));
+
+        TaskSet ts = runtime.createTaskSet();
+        ts.createConnector("results", ConnectorType.LOAD_BALANCING_QUEUE);
+        ts.task(inner).withNumInstances(4, 4)
+                .withDataDictionary(wdi -> new RamDictionary().put("value", wdi.getInstanceNumber() + 1))
+                .withAttachedVirtualConnectors(info -> Collections.singletonList(new Pair<>("out", "results")).iterator());
+        ts.task(ctx -> {
+            ConnectorReader reader = ctx.getConnectorManager().getConnectorReader("results");
+            ConnectorMessage msg;
+            while ((msg = reader.getValue()) != null)
+                sum.addAndGet((Integer) msg.getPayload());
+        }).withConnectors(wci -> wci.getConnectorManager().attachTaskToConnector(wci.getTaskName(), "results", ConnectorCapability.READ));
+        runtime.run(ts);
+        Assert.assertEquals(10, sum.get());
+        runtime.shutdown();
+    }
+
+    @Test
+    public void failureTest() {
+        counter.set(0);
+        FJRuntime runtime = new FJRuntime(2);
+        TaskSet ts = runtime.createTaskSet();
+        ts.task(ctx -> {
+            if (counter.incrementAndGet() < 3)
+                throw new IllegalStateException("Failing");
+        }).onFailure(info -> HardwareFailureAction.RESTART_TASK);
+        runtime.run(ts);
+        Assert.assertEquals(3, counter.get());
+
+        TaskSet failing = runtime.createTaskSet();
+        failing.createConnector("never", ConnectorType.LOAD_BALANCING_QUEUE);
+        failing.task(ctx -> {
+            throw new IllegalStateException("Failing");
+        }).withName(idx -> "failing");
+        failing.task(ctx -> {
+            ctx.getConnectorManager().getReadyConnectorReader(Arrays.asList("never"), -1).getValue();
+        }).withConnectors(wci -> wci.getConnectorManager().attachTaskToConnector(wci.getTaskName(), "never", ConnectorCapability.READ_WRITE))
+                .withNumInstances(2, 2);
+        try {
+            runtime.run(failing);
+            Assert.fail();
+        } catch (FJTaskException e) {
+            Assert.assertEquals("failing", e.getTaskName());
+        }
+        runtime.shutdown();
+    }
+}
@@ -0,0 +1,852 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime.data;
+
+import it.cnr.isti.hlt.processfast.connector.ConnectorMessage;
+import it.cnr.isti.hlt.processfast.connector.ConnectorReader;
+import it.cnr.isti.hlt.processfast.core.SLF4JLogManager;
+import it.cnr.isti.hlt.processfast.data.CacheType;
+import it.cnr.isti.hlt.processfast.data.DataIterable;
+import it.cnr.isti.hlt.processfast.data.DoublePartitionableDataset;
+import it.cnr.isti.hlt.processfast.data.DoubleStatistics;
+import it.cnr.isti.hlt.processfast.data.LongPartitionableDataset;
+import it.cnr.isti.hlt.processfast.data.PairPartitionableDataset;
+import it.cnr.isti.hlt.processfast.data.PartitionableDataset;
+import it.cnr.isti.hlt.processfast.data.RamDoubleMatrixIteratorProvider;
+import it.cnr.isti.hlt.processfast.data.RamLongArrayIteratorProvider;
+import it.cnr.isti.hlt.processfast.data.RamStorageManager;
+import it.cnr.isti.hlt.processfast.data.SplittableDataSourceIteratorProvider;
+import it.cnr.isti.hlt.processfast.utils.Pair;
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ */
+public class FJPartitionableDatasetTest {
+
+    private static final ForkJoinPool pool = new ForkJoinPool(4);
+
+    private static PDEnvironment createEnvironment() {
+        return new PDEnvironment(pool, new RamStorageManager(), new SLF4JLogManager(), 1);
+    }
+
+    private static ConnectorReader createReader(int numItems) {
+        return createReader(numItems, 0);
+    }
+
+    private static ConnectorReader createReader(int numItems, long delay) {
+        Iterator<Integer> items = createNumbers(numItems).collect().iterator();
+        return new ConnectorReader() {
+            @Override
+            public String getConnectorName() {
+                return "numbers";
+            }
+
+            @Override
+            public synchronized ConnectorMessage getValue() {
+                if (!items.hasNext())
+                    return null;
+                if (delay > 0) {
+                    try {
+                        Thread.sleep(delay);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                Integer payload = items.next();
+                return new ConnectorMessage() {
+                    @Override
+                    public Serializable getPayload() {
+                        return payload;
+                    }
+
+                    @Override
+                    public boolean isWaitingReply() {
+                        return false;
+                    }
+
+                    @Override
+                    public void replyValue(Serializable v) {
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * A list data source which can not be split in parts smaller than a given number of items.
+     */
+    private static class CoarseListDataSource<T extends Serializable> extends PDListDataSourceIteratorProvider<T> {
+        private final int minPart;
+
+        CoarseListDataSource(List<T> items, int minPart) {
+            super(items);
+            this.minPart = minPart;
+        }
+
+        @Override
+        public Pair<SplittableDataSourceIteratorProvider<T>, SplittableDataSourceIteratorProvider<T>> trySplit() {
+            List<T> items = getItems();
+            if (items.size() < 2 * minPart)
+                return null;
+            int mid = items.size() / 2;
+            return new Pair<>(new CoarseListDataSource<>(items.subList(0, mid), minPart),
+                    new CoarseListDataSource<>(items.subList(mid, items.size()), minPart));
+        }
+    }
+
+    private static PartitionableDataset<Integer> createNumbers(int numItems) {
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < numItems; i++)
+            items.add(i);
+        return new FJPartitionableDataset<>(createEnvironment(), new PDListDataSourceIteratorProvider<>(items)).withPartitionSize(100);
+    }
+
+    @Test
+    public void narrowTransformationsTest() {
+        PartitionableDataset<Integer> ds = createNumbers(1000)
+                .map((ctx, v) -> v * 2)
+                .filter((ctx, v) -> v % 3 == 0)
+                .mapFlat((ctx, v) -> Arrays.asList(v, v).iterator());
+        List<Integer> items = ds.collect();
+        Assert.assertEquals(668, items.size());
+        Assert.assertEquals(0, (int) items.get(0));
+        Assert.assertEquals(6, (int) items.get(2));
+        Assert.assertEquals(668, ds.count());
+        Assert.assertTrue(ds.contains(12));
+        Assert.assertTrue(!ds.contains(4));
+        Assert.assertEquals(Arrays.asList(6, 6, 12), ds.take(2, 3));
+    }
+
+    @Test
+    public void fusedStageTest() {
+        PartitionableDataset<Integer> ds = createNumbers(1000)
+                .filter((ctx, v) -> v % 2 == 0)
+                .mapPair((ctx, v) -> new Pair<>(v, v + 1))
+                .mapValues((ctx, v) -> v * 10)
+                .values()
+                .mapFlat((ctx, v) -> Arrays.asList(v, -v).iterator())
+                .map((ctx, v) -> v + 1);
+        List<Integer> items = ds.collect();
+        Assert.assertEquals(1000, items.size());
+        Assert.assertEquals(Arrays.asList(11, -9, 31, -29), items.subList(0, 4));
+        Assert.assertEquals(1000, ds.count());
+        Assert.assertEquals(1000, (int) ds.reduce((ctx, v1, v2) -> v1 + v2));
+        Assert.assertTrue(ds.contains(-29));
+    }
+
+    @Test
+    public void actionsTest() {
+        PartitionableDataset<Integer> ds = createNumbers(1001);
+        Assert.assertEquals(500500, (int) ds.reduce((ctx, v1, v2) -> v1 + v2));
+        Assert.assertNull(ds.filter((ctx, v) -> false).reduce((ctx, v1, v2) -> v1 + v2));
+        AtomicLong sum = new AtomicLong();
+        ds.processEach((ctx, v) -> sum.addAndGet(v));
+        Assert.assertEquals(500500, sum.get());
+        ds.withInputData("offset", 1).processEach((ctx, v) -> sum.addAndGet(ctx.<Integer>getInputData("offset")));
+        Assert.assertEquals(501501, sum.get());
+    }
+
+    @Test
+    public void mapPartitionsTest() {
+        AtomicLong setups = new AtomicLong();
+        PartitionableDataset<Integer> ds = createNumbers(1000)
+                .filter((ctx, v) -> v % 2 == 0)
+                .mapPartitions((ctx, items) -> {
+                    setups.incrementAndGet();
+                    List<Integer> ret = new ArrayList<>();
+                    while (items.hasNext()) {
+                        int v = items.next();
+                        ret.add(v);
+                        ret.add(-v);
+                    }
+                    return ret.iterator();
+                })
+                .map((ctx, v) -> v + 1);
+        List<Integer> items = ds.collect();
+        Assert.assertEquals(1000, items.size());
+        Assert.assertEquals(Arrays.asList(1, 1, 3, -1), items.subList(0, 4));
+        Assert.assertTrue(setups.get() > 0 && setups.get() < 100);
+        Assert.assertEquals(1000, ds.count());
+        Assert.assertEquals(Arrays.asList(3, -1), ds.take(2, 2));
+
+        AtomicLong sum = new AtomicLong();
+        setups.set(0);
+        createNumbers(1001).processEachPartition((ctx, values) -> {
+            setups.incrementAndGet();
+            values.forEachRemaining(sum::addAndGet);
+        });
+        Assert.assertEquals(500500, sum.get());
+        Assert.assertTrue(setups.get() < 100);
+    }
+
+    @Test
+    public void aggregateTest() {
+        PartitionableDataset<Integer> ds = createNumbers(10001);
+        long[] sumAndCount = ds.aggregate(new long[2], (ctx, acc, v) -> {
+            acc[0] += v;
+            acc[1]++;
+            return acc;
+        }, (ctx, acc1, acc2) -> {
+            acc1[0] += acc2[0];
+            acc1[1] += acc2[1];
+            return acc1;
+        });
+        Assert.assertEquals(50005000, sumAndCount[0]);
+        Assert.assertEquals(10001, sumAndCount[1]);
+        ArrayList<Integer> items = ds.aggregate(new ArrayList<Integer>(), (ctx, acc, v) -> {
+            acc.add(v);
+            return acc;
+        }, (ctx, acc1, acc2) -> {
+            acc1.addAll(acc2);
+            return acc1;
+        });
+        Assert.assertEquals(ds.collect(), items);
+        Assert.assertEquals(50005000, (int) ds.fold(0, (ctx, v1, v2) -> v1 + v2));
+        int folded = ds.fold(7, (ctx, v1, v2) -> v1 + v2);
+        Assert.assertTrue(folded > 50005000 && (folded - 50005000) % 7 == 0);
+        Assert.assertEquals(0, ds.filter((ctx, v) -> false).fold(7, (ctx, v1, v2) -> v1 + v2) % 7);
+        Assert.assertEquals(50005000, (int) ds.reduce((ctx, v1, v2) -> v1 + v2));
+    }
+
+    @Test
+    public void shortCircuitActionsTest() {
+        AtomicLong processed = new AtomicLong();
+        PartitionableDataset<Integer> ds = createNumbers(100000).map((ctx, v) -> {
+            processed.incrementAndGet();
+            return v;
+        });
+        Assert.assertEquals(100000, ds.count());
+        Assert.assertEquals(0, processed.get());
+        Assert.assertEquals(Arrays.asList(250, 251, 252), ds.take(250, 3));
+        Assert.assertTrue(processed.get() < 100000);
+        processed.set(0);
+        Assert.assertTrue(ds.contains(150));
+        Assert.assertTrue(processed.get() < 100000);
+        Assert.assertEquals(Arrays.asList(99998, 99999), ds.take(99998, 10));
+        Assert.assertTrue(ds.filter((ctx, v) -> v >= 1000).take(0, 1000).equals(ds.take(1000, 1000)));
+        Assert.assertTrue(!ds.contains(-1));
+    }
+
+    @Test
+    public void wideTransformationsTest() {
+        PartitionableDataset<Integer> ds = createNumbers(1000);
+        List<Integer> sorted = ds.map((ctx, v) -> v % 10).distinct().sort(false).collect();
+        Assert.assertEquals(Arrays.asList(9, 8, 7, 6, 5, 4, 3, 2, 1, 0), sorted);
+
+        PairPartitionableDataset<Integer, DataIterable<Integer>> groups = ds.groupBy((ctx, v) -> v % 4);
+        HashMap<Integer, Integer> sizes = new HashMap<>();
+        for (Pair<Integer, DataIterable<Integer>> group : groups.collect()) {
+            int size = 0;
+            Iterator<Integer> iter = group.getV2().iterator();
+            while (iter.hasNext()) {
+                iter.next();
+                size++;
+            }
+            sizes.put(group.getV1(), size);
+        }
+        Assert.assertEquals(4, sizes.size());
+        Assert.assertEquals(250, (int) sizes.get(3));
+
+        List<Pair<Integer, Integer>> counts = ds.mapPair((ctx, v) -> new Pair<>(v % 3, 1))
+                .reduceByKey((ctx, v1, v2) -> v1 + v2).sortByKey(true).collect();
+        Assert.assertEquals(Arrays.asList(new Pair<>(0, 334), new Pair<>(1, 333), new Pair<>(2, 333)), counts);
+
+        Assert.assertEquals(Arrays.asList(5, 6), createNumbers(7).intersection(createNumbers(20).filter((ctx, v) -> v > 4)).collect());
+    }
+
+    @Test
+    public void reduceByKeyCombinerTest() {
+        PairPartitionableDataset<Integer, Integer> pairs = createNumbers(1000).mapPair((ctx, v) -> new Pair<>(v % 7, v));
+        List<Pair<Integer, Integer>> expected = pairs.reduceByKey((ctx, v1, v2) -> v1 + v2).sortByKey(true).collect();
+        Assert.assertEquals(7, expected.size());
+        Assert.assertEquals(new Pair<>(0, 71071), expected.get(0));
+        Assert.assertEquals(expected, pairs.reduceByKey((ctx, v1, v2) -> v1 + v2, 2).sortByKey(true).collect());
+        Assert.assertEquals(expected, pairs.reduceByKey((ctx, v1, v2) -> v1 + v2, 1).sortByKey(true).collect());
+    }
+
+    @Test
+    public void shuffleSpillTest() {
+        PDMemoryBudget budget = new PDMemoryBudget(10);
+        PDEnvironment env = new PDEnvironment(new PDScheduler(pool), budget, new RamStorageManager(), new SLF4JLogManager(), 1);
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < 2000; i++)
+            items.add(i);
+        PartitionableDataset<Integer> ds = new FJPartitionableDataset<>(env, new PDListDataSourceIteratorProvider<>(items)).withPartitionSize(100);
+        PairPartitionableDataset<Integer, Integer> pairs = ds.mapPair((ctx, v) -> new Pair<>(v % 50, v));
+
+        List<Pair<Integer, Integer>> sums = pairs.reduceByKey((ctx, v1, v2) -> v1 + v2, 5).sortByKey(true).collect();
+        Assert.assertEquals(50, sums.size());
+        Assert.assertEquals(new Pair<>(1, 39040), sums.get(1));
+
+        long total = 0;
+        for (Pair<Integer, DataIterable<Integer>> group : pairs.groupByKey().collect()) {
+            Iterator<Integer> iter = group.getV2().iterator();
+            while (iter.hasNext())
+                total += iter.next() % 50 == group.getV1() ? 1 : 0;
+        }
+        Assert.assertEquals(2000, total);
+
+        Assert.assertEquals(50, ds.map((ctx, v) -> v % 50).distinct().count());
+        Assert.assertEquals(Arrays.asList(1990, 1991), ds.intersection(createNumbers(5000).filter((ctx, v) -> v >= 1990)).sort(true).take(0, 2));
+        Assert.assertEquals(2000, pairs.join(pairs.mapValues((ctx, v) -> v % 50).distinct()).count());
+        Assert.assertEquals(0, budget.getUsed());
+    }
+
+    @Test
+    public void shuffleMergeFanInTest() {
+        PDMemoryBudget budget = new PDMemoryBudget(10);
+        List<PDShuffle.Output<Integer, Integer>> outputs = new ArrayList<>();
+        for (int w = 0; w < 3; w++) {
+            PDShuffle.Writer<Integer, Integer> writer = new PDShuffle.Writer<>(budget, 0, false, Collections.<Integer>emptySet());
+            for (int i = 0; i < 1000; i++)
+                writer.write(i % 10, w * 1000 + i);
+            outputs.add(writer.finish());
+            Assert.assertEquals(0, budget.getUsed());
+        }
+        Assert.assertTrue(outputs.stream().mapToInt(PDShuffle.Output::getNumSpilledRuns).sum() > 4 * PDShuffle.MAX_MERGE_FAN_IN);
+
+        PDShuffle.mergeRuns(outputs);
+        Assert.assertTrue(outputs.stream().mapToInt(PDShuffle.Output::getNumSpilledRuns).sum() <= PDShuffle.MAX_MERGE_FAN_IN);
+        PDShuffle.ShuffledData<Integer, Integer, ArrayList<Integer>> data = new PDShuffle.ShuffledData<>(outputs,
+                (group, out) -> out.add(new ArrayList<>(group.getValues(0))));
+        int numGroups = 0;
+        for (Iterator<ArrayList<Integer>> iter = data.iterator(); iter.hasNext(); numGroups++) {
+            List<Integer> values = iter.next();
+            Assert.assertEquals(300, values.size());
+            for (int i = 1; i < values.size(); i++)
+                Assert.assertTrue(values.get(i - 1) < values.get(i));
+        }
+        Assert.assertEquals(10, numGroups);
+        for (PDShuffle.Output<Integer, Integer> output : outputs)
+            output.discard();
+    }
+
+    @Test
+    public void externalSortFanInTest() {
+        PDMemoryBudget budget = new PDMemoryBudget(10);
+        Comparator<Pair<Integer, Integer>> byKey = Comparator.comparing(Pair::getV1);
+        List<PDExternalSort.Output<Pair<Integer, Integer>>> outputs = new ArrayList<>();
+        for (int w = 0; w < 3; w++) {
+            PDExternalSort.Writer<Pair<Integer, Integer>> writer = new PDExternalSort.Writer<>(budget, byKey);
+            for (int i = 0; i < 1000; i++)
+                writer.add(new Pair<>((i * 7919) % 10, w * 1000 + i));
+            outputs.add(writer.finish());
+            Assert.assertEquals(0, budget.getUsed());
+        }
+        Assert.assertTrue(outputs.stream().mapToInt(PDExternalSort.Output::getNumSpilledRuns).sum() > 4 * PDExternalSort.MAX_MERGE_FAN_IN);
+
+        Iterator<Pair<Integer, Integer>> iter = PDExternalSort.open(outputs, byKey);
+        Assert.assertTrue(outputs.stream().mapToInt(PDExternalSort.Output::getNumSpilledRuns).sum() <= PDExternalSort.MAX_MERGE_FAN_IN);
+        Pair<Integer, Integer> prev = iter.next();
+        int count = 1;
+        while (iter.hasNext()) {
+            Pair<Integer, Integer> pair = iter.next();
+            Assert.assertTrue(prev.getV1() < pair.getV1() || (prev.getV1().equals(pair.getV1()) && prev.getV2() < pair.getV2()));
+            prev = pair;
+            count++;
+        }
+        Assert.assertEquals(3000, count);
+        PDExternalSort.discard(outputs);
+    }
+
+    @Test
+    public void externalSortTest() {
+        PDEnvironment env = new PDEnvironment(new PDScheduler(pool), new PDMemoryBudget(10), new RamStorageManager(), new SLF4JLogManager(), 1);
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < 3000; i++)
+            items.add((i * 7919) % 3000);
+        PartitionableDataset<Integer> ds = new FJPartitionableDataset<>(env, new PDListDataSourceIteratorProvider<>(items)).withPartitionSize(100);
+        List<Integer> sorted = ds.sort(true).collect();
+        Assert.assertEquals(3000, sorted.size());
+        for (int i = 0; i < sorted.size(); i++)
+            Assert.assertEquals(i, (int) sorted.get(i));
+        Assert.assertEquals(Arrays.asList(2999, 2998), ds.sort(false).take(0, 2));
+
+        List<Pair<Integer, Integer>> byKey = ds.mapPair((ctx, v) -> new Pair<>(v % 3, v)).sortByKey(true).collect();
+        int prev = -1;
+        for (Pair<Integer, Integer> pair : byKey.subList(0, 1000)) {
+            Assert.assertEquals(0, (int) pair.getV1());
+            int pos = items.indexOf(pair.getV2());
+            Assert.assertTrue(pos > prev);
+            prev = pos;
+        }
+
+        Iterator<Integer> merged = new PDExternalSort.LoserTree<>(Arrays.asList(Arrays.asList(1, 4, 9).iterator(),
+                new ArrayList<Integer>().iterator(), Arrays.asList(2, 3, 10).iterator()), Integer::compare);
+        List<Integer> mergedItems = new ArrayList<>();
+        while (merged.hasNext())
+            mergedItems.add(merged.next());
+        Assert.assertEquals(Arrays.asList(1, 2, 3, 4, 9, 10), mergedItems);
+    }
+
+    @Test
+    public void tiledCartesianTest() {
+        PartitionableDataset<Integer> left = createNumbers(1000);
+        PartitionableDataset<Integer> right = createNumbers(600);
+        Assert.assertEquals(600000, left.cartesian(right).count());
+
+        long expected = 0;
+        for (int l = 0; l < 1000; l++)
+            for (int r = 0; r < 600; r++)
+                if ((l + r) % 7 == 0)
+                    expected++;
+        PairPartitionableDataset<Integer, Integer> pairs = left.cartesian(right, (ctx, l, r) -> (l + r) % 7 == 0);
+        Assert.assertEquals(expected, pairs.count());
+        Assert.assertEquals(expected, new HashSet<>(pairs.collect()).size());
+        Assert.assertEquals(0, left.cartesian(createNumbers(0)).count());
+    }
+
+    @Test
+    public void binaryOperationsTest() {
+        PartitionableDataset<Integer> ds = createNumbers(5);
+        Assert.assertEquals(8, ds.union(createNumbers(3)).count());
+        Assert.assertEquals(15, ds.cartesian(createNumbers(3)).count());
+        Assert.assertEquals(new Pair<>(2, 2), ds.pair(createNumbers(3)).collect().get(2));
+        Assert.assertEquals(3, ds.pair(createNumbers(3)).count());
+
+        PairPartitionableDataset<Integer, String> names = new FJPairPartitionableDataset<>(createEnvironment(),
+                new PDListDataSourceIteratorProvider<>(Arrays.asList(new Pair<>(1, "one"), new Pair<>(3, "three"), new Pair<>(7, "seven"))));
+        List<Pair<Integer, Pair<Integer, String>>> joined = ds.mapPair((ctx, v) -> new Pair<>(v, v * 10)).join(names).collect();
+        Assert.assertEquals(Arrays.asList(new Pair<>(1, new Pair<>(10, "one")), new Pair<>(3, new Pair<>(30, "three"))), joined);
+    }
+
+    private static <T> List<String> sortedStrings(List<T> items) {
+        List<String> ret = new ArrayList<>();
+        for (T item : items)
+            ret.add(item.toString());
+        Collections.sort(ret);
+        return ret;
+    }
+
+    private static PDTransformation lastTransformation(PartitionableDataset<?> ds) {
+        List<PDTransformation> transformations = ((FJPartitionableDataset<?>) ds).transformations;
+        return transformations.get(transformations.size() - 1);
+    }
+
+    @Test
+    public void joinStrategiesTest() {
+        PairPartitionableDataset<Integer, Integer> facts = createNumbers(2000).filter((ctx, v) -> v % 2 == 0).mapPair((ctx, v) -> new Pair<>(v % 100, v));
+        List<Pair<Integer, String>> dimItems = new ArrayList<>();
+        for (int i = 0; i < 100; i += 3)
+            dimItems.add(new Pair<>(i, "d" + i));
+        PairPartitionableDataset<Integer, String> dim = new FJPairPartitionableDataset<>(createEnvironment(), new PDListDataSourceIteratorProvider<>(dimItems));
+        PairPartitionableDataset<Integer, String> unknownDim = dim.mapValues((ctx, v) -> v).filter((ctx, v) -> true).mapPair((ctx, v) -> v);
+
+        PairPartitionableDataset<Integer, Pair<Integer, String>> partitioned = facts.join(unknownDim);
+        Assert.assertTrue(lastTransformation(partitioned) instanceof PDWideTransformations.Join);
+        List<String> expected = sortedStrings(partitioned.collect());
+        Assert.assertEquals(17 * 20, expected.size());
+
+        PairPartitionableDataset<Integer, Pair<Integer, String>> broadcast = facts.join(dim);
+        Assert.assertTrue(lastTransformation(broadcast) instanceof PDNarrowTransformations.BroadcastJoin);
+        Assert.assertEquals(expected, sortedStrings(broadcast.collect()));
+
+        PairPartitionableDataset<Integer, Pair<String, Integer>> broadcastLeft = dim.join(facts);
+        Assert.assertTrue(lastTransformation(broadcastLeft) instanceof PDNarrowTransformations.BroadcastJoin);
+        List<String> swapped = new ArrayList<>();
+        for (Pair<Integer, Pair<String, Integer>> p : broadcastLeft.collect())
+            swapped.add(new Pair<>(p.getV1(), new Pair<>(p.getV2().getV2(), p.getV2().getV1())).toString());
+        Collections.sort(swapped);
+        Assert.assertEquals(expected, swapped);
+
+        PairPartitionableDataset<Integer, Pair<Integer, String>> merged = facts.sortByKey(false).join(unknownDim.sortByKey(false));
+        Assert.assertTrue(lastTransformation(merged) instanceof PDWideTransformations.SortMergeJoin);
+        List<Pair<Integer, Pair<Integer, String>>> mergedItems = merged.collect();
+        Assert.assertEquals(expected, sortedStrings(mergedItems));
+        Assert.assertEquals(96, (int) mergedItems.get(0).getV1());
+        Assert.assertEquals(Boolean.FALSE, ((FJPairPartitionableDataset<?, ?>) merged).getKeyOrder());
+    }
+
+    @Test
+    public void hotKeyJoinTest() {
+        PDShuffle.Writer<Integer, Integer> writer = new PDShuffle.Writer<>(new PDMemoryBudget(1000000), 0, true, Collections.<Integer>emptySet());
+        for (int i = 0; i < 20000; i++)
+            writer.write(i % 2 == 0 ? 7 : i, i);
+        Assert.assertEquals(Collections.singleton(7), writer.finish().getSaltedKeys());
+
+        PairPartitionableDataset<Integer, Integer> facts = createNumbers(20000).filter((ctx, v) -> true)
+                .mapPair((ctx, v) -> new Pair<>(v % 2 == 0 ? 7 : v % 500, v));
+        PairPartitionableDataset<Integer, String> dim = createNumbers(500).filter((ctx, v) -> v % 7 == 0)
+                .mapPair((ctx, v) -> new Pair<>(v, "d" + v));
+        PairPartitionableDataset<Integer, Pair<Integer, String>> joined = facts.join(dim.union(dim.filter((ctx, v) -> v.getV1() == 7)));
+        Assert.assertTrue(lastTransformation(joined) instanceof PDWideTransformations.Join);
+        long hot = 0;
+        for (Pair<Integer, Pair<Integer, String>> p : joined.collect()) {
+            Assert.assertEquals("d" + p.getV1(), p.getV2().getV2());
+            if (p.getV1() == 7)
+                hot++;
+        }
+        Assert.assertEquals(2 * (10000 + 40), hot);
+        Assert.assertEquals(joined.count(), joined.distinct().count() + hot / 2);
+    }
+
+    @Test
+    public void hotKeyGroupingTest() {
+        PartitionableDataset<Integer> numbers = createNumbers(20000).withPartitionSize(10000);
+        PairPartitionableDataset<Integer, Integer> pairs = numbers.mapPair((ctx, v) -> new Pair<>(v % 2 == 0 ? 7 : v % 500, 1));
+        Assert.assertEquals(10000 + 40, (int) pairs.reduceByKey((ctx, v1, v2) -> v1 + v2, 1).collect().stream()
+                .filter(p -> p.getV1() == 7).mapToInt(Pair::getV2).sum());
+        List<Pair<Integer, DataIterable<Integer>>> groups = pairs.groupByKey().collect();
+        Assert.assertEquals(250, groups.size());
+        for (Pair<Integer, DataIterable<Integer>> group : groups) {
+            int count = 0;
+            for (Iterator<Integer> iter = group.getV2().iterator(); iter.hasNext(); iter.next())
+                count++;
+            Assert.assertEquals(group.getV1() == 7 ? 10000 + 40 : 40, count);
+        }
+        Assert.assertEquals(250, numbers.groupBy((ctx, v) -> v % 2 == 0 ? 7 : v % 500).count());
+    }
+
+    @Test
+    public void memoryCacheEvictionTest() {
+        CacheType[] cacheTypes = {CacheType.RAM, CacheType.OFF_HEAP, CacheType.RAM_AND_DISK};
+        PDCacheManager.EvictionPolicy[] policies = {PDCacheManager.EvictionPolicy.LRU, PDCacheManager.EvictionPolicy.LFU,
+                PDCacheManager.EvictionPolicy.LRU};
+        for (int t = 0; t < cacheTypes.length; t++) {
+            PDCacheManager manager = new PDCacheManager(new PDMemoryBudget(20000), new PDMemoryBudget(20000), policies[t]);
+            manager.setCompressionEnabled(policies[t] == PDCacheManager.EvictionPolicy.LFU);
+            PDEnvironment env = new PDEnvironment(new PDScheduler(pool), new PDMemoryBudget(1000000), manager,
+                    new RamStorageManager(), new SLF4JLogManager(), 1);
+            List<Integer> items = new ArrayList<>();
+            for (int i = 0; i < 10000; i++)
+                items.add(i);
+            AtomicLong computed = new AtomicLong();
+            PartitionableDataset<Integer> ds = new FJPartitionableDataset<>(env, new PDListDataSourceIteratorProvider<>(items))
+                    .withPartitionSize(100)
+                    .map((ctx, v) -> {
+                        computed.incrementAndGet();
+                        return v * 2;
+                    })
+                    .cache(cacheTypes[t]);
+            Assert.assertEquals(10000, computed.get());
+            Assert.assertTrue(manager.getBudget().getUsed() <= 20000);
+            Assert.assertTrue(manager.getOffHeapBudget().getUsed() <= 20000);
+            Assert.assertTrue(cacheTypes[t] != CacheType.OFF_HEAP || manager.getBudget().getUsed() == 0);
+            Assert.assertEquals(10000, ds.count());
+            for (int pass = 0; pass < 2; pass++)
+                Assert.assertEquals(99990000L, (long) ds.map((ctx, v) -> (long) v).reduce((ctx, v1, v2) -> v1 + v2));
+            if (cacheTypes[t] == CacheType.RAM_AND_DISK)
+                Assert.assertEquals(10000, computed.get());
+            else
+                Assert.assertTrue(computed.get() > 10000);
+            Assert.assertEquals(Arrays.asList(0, 2, 4), ds.take(0, 3));
+            ds.close();
+            Assert.assertEquals(0, manager.getBudget().getUsed());
+            Assert.assertEquals(0, manager.getOffHeapBudget().getUsed());
+        }
+    }
+
+    @Test
+    public void cacheUnsplittablePartsTest() {
+        PDCacheManager manager = new PDCacheManager(new PDMemoryBudget(20000), new PDMemoryBudget(20000), PDCacheManager.EvictionPolicy.LRU);
+        PDEnvironment env = new PDEnvironment(new PDScheduler(pool), new PDMemoryBudget(1000000), manager,
+                new RamStorageManager(), new SLF4JLogManager(), 1);
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < 50000; i++)
+            items.add(i);
+        PartitionableDataset<Integer> ds = new FJPartitionableDataset<>(env, new CoarseListDataSource<>(items, 25000))
+                .withPartitionSize(100)
+                .cache(CacheType.RAM);
+        Assert.assertTrue(manager.getBudget().getUsed() > 0);
+        Assert.assertEquals(50000, ds.count());
+        Assert.assertEquals(1249975000L, (long) ds.map((ctx, v) -> (long) v).reduce((ctx, v1, v2) -> v1 + v2));
+        Assert.assertEquals(Arrays.asList(30000, 30001), ds.take(30000, 2));
+        ds.close();
+        Assert.assertEquals(0, manager.getBudget().getUsed());
+    }
+
+    @Test
+    public void columnarCacheTest() {
+        List<Pair<Long, Double>> pairs = new ArrayList<>();
+        for (long i = 0; i < 1000; i++)
+            pairs.add(new Pair<>(i % 10, i * 0.5));
+        ByteBuffer block = ByteBuffer.wrap(PDBlockCodec.encode(pairs.iterator(), true));
+        Assert.assertEquals(PDBlockCodec.FORMAT_COLUMNS, PDBlockCodec.format(block));
+        Assert.assertEquals(5 + 2 + 16 * 1000, block.remaining());
+        List<Pair<Long, Double>> decoded = new ArrayList<>();
+        PDBlockCodec.<Pair<Long, Double>>decode(block).forEachRemaining(decoded::add);
+        Assert.assertEquals(pairs, decoded);
+
+        List<Object> mixed = new ArrayList<>(pairs.subList(0, 10));
+        mixed.add(new Pair<>(1, 2));
+        mixed.add("text");
+        block = ByteBuffer.wrap(PDBlockCodec.encode(mixed.iterator(), false));
+        Assert.assertEquals(PDBlockCodec.FORMAT_OBJECTS, PDBlockCodec.format(block));
+        List<Object> decodedMixed = new ArrayList<>();
+        PDBlockCodec.decode(block).forEachRemaining(decodedMixed::add);
+        Assert.assertEquals(mixed, decodedMixed);
+
+        PairPartitionableDataset<Long, Double> ds = new FJPairPartitionableDataset<>(createEnvironment(),
+                new PDListDataSourceIteratorProvider<>(pairs)).cache(CacheType.RAM);
+        HashMap<Long, Double> sums = new HashMap<>();
+        for (Pair<Long, Double> p : ds.reduceByKey((ctx, v1, v2) -> v1 + v2).collect())
+            sums.put(p.getV1(), p.getV2());
+        Assert.assertEquals(10, sums.size());
+        Assert.assertEquals(0.5 * (3 + 993) * 100 / 2, sums.get(3L), 1e-9);
+        ds.close();
+    }
+
+    private static int countSegmentFiles() {
+        File[] files = new File(System.getProperty("java.io.tmpdir")).listFiles((dir, name) -> name.startsWith("processfast-segment-"));
+        return files == null ? 0 : files.length;
+    }
+
+    @Test
+    public void diskCacheTest() {
+        int segments = countSegmentFiles();
+        PartitionableDataset<Pair<Integer, String>> ds = createNumbers(10000)
+                .mapPair((ctx, v) -> new Pair<>(v, "v" + v))
+                .cache(CacheType.ON_DISK);
+        Assert.assertTrue(countSegmentFiles() > segments);
+        for (int pass = 0; pass < 3; pass++)
+            Assert.assertEquals(10000, ds.count());
+        Assert.assertEquals(Arrays.asList(new Pair<>(5000, "v5000")), ds.take(5000, 1));
+        Assert.assertTrue(ds.contains(new Pair<>(9999, "v9999")));
+        Assert.assertEquals(49995000, (int) ds.map((ctx, p) -> p.getV1()).reduce((ctx, v1, v2) -> v1 + v2));
+        ds.close();
+        Assert.assertEquals(segments, countSegmentFiles());
+    }
+
+    @Test
+    public void cacheTest() {
+        for (CacheType cacheType : CacheType.values()) {
+            PartitionableDataset<Integer> ds = createNumbers(1000).map((ctx, v) -> v + 1).cache(cacheType);
+            Assert.assertEquals(1000, ds.count());
+            Assert.assertEquals(500500, (int) ds.reduce((ctx, v1, v2) -> v1 + v2));
+            Assert.assertEquals(1, (int) ds.collect().get(0));
+            ds.close();
+            PartitionableDataset<Integer> distinct = createNumbers(1000).map((ctx, v) -> v / 2).distinct().map((ctx, v) -> v + 1).cache(cacheType);
+            Assert.assertEquals(500, distinct.count());
+            Assert.assertEquals(125250, (int) distinct.reduce((ctx, v1, v2) -> v1 + v2));
+            distinct.close();
+        }
+    }
+
+    @Test
+    public void primitiveDatasetsTest() {
+        long[] values = new long[10001];
+        for (int i = 0; i < values.length; i++)
+            values[i] = i;
+        LongPartitionableDataset longs = new FJLongPartitionableDataset(createEnvironment(), new RamLongArrayIteratorProvider(values)).withPartitionSize(100);
+        Assert.assertEquals(10001, longs.count());
+        Assert.assertEquals(50005000, longs.sum());
+        Assert.assertEquals(10000, longs.max());
+        Assert.assertEquals(5000.0, longs.mean(), 1e-9);
+        Assert.assertEquals(8335833.5, longs.stats().getSampleVariance(), 1e-6);
+        LongPartitionableDataset odds = longs.filter((ctx, v) -> v % 2 == 1).map((ctx, v) -> v * 10);
+        Assert.assertEquals(5000, odds.count());
+        Assert.assertEquals(10, odds.min());
+        Assert.assertTrue(Arrays.equals(new long[]{10, 30, 50}, Arrays.copyOf(odds.collect(), 3)));
+        Assert.assertTrue(Arrays.equals(new long[]{5, 10, 5}, longs.filter((ctx, v) -> v < 20).histogram(new long[]{0, 5, 15, 20})));
+        try {
+            longs.filter((ctx, v) -> v < 0).min();
+            Assert.fail();
+        } catch (NoSuchElementException e) {
+        }
+
+        double[][] matrix = new double[100][3];
+        for (int i = 0; i < matrix.length; i++)
+            matrix[i] = new double[]{i, -i, 0.5};
+        DoublePartitionableDataset cells = new FJDoublePartitionableDataset(createEnvironment(),
+                new RamDoubleMatrixIteratorProvider(matrix, true).values()).withPartitionSize(7);
+        Assert.assertTrue(Arrays.equals(new double[]{0, 0, 0.5, 1, -1, 0.5}, Arrays.copyOf(cells.collect(), 6)));
+        Assert.assertEquals(0.5, new FJDoublePartitionableDataset(createEnvironment(),
+                new RamDoubleMatrixIteratorProvider(matrix, false).values()).collect()[200], 0);
+        DoubleStatistics stats = cells.stats();
+        Assert.assertEquals(300, stats.getCount());
+        Assert.assertEquals(50, stats.getSum(), 1e-9);
+        Assert.assertEquals(-99, stats.getMin(), 0);
+        Assert.assertEquals(99, cells.max(), 0);
+        Assert.assertEquals(cells.map((ctx, v) -> v * v).mean() - Math.pow(cells.mean(), 2), cells.variance(), 1e-6);
+        Pair<double[], long[]> histogram = cells.histogram(2);
+        Assert.assertTrue(Arrays.equals(new double[]{-99, 0, 99}, histogram.getV1()));
+        Assert.assertTrue(Arrays.equals(new long[]{99, 201}, histogram.getV2()));
+        Assert.assertTrue(Double.isNaN(cells.filter((ctx, v) -> v > 1000).mean()));
+    }
+
+    @Test
+    public void approximateActionsTest() {
+        PartitionableDataset<Integer> numbers = createNumbers(100000);
+        long distinct = numbers.map((ctx, v) -> "w" + (v % 20000)).countApproxDistinct(0.01);
+        Assert.assertTrue(Math.abs(distinct - 20000) < 1000);
+        Assert.assertEquals(10, createNumbers(10).countApproxDistinct(0.05));
+
+        List<Integer> quantiles = numbers.approxQuantiles(new double[]{0, 0.5, 0.9, 1}, 0.01);
+        Assert.assertEquals(0, (int) quantiles.get(0));
+        Assert.assertTrue(Math.abs(quantiles.get(1) - 50000) < 2000);
+        Assert.assertTrue(Math.abs(quantiles.get(2) - 90000) < 2000);
+        Assert.assertEquals(99999, (int) quantiles.get(3));
+        Assert.assertTrue(createNumbers(0).approxQuantiles(new double[]{0.5}, 0.01).isEmpty());
+
+        // The items 0, 1 and 2 appear 10000 times each, all the other items once.
+        List<Pair<Integer, Long>> top = numbers.map((ctx, v) -> v < 30000 ? v % 3 : v).topKApprox(3, 0.001);
+        Assert.assertEquals(3, top.size());
+        for (Pair<Integer, Long> item : top) {
+            Assert.assertTrue(item.getV1() < 3);
+            Assert.assertTrue(item.getV2() >= 10000 && item.getV2() <= 10100);
+        }
+        List<Pair<Integer, Long>> topKeys = numbers.mapPair((ctx, v) -> new Pair<>(v % 7 == 0 ? -1 : v, v)).topKeysApprox(1, 0.001);
+        Assert.assertEquals(-1, (int) topKeys.get(0).getV1());
+        Assert.assertTrue(topKeys.get(0).getV2() >= 14286);
+    }
+
+    @Test
+    public void samplingTest() {
+        PartitionableDataset<Integer> numbers = createNumbers(100000);
+        PartitionableDataset<Integer> sample = numbers.sample(false, 0.1, 42);
+        List<Integer> items = sample.collect();
+        Assert.assertTrue(Math.abs(items.size() - 10000) < 600);
+        Assert.assertEquals(items, sample.collect());
+        Assert.assertTrue(!items.equals(numbers.sample(false, 0.1, 43).collect()));
+        Assert.assertEquals(new HashSet<>(items).size(), items.size());
+        Assert.assertTrue(Math.abs(numbers.sample(true, 2, 42).count() - 200000) < 3000);
+        Assert.assertEquals(0, numbers.sample(false, 0, 42).count());
+
+        List<Integer> values = createNumbers(40000).collect();
+        ForkJoinPool largePool = new ForkJoinPool(16);
+        try {
+            PDEnvironment largeEnv = new PDEnvironment(largePool, new RamStorageManager(), new SLF4JLogManager(), 1);
+            Assert.assertEquals(new FJPartitionableDataset<>(createEnvironment(), new CoarseListDataSource<>(values, 5000))
+                            .withPartitionSize(100).sample(false, 0.1, 42).collect(),
+                    new FJPartitionableDataset<>(largeEnv, new CoarseListDataSource<>(values, 5000))
+                            .withPartitionSize(100).sample(false, 0.1, 42).collect());
+        } finally {
+            largePool.shutdown();
+        }
+
+        List<Integer> taken = numbers.takeSample(100, 7);
+        Assert.assertEquals(100, taken.size());
+        Assert.assertEquals(100, new HashSet<>(taken).size());
+        Assert.assertEquals(taken, numbers.takeSample(100, 7));
+        Assert.assertEquals(10, createNumbers(10).takeSample(50, 7).size());
+
+        HashMap<Integer, Double> fractions = new HashMap<>();
+        fractions.put(0, 1.0);
+        fractions.put(1, 0.0);
+        fractions.put(2, 0.5);
+        List<Pair<Integer, Integer>> stratified = numbers.mapPair((ctx, v) -> new Pair<>(v % 3, v)).sampleByKey(false, fractions, 42).collect();
+        long zeros = stratified.stream().filter(p -> p.getV1() == 0).count();
+        long twos = stratified.stream().filter(p -> p.getV1() == 2).count();
+        Assert.assertEquals(33334, zeros);
+        Assert.assertEquals(zeros + twos, stratified.size());
+        Assert.assertTrue(Math.abs(twos - 16667) < 700);
+    }
+
+    @Test
+    public void topTest() {
+        PartitionableDataset<Integer> numbers = createNumbers(10000).map((ctx, v) -> (v * 7919) % 10000);
+        Assert.assertEquals(Arrays.asList(0, 1, 2, 3, 4), numbers.takeOrdered(5));
+        Assert.assertEquals(Arrays.asList(9999, 9998, 9997), numbers.top(3, Integer::compare));
+        Assert.assertEquals(Arrays.asList(9999, 9989, 9979), numbers.top(3, (a, b) -> a % 10 != b % 10 ? Integer.compare(a % 10, b % 10) : Integer.compare(a, b)));
+        Assert.assertEquals(10000, numbers.takeOrdered(20000).size());
+        Assert.assertTrue(createNumbers(0).takeOrdered(5).isEmpty());
+    }
+
+    @Test
+    public void bloomPrunedShuffleTest() {
+        // Both sizes are known and above the broadcast threshold, with a 1% overlap.
+        PartitionableDataset<Integer> large = createNumbers(200000).withPartitionSize(10000);
+        PartitionableDataset<Integer> small = createNumbers(150000).withPartitionSize(10000).map((ctx, v) -> v * 100);
+        Assert.assertEquals(2000, large.intersection(small).count());
+        Assert.assertEquals(2000, small.intersection(large).count());
+        Assert.assertEquals(Arrays.asList(0, 100, 200), small.intersection(large).sort(true).take(0, 3));
+
+        PairPartitionableDataset<Integer, Integer> largePairs = large.mapPair((ctx, v) -> new Pair<>(v, v));
+        PairPartitionableDataset<Integer, String> smallPairs = small.mapPair((ctx, v) -> new Pair<>(v, "v" + v));
+        Assert.assertEquals(2000, largePairs.join(smallPairs).count());
+        List<Pair<Integer, Pair<String, Integer>>> joined = smallPairs.join(largePairs).filter((ctx, p) -> p.getV1() == 500).collect();
+        Assert.assertEquals(Collections.singletonList(new Pair<>(500, new Pair<>("v500", 500))), joined);
+
+        // A single partition with more distinct items than the set can hold before spilling.
+        PartitionableDataset<Integer> repeated = createNumbers(250000).withPartitionSize(300000).map((ctx, v) -> v % 120000);
+        Assert.assertEquals(120000, repeated.distinct().count());
+
+        List<Integer> withNulls = createNumbers(1000).map((ctx, v) -> v % 3 == 0 ? null : v % 5).distinct().collect();
+        Assert.assertEquals(6, withNulls.size());
+        Assert.assertTrue(withNulls.contains(null));
+    }
+
+    @Test
+    public void streamingTest() {
+        List<Long> counts = new ArrayList<>();
+        new FJStreamingPartitionableDataset<Integer>(createEnvironment(), createReader(100), 10).withPartitionSize(3)
+                .count(3, (ctx, c) -> counts.add(c));
+        Assert.assertEquals(Arrays.asList(30L, 30L, 30L, 10L), counts);
+
+        counts.clear();
+        new FJStreamingPartitionableDataset<Integer>(createEnvironment(), createReader(100), 10).withPartitionSize(3)
+                .filter((ctx, v) -> v % 2 == 0).count(3, 1, (ctx, c) -> counts.add(c));
+        Assert.assertEquals(Arrays.asList(5L, 10L, 15L, 15L, 15L, 15L, 15L, 15L, 15L, 15L), counts);
+
+        counts.clear();
+        new FJStreamingPartitionableDataset<Integer>(createEnvironment(), createReader(25), 10).count(2, 2, (ctx, c) -> counts.add(c));
+        Assert.assertEquals(Arrays.asList(20L, 5L), counts);
+
+        counts.clear();
+        new FJStreamingPartitionableDataset<Integer>(createEnvironment(), createReader(7, 20), 10).withBatchInterval(10)
+                .count(1, (ctx, c) -> counts.add(c));
+        Assert.assertEquals(Arrays.asList(2L, 2L, 2L, 1L), counts);
+
+        List<Map<Integer, Integer>> windows = new ArrayList<>();
+        new FJStreamingPartitionableDataset<Integer>(createEnvironment(), createReader(60), 10).withPartitionSize(4)
+                .mapPair((ctx, v) -> new Pair<>(v % 3, v))
+                .reduceByKey((ctx, v1, v2) -> v1 + v2, 3, 1, (ctx, w) -> windows.add(w));
+        Assert.assertEquals(6, windows.size());
+        for (int b = 0; b < 6; b++) {
+            Map<Integer, Integer> expected = new HashMap<>();
+            for (int v = Math.max(0, b - 2) * 10; v < (b + 1) * 10; v++)
+                expected.merge(v % 3, v, Integer::sum);
+            Assert.assertEquals(expected, windows.get(b));
+        }
+
+        windows.clear();
+        new FJStreamingPartitionableDataset<Integer>(createEnvironment(), createReader(60), 10).withPartitionSize(4)
+                .mapPair((ctx, v) -> new Pair<>(v % 4, v % 2 == 0 ? null : v))
+                .reduceByKey((ctx, v1, v2) -> v1 + v2, 2, 1, (ctx, w) -> windows.add(w));
+        Assert.assertEquals(6, windows.size());
+        for (int b = 0; b < 6; b++) {
+            Map<Integer, Integer> expected = new HashMap<>();
+            expected.put(0, null);
+            expected.put(2, null);
+            for (int v = Math.max(0, b - 1) * 10; v < (b + 1) * 10; v++)
+                if (v % 2 != 0)
+                    expected.merge(v % 4, v, Integer::sum);
+            Assert.assertEquals(expected, windows.get(b));
+        }
+    }
+}
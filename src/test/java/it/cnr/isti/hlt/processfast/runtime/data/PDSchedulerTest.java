@@ -0,0 +1,95 @@
+/*
+ *
+ * ****************
+ * Copyright 2015 Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************
+ */
+
+package it.cnr.isti.hlt.processfast.runtime.data;
+
+import it.cnr.isti.hlt.processfast.runtime.FJBlocking;
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Tiziano Fagni (tiziano.fagni@isti.cnr.it)
+ */
+public class PDSchedulerTest {
+
+    @Test
+    public void weightedFairQueuingTest() throws InterruptedException {
+        ForkJoinPool pool = new ForkJoinPool(1);
+        PDScheduler scheduler = new PDScheduler(pool);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch gate = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(17);
+
+        PDScheduler.Job batch = scheduler.newJob(1);
+        PDScheduler.Job interactive = scheduler.newJob(3);
+        batch.submit(() -> {
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            done.countDown();
+        });
+        for (int i = 0; i < 8; i++) {
+            batch.submit(() -> {
+                order.add("batch");
+                done.countDown();
+            });
+            interactive.submit(() -> {
+                order.add("interactive");
+                done.countDown();
+            });
+        }
+        gate.countDown();
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        int interactiveFirst = 0;
+        for (String s : order.subList(0, 8)) {
+            if (s.equals("interactive"))
+                interactiveFirst++;
+        }
+        Assert.assertEquals(16, order.size());
+        Assert.assertTrue(interactiveFirst >= 5);
+        pool.shutdown();
+    }
+
+    @Test
+    public void blockedWorkerReleasesSlotTest() {
+        ForkJoinPool pool = new ForkJoinPool(1);
+        PDScheduler scheduler = new PDScheduler(pool);
+        PDScheduler.Job outer = scheduler.newJob(1);
+        PDScheduler.Job inner = scheduler.newJob(1);
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        outer.submit(() -> {
+            CompletableFuture<Integer> nested = new CompletableFuture<>();
+            inner.submit(() -> nested.complete(42));
+            result.complete(FJBlocking.get(nested));
+        });
+        Assert.assertEquals(42, (int) FJBlocking.get(result));
+        pool.shutdown();
+    }
+}